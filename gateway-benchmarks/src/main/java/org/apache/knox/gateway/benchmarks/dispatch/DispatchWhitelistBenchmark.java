@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.benchmarks.dispatch;
+
+import org.apache.knox.gateway.dispatch.DispatchWhitelist;
+import org.apache.knox.gateway.util.RegExUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Checks dispatch URLs against the default domain whitelist, the way the dispatch filter
+ * does for every request to a whitelisted service. A fixed set of URLs, differing in their
+ * query strings, is checked repeatedly from several threads against one shared whitelist.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+public class DispatchWhitelistBenchmark {
+
+  /* The whitelist derived for a gateway in the example.com domain */
+  private static final String WHITELIST = "^\\/.*$;^https?:\\/\\/(.+\\.example\\.com):[0-9]+\\/?.*$";
+  private static final int URL_COUNT = 4096;
+
+  private final AtomicInteger next = new AtomicInteger();
+
+  private String[] urls;
+  private List<Pattern> patterns;
+  private DispatchWhitelist whitelist;
+
+  @Setup
+  public void setUp() {
+    urls = new String[URL_COUNT];
+    for (int i = 0; i < URL_COUNT; i++) {
+      urls[i] = String.format(Locale.ROOT,
+          "https://knoxsso.example.com:8443/gateway/knoxsso/api/v1/websso?originalUrl=%s",
+          "https%3A%2F%2Fknox.example.com%3A8443%2Fgateway%2Fsandbox%2Fyarn%2Fapp%2F" + i);
+    }
+    patterns = RegExUtils.compileWhitelist(WHITELIST);
+    whitelist = new DispatchWhitelist(WHITELIST, URL_COUNT);
+  }
+
+  /* Decoding and matching the whole URL of every request, as the filter used to */
+  @Benchmark
+  public boolean checkUrl() throws UnsupportedEncodingException {
+    return RegExUtils.checkWhitelist(patterns, URLDecoder.decode(nextUrl(), StandardCharsets.UTF_8.name()));
+  }
+
+  @Benchmark
+  public boolean isAllowed() {
+    return whitelist.isAllowed(nextUrl());
+  }
+
+  private String nextUrl() {
+    return urls[(next.getAndIncrement() & Integer.MAX_VALUE) % URL_COUNT];
+  }
+}
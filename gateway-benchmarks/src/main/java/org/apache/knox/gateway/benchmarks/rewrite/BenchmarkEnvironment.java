@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.benchmarks.rewrite;
+
+import org.apache.knox.gateway.filter.rewrite.api.UrlRewriteEnvironment;
+import org.apache.knox.gateway.services.GatewayServices;
+import org.apache.knox.gateway.util.urltemplate.Resolver;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The environment of a topology deployed at {@link #GATEWAY_URL}, which also resolves the
+ * parameters a request through the gateway provides to the rewrite rules.
+ */
+class BenchmarkEnvironment implements UrlRewriteEnvironment {
+
+  static final String CLUSTER_NAME = "sandbox";
+  static final String GATEWAY_URL = "https://knox.example.com:8443/gateway/" + CLUSTER_NAME;
+
+  private final Map<String, Object> attributes = new HashMap<>();
+  private final Map<String, List<String>> params = new HashMap<>();
+
+  BenchmarkEnvironment() {
+    attributes.put(GatewayServices.GATEWAY_CLUSTER_ATTRIBUTE, CLUSTER_NAME);
+    attributes.put(GatewayServices.GATEWAY_SERVICES_ATTRIBUTE, new BenchmarkGatewayServices());
+    params.put("gateway.url", Collections.singletonList(GATEWAY_URL));
+    params.put("gateway.scheme", Collections.singletonList("https"));
+    params.put("gateway.host", Collections.singletonList("knox.example.com"));
+    params.put("gateway.port", Collections.singletonList("8443"));
+    params.put("gateway.addr", Collections.singletonList("knox.example.com:8443"));
+    params.put("gateway.path", Collections.singletonList("gateway/" + CLUSTER_NAME));
+  }
+
+  @Override
+  public URL getResource(String name) {
+    return getClass().getClassLoader().getResource(name);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T getAttribute(String name) {
+    return (T) attributes.get(name);
+  }
+
+  @Override
+  public List<String> resolve(String name) {
+    return params.get(name);
+  }
+
+  /**
+   * @param role the role of the service the request is dispatched to
+   * @return the parameters of a request to the service
+   */
+  Resolver forService(String role) {
+    final List<String> serviceRole = Collections.singletonList(role);
+    return name -> "service.role".equals(name) ? serviceRole : resolve(name);
+  }
+}
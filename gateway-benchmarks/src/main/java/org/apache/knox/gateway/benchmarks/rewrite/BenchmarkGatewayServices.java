@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.benchmarks.rewrite;
+
+import org.apache.knox.gateway.config.GatewayConfig;
+import org.apache.knox.gateway.deploy.DeploymentContext;
+import org.apache.knox.gateway.deploy.ProviderDeploymentContributorBase;
+import org.apache.knox.gateway.descriptor.FilterParamDescriptor;
+import org.apache.knox.gateway.descriptor.ResourceDescriptor;
+import org.apache.knox.gateway.services.GatewayServices;
+import org.apache.knox.gateway.services.ServiceType;
+import org.apache.knox.gateway.services.registry.ServiceRegistry;
+import org.apache.knox.gateway.topology.Provider;
+import org.apache.knox.gateway.topology.Service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The services the rewrite functions of the service definitions look up, reduced to a service
+ * registry resolving every role to a backend URL of its own.
+ */
+class BenchmarkGatewayServices extends ProviderDeploymentContributorBase implements GatewayServices {
+
+  private final ServiceRegistry registry = new StaticServiceRegistry();
+
+  @Override
+  public String getRole() {
+    return "Services";
+  }
+
+  @Override
+  public String getName() {
+    return "BenchmarkServices";
+  }
+
+  @Override
+  public void contributeFilter(DeploymentContext context, Provider provider, Service service,
+                               ResourceDescriptor resource, List<FilterParamDescriptor> params) {
+    // Noop.
+  }
+
+  @Override
+  public void init(GatewayConfig config, Map<String, String> options) {
+  }
+
+  @Override
+  public void start() {
+  }
+
+  @Override
+  public void stop() {
+  }
+
+  @Override
+  public Collection<ServiceType> getServiceTypes() {
+    return Collections.singleton(ServiceType.SERVICE_REGISTRY_SERVICE);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T getService(ServiceType serviceType) {
+    return ServiceType.SERVICE_REGISTRY_SERVICE == serviceType ? (T) registry : null;
+  }
+
+  private static class StaticServiceRegistry implements ServiceRegistry {
+    @Override
+    public String getRegistrationCode(String clusterName) {
+      return null;
+    }
+
+    @Override
+    public boolean registerService(String regCode, String clusterName, String serviceName, List<String> urls) {
+      return false;
+    }
+
+    @Override
+    public String lookupServiceURL(String clusterName, String serviceName) {
+      return "http://" + serviceName.toLowerCase(Locale.ROOT) + ".example.com:8080";
+    }
+
+    @Override
+    public List<String> lookupServiceURLs(String clusterName, String serviceName) {
+      return Collections.singletonList(lookupServiceURL(clusterName, serviceName));
+    }
+
+    @Override
+    public void removeClusterServices(String clusterName) {
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.benchmarks.rewrite;
+
+import org.apache.knox.gateway.filter.rewrite.api.UrlRewriteFilterContentDescriptor;
+import org.apache.knox.gateway.filter.rewrite.api.UrlRewriteProcessor;
+import org.apache.knox.gateway.filter.rewrite.api.UrlRewriteStreamFilterFactory;
+import org.apache.knox.gateway.filter.rewrite.api.UrlRewriter;
+import org.apache.knox.gateway.filter.rewrite.impl.UrlRewriteUtil;
+import org.apache.knox.gateway.filter.rewrite.spi.UrlRewriteStreamFilter;
+import org.apache.knox.gateway.util.MimeTypes;
+import org.apache.knox.gateway.util.urltemplate.Resolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.activation.MimeType;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/**
+ * Rewrites response bodies with the filters and rules the service definitions apply to them.
+ * Besides the throughput, run with <code>-prof gc</code> to report the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BodyRewriteBenchmark {
+
+  public enum Payload {
+    WEBHDFS_LISTSTATUS("WEBHDFS", "application/json",
+        "WEBHDFS/webhdfs/outbound/namenode/headers", Payloads::webHdfsListStatus),
+    YARN_APPS_JSON("RESOURCEMANAGER", "application/json",
+        "RESOURCEMANAGER/resourcemanager/apps/outbound", Payloads::yarnAppsJson),
+    YARN_APPS_XML("RESOURCEMANAGER", "application/xml",
+        "RESOURCEMANAGER/resourcemanager/apps/outbound", Payloads::yarnAppsXml),
+    YARN_UI_HTML("YARNUI", "text/html", "YARNUI/yarn/outbound/apps", Payloads::yarnUiHtml),
+    SPARK_UI_HTML("SPARKHISTORYUI", "text/html", null, Payloads::sparkUiHtml),
+    HDFS_UI_JAVASCRIPT("HDFSUI", "application/javascript",
+        "HDFSUI/hdfs/outbound/namenode/relative", Payloads::hdfsUiJavaScript);
+
+    private final String role;
+    private final String contentType;
+    private final String filter;
+    private final IntFunction<String> generator;
+
+    Payload(String role, String contentType, String filter, IntFunction<String> generator) {
+      this.role = role;
+      this.contentType = contentType;
+      this.filter = filter;
+      this.generator = generator;
+    }
+  }
+
+  @Param
+  public Payload payload;
+
+  /* Number of files, applications or requests of the body */
+  @Param({"10", "1000"})
+  public int entries;
+
+  private UrlRewriteProcessor processor;
+  private Resolver resolver;
+  private UrlRewriteStreamFilter filter;
+  private UrlRewriteFilterContentDescriptor filterConfig;
+  private byte[] body;
+  private final byte[] buffer = new byte[8192];
+
+  @Setup
+  public void setUp() throws IOException {
+    final BenchmarkEnvironment environment = new BenchmarkEnvironment();
+    processor = new UrlRewriteProcessor();
+    processor.initialize(environment, ServiceDefinitionRules.merge(ServiceDefinitionRules.load().values()));
+    resolver = environment.forService(payload.role);
+    filter = UrlRewriteStreamFilterFactory.create(getContentType(), null);
+    filterConfig = UrlRewriteUtil.getRewriteFilterConfig(processor.getConfig(), payload.filter, getContentType());
+    body = payload.generator.apply(entries).getBytes(StandardCharsets.UTF_8);
+  }
+
+  @TearDown
+  public void tearDown() {
+    processor.destroy();
+  }
+
+  /**
+   * @return the length of the rewritten body
+   */
+  @Benchmark
+  public long rewriteBody() throws IOException {
+    long length = 0;
+    try (InputStream input = filter.filter(new ByteArrayInputStream(body), StandardCharsets.UTF_8.name(),
+        processor, resolver, UrlRewriter.Direction.OUT, filterConfig)) {
+      for (int read = input.read(buffer); read != -1; read = input.read(buffer)) {
+        length += read;
+      }
+    }
+    return length;
+  }
+
+  /* The factory falls back to wildcard types by changing the given type */
+  private MimeType getContentType() {
+    return MimeTypes.create(payload.contentType, StandardCharsets.UTF_8.name());
+  }
+}
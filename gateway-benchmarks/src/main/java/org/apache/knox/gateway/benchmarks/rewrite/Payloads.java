@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.benchmarks.rewrite;
+
+import java.util.Locale;
+
+/**
+ * Response bodies shaped like the ones of the backends, with the given number of entries.
+ */
+final class Payloads {
+
+  private static final long START_TIME = 1476912658570L;
+
+  private Payloads() {
+  }
+
+  /**
+   * @return the response of a WebHDFS LISTSTATUS operation
+   */
+  static String webHdfsListStatus(int files) {
+    final StringBuilder body = new StringBuilder(256 * 1024);
+    body.append("{\"FileStatuses\":{\"FileStatus\":[");
+    for (int i = 0; i < files; i++) {
+      if (i > 0) {
+        body.append(',');
+      }
+      body.append("{\"accessTime\":").append(START_TIME + i)
+          .append(",\"blockSize\":134217728,\"childrenNum\":0,\"fileId\":").append(16387 + i)
+          .append(",\"group\":\"hdfs\",\"length\":").append(24930L * (i + 1))
+          .append(",\"modificationTime\":").append(START_TIME + i)
+          .append(",\"owner\":\"hdfs\",\"pathSuffix\":\"part-").append(String.format(Locale.ROOT, "%05d", i))
+          .append("\",\"permission\":\"644\",\"replication\":3,\"storagePolicy\":0,\"type\":\"FILE\"}");
+    }
+    body.append("]}}");
+    return body.toString();
+  }
+
+  /**
+   * @return the response of the YARN ResourceManager REST API listing applications, as JSON
+   */
+  static String yarnAppsJson(int apps) {
+    final StringBuilder body = new StringBuilder(256 * 1024);
+    body.append("{\"apps\":{\"app\":[");
+    for (int i = 0; i < apps; i++) {
+      if (i > 0) {
+        body.append(',');
+      }
+      final String id = applicationId(i);
+      body.append("{\"id\":\"").append(id)
+          .append("\",\"user\":\"hive\",\"name\":\"HIVE-").append(i)
+          .append("\",\"queue\":\"default\",\"state\":\"").append(state(i))
+          .append("\",\"finalStatus\":\"SUCCEEDED\",\"progress\":100.0")
+          .append(",\"trackingUI\":\"").append(trackingUi(i)).append("\",\"trackingUrl\":\"").append(trackingUrl(id))
+          .append("\",\"diagnostics\":\"\",\"clusterId\":").append(START_TIME)
+          .append(",\"applicationType\":\"TEZ\",\"applicationTags\":\"\",\"priority\":0")
+          .append(",\"startedTime\":").append(START_TIME + i * 1000L)
+          .append(",\"finishedTime\":").append(START_TIME + i * 1000L + 60000L)
+          .append(",\"elapsedTime\":60000,\"amContainerLogs\":\"").append(containerLogs(id, i))
+          .append("\",\"amHostHttpAddress\":\"").append(nodeAddress(i))
+          .append("\",\"allocatedMB\":-1,\"allocatedVCores\":-1,\"runningContainers\":-1")
+          .append(",\"memorySeconds\":").append(1863281L + i)
+          .append(",\"vcoreSeconds\":").append(910L + i)
+          .append(",\"queueUsagePercentage\":0.0,\"clusterUsagePercentage\":0.0}");
+    }
+    body.append("]}}");
+    return body.toString();
+  }
+
+  /**
+   * @return the response of the YARN ResourceManager REST API listing applications, as XML
+   */
+  static String yarnAppsXml(int apps) {
+    final StringBuilder body = new StringBuilder(256 * 1024);
+    body.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?><apps>");
+    for (int i = 0; i < apps; i++) {
+      final String id = applicationId(i);
+      body.append("<app><id>").append(id)
+          .append("</id><user>hive</user><name>HIVE-").append(i)
+          .append("</name><queue>default</queue><state>").append(state(i))
+          .append("</state><finalStatus>SUCCEEDED</finalStatus><progress>100.0</progress>")
+          .append("<trackingUI>").append(trackingUi(i)).append("</trackingUI><trackingUrl>").append(trackingUrl(id))
+          .append("</trackingUrl><diagnostics></diagnostics><clusterId>").append(START_TIME)
+          .append("</clusterId><applicationType>TEZ</applicationType><applicationTags></applicationTags>")
+          .append("<startedTime>").append(START_TIME + i * 1000L)
+          .append("</startedTime><finishedTime>").append(START_TIME + i * 1000L + 60000L)
+          .append("</finishedTime><elapsedTime>60000</elapsedTime><amContainerLogs>").append(containerLogs(id, i))
+          .append("</amContainerLogs><amHostHttpAddress>").append(nodeAddress(i))
+          .append("</amHostHttpAddress><allocatedMB>-1</allocatedMB><allocatedVCores>-1</allocatedVCores>")
+          .append("<runningContainers>-1</runningContainers></app>");
+    }
+    body.append("</apps>");
+    return body.toString();
+  }
+
+  /**
+   * @return the applications page of the YARN ResourceManager UI, its table being filled by an
+   * embedded script
+   */
+  static String yarnUiHtml(int apps) {
+    final StringBuilder body = new StringBuilder(256 * 1024);
+    body.append("<!DOCTYPE html PUBLIC \"-//W3C//DTD HTML 4.01//EN\" \"http://www.w3.org/TR/html4/strict.dtd\">\n")
+        .append("<html>\n<head>\n<meta http-equiv=\"X-UA-Compatible\" content=\"IE=8\">\n")
+        .append("<title>All Applications</title>\n")
+        .append("<link rel=\"stylesheet\" href=\"/static/yarn.css\">\n")
+        .append("<link rel=\"stylesheet\" href=\"/static/jquery/themes-1.9.1/base/jquery-ui.css\">\n")
+        .append("<script type=\"text/javascript\" src=\"/static/jquery/jquery-1.8.2.min.js\"></script>\n")
+        .append("<script type=\"text/javascript\" src=\"/static/dt-1.9.4/js/jquery.dataTables.min.js\"></script>\n")
+        .append("</head>\n<body id=\"jsnotice\">\n")
+        .append("<div id=\"nav\"><ul><li><a href=\"/cluster/cluster\">About</a></li>")
+        .append("<li><a href=\"/cluster/nodes\">Nodes</a></li><li><a href=\"/cluster/apps\">Applications</a></li>")
+        .append("<li><a href=\"/cluster/scheduler\">Scheduler</a></li></ul></div>\n")
+        .append("<table id=\"apps\"><thead><tr><th>ID</th><th>User</th><th>Name</th><th>State</th>")
+        .append("<th>Tracking UI</th></tr></thead><tbody></tbody></table>\n")
+        .append("<script type=\"text/javascript\">\nvar appsTableData=[\n");
+    for (int i = 0; i < apps; i++) {
+      final String id = applicationId(i);
+      body.append("[\"<a href='/cluster/app/").append(id).append("'>").append(id).append("</a>\",\"hive\",\"HIVE-")
+          .append(i).append("\",\"FINISHED\",\"<a href='").append(trackingUrl(id)).append("'>History</a>\"],\n");
+    }
+    body.append("]\n</script>\n</body>\n</html>\n");
+    return body.toString();
+  }
+
+  /**
+   * @return the applications page of the Spark History Server UI
+   */
+  static String sparkUiHtml(int apps) {
+    final StringBuilder body = new StringBuilder(256 * 1024);
+    body.append("<!DOCTYPE html><html>\n<head>\n")
+        .append("<meta http-equiv=\"Content-type\" content=\"text/html; charset=utf-8\"/>\n")
+        .append("<link rel=\"stylesheet\" href=\"/static/bootstrap.min.css\" type=\"text/css\"/>\n")
+        .append("<link rel=\"stylesheet\" href=\"/static/vis.min.css\" type=\"text/css\"/>\n")
+        .append("<link rel=\"stylesheet\" href=\"/static/webui.css\" type=\"text/css\"/>\n")
+        .append("<script src=\"/static/sorttable.js\"></script>\n")
+        .append("<script src=\"/static/jquery-1.11.1.min.js\"></script>\n")
+        .append("<script src=\"/static/bootstrap-tooltip.js\"></script>\n")
+        .append("<script src=\"/static/initialize-tooltips.js\"></script>\n")
+        .append("<link rel=\"shortcut icon\" href=\"/static/spark-logo-77x50px-hd.png\"></link>\n")
+        .append("<title>History Server</title>\n</head>\n<body>\n<div class=\"container-fluid\">\n")
+        .append("<div class=\"row-fluid\"><h3 style=\"vertical-align: middle; display: inline-block;\">")
+        .append("<a style=\"text-decoration: none\" href=\"/\"><img src=\"/static/spark-logo-77x50px-hd.png\"/>")
+        .append("</a>History Server</h3></div>\n")
+        .append("<table class=\"table table-bordered table-condensed table-striped sortable\">\n")
+        .append("<thead><tr><th>App ID</th><th>App Name</th><th>Started</th><th>Completed</th>")
+        .append("<th>Duration</th><th>Spark User</th></tr></thead>\n<tbody>\n");
+    for (int i = 0; i < apps; i++) {
+      final String id = "application_" + START_TIME + "_" + String.format(Locale.ROOT, "%04d", i + 1);
+      body.append("<tr><td><a href=\"/history/").append(id).append("/1/jobs/\">").append(id).append("</a></td>")
+          .append("<td>Spark Pi</td><td sorttable_customkey=\"").append(START_TIME + i * 1000L)
+          .append("\">2016/10/19 21:31:").append(String.format(Locale.ROOT, "%02d", i % 60))
+          .append("</td><td>2016/10/19 21:32:00</td><td>32 s</td><td>spark</td></tr>\n");
+    }
+    body.append("</tbody>\n</table>\n")
+        .append("<a href=\"/?page=2&amp;showIncomplete=true\">Show incomplete applications</a>\n")
+        .append("</div>\n</body>\n</html>\n");
+    return body.toString();
+  }
+
+  /**
+   * @return a script of the HDFS NameNode UI loading the data of its pages
+   */
+  static String hdfsUiJavaScript(int requests) {
+    final StringBuilder body = new StringBuilder(256 * 1024);
+    body.append("(function () {\n  \"use strict\";\n\n")
+        .append("  dust.loadSource(dust.compile($('#tmpl-dfshealth').html(), 'dfshealth'));\n\n");
+    for (int i = 0; i < requests; i++) {
+      body.append("  function load_overview_").append(i).append("() {\n")
+          .append("    var BEANS = [\n")
+          .append("      {\"name\": \"nn\",      \"url\": \"/jmx?qry=Hadoop:service=NameNode,name=NameNodeInfo\"},\n")
+          .append("      {\"name\": \"nnstat\",  \"url\": \"/jmx?qry=Hadoop:service=NameNode,name=NameNodeStatus\"},\n")
+          .append("      {\"name\": \"fs\",      \"url\": \"/jmx?qry=Hadoop:service=NameNode,name=FSNamesystemState\"}")
+          .append(",\n")
+          .append("      {\"name\": \"mem\",     \"url\": \"/jmx?qry=java.lang:type=Memory\"}\n")
+          .append("    ];\n")
+          .append("    var HELPERS = {\n")
+          .append("      'helper_fs_max_objects': function (chunk, ctx, bodies, params) {\n")
+          .append("        var o = ctx.current();\n")
+          .append("        if (o.MaxObjects > 0) {\n")
+          .append("          chunk.write('(' + Math.round((o.FilesTotal + o.BlockTotal) / o.MaxObjects * 100) * 100)")
+          .append(" + ')%');\n")
+          .append("        }\n      }\n    };\n")
+          .append("    load_json(BEANS, guard_with_startup_progress(function(d) {\n")
+          .append("      $.get('/conf', function (data) { $('#tab-overview').html(data); });\n")
+          .append("      $.get('/startupProgress', function (resp) { render_startup_progress(resp); });\n")
+          .append("      $.get('/webhdfs/v1/tmp/dir").append(i).append("?op=LISTSTATUS', function (resp) {")
+          .append(" browse(resp); });\n")
+          .append("    }), function (url, jqxhr, text, err) { show_err_msg('<p>Failed to retrieve data from '")
+          .append(" + url + ', cause: ' + err + '</p>'); });\n")
+          .append("  }\n\n");
+    }
+    body.append("  load_overview_0();\n})();\n");
+    return body.toString();
+  }
+
+  private static String applicationId(int app) {
+    return "application_" + START_TIME + "_" + String.format(Locale.ROOT, "%04d", app + 1);
+  }
+
+  /* One application out of four is still running */
+  private static String state(int app) {
+    return app % 4 == 0 ? "RUNNING" : "FINISHED";
+  }
+
+  private static String trackingUi(int app) {
+    return app % 4 == 0 ? "ApplicationMaster" : "History";
+  }
+
+  private static String trackingUrl(String applicationId) {
+    return "http://rm.example.com:8088/proxy/" + applicationId + "/";
+  }
+
+  private static String containerLogs(String applicationId, int app) {
+    return "http://" + nodeAddress(app) + "/node/containerlogs/container_e"
+        + applicationId.substring("application_".length()) + "_01_000001/hive";
+  }
+
+  private static String nodeAddress(int app) {
+    return "nm" + (app % 16) + ".example.com:8042";
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.benchmarks.rewrite;
+
+import org.apache.knox.gateway.filter.rewrite.api.UrlRewriteRuleDescriptor;
+import org.apache.knox.gateway.filter.rewrite.api.UrlRewriteRulesDescriptor;
+import org.apache.knox.gateway.filter.rewrite.api.UrlRewriter;
+import org.apache.knox.gateway.filter.rewrite.ext.ScopedMatcher;
+import org.apache.knox.gateway.filter.rewrite.impl.UrlRewriteRuleProcessorHolder;
+import org.apache.knox.gateway.util.urltemplate.Matcher;
+import org.apache.knox.gateway.util.urltemplate.Parser;
+import org.apache.knox.gateway.util.urltemplate.Template;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looks up the inbound rule of a WebHDFS request in topologies deploying more and more
+ * services. With the rules of the service known, the lookup should not get slower as services
+ * are added.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ScopedMatcherBenchmark {
+
+  private static final String FIRST_SERVICE = "webhdfs";
+  private static final String SCOPE = "WEBHDFS";
+
+  /* Number of services of the topology, capped by the number of service definitions */
+  @Param({"1", "10", "25", "100"})
+  public int services;
+
+  private ScopedMatcher matcher;
+  private Template request;
+
+  @Setup
+  public void setUp() throws Exception {
+    final Map<String, UrlRewriteRulesDescriptor> definitions = ServiceDefinitionRules.load();
+    final List<UrlRewriteRulesDescriptor> deployed = new ArrayList<>();
+    deployed.add(definitions.remove(FIRST_SERVICE));
+    for (UrlRewriteRulesDescriptor definition : definitions.values()) {
+      if (deployed.size() >= services) {
+        break;
+      }
+      deployed.add(definition);
+    }
+
+    final BenchmarkEnvironment environment = new BenchmarkEnvironment();
+    matcher = new ScopedMatcher();
+    for (UrlRewriteRuleDescriptor rule : ServiceDefinitionRules.merge(deployed).getRules()) {
+      final EnumSet<UrlRewriter.Direction> directions = rule.directions();
+      if (rule.template() != null
+          && (directions == null || directions.isEmpty() || directions.contains(UrlRewriter.Direction.IN))) {
+        final UrlRewriteRuleProcessorHolder holder = new UrlRewriteRuleProcessorHolder();
+        holder.initialize(environment, rule);
+        matcher.add(rule.template(), holder);
+      }
+    }
+    matcher.compile();
+    request = Parser.parseLiteral(
+        BenchmarkEnvironment.GATEWAY_URL + "/webhdfs/v1/user/hive/warehouse/sales.db/orders?op=LISTSTATUS");
+  }
+
+  @Benchmark
+  public Matcher<UrlRewriteRuleProcessorHolder>.Match scopedMatch() {
+    return matcher.match(request, SCOPE);
+  }
+
+  /**
+   * Without the scope every service's rules may match, the cost growing with the services.
+   */
+  @Benchmark
+  public Matcher<UrlRewriteRuleProcessorHolder>.Match unscopedMatch() {
+    return matcher.match(request, null);
+  }
+}
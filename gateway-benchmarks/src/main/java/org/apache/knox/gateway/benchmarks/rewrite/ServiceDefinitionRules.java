@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.benchmarks.rewrite;
+
+import org.apache.knox.gateway.filter.rewrite.api.UrlRewriteRulesDescriptor;
+import org.apache.knox.gateway.filter.rewrite.api.UrlRewriteRulesDescriptorFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Loads the rewrite rules shipped with the service definitions, using the latest version of
+ * each service as a topology deploying every service would.
+ */
+final class ServiceDefinitionRules {
+
+  private static final String SERVICES_DIRECTORY = "services";
+  private static final String REWRITE_FILE = "rewrite.xml";
+  /* Any service definition, used to find the directory or jar of all of them */
+  private static final String ANCHOR = SERVICES_DIRECTORY + "/webhdfs/2.4.0/" + REWRITE_FILE;
+
+  private ServiceDefinitionRules() {
+  }
+
+  /**
+   * @return the rules of the latest version of every service, by service name
+   */
+  static Map<String, UrlRewriteRulesDescriptor> load() throws IOException {
+    final URL anchor = ServiceDefinitionRules.class.getClassLoader().getResource(ANCHOR);
+    if (anchor == null) {
+      throw new IOException("Service definitions not found in the class path: " + ANCHOR);
+    }
+    try {
+      final URI uri = anchor.toURI();
+      if ("jar".equals(uri.getScheme())) {
+        try (FileSystem jar = FileSystems.newFileSystem(uri, Collections.emptyMap())) {
+          return load(jar.getPath(SERVICES_DIRECTORY));
+        }
+      }
+      return load(Paths.get(uri).getParent().getParent().getParent());
+    } catch (URISyntaxException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * @return the rules of all the given services, deployed in the same topology
+   */
+  static UrlRewriteRulesDescriptor merge(Collection<UrlRewriteRulesDescriptor> services) {
+    final UrlRewriteRulesDescriptor rules = UrlRewriteRulesDescriptorFactory.create();
+    for (UrlRewriteRulesDescriptor service : services) {
+      rules.addRules(service);
+    }
+    return rules;
+  }
+
+  private static Map<String, UrlRewriteRulesDescriptor> load(Path servicesDirectory) throws IOException {
+    final Map<String, UrlRewriteRulesDescriptor> services = new TreeMap<>();
+    try (DirectoryStream<Path> serviceDirectories = Files.newDirectoryStream(servicesDirectory)) {
+      for (Path serviceDirectory : serviceDirectories) {
+        final Path rewriteFile = getLatestRewriteFile(serviceDirectory);
+        if (rewriteFile != null) {
+          try (Reader reader = Files.newBufferedReader(rewriteFile, StandardCharsets.UTF_8)) {
+            services.put(serviceDirectory.getFileName().toString().replace("/", ""),
+                UrlRewriteRulesDescriptorFactory.load("xml", reader));
+          }
+        }
+      }
+    }
+    return services;
+  }
+
+  private static Path getLatestRewriteFile(Path serviceDirectory) throws IOException {
+    Path latest = null;
+    if (Files.isDirectory(serviceDirectory)) {
+      try (DirectoryStream<Path> versionDirectories = Files.newDirectoryStream(serviceDirectory)) {
+        for (Path versionDirectory : versionDirectories) {
+          final Path rewriteFile = versionDirectory.resolve(REWRITE_FILE);
+          if (Files.exists(rewriteFile)
+              && (latest == null || compareVersions(versionDirectory, latest.getParent()) > 0)) {
+            latest = rewriteFile;
+          }
+        }
+      }
+    }
+    return latest;
+  }
+
+  private static int compareVersions(Path first, Path second) {
+    final String[] firstParts = first.getFileName().toString().replace("/", "").split("\\.");
+    final String[] secondParts = second.getFileName().toString().replace("/", "").split("\\.");
+    for (int i = 0; i < Math.min(firstParts.length, secondParts.length); i++) {
+      final int result = Integer.compare(toNumber(firstParts[i]), toNumber(secondParts[i]));
+      if (result != 0) {
+        return result;
+      }
+    }
+    return Integer.compare(firstParts.length, secondParts.length);
+  }
+
+  private static int toNumber(String versionPart) {
+    try {
+      return Integer.parseInt(versionPart);
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.benchmarks.rewrite;
+
+import org.apache.knox.gateway.filter.rewrite.api.UrlRewriteFilterContentDescriptor;
+import org.apache.knox.gateway.filter.rewrite.api.UrlRewriteProcessor;
+import org.apache.knox.gateway.filter.rewrite.api.UrlRewriteServletFilter;
+import org.apache.knox.gateway.filter.rewrite.api.UrlRewriter;
+import org.apache.knox.gateway.filter.rewrite.impl.UrlRewriteUtil;
+import org.apache.knox.gateway.util.urltemplate.Parser;
+import org.apache.knox.gateway.util.urltemplate.Resolver;
+import org.apache.knox.gateway.util.urltemplate.Template;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rewrites request and response URLs with the rules of every service definition deployed in
+ * one topology, as the rewrite filters do for each request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class UrlRewriteProcessorBenchmark {
+
+  private static final String WEBHDFS_REQUEST =
+      BenchmarkEnvironment.GATEWAY_URL + "/webhdfs/v1/user/hive/warehouse/sales.db/orders?op=LISTSTATUS";
+  private static final String SPARK_UI_LINK = "/history/application_1476912658570_0001/1/jobs/";
+  private static final String WEBHDFS_HEADERS_FILTER = "WEBHDFS/webhdfs/outbound/namenode/headers";
+
+  /* The headers of the redirect of a WebHDFS CREATE operation to a datanode */
+  private static final String[][] WEBHDFS_RESPONSE_HEADERS = {
+      {"Cache-Control", "no-cache"},
+      {"Expires", "Wed, 19 Oct 2016 21:31:00 GMT"},
+      {"Date", "Wed, 19 Oct 2016 21:31:00 GMT"},
+      {"Pragma", "no-cache"},
+      {"X-FRAME-OPTIONS", "SAMEORIGIN"},
+      {"Location", "http://dn3.example.com:50075/webhdfs/v1/tmp/orders.csv?op=CREATE"
+          + "&namenoderpcaddress=nn.example.com:8020&createflag=&createparent=true&overwrite=false"},
+      {"Content-Type", "application/octet-stream"}
+  };
+
+  private UrlRewriteProcessor processor;
+  private Resolver webHdfs;
+  private Resolver sparkHistoryUi;
+  private Resolver withoutService;
+  private UrlRewriteFilterContentDescriptor webHdfsHeaders;
+
+  @Setup
+  public void setUp() throws IOException {
+    final BenchmarkEnvironment environment = new BenchmarkEnvironment();
+    processor = new UrlRewriteProcessor();
+    processor.initialize(environment, ServiceDefinitionRules.merge(ServiceDefinitionRules.load().values()));
+    webHdfs = environment.forService("WEBHDFS");
+    sparkHistoryUi = environment.forService("SPARKHISTORYUI");
+    withoutService = environment;
+    webHdfsHeaders = UrlRewriteUtil.getRewriteFilterConfig(
+        processor.getConfig(), WEBHDFS_HEADERS_FILTER, UrlRewriteServletFilter.HEADERS_MIME_TYPE);
+  }
+
+  @TearDown
+  public void tearDown() {
+    processor.destroy();
+  }
+
+  /**
+   * Finds the rule of a request URL among the rules of the service and rewrites it.
+   */
+  @Benchmark
+  public Template inboundUrl() throws URISyntaxException {
+    return processor.rewrite(webHdfs, Parser.parseLiteral(WEBHDFS_REQUEST), UrlRewriter.Direction.IN, null);
+  }
+
+  /**
+   * Same without knowing the service, which has to look through the rules of all services.
+   */
+  @Benchmark
+  public Template inboundUrlWithoutScope() throws URISyntaxException {
+    return processor.rewrite(withoutService, Parser.parseLiteral(WEBHDFS_REQUEST), UrlRewriter.Direction.IN, null);
+  }
+
+  /**
+   * Finds the rule of a link of a UI page and rewrites it.
+   */
+  @Benchmark
+  public Template outboundUrl() throws URISyntaxException {
+    return processor.rewrite(sparkHistoryUi, Parser.parseLiteral(SPARK_UI_LINK), UrlRewriter.Direction.OUT, null);
+  }
+
+  /**
+   * Rewrites the headers of a response the way the response wrapper of the rewrite filter does:
+   * with the rule the headers filter gives for the header, or the rule matching its value.
+   */
+  @Benchmark
+  public void responseHeaders(Blackhole blackhole) throws URISyntaxException {
+    for (String[] header : WEBHDFS_RESPONSE_HEADERS) {
+      final String rule = UrlRewriteUtil.pickFirstRuleWithEqualsIgnoreCasePathMatch(webHdfsHeaders, header[0]);
+      blackhole.consume(processor.rewrite(webHdfs, Parser.parseLiteral(header[1]), UrlRewriter.Direction.OUT, rule));
+    }
+  }
+}
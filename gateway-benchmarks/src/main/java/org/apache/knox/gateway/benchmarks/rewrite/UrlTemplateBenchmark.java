@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.benchmarks.rewrite;
+
+import org.apache.knox.gateway.util.urltemplate.Expander;
+import org.apache.knox.gateway.util.urltemplate.Matcher;
+import org.apache.knox.gateway.util.urltemplate.Parser;
+import org.apache.knox.gateway.util.urltemplate.Template;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses, matches and expands URL templates, the steps of every rewrite rule.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class UrlTemplateBenchmark {
+
+  private static final String URL =
+      BenchmarkEnvironment.GATEWAY_URL + "/webhdfs/v1/user/hive/warehouse/sales.db/orders?op=LISTSTATUS";
+  /* The pattern and template of the WEBHDFS/webhdfs/inbound/namenode/file rule */
+  private static final String PATTERN = "*://*:*/**/webhdfs/{version}/{path=**}?{**}";
+  private static final String TEMPLATE = "http://nn.example.com:50070/webhdfs/{version}/{path=**}?{**}";
+
+  private Template url;
+  private Template template;
+  private Matcher<String> matcher;
+
+  @Setup
+  public void setUp() throws URISyntaxException {
+    url = Parser.parseLiteral(URL);
+    template = Parser.parseTemplate(TEMPLATE);
+    matcher = new Matcher<>();
+    matcher.add(Parser.parseTemplate(PATTERN), "WEBHDFS/webhdfs/inbound/namenode/file");
+  }
+
+  @Benchmark
+  public Template parseLiteral() throws URISyntaxException {
+    return Parser.parseLiteral(URL);
+  }
+
+  @Benchmark
+  public Template parseTemplate() throws URISyntaxException {
+    return Parser.parseTemplate(PATTERN);
+  }
+
+  @Benchmark
+  public Matcher<String>.Match match() {
+    return matcher.match(url);
+  }
+
+  @Benchmark
+  public String matchAndExpand() {
+    return Expander.expandToString(template, matcher.match(url).getParams(), null);
+  }
+}
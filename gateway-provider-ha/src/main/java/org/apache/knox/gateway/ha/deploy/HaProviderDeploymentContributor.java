@@ -132,6 +132,26 @@ public class HaProviderDeploymentContributor extends ProviderDeploymentContribut
          if (zkNamespace != null) {
             config.setZookeeperNamespace(zkNamespace);
          }
+
+         String hedgingEnabled = serviceLevelParams.get(HaServiceConfigConstants.CONFIG_HEDGING_ENABLED);
+         if (hedgingEnabled != null) {
+            config.setHedgingEnabled(Boolean.parseBoolean(hedgingEnabled));
+         }
+
+         String hedgingPercentile = serviceLevelParams.get(HaServiceConfigConstants.CONFIG_HEDGING_PERCENTILE);
+         if (hedgingPercentile != null) {
+            config.setHedgingPercentile(Integer.parseInt(hedgingPercentile));
+         }
+
+         String hedgingBudget = serviceLevelParams.get(HaServiceConfigConstants.CONFIG_HEDGING_BUDGET);
+         if (hedgingBudget != null) {
+            config.setHedgingBudget(Integer.parseInt(hedgingBudget));
+         }
+
+         String hedgingMinDelay = serviceLevelParams.get(HaServiceConfigConstants.CONFIG_HEDGING_MIN_DELAY);
+         if (hedgingMinDelay != null) {
+            config.setHedgingMinDelay(Integer.parseInt(hedgingMinDelay));
+         }
       }
    }
 
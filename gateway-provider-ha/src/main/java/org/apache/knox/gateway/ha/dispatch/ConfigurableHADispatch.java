@@ -72,6 +72,7 @@ public class ConfigurableHADispatch extends ConfigurableDispatch {
   private boolean stickySessionsEnabled = HaServiceConfigConstants.DEFAULT_STICKY_SESSIONS_ENABLED;
   private boolean noFallbackEnabled = HaServiceConfigConstants.DEFAULT_NO_FALLBACK_ENABLED;
   private String stickySessionCookieName = HaServiceConfigConstants.DEFAULT_STICKY_SESSION_COOKIE_NAME;
+  private HedgedRequestExecutor hedgedRequestExecutor;
 
   @Override
   public void init() {
@@ -90,6 +91,9 @@ public class ConfigurableHADispatch extends ConfigurableDispatch {
         stickySessionCookieName = serviceConfig.getStickySessionCookieName();
       }
       setupUrlHashLookup();
+      if (serviceConfig.isHedgingEnabled()) {
+        hedgedRequestExecutor = new HedgedRequestExecutor(getServiceRole(), haProvider, serviceConfig);
+      }
     }
 
     // Suffix the cookie name by the service to make it unique
@@ -97,6 +101,14 @@ public class ConfigurableHADispatch extends ConfigurableDispatch {
     stickySessionCookieName = stickySessionCookieName + '-' + getServiceRole();
   }
 
+  @Override
+  public void destroy() {
+    super.destroy();
+    if (hedgedRequestExecutor != null) {
+      hedgedRequestExecutor.shutdown();
+    }
+  }
+
   private void setupUrlHashLookup() {
     for (String url : haProvider.getURLs(getServiceRole())) {
         String urlHash = hash(url);
@@ -156,7 +168,11 @@ public class ConfigurableHADispatch extends ConfigurableDispatch {
       IOException {
     HttpResponse inboundResponse = null;
     try {
-      inboundResponse = executeOutboundRequest(outboundRequest);
+      if (hedgedRequestExecutor != null && hedgedRequestExecutor.isHedgeable(outboundRequest)) {
+        inboundResponse = hedgedRequestExecutor.execute(outboundRequest, this::executeOutboundRequest);
+      } else {
+        inboundResponse = executeOutboundRequest(outboundRequest);
+      }
       writeOutboundResponse(outboundRequest, inboundRequest, outboundResponse, inboundResponse);
     } catch ( IOException e ) {
       LOG.errorConnectingToServer(outboundRequest.getURI().toString(), e);
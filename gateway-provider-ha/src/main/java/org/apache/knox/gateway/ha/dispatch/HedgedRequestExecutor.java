@@ -0,0 +1,477 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.ha.dispatch;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.util.EntityUtils;
+import org.apache.knox.gateway.audit.api.AuditContext;
+import org.apache.knox.gateway.audit.api.AuditService;
+import org.apache.knox.gateway.audit.api.AuditServiceFactory;
+import org.apache.knox.gateway.ha.dispatch.i18n.HaDispatchMessages;
+import org.apache.knox.gateway.ha.provider.HaProvider;
+import org.apache.knox.gateway.ha.provider.HaServiceConfig;
+import org.apache.knox.gateway.i18n.messages.MessagesFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends a second, hedged request to another backend of a HA service when the first one has not
+ * answered within a high percentile of the recently observed response times. The first response
+ * wins and the other request is aborted.
+ * <p>
+ * The first request is sent on the calling thread. Hedged requests are sent on a bounded pool of
+ * threads, and a request is not hedged when all of them are busy.
+ * <p>
+ * Only requests without side effects or body are hedged, and the number of hedged requests is
+ * capped by a budget expressed as a percentage of the hedgeable requests, so that a service that
+ * is slow as a whole does not get twice the load.
+ */
+public class HedgedRequestExecutor {
+
+  private static final HaDispatchMessages LOG = MessagesFactory.get(HaDispatchMessages.class);
+  private static final AuditService auditService = AuditServiceFactory.getAuditService();
+
+  /* number of recent response times the percentile is computed from */
+  static final int LATENCY_SAMPLES = 1000;
+  /* response times to collect before hedging and between two threshold updates */
+  static final int LATENCY_UPDATE_INTERVAL = 100;
+  /* hedges that can be saved up while the backends are fast */
+  private static final double MAX_BUDGET_TOKENS = 10;
+  /* hedged requests in flight at once */
+  static final int MAX_CONCURRENT_HEDGES = 16;
+
+  private final String serviceRole;
+  private final HaProvider haProvider;
+  private final int percentile;
+  private final long minDelay;
+  private final double tokensPerRequest;
+
+  private final long[] latencies = new long[LATENCY_SAMPLES];
+  private int latencyCount;
+  /* -1 until enough response times have been observed; guarded by latencies */
+  private long threshold = -1;
+  /* guarded by this */
+  private double budgetTokens;
+
+  /* starts the hedges once their delay has passed */
+  private ScheduledThreadPoolExecutor scheduler;
+  /* sends the hedges, rejects them when all threads are busy */
+  private ThreadPoolExecutor hedgeExecutor;
+
+  /**
+   * Sends a request to a backend
+   */
+  @FunctionalInterface
+  public interface RequestExecutor {
+    HttpResponse execute(HttpUriRequest request) throws IOException;
+  }
+
+  public HedgedRequestExecutor(String serviceRole, HaProvider haProvider, HaServiceConfig serviceConfig) {
+    this.serviceRole = serviceRole;
+    this.haProvider = haProvider;
+    this.percentile = Math.max(1, Math.min(100, serviceConfig.getHedgingPercentile()));
+    this.minDelay = Math.max(0, serviceConfig.getHedgingMinDelay());
+    this.tokensPerRequest = Math.max(0, serviceConfig.getHedgingBudget()) / 100d;
+  }
+
+  /**
+   * @return <code>true</code> if the request has no side effects, no body and could be sent to another backend
+   */
+  public boolean isHedgeable(HttpUriRequest request) {
+    if (!(request instanceof HttpRequestBase)) {
+      return false;
+    }
+    switch (request.getMethod().toUpperCase(Locale.ROOT)) {
+      case "GET":
+      case "HEAD":
+      case "OPTIONS":
+        return haProvider.getURLs(serviceRole).size() > 1;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Executes a hedgeable request, sending a second one to another backend if the first one is slow.
+   *
+   * @param request         the request to the current backend
+   * @param requestExecutor sends a request to its backend
+   * @return the first successful response, or the failure of the request to the current backend
+   * @throws IOException if no backend returned a response
+   */
+  public HttpResponse execute(HttpUriRequest request, RequestExecutor requestExecutor) throws IOException {
+    final long delay = getThreshold();
+    if (!addBudget() || delay < 0) {
+      return executeAndRecord(request, requestExecutor);
+    }
+
+    final Exchange exchange = new Exchange(request, requestExecutor, auditService.getContext());
+    try {
+      getScheduler().schedule(exchange::hedge, delay, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      // Shut down
+      return executeAndRecord(request, requestExecutor);
+    }
+
+    final Attempt primary = exchange.primary;
+    boolean called = false;
+    try {
+      primary.call();
+      called = true;
+    } finally {
+      if (!called) {
+        final Attempt hedge = exchange.complete();
+        if (hedge != null) {
+          hedge.abandon();
+        }
+      }
+    }
+    final Attempt hedge = exchange.complete();
+    if (hedge == null) {
+      return primary.getResponse();
+    }
+    try {
+      // The primary request is only abandoned by a successful hedge
+      if (primary.isAbandoned()) {
+        hedge.await();
+        return hedge.response;
+      }
+      if (primary.failure == null) {
+        hedge.abandon();
+        return primary.response;
+      }
+      hedge.await();
+      return hedge.response != null ? hedge.response : primary.getResponse();
+    } catch (InterruptedException e) {
+      hedge.abandon();
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(e.getMessage());
+    }
+  }
+
+  /**
+   * Stops the threads sending the hedged requests.
+   */
+  public synchronized void shutdown() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+      scheduler = null;
+    }
+    if (hedgeExecutor != null) {
+      hedgeExecutor.shutdownNow();
+      hedgeExecutor = null;
+    }
+  }
+
+  /* Package private for unit tests */
+  long getThreshold() {
+    synchronized (latencies) {
+      return threshold;
+    }
+  }
+
+  private HttpResponse executeAndRecord(HttpUriRequest request, RequestExecutor requestExecutor) throws IOException {
+    final long start = System.nanoTime();
+    final HttpResponse response = requestExecutor.execute(request);
+    recordLatency(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    return response;
+  }
+
+  /* Package private for unit tests */
+  void recordLatency(long latency) {
+    synchronized (latencies) {
+      latencies[latencyCount++ % LATENCY_SAMPLES] = latency;
+      if (latencyCount % LATENCY_UPDATE_INTERVAL == 0) {
+        final long[] samples = Arrays.copyOf(latencies, Math.min(latencyCount, LATENCY_SAMPLES));
+        Arrays.sort(samples);
+        final int index = (int) Math.ceil(samples.length * percentile / 100d) - 1;
+        threshold = Math.max(minDelay, samples[Math.max(0, index)]);
+        // Wrap around without losing the position in the ring
+        if (latencyCount >= 2 * LATENCY_SAMPLES) {
+          latencyCount -= LATENCY_SAMPLES;
+        }
+      }
+    }
+  }
+
+  /*
+   * Every hedgeable request adds to the budget, returns whether a hedge could be afforded now
+   */
+  private synchronized boolean addBudget() {
+    budgetTokens = Math.min(MAX_BUDGET_TOKENS, budgetTokens + tokensPerRequest);
+    return budgetTokens >= 1;
+  }
+
+  private synchronized boolean acquireBudget() {
+    if (budgetTokens >= 1) {
+      budgetTokens--;
+      return true;
+    }
+    return false;
+  }
+
+  private synchronized ScheduledThreadPoolExecutor getScheduler() {
+    if (scheduler == null) {
+      // Holds a task per slow request in flight, which is bounded by the request threads
+      scheduler = new ScheduledThreadPoolExecutor(1, new BasicThreadFactory.Builder()
+          .namingPattern("HedgedRequestScheduler-" + serviceRole + "-%d").daemon(true).build());
+    }
+    return scheduler;
+  }
+
+  private synchronized ThreadPoolExecutor getHedgeExecutor() {
+    if (hedgeExecutor == null) {
+      hedgeExecutor = new ThreadPoolExecutor(0, MAX_CONCURRENT_HEDGES, 60L, TimeUnit.SECONDS,
+          new SynchronousQueue<>(), new BasicThreadFactory.Builder()
+          .namingPattern("HedgedRequest-" + serviceRole + "-%d").daemon(true).build(),
+          new ThreadPoolExecutor.AbortPolicy());
+    }
+    return hedgeExecutor;
+  }
+
+  /*
+   * Copies the request onto the base URL of the first other backend of the service, as failing over
+   * to it would: only the part of the URL that follows the base URL of the current backend is kept
+   */
+  private HttpUriRequest createHedgeRequest(HttpUriRequest request) {
+    final String url = request.getURI().toString();
+    final List<String> backends = haProvider.getURLs(serviceRole);
+    String current = null;
+    for (String backend : backends) {
+      final String base = StringUtils.removeEnd(backend, "/");
+      if (isBaseOf(base, url) && (current == null || base.length() > current.length())) {
+        current = base;
+      }
+    }
+    if (current == null) {
+      return null;
+    }
+    for (String backend : backends) {
+      final String base = StringUtils.removeEnd(backend, "/");
+      if (base.equals(current)) {
+        continue;
+      }
+      try {
+        final HttpRequestBase hedge = (HttpRequestBase) ((HttpRequestBase) request).clone();
+        hedge.setURI(new URI(base + url.substring(current.length())));
+        return hedge;
+      } catch (URISyntaxException | CloneNotSupportedException e) {
+        // Try the next backend
+      }
+    }
+    return null;
+  }
+
+  private static boolean isBaseOf(String base, String url) {
+    return !base.isEmpty() && url.startsWith(base)
+        && (url.length() == base.length() || "/?#".indexOf(url.charAt(base.length())) >= 0);
+  }
+
+  private static void release(HttpResponse response) {
+    try {
+      if (response instanceof Closeable) {
+        ((Closeable) response).close();
+      } else {
+        EntityUtils.consume(response.getEntity());
+      }
+    } catch (IOException e) {
+      // The connection is discarded either way
+    }
+  }
+
+  /**
+   * A request and its hedge, which is only started while the request is still in flight.
+   */
+  private final class Exchange {
+    private final RequestExecutor requestExecutor;
+    private final AuditContext auditContext;
+    private final Attempt primary;
+    /* guarded by this */
+    private Attempt hedge;
+    private boolean completed;
+
+    Exchange(HttpUriRequest request, RequestExecutor requestExecutor, AuditContext auditContext) {
+      this.requestExecutor = requestExecutor;
+      this.auditContext = auditContext;
+      this.primary = new Attempt(request, requestExecutor, null, null);
+    }
+
+    /*
+     * Called on the scheduler thread once the delay has passed
+     */
+    synchronized Void hedge() {
+      if (completed) {
+        return null;
+      }
+      final HttpUriRequest request = primary.request;
+      final HttpUriRequest hedgeRequest = createHedgeRequest(request);
+      if (hedgeRequest == null || !acquireBudget()) {
+        return null;
+      }
+      final Attempt attempt = new Attempt(hedgeRequest, requestExecutor, auditContext, primary);
+      try {
+        getHedgeExecutor().submit(attempt);
+      } catch (RejectedExecutionException e) {
+        LOG.hedgingRejected(request.getURI().toString(), MAX_CONCURRENT_HEDGES);
+        return null;
+      }
+      LOG.hedgingRequest(request.getURI().toString(), hedgeRequest.getURI().toString(), getThreshold());
+      hedge = attempt;
+      return null;
+    }
+
+    /*
+     * Called once the primary request returned, after which no hedge is started
+     */
+    synchronized Attempt complete() {
+      completed = true;
+      return hedge;
+    }
+  }
+
+  /**
+   * A request that is either done, and its response may be used, or abandoned, and its response
+   * is released. A successful hedge abandons the primary request it races with.
+   */
+  private final class Attempt implements Callable<Attempt> {
+    private static final int RUNNING = 0;
+    private static final int DONE = 1;
+    private static final int ABANDONED = 2;
+
+    private final HttpUriRequest request;
+    private final RequestExecutor requestExecutor;
+    /* the context to run a hedge in, null for the primary request which runs on the calling thread */
+    private final AuditContext auditContext;
+    /* the primary request of a hedge, null for the primary request */
+    private final Attempt primary;
+    private final AtomicInteger state = new AtomicInteger(RUNNING);
+    private final CountDownLatch done = new CountDownLatch(1);
+    private HttpResponse response;
+    /* an IOException or a RuntimeException */
+    private Exception failure;
+
+    Attempt(HttpUriRequest request, RequestExecutor requestExecutor, AuditContext auditContext, Attempt primary) {
+      this.request = request;
+      this.requestExecutor = requestExecutor;
+      this.auditContext = auditContext;
+      this.primary = primary;
+    }
+
+    @Override
+    public Attempt call() {
+      final long start = System.nanoTime();
+      if (auditContext != null) {
+        auditService.attachContext(auditContext);
+      }
+      try {
+        response = requestExecutor.execute(request);
+      } catch (IOException | RuntimeException e) {
+        failure = e;
+      } finally {
+        if (auditContext != null) {
+          auditService.detachContext();
+        }
+        complete(start);
+      }
+      return this;
+    }
+
+    /*
+     * Runs whatever the request ended with, so that the attempt is never awaited forever
+     */
+    private void complete(long start) {
+      try {
+        if (state.compareAndSet(RUNNING, DONE)) {
+          // Aborted requests say nothing about the response time of their backend
+          if (response != null) {
+            recordLatency(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+          }
+          // The hedge is speculative, so it only wins with a successful response
+          if (primary != null && isSuccessful()) {
+            primary.abort();
+          }
+        } else if (response != null) {
+          release(response);
+        }
+      } finally {
+        done.countDown();
+      }
+    }
+
+    HttpResponse getResponse() throws IOException {
+      if (failure instanceof RuntimeException) {
+        throw (RuntimeException) failure;
+      }
+      if (failure != null) {
+        throw (IOException) failure;
+      }
+      return response;
+    }
+
+    boolean isSuccessful() {
+      return response != null && response.getStatusLine().getStatusCode() < 400;
+    }
+
+    boolean isAbandoned() {
+      return state.get() == ABANDONED;
+    }
+
+    void await() throws InterruptedException {
+      done.await();
+    }
+
+    /*
+     * Aborts the request if it is still in flight
+     */
+    boolean abort() {
+      if (state.compareAndSet(RUNNING, ABANDONED)) {
+        request.abort();
+        return true;
+      }
+      return false;
+    }
+
+    /*
+     * Aborts the request, or releases its response if it has already completed
+     */
+    void abandon() {
+      if (!abort() && response != null) {
+        release(response);
+      }
+    }
+  }
+}
@@ -44,4 +44,10 @@ public interface HaDispatchMessages {
 
   @Message(level = MessageLevel.ERROR, text = "noFallback flag is turned on for sticky session so aborting request without retrying")
   void noFallbackError();
+
+  @Message(level = MessageLevel.DEBUG, text = "No response from {0} after {2} ms, hedging the request to {1}")
+  void hedgingRequest(String uri, String hedgeUri, long delay);
+
+  @Message(level = MessageLevel.DEBUG, text = "Not hedging the request to {0}, {1} hedged requests are already in flight")
+  void hedgingRejected(String uri, int maxHedges);
 }
@@ -57,4 +57,20 @@ public interface HaServiceConfig {
   boolean isNoFallbackEnabled();
 
   void setNoFallbackEnabled(boolean noFallbackEnabled);
+
+  boolean isHedgingEnabled();
+
+  void setHedgingEnabled(boolean hedgingEnabled);
+
+  int getHedgingPercentile();
+
+  void setHedgingPercentile(int hedgingPercentile);
+
+  int getHedgingBudget();
+
+  void setHedgingBudget(int hedgingBudget);
+
+  int getHedgingMinDelay();
+
+  void setHedgingMinDelay(int hedgingMinDelay);
 }
@@ -37,6 +37,14 @@ public class DefaultHaServiceConfig implements HaServiceConfig, HaServiceConfigC
 
   private String stickySessionCookieName = DEFAULT_STICKY_SESSION_COOKIE_NAME;
 
+  private boolean isHedgingEnabled = DEFAULT_HEDGING_ENABLED;
+
+  private int hedgingPercentile = DEFAULT_HEDGING_PERCENTILE;
+
+  private int hedgingBudget = DEFAULT_HEDGING_BUDGET;
+
+  private int hedgingMinDelay = DEFAULT_HEDGING_MIN_DELAY;
+
   private String zookeeperEnsemble;
 
   private String zookeeperNamespace;
@@ -144,4 +152,44 @@ public class DefaultHaServiceConfig implements HaServiceConfig, HaServiceConfigC
   public void setNoFallbackEnabled(boolean noFallbackEnabled) {
     isNoFallbackEnabled = noFallbackEnabled;
   }
+
+  @Override
+  public boolean isHedgingEnabled() {
+    return isHedgingEnabled;
+  }
+
+  @Override
+  public void setHedgingEnabled(boolean hedgingEnabled) {
+    isHedgingEnabled = hedgingEnabled;
+  }
+
+  @Override
+  public int getHedgingPercentile() {
+    return hedgingPercentile;
+  }
+
+  @Override
+  public void setHedgingPercentile(int hedgingPercentile) {
+    this.hedgingPercentile = hedgingPercentile;
+  }
+
+  @Override
+  public int getHedgingBudget() {
+    return hedgingBudget;
+  }
+
+  @Override
+  public void setHedgingBudget(int hedgingBudget) {
+    this.hedgingBudget = hedgingBudget;
+  }
+
+  @Override
+  public int getHedgingMinDelay() {
+    return hedgingMinDelay;
+  }
+
+  @Override
+  public void setHedgingMinDelay(int hedgingMinDelay) {
+    this.hedgingMinDelay = hedgingMinDelay;
+  }
 }
@@ -51,4 +51,12 @@ public interface HaDescriptorConstants {
    String ENABLE_NO_FALLBACK = "noFallback";
 
    String STICKY_SESSION_COOKIE_NAME = "stickySessionCookieName";
+
+   String ENABLE_HEDGING = "enableHedging";
+
+   String HEDGING_PERCENTILE = "hedgingPercentile";
+
+   String HEDGING_BUDGET = "hedgingBudget";
+
+   String HEDGING_MIN_DELAY = "hedgingMinDelay";
 }
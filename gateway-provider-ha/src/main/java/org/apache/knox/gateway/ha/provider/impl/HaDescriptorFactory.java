@@ -40,8 +40,11 @@ public abstract class HaDescriptorFactory implements HaServiceConfigConstants {
       String loadBalancingEnabled = configMap.get(CONFIG_LOAD_BALANCING_ENABLED);
       String stickySessionCookieName = configMap.get(STICKY_SESSION_COOKIE_NAME);
       String noFallbackEnabled = configMap.get(CONFIG_NO_FALLBACK_ENABLED);
-      return createServiceConfig(serviceName, enabledValue, maxFailoverAttempts, failoverSleep,
+      HaServiceConfig serviceConfig = createServiceConfig(serviceName, enabledValue, maxFailoverAttempts, failoverSleep,
           zookeeperEnsemble, zookeeperNamespace, loadBalancingEnabled, stickySessionEnabled, stickySessionCookieName, noFallbackEnabled);
+      configureHedging(serviceConfig, configMap.get(CONFIG_HEDGING_ENABLED), configMap.get(CONFIG_HEDGING_PERCENTILE),
+          configMap.get(CONFIG_HEDGING_BUDGET), configMap.get(CONFIG_HEDGING_MIN_DELAY));
+      return serviceConfig;
    }
 
    public static HaServiceConfig createServiceConfig(String serviceName, String enabledValue,
@@ -92,6 +95,34 @@ public abstract class HaDescriptorFactory implements HaServiceConfigConstants {
       return serviceConfig;
    }
 
+   /**
+    * Applies the hedged request settings to a service config, keeping the defaults for the blank values.
+    */
+   public static void configureHedging(HaServiceConfig serviceConfig, String hedgingEnabledValue,
+                                       String hedgingPercentileValue, String hedgingBudgetValue,
+                                       String hedgingMinDelayValue) {
+      boolean hedgingEnabled = DEFAULT_HEDGING_ENABLED;
+      int hedgingPercentile = DEFAULT_HEDGING_PERCENTILE;
+      int hedgingBudget = DEFAULT_HEDGING_BUDGET;
+      int hedgingMinDelay = DEFAULT_HEDGING_MIN_DELAY;
+      if (hedgingEnabledValue != null && !hedgingEnabledValue.trim().isEmpty()) {
+         hedgingEnabled = Boolean.parseBoolean(hedgingEnabledValue);
+      }
+      if (hedgingPercentileValue != null && !hedgingPercentileValue.trim().isEmpty()) {
+         hedgingPercentile = Integer.parseInt(hedgingPercentileValue);
+      }
+      if (hedgingBudgetValue != null && !hedgingBudgetValue.trim().isEmpty()) {
+         hedgingBudget = Integer.parseInt(hedgingBudgetValue);
+      }
+      if (hedgingMinDelayValue != null && !hedgingMinDelayValue.trim().isEmpty()) {
+         hedgingMinDelay = Integer.parseInt(hedgingMinDelayValue);
+      }
+      serviceConfig.setHedgingEnabled(hedgingEnabled);
+      serviceConfig.setHedgingPercentile(hedgingPercentile);
+      serviceConfig.setHedgingBudget(hedgingBudget);
+      serviceConfig.setHedgingMinDelay(hedgingMinDelay);
+   }
+
    private static Map<String, String> parseHaConfiguration(String configuration) {
       Map<String, String> parameters = new HashMap<>();
       if (configuration != null) {
@@ -66,6 +66,10 @@ public class HaDescriptorManager implements HaDescriptorConstants {
                if (config.getStickySessionCookieName() != null) {
                  serviceElement.setAttribute(STICKY_SESSION_COOKIE_NAME, config.getStickySessionCookieName());
                }
+               serviceElement.setAttribute(ENABLE_HEDGING, Boolean.toString(config.isHedgingEnabled()));
+               serviceElement.setAttribute(HEDGING_PERCENTILE, Integer.toString(config.getHedgingPercentile()));
+               serviceElement.setAttribute(HEDGING_BUDGET, Integer.toString(config.getHedgingBudget()));
+               serviceElement.setAttribute(HEDGING_MIN_DELAY, Integer.toString(config.getHedgingMinDelay()));
                root.appendChild(serviceElement);
             }
          }
@@ -96,6 +100,11 @@ public class HaDescriptorManager implements HaDescriptorConstants {
                      element.getAttribute(ENABLE_STICKY_SESSIONS),
                      element.getAttribute(STICKY_SESSION_COOKIE_NAME),
                      element.getAttribute(ENABLE_NO_FALLBACK));
+               HaDescriptorFactory.configureHedging(config,
+                     element.getAttribute(ENABLE_HEDGING),
+                     element.getAttribute(HEDGING_PERCENTILE),
+                     element.getAttribute(HEDGING_BUDGET),
+                     element.getAttribute(HEDGING_MIN_DELAY));
                descriptor.addServiceConfig(config);
             }
          }
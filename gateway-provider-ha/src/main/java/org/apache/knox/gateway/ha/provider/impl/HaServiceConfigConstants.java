@@ -40,6 +40,14 @@ public interface HaServiceConfigConstants {
 
    String STICKY_SESSION_COOKIE_NAME = "stickySessionCookieName";
 
+   String CONFIG_HEDGING_ENABLED = "enableHedging";
+
+   String CONFIG_HEDGING_PERCENTILE = "hedgingPercentile";
+
+   String CONFIG_HEDGING_BUDGET = "hedgingBudget";
+
+   String CONFIG_HEDGING_MIN_DELAY = "hedgingMinDelay";
+
    int DEFAULT_MAX_FAILOVER_ATTEMPTS = 3;
 
    int DEFAULT_FAILOVER_SLEEP = 1000;
@@ -53,4 +61,14 @@ public interface HaServiceConfigConstants {
    boolean DEFAULT_NO_FALLBACK_ENABLED = false;
 
    String DEFAULT_STICKY_SESSION_COOKIE_NAME = "KNOX_BACKEND";
+
+   boolean DEFAULT_HEDGING_ENABLED = false;
+
+   /* hedge requests slower than this percentile of the recent response times */
+   int DEFAULT_HEDGING_PERCENTILE = 95;
+
+   /* hedged requests as a percentage of the hedgeable requests */
+   int DEFAULT_HEDGING_BUDGET = 5;
+
+   int DEFAULT_HEDGING_MIN_DELAY = 50;
 }
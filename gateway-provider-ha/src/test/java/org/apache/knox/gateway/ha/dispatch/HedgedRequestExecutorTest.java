@@ -0,0 +1,243 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.ha.dispatch;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.apache.knox.gateway.ha.provider.HaProvider;
+import org.apache.knox.gateway.ha.provider.impl.DefaultHaServiceConfig;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class HedgedRequestExecutorTest {
+  private static final String SERVICE = "WEBHDFS";
+  private static final String SLOW = "http://slow:50070";
+  private static final String FAST = "http://fast:50070";
+
+  private final List<HttpUriRequest> sent = new CopyOnWriteArrayList<>();
+  private final CountDownLatch slowBackend = new CountDownLatch(1);
+  private HedgedRequestExecutor executor;
+
+  @After
+  public void tearDown() {
+    slowBackend.countDown();
+    if (executor != null) {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testOnlyIdempotentRequestsAreHedgeable() {
+    executor = createExecutor(Arrays.asList(SLOW, FAST), 5);
+    assertTrue(executor.isHedgeable(new HttpGet(SLOW + "/webhdfs/v1/tmp?op=GETFILESTATUS")));
+    assertFalse(executor.isHedgeable(new HttpPost(SLOW + "/webhdfs/v1/tmp?op=CREATE")));
+
+    executor = createExecutor(Collections.singletonList(SLOW), 5);
+    assertFalse(executor.isHedgeable(new HttpGet(SLOW + "/webhdfs/v1/tmp?op=GETFILESTATUS")));
+  }
+
+  @Test
+  public void testNoHedgingUntilResponseTimesAreKnown() throws Exception {
+    executor = createExecutor(Arrays.asList(SLOW, FAST), 100);
+    for (int i = 1; i < HedgedRequestExecutor.LATENCY_UPDATE_INTERVAL; i++) {
+      executor.execute(new HttpGet(FAST + "/webhdfs/v1/tmp"), this::respond);
+    }
+    assertEquals(-1, executor.getThreshold());
+    executor.execute(new HttpGet(FAST + "/webhdfs/v1/tmp"), this::respond);
+    assertEquals(10, executor.getThreshold());
+    assertEquals(HedgedRequestExecutor.LATENCY_UPDATE_INTERVAL, sent.size());
+  }
+
+  @Test
+  public void testSlowRequestIsHedged() throws Exception {
+    executor = createExecutor(Arrays.asList(SLOW, FAST), 100);
+    recordLatencies(10);
+
+    HttpGet request = new HttpGet(SLOW + "/webhdfs/v1/tmp?op=GETFILESTATUS");
+    HttpResponse response = executor.execute(request, this::respond);
+
+    assertEquals("fast", EntityUtils.toString(response.getEntity()));
+    assertEquals(2, sent.size());
+    assertEquals(FAST + "/webhdfs/v1/tmp?op=GETFILESTATUS", sent.get(1).getURI().toString());
+    assertTrue(request.isAborted());
+  }
+
+  @Test
+  @SuppressWarnings("PMD.DoNotUseThreads")
+  public void testPrimaryRequestIsSentOnCallingThread() throws Exception {
+    executor = createExecutor(Arrays.asList(SLOW, FAST), 100);
+    recordLatencies(10);
+    List<Thread> threads = new CopyOnWriteArrayList<>();
+
+    executor.execute(new HttpGet(SLOW + "/webhdfs/v1/tmp"), request -> {
+      threads.add(Thread.currentThread());
+      return respond(request);
+    });
+
+    assertEquals(2, threads.size());
+    assertEquals(Thread.currentThread(), threads.get(0));
+    assertNotEquals(Thread.currentThread(), threads.get(1));
+  }
+
+  @Test
+  public void testUnsuccessfulHedgeDoesNotWin() throws Exception {
+    executor = createExecutor(Arrays.asList(SLOW, FAST), 100);
+    recordLatencies(10);
+
+    HttpResponse response = executor.execute(new HttpGet(SLOW + "/webhdfs/v1/tmp"), request -> {
+      if ("fast".equals(request.getURI().getHost())) {
+        sent.add(request);
+        slowBackend.countDown();
+        return createResponse(503, "standby");
+      }
+      return respond(request);
+    });
+
+    assertEquals("slow", EntityUtils.toString(response.getEntity()));
+    assertEquals(2, sent.size());
+  }
+
+  @Test(timeout = 10000)
+  public void testFailingHedgeDoesNotBlockTheRequest() throws Exception {
+    executor = createExecutor(Arrays.asList(SLOW, FAST), 100);
+    recordLatencies(10);
+    CountDownLatch hedgeFailed = new CountDownLatch(1);
+
+    IOException failure = assertThrows(IOException.class, () -> executor.execute(new HttpGet(SLOW + "/webhdfs/v1/tmp"), request -> {
+      sent.add(request);
+      if ("fast".equals(request.getURI().getHost())) {
+        hedgeFailed.countDown();
+        throw new IllegalStateException("hedge failed");
+      }
+      try {
+        hedgeFailed.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      throw new IOException("primary failed");
+    }));
+
+    assertEquals("primary failed", failure.getMessage());
+    assertEquals(2, sent.size());
+  }
+
+  @Test
+  public void testUncheckedPrimaryFailureIsRethrown() throws Exception {
+    executor = createExecutor(Arrays.asList(SLOW, FAST), 100);
+    recordLatencies(10);
+
+    IllegalStateException failure = assertThrows(IllegalStateException.class,
+        () -> executor.execute(new HttpGet(SLOW + "/webhdfs/v1/tmp"), request -> {
+          if ("slow".equals(request.getURI().getHost())) {
+            throw new IllegalStateException("primary failed");
+          }
+          return respond(request);
+        }));
+
+    assertEquals("primary failed", failure.getMessage());
+  }
+
+  @Test
+  public void testHedgeIsSentToTheBaseUrlOfTheOtherBackend() throws Exception {
+    executor = createExecutor(Arrays.asList("http://slow:8088/cluster1/gateway", "http://fast:8088/cluster2/gateway/"), 100);
+    recordLatencies(10);
+
+    HttpResponse response = executor.execute(new HttpGet("http://slow:8088/cluster1/gateway/ws/v1/apps?user=guest"), this::respond);
+
+    assertEquals("fast", EntityUtils.toString(response.getEntity()));
+    assertEquals("http://fast:8088/cluster2/gateway/ws/v1/apps?user=guest", sent.get(1).getURI().toString());
+  }
+
+  @Test
+  public void testHedgesAreCappedByBudget() throws Exception {
+    executor = createExecutor(Arrays.asList(SLOW, FAST), 0);
+    recordLatencies(10);
+    slowBackend.countDown();
+
+    HttpResponse response = executor.execute(new HttpGet(SLOW + "/webhdfs/v1/tmp"), this::respond);
+
+    assertEquals("slow", EntityUtils.toString(response.getEntity()));
+    assertEquals(1, sent.size());
+  }
+
+  private HedgedRequestExecutor createExecutor(List<String> urls, int budget) {
+    HaProvider haProvider = EasyMock.createNiceMock(HaProvider.class);
+    EasyMock.expect(haProvider.getURLs(SERVICE)).andReturn(urls).anyTimes();
+    EasyMock.replay(haProvider);
+    DefaultHaServiceConfig serviceConfig = new DefaultHaServiceConfig(SERVICE);
+    serviceConfig.setHedgingEnabled(true);
+    serviceConfig.setHedgingBudget(budget);
+    serviceConfig.setHedgingMinDelay(10);
+    return new HedgedRequestExecutor(SERVICE, haProvider, serviceConfig);
+  }
+
+  private void recordLatencies(long latency) {
+    for (int i = 0; i < HedgedRequestExecutor.LATENCY_UPDATE_INTERVAL; i++) {
+      executor.recordLatency(latency);
+    }
+  }
+
+  /*
+   * The slow backend only answers once released or aborted
+   */
+  private HttpResponse respond(HttpUriRequest request) throws IOException {
+    sent.add(request);
+    String host = request.getURI().getHost();
+    if ("slow".equals(host)) {
+      try {
+        while (!slowBackend.await(10, TimeUnit.MILLISECONDS)) {
+          if (((HttpRequestBase) request).isAborted()) {
+            throw new IOException("aborted");
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException(e);
+      }
+    }
+    return createResponse(200, host);
+  }
+
+  private static HttpResponse createResponse(int status, String body) {
+    BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, status, null);
+    response.setEntity(new StringEntity(body, "UTF-8"));
+    return response;
+  }
+}
@@ -49,6 +49,22 @@ public class HaDescriptorFactoryTest {
       assertEquals(1000, serviceConfig.getFailoverSleep());
    }
 
+  @Test
+  public void testCreateServiceConfigHedging() {
+    HaServiceConfig serviceConfig = HaDescriptorFactory.createServiceConfig("foo", "enabled=true");
+    assertFalse(serviceConfig.isHedgingEnabled());
+    assertEquals(HaServiceConfigConstants.DEFAULT_HEDGING_PERCENTILE, serviceConfig.getHedgingPercentile());
+    assertEquals(HaServiceConfigConstants.DEFAULT_HEDGING_BUDGET, serviceConfig.getHedgingBudget());
+    assertEquals(HaServiceConfigConstants.DEFAULT_HEDGING_MIN_DELAY, serviceConfig.getHedgingMinDelay());
+
+    serviceConfig = HaDescriptorFactory.createServiceConfig("foo",
+        "enabled=true;enableHedging=true;hedgingPercentile=99;hedgingBudget=2;hedgingMinDelay=20");
+    assertTrue(serviceConfig.isHedgingEnabled());
+    assertEquals(99, serviceConfig.getHedgingPercentile());
+    assertEquals(2, serviceConfig.getHedgingBudget());
+    assertEquals(20, serviceConfig.getHedgingMinDelay());
+  }
+
   @Test
   public void testCreateServiceConfigActive() {
     HaServiceConfig serviceConfig = HaDescriptorFactory.createServiceConfig("foo", "enableStickySession=true;enabled=true;maxFailoverAttempts=42;failoverSleep=50;maxRetryAttempts=1;retrySleep=1000");
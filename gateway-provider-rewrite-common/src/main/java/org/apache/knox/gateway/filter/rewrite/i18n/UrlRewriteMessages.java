@@ -87,4 +87,10 @@ public interface UrlRewriteMessages {
 
   @Message( level = MessageLevel.DEBUG, text = "No rewrite rule was found, skipping rewriting JSON request body" )
   void skippingRewritingJsonRequestBody();
+
+  @Message( level = MessageLevel.INFO, text = "Caching up to {0} rewritten response bodies, {1} bytes in total" )
+  void creatingResponseCache( int maxEntries, long maxSize );
+
+  @Message( level = MessageLevel.DEBUG, text = "Serving the cached rewritten response body of {0}" )
+  void servingCachedResponse( String url );
 }
@@ -56,6 +56,8 @@ public class UrlRewriteProcessor implements UrlRewriter {
     this.descriptor = descriptor;
     initializeFunctions( descriptor );
     initializeRules( descriptor );
+    inbound.compile();
+    outbound.compile();
   }
 
   @Override
@@ -17,6 +17,12 @@
  */
 package org.apache.knox.gateway.filter.rewrite.api;
 
+import org.apache.knox.gateway.config.GatewayConfig;
+import org.apache.knox.gateway.filter.rewrite.i18n.UrlRewriteMessages;
+import org.apache.knox.gateway.filter.rewrite.impl.UrlRewriteCompression;
+import org.apache.knox.gateway.filter.rewrite.impl.UrlRewriteResponseCache;
+import org.apache.knox.gateway.i18n.messages.MessagesFactory;
+
 import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
@@ -36,6 +42,8 @@ public class UrlRewriteServletContextListener implements ServletContextListener
   public static final String DESCRIPTOR_DEFAULT_FILE_NAME = "rewrite.xml";
   public static final String DESCRIPTOR_DEFAULT_LOCATION = "/WEB-INF/" + DESCRIPTOR_DEFAULT_FILE_NAME;
 
+  private static final UrlRewriteMessages LOG = MessagesFactory.get( UrlRewriteMessages.class );
+
   @Override
   public void contextInitialized( ServletContextEvent event ) {
     UrlRewriteRulesDescriptor descriptor;
@@ -50,6 +58,18 @@ public class UrlRewriteServletContextListener implements ServletContextListener
     UrlRewriteProcessor processor = new UrlRewriteProcessor();
     processor.initialize( environment, descriptor );
     event.getServletContext().setAttribute( PROCESSOR_ATTRIBUTE_NAME, processor );
+
+    GatewayConfig gatewayConfig = (GatewayConfig)context.getAttribute( GatewayConfig.GATEWAY_CONFIG_ATTRIBUTE );
+    if( gatewayConfig != null ) {
+      context.setAttribute( UrlRewriteCompression.ATTRIBUTE_NAME, UrlRewriteCompression.create( gatewayConfig ) );
+    }
+    if( gatewayConfig != null && gatewayConfig.isRewriteResponseCacheEnabled() ) {
+      LOG.creatingResponseCache( gatewayConfig.getRewriteResponseCacheMaxEntries(), gatewayConfig.getRewriteResponseCacheMaxSize() );
+      context.setAttribute( UrlRewriteResponseCache.ATTRIBUTE_NAME, new UrlRewriteResponseCache(
+          gatewayConfig.getRewriteResponseCacheMaxSize(),
+          gatewayConfig.getRewriteResponseCacheMaxEntries(),
+          gatewayConfig.getRewriteResponseCacheMaxEntrySize() ) );
+    }
   }
 
   @Override
@@ -57,6 +77,8 @@ public class UrlRewriteServletContextListener implements ServletContextListener
     UrlRewriteProcessor processor =
         (UrlRewriteProcessor)event.getServletContext().getAttribute( PROCESSOR_ATTRIBUTE_NAME );
     event.getServletContext().removeAttribute( PROCESSOR_ATTRIBUTE_NAME );
+    event.getServletContext().removeAttribute( UrlRewriteResponseCache.ATTRIBUTE_NAME );
+    event.getServletContext().removeAttribute( UrlRewriteCompression.ATTRIBUTE_NAME );
     if( processor != null ) {
       processor.destroy();
     }
@@ -66,6 +88,21 @@ public class UrlRewriteServletContextListener implements ServletContextListener
     return ((UrlRewriteProcessor)context.getAttribute( PROCESSOR_ATTRIBUTE_NAME ));
   }
 
+  /**
+   * @return the cache of the rewritten response bodies of the topology, or <code>null</code> if disabled
+   */
+  public static UrlRewriteResponseCache getResponseCache( ServletContext context ) {
+    return (UrlRewriteResponseCache)context.getAttribute( UrlRewriteResponseCache.ATTRIBUTE_NAME );
+  }
+
+  /**
+   * @return the compression of the rewritten bodies of the topology
+   */
+  public static UrlRewriteCompression getCompression( ServletContext context ) {
+    UrlRewriteCompression compression = (UrlRewriteCompression)context.getAttribute( UrlRewriteCompression.ATTRIBUTE_NAME );
+    return compression == null ? UrlRewriteCompression.DEFAULT : compression;
+  }
+
   private static URL locateDescriptor( ServletContext context ) throws IOException {
     String param = context.getInitParameter( DESCRIPTOR_LOCATION_INIT_PARAM_NAME );
     if( param == null ) {
@@ -54,7 +54,14 @@ public class UrlRewriteServletFilter extends AbstractGatewayFilter {
     FilterConfig config = getConfig();
     UrlRewriteRequest rewriteRequest = new UrlRewriteRequest( config, request );
     UrlRewriteResponse rewriteResponse = new UrlRewriteResponse( config, rewriteRequest, response );
-    chain.doFilter( rewriteRequest, rewriteResponse );
+    HttpServletRequest chainRequest = rewriteResponse.useResponseCache(
+        UrlRewriteServletContextListener.getResponseCache( config.getServletContext() ), rewriteRequest );
+    if( rewriteResponse.hasCachedResponse() ) {
+      // The cached body is written once the dispatch returns
+      request.setAttribute( BLOCKING_DISPATCH_ATTRIBUTE_NAME, Boolean.TRUE );
+    }
+    chain.doFilter( chainRequest, rewriteResponse );
+    rewriteResponse.writeCachedResponse();
   }
 
 }
@@ -21,15 +21,13 @@ import org.apache.knox.gateway.filter.rewrite.impl.UrlRewriteRuleProcessorHolder
 import org.apache.knox.gateway.util.urltemplate.Matcher;
 import org.apache.knox.gateway.util.urltemplate.Template;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
  * A simple extension to the matcher that takes into account scopes for rules along with the templates themselves.
- * This matcher maintains a list of matchers and delegates to an appropriate matcher based on scope information for the
- * associated rules.
+ * This matcher maintains a matcher per scope and delegates to the matchers of the requested scope, the global scope
+ * and rules without a scope, in that order, so the cost of a match does not depend on the number of scopes.
  */
 public class ScopedMatcher extends Matcher<UrlRewriteRuleProcessorHolder> {
 
@@ -39,7 +37,7 @@ public class ScopedMatcher extends Matcher<UrlRewriteRuleProcessorHolder> {
 
   public ScopedMatcher() {
     super();
-    matchers = new HashMap<>();
+    matchers = new LinkedHashMap<>();
   }
 
   @Override
@@ -53,56 +51,53 @@ public class ScopedMatcher extends Matcher<UrlRewriteRuleProcessorHolder> {
     matcher.add( template, value );
   }
 
+  @Override
+  public void compile() {
+    for (Matcher<UrlRewriteRuleProcessorHolder> matcher : matchers.values()) {
+      matcher.compile();
+    }
+  }
+
   @Override
   public Match match(Template input) {
     return match(input, null);
   }
 
   public Match match(Template input, String scope) {
-    List<Match> matches = new ArrayList<>();
-    for (Matcher<UrlRewriteRuleProcessorHolder> matcher : matchers.values()) {
-      Match match = matcher.match(input);
+    if (scope != null && !GLOBAL_SCOPE.equals(scope)) {
+      Match match = matchScope(input, matchers.get(scope));
       if (match != null) {
-        matches.add(match);
+        return match;
       }
     }
-    if (matches.isEmpty()) {
-      return null;
-    }
-    if (matches.size() == 1) {
-      return getMatch(matches, scope);
+    Match match = matchScope(input, matchers.get(GLOBAL_SCOPE));
+    if (match == null) {
+      match = matchScope(input, matchers.get(null));
     }
-    return findBestMatch(matches, scope);
-  }
-
-  private Match findBestMatch(List<Match> matches, String scope) {
-    if (scope != null) {
-      //when multiple matches are found, find the first one that matches in scope
-      for ( Match match : matches ) {
-        String matchedScope = match.getValue().getScope();
-        if ( matchedScope != null && matchedScope.equals(scope) ) {
-          return match;
+    if (match == null && scope == null) {
+      //without scope information rules of any scope may match, return the first one
+      for (Map.Entry<String, Matcher<UrlRewriteRuleProcessorHolder>> entry : matchers.entrySet()) {
+        if (entry.getKey() != null && !GLOBAL_SCOPE.equals(entry.getKey())) {
+          match = entry.getValue().match(input);
+          if (match != null) {
+            break;
+          }
         }
       }
     }
-    //since no scope match was found return the first global scopeed match
-    for ( Match match : matches ) {
-      String matchedScope = match.getValue().getScope();
-      if ( matchedScope != null && matchedScope.equals(GLOBAL_SCOPE) ) {
-        return match;
-      }
-    }
-    //return the first match from the list
-    return getMatch(matches, scope);
+    return match;
   }
 
-  private Match getMatch(List<Match> matches, String scope) {
-    Match match = matches.get(0);
-    String matchedScope = match.getValue().getScope();
-    if (matchedScope != null && scope != null && !matchedScope.equals(scope) && !matchedScope.equals(GLOBAL_SCOPE)) {
-      return null;
-    }
-    return match;
+  private Match matchScope(Template input, Matcher<UrlRewriteRuleProcessorHolder> matcher) {
+    return matcher == null ? null : matcher.match(input);
+  }
+
+  /**
+   * Creates the matcher holding the rules of a scope.
+   * @return a new matcher
+   */
+  protected Matcher<UrlRewriteRuleProcessorHolder> createMatcher() {
+    return new Matcher<>();
   }
 
   /**
@@ -114,10 +109,6 @@ public class ScopedMatcher extends Matcher<UrlRewriteRuleProcessorHolder> {
    */
   private Matcher<UrlRewriteRuleProcessorHolder> getMatcher(UrlRewriteRuleProcessorHolder holder) {
     String scope = holder.getScope();
-    if (!matchers.containsKey(scope)) {
-      matchers.put(scope, new Matcher<>());
-    }
-
-    return matchers.get(scope);
+    return matchers.computeIfAbsent(scope, key -> createMatcher());
   }
 }
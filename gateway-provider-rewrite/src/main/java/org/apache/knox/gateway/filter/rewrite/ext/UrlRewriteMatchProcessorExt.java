@@ -42,6 +42,7 @@ public class UrlRewriteMatchProcessorExt implements
       this.matcher = null;
     } else {
       this.matcher = new Matcher<>( descriptor.template(), null );
+      this.matcher.compile();
     }
   }
 
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.filter.rewrite.impl;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.knox.gateway.config.GatewayConfig;
+import org.apache.knox.gateway.util.ParallelGzipOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses the rewritten bodies of the responses the backend compressed.
+ * <p>
+ * gzip bodies are compressed in parallel blocks when threads are configured, by a pool shared
+ * by all the topologies since the setting is gateway wide. A stream only has up to one block
+ * more than the number of threads being compressed at once.
+ */
+public class UrlRewriteCompression {
+
+  public static final String ATTRIBUTE_NAME = UrlRewriteCompression.class.getName();
+
+  // An 8K buffer better matches the underlying buffer sizes.
+  private static final int STREAM_BUFFER_SIZE = 8 * 1024;
+
+  public static final UrlRewriteCompression DEFAULT = new UrlRewriteCompression( Deflater.DEFAULT_COMPRESSION, 128 * 1024, 0 );
+
+  private static final Pattern ZERO_QUALITY = Pattern.compile( "0(\\.0*)?" );
+
+  private static ExecutorService executor;
+
+  private final int level;
+  private final int blockSize;
+  private final int threads;
+
+  public UrlRewriteCompression( int level, int blockSize, int threads ) {
+    this.level = level;
+    this.blockSize = blockSize;
+    this.threads = threads;
+  }
+
+  public static UrlRewriteCompression create( GatewayConfig config ) {
+    return new UrlRewriteCompression( config.getRewriteCompressionLevel(),
+        config.getRewriteCompressionBlockSize(), config.getRewriteCompressionThreads() );
+  }
+
+  public OutputStream gzip( OutputStream output ) throws IOException {
+    if( threads > 0 ) {
+      return new ParallelGzipOutputStream( output, level, blockSize, getExecutor( threads ), threads + 1 );
+    }
+    return new LevelGZIPOutputStream( output, level );
+  }
+
+  public OutputStream deflate( OutputStream output ) {
+    return new LevelDeflaterOutputStream( output, level );
+  }
+
+  /**
+   * @param acceptEncoding the Accept-Encoding header of the client, may be <code>null</code>
+   * @param encoding the content coding to check
+   * @return true if the client accepts the content coding, which any coding is without the header
+   */
+  public static boolean accepts( String acceptEncoding, String encoding ) {
+    if( acceptEncoding == null ) {
+      return true;
+    }
+    boolean accepted = false;
+    for( String coding : acceptEncoding.split( "," ) ) {
+      String[] parameters = coding.split( ";" );
+      String name = parameters[ 0 ].trim().toLowerCase( Locale.ROOT );
+      boolean refused = false;
+      for( int i = 1; i < parameters.length; i++ ) {
+        String parameter = parameters[ i ].trim().toLowerCase( Locale.ROOT );
+        if( parameter.startsWith( "q=" ) ) {
+          refused = ZERO_QUALITY.matcher( parameter.substring( 2 ).trim() ).matches();
+        }
+      }
+      if( name.equals( encoding ) || ( "x-" + encoding ).equals( name ) ) {
+        return !refused;
+      } else if( "*".equals( name ) ) {
+        accepted = !refused;
+      }
+    }
+    return accepted;
+  }
+
+  private static synchronized ExecutorService getExecutor( int threads ) {
+    if( executor == null ) {
+      ThreadPoolExecutor pool = new ThreadPoolExecutor( threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+          new BasicThreadFactory.Builder().namingPattern( "rewrite-compression-%d" ).daemon( true ).build() );
+      pool.allowCoreThreadTimeOut( true );
+      executor = pool;
+    }
+    return executor;
+  }
+
+  private static class LevelGZIPOutputStream extends GZIPOutputStream {
+    LevelGZIPOutputStream( OutputStream output, int level ) throws IOException {
+      super( output, STREAM_BUFFER_SIZE );
+      def.setLevel( level );
+    }
+  }
+
+  private static class LevelDeflaterOutputStream extends DeflaterOutputStream {
+    LevelDeflaterOutputStream( OutputStream output, int level ) {
+      super( output, new Deflater( level ) );
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        super.close();
+      } finally {
+        def.end();
+      }
+    }
+  }
+}
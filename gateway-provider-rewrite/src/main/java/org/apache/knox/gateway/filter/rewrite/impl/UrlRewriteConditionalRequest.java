@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.filter.rewrite.impl;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Adds the validators of a cached response to a request, so the backend answers with a
+ * 304 Not Modified response when the cached body is still current.
+ * <p>
+ * These requests are not dispatched asynchronously, so the cached body can be written once the
+ * filter chain returns.
+ */
+class UrlRewriteConditionalRequest extends HttpServletRequestWrapper {
+
+  private final Map<String, String> conditions = new LinkedHashMap<>();
+
+  UrlRewriteConditionalRequest( HttpServletRequest request, UrlRewriteResponseCache.Entry entry ) {
+    super( request );
+    if( entry.getETag() != null ) {
+      conditions.put( "If-None-Match", entry.getETag() );
+    }
+    if( entry.getLastModified() != null ) {
+      conditions.put( "If-Modified-Since", entry.getLastModified() );
+    }
+  }
+
+  @Override
+  public String getHeader( String name ) {
+    String condition = getCondition( name );
+    return condition == null ? super.getHeader( name ) : condition;
+  }
+
+  @Override
+  public Enumeration<String> getHeaders( String name ) {
+    String condition = getCondition( name );
+    return condition == null ? super.getHeaders( name ) : Collections.enumeration( Collections.singleton( condition ) );
+  }
+
+  @Override
+  public Enumeration<String> getHeaderNames() {
+    Set<String> names = new LinkedHashSet<>();
+    Enumeration<String> headerNames = super.getHeaderNames();
+    while( headerNames != null && headerNames.hasMoreElements() ) {
+      names.add( headerNames.nextElement() );
+    }
+    names.addAll( conditions.keySet() );
+    return Collections.enumeration( names );
+  }
+
+  @Override
+  public boolean isAsyncSupported() {
+    return false;
+  }
+
+  private String getCondition( String name ) {
+    for( Map.Entry<String, String> condition : conditions.entrySet() ) {
+      if( condition.getKey().equalsIgnoreCase( name ) ) {
+        return condition.getValue();
+      }
+    }
+    return null;
+  }
+}
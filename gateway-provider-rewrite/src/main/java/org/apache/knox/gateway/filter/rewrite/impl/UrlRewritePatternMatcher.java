@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.filter.rewrite.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.knox.gateway.filter.rewrite.api.UrlRewriteFilterApplyDescriptor;
+import org.apache.knox.gateway.filter.rewrite.api.UrlRewriteFilterContentDescriptor;
+import org.apache.knox.gateway.filter.rewrite.api.UrlRewriteFilterPathDescriptor;
+
+/**
+ * Rewrites the matches of the regular expressions of the apply selectors of a content descriptor
+ * in a single pass over the input.
+ * <p>
+ * The matches are found as with an alternation of the expressions: the leftmost match wins,
+ * the first selector in configuration order on ties, and the search goes on after it. Each
+ * expression keeps searching forward from its own last match, so every expression scans the
+ * input once and the text produced by a rule is never matched again.
+ * <p>
+ * An input still being read may also be filtered as it grows: the matches starting in its last
+ * {@link #MAX_PENDING_MATCH_LENGTH} characters are then left for a later call, so only matches
+ * longer than that could be cut short.
+ * Instances are not thread safe.
+ */
+public class UrlRewritePatternMatcher {
+
+  /**
+   * The maximum length of the matches spanning two chunks of an input filtered in chunks.
+   */
+  public static final int MAX_PENDING_MATCH_LENGTH = 4096;
+
+  private final UrlRewriteFilterApplyDescriptor[] applies;
+  private final Pattern[] patterns;
+  private final Matcher[] matchers;
+  private final int[] starts;
+
+  public UrlRewritePatternMatcher( UrlRewriteFilterContentDescriptor config,
+                                   UrlRewriteFilterPathDescriptor.Compiler<Pattern> regexCompiler ) {
+    List<UrlRewriteFilterApplyDescriptor> list = new ArrayList<>();
+    if( config != null ) {
+      for( UrlRewriteFilterPathDescriptor selector : config.getSelectors() ) {
+        if( selector instanceof UrlRewriteFilterApplyDescriptor ) {
+          list.add( (UrlRewriteFilterApplyDescriptor)selector );
+        }
+      }
+    }
+    applies = list.toArray( new UrlRewriteFilterApplyDescriptor[ 0 ] );
+    patterns = new Pattern[ applies.length ];
+    for( int i = 0; i < applies.length; i++ ) {
+      patterns[ i ] = applies[ i ].compiledPath( regexCompiler );
+    }
+    matchers = new Matcher[ applies.length ];
+    starts = new int[ applies.length ];
+  }
+
+  public boolean isEmpty() {
+    return applies.length == 0;
+  }
+
+  /**
+   * Appends the characters of the input between the two indexes to the output, with the matches
+   * rewritten by the reader.
+   *
+   * @param complete whether the input ends at the end index, otherwise the matches starting
+   * in the last {@link #MAX_PENDING_MATCH_LENGTH} characters are not rewritten yet
+   * @return the index up to which the input was filtered, the end index when complete
+   */
+  public int filter( CharSequence input, int from, int to, boolean complete,
+                     StringBuilder output, UrlRewriteFilterReader filterReader ) {
+    int limit = complete ? to : to - MAX_PENDING_MATCH_LENGTH;
+    int index = from;
+    for( int i = 0; i < matchers.length; i++ ) {
+      if( matchers[ i ] == null ) {
+        matchers[ i ] = patterns[ i ].matcher( input );
+      } else {
+        matchers[ i ].reset( input );
+      }
+      // The indexes are positions in the whole input, not its start and end.
+      matchers[ i ].useAnchoringBounds( false ).useTransparentBounds( true );
+      find( i, index, to );
+    }
+    while( true ) {
+      int next = -1;
+      for( int i = 0; i < matchers.length; i++ ) {
+        if( starts[ i ] >= 0 && ( next < 0 || starts[ i ] < starts[ next ] ) ) {
+          next = i;
+        }
+      }
+      if( next < 0 || starts[ next ] >= limit ) {
+        break;
+      }
+      Matcher matcher = matchers[ next ];
+      int start = matcher.start();
+      int end = matcher.end();
+      output.append( input, index, start );
+      output.append( filterReader.filterValueString( null, matcher.group(), applies[ next ].rule() ) );
+      index = end;
+      if( start == end && end < to ) {
+        // Move on after an empty match.
+        output.append( input.charAt( end ) );
+        index++;
+      }
+      for( int i = 0; i < matchers.length; i++ ) {
+        if( starts[ i ] >= 0 && starts[ i ] < index ) {
+          find( i, index, to );
+        }
+      }
+    }
+    int filtered = Math.max( index, limit );
+    output.append( input, index, filtered );
+    return filtered;
+  }
+
+  private void find( int i, int from, int to ) {
+    Matcher matcher = matchers[ i ];
+    matcher.region( from, to );
+    starts[ i ] = matcher.find() ? matcher.start() : -1;
+  }
+}
@@ -31,7 +31,7 @@ import org.apache.knox.gateway.filter.rewrite.i18n.UrlRewriteMessages;
 import org.apache.knox.gateway.filter.rewrite.spi.UrlRewriteStreamFilter;
 import org.apache.knox.gateway.i18n.messages.MessagesFactory;
 import org.apache.knox.gateway.util.MimeTypes;
-import org.apache.knox.gateway.util.urltemplate.Parser;
+import org.apache.knox.gateway.util.TemplateCacheUtils;
 import org.apache.knox.gateway.util.urltemplate.Resolver;
 import org.apache.knox.gateway.util.urltemplate.Template;
 import org.eclipse.jetty.http.HttpHeader;
@@ -99,7 +99,7 @@ public class UrlRewriteRequest extends GatewayRequestWrapper implements Resolver
       urlString.append( '?' ).append( queryString );
     }
     try {
-      urlTemplate = Parser.parseLiteral( urlString.toString() );
+      urlTemplate = TemplateCacheUtils.parseLiteral( this, urlString.toString() );
     } catch( URISyntaxException e ) {
       LOG.failedToParseValueForUrlRewrite( urlString.toString() );
       // Shouldn't be possible given that the URL is constructed from parts of an existing URL.
@@ -163,7 +163,7 @@ public class UrlRewriteRequest extends GatewayRequestWrapper implements Resolver
 
   private String rewriteValue( UrlRewriter rewriter, String value, String rule ) {
     try {
-      Template input = Parser.parseLiteral( value );
+      Template input = TemplateCacheUtils.parseLiteral( this, value );
       Template output = rewriter.rewrite( this, input, UrlRewriter.Direction.IN, rule );
       value = output.getPattern();
     } catch( URISyntaxException e ) {
@@ -17,6 +17,8 @@
  */
 package org.apache.knox.gateway.filter.rewrite.impl;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.knox.gateway.filter.GatewayResponseWrapper;
@@ -30,9 +32,10 @@ import org.apache.knox.gateway.filter.rewrite.i18n.UrlRewriteMessages;
 import org.apache.knox.gateway.filter.rewrite.spi.UrlRewriteStreamFilter;
 import org.apache.knox.gateway.i18n.messages.MessagesFactory;
 import org.apache.knox.gateway.util.MimeTypes;
+import org.apache.knox.gateway.util.ResponseStreamUtils;
+import org.apache.knox.gateway.util.TemplateCacheUtils;
 import org.apache.knox.gateway.util.Urls;
 import org.apache.knox.gateway.util.urltemplate.Params;
-import org.apache.knox.gateway.util.urltemplate.Parser;
 import org.apache.knox.gateway.util.urltemplate.Template;
 import org.apache.commons.io.IOUtils;
 
@@ -43,6 +46,8 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -52,11 +57,13 @@ import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.InflaterInputStream;
 
 import static org.apache.knox.gateway.filter.rewrite.impl.UrlRewriteUtil.getRewriteFilterConfig;
@@ -81,6 +88,13 @@ public class UrlRewriteResponse extends GatewayResponseWrapper implements Params
   private static final String GATEWAY_PARAM_PREFIX = "gateway.";
   public  static final String INBOUND_QUERY_PARAM_PREFIX   = "query.param.";
 
+  // Host names resolved from the local addresses of the gateway, see getRequestLocalHostName()
+  private static final long LOCAL_HOST_NAME_TTL = TimeUnit.MINUTES.toSeconds( 5 );
+  private static final Cache<String, String> LOCAL_HOST_NAMES = Caffeine.newBuilder()
+      .expireAfterWrite( LOCAL_HOST_NAME_TTL, TimeUnit.SECONDS )
+      .maximumSize( 64 )
+      .build();
+
   private UrlRewriter rewriter;
   private FilterConfig config;
   private HttpServletRequest request;
@@ -93,6 +107,17 @@ public class UrlRewriteResponse extends GatewayResponseWrapper implements Params
   private String xForwardedPort;
   private String xForwardedScheme;
   private String contentEncoding;
+  private UrlRewriteCompression compression;
+  private UrlRewriteResponseCache responseCache;
+  private String responseCacheKey;
+  private UrlRewriteResponseCache.Entry cachedResponse;
+  private boolean notModified;
+  private String etag;
+  private String lastModified;
+  private String cacheControl;
+  private String vary;
+  // The parameters resolved while rewriting the response, which do not change during the request
+  private final Map<String, List<String>> resolvedParams = new HashMap<>();
 
   public UrlRewriteResponse( FilterConfig config, HttpServletRequest request, HttpServletResponse response ) {
     super( response );
@@ -106,6 +131,7 @@ public class UrlRewriteResponse extends GatewayResponseWrapper implements Params
     this.headersFilterName = config.getInitParameter( UrlRewriteServletFilter.RESPONSE_HEADERS_FILTER_PARAM );
     this.headersFilterConfig = getRewriteFilterConfig( rewriter.getConfig(), headersFilterName, UrlRewriteServletFilter.HEADERS_MIME_TYPE );
     this.contentEncoding = "";
+    this.compression = UrlRewriteServletContextListener.getCompression( config.getServletContext() );
   }
 
   protected boolean ignoreHeader( String name ) {
@@ -114,7 +140,7 @@ public class UrlRewriteResponse extends GatewayResponseWrapper implements Params
 
   private String rewriteValue( String value, String rule ) {
     try {
-      Template input = Parser.parseLiteral( value );
+      Template input = TemplateCacheUtils.parseLiteral( request, value );
       Template output = rewriter.rewrite( this, input, UrlRewriter.Direction.OUT, rule );
       if( output != null ) {
         value = output.toString();
@@ -131,10 +157,81 @@ public class UrlRewriteResponse extends GatewayResponseWrapper implements Params
     }
   }
 
+  private void setCacheHeader( String name, String value ) {
+    if( "ETag".equalsIgnoreCase( name ) ) {
+      etag = value;
+    } else if( "Last-Modified".equalsIgnoreCase( name ) ) {
+      lastModified = value;
+    } else if( "Cache-Control".equalsIgnoreCase( name ) ) {
+      cacheControl = cacheControl == null ? value : cacheControl + "," + value;
+    } else if( "Vary".equalsIgnoreCase( name ) ) {
+      vary = vary == null ? value : vary + "," + value;
+    }
+  }
+
+  /**
+   * Enables the caching of the rewritten body of the response, if the request allows it.
+   *
+   * @param cache the response cache of the topology, may be <code>null</code>
+   * @param request the request to rewrite the response of
+   * @return the request to pass down the filter chain, asking the backend whether the cached body
+   * of the response is still current when there is one
+   */
+  public HttpServletRequest useResponseCache( UrlRewriteResponseCache cache, HttpServletRequest request ) {
+    if( cache == null ) {
+      return request;
+    }
+    responseCacheKey = UrlRewriteResponseCache.getKey( request, bodyFilterName );
+    if( responseCacheKey == null ) {
+      return request;
+    }
+    responseCache = cache;
+    cachedResponse = cache.get( responseCacheKey );
+    return cachedResponse == null ? request : new UrlRewriteConditionalRequest( request, cachedResponse );
+  }
+
+  /**
+   * @return true if the request has been made conditional on a cached response, which is written once the dispatch returns
+   */
+  public boolean hasCachedResponse() {
+    return cachedResponse != null;
+  }
+
+  /**
+   * Writes the cached body of the response when the backend reported it as not modified.
+   *
+   * @return true if the cached body was written
+   */
+  public boolean writeCachedResponse() throws IOException {
+    if( !notModified ) {
+      return false;
+    }
+    LOG.servingCachedResponse( request.getRequestURI() );
+    setContentType( cachedResponse.getContentType() );
+    if( !StringUtils.isEmpty( cachedResponse.getContentEncoding() ) ) {
+      super.setHeader( "Content-Encoding", cachedResponse.getContentEncoding() );
+    }
+    byte[] body = cachedResponse.getBody();
+    setContentLength( body.length );
+    getRawOutputStream().write( body );
+    return true;
+  }
+
+  // The backend confirmed the cached body, which answers the unconditional request of the client.
+  @Override
+  public void setStatus( int status ) {
+    if( status == HttpServletResponse.SC_NOT_MODIFIED && cachedResponse != null ) {
+      notModified = true;
+      status = HttpServletResponse.SC_OK;
+    }
+    super.setStatus( status );
+  }
+
   // Ignore the Content-Length from the dispatch respond since the respond body may be rewritten.
   @Override
   public void setHeader( String name, String value ) {
     if( !ignoreHeader( name) ) {
+      setCacheHeader( name, value );
       value = rewriteValue( value, pickFirstRuleWithEqualsIgnoreCasePathMatch( headersFilterConfig, name ) );
       setContentEncoding(name, value);
       super.setHeader( name, value );
@@ -145,6 +242,7 @@ public class UrlRewriteResponse extends GatewayResponseWrapper implements Params
   @Override
   public void addHeader( String name, String value ) {
     if( !ignoreHeader( name ) ) {
+      setCacheHeader( name, value );
       String rule = pickFirstRuleWithEqualsIgnoreCasePathMatch( headersFilterConfig, name );
       value = rewriteValue( value, rule );
       setContentEncoding(name, value);
@@ -173,7 +271,19 @@ public class UrlRewriteResponse extends GatewayResponseWrapper implements Params
 
     final InputStream inStream;
     final OutputStream outStream;
+    ResponseCacheOutputStream cacheStream = null;
+    String bodyEncoding = contentEncoding;
     if( filter != null ) {
+      final OutputStream bodyStream;
+      if( isResponseCacheable() ) {
+        cacheStream = new ResponseCacheOutputStream( output, responseCache.getMaxEntrySize() );
+        bodyStream = cacheStream;
+      } else {
+        if( responseCache != null ) {
+          responseCache.remove( responseCacheKey );
+        }
+        bodyStream = output;
+      }
       // Use this way to check whether the input stream is gzip compressed, in case
       // the content encoding header is unknown, as it could be unset in inbound response
       boolean isGzip = false;
@@ -187,21 +297,35 @@ public class UrlRewriteResponse extends GatewayResponseWrapper implements Params
       inBuffer.reset();
 
       final InputStream unFilteredStream;
+      final String encoding;
       if(isGzip || "gzip".equalsIgnoreCase(contentEncoding)) {
         unFilteredStream = new GzipCompressorInputStream(inBuffer, true);
-        outStream = new GZIPOutputStream(output, STREAM_BUFFER_SIZE);
+        encoding = "gzip";
       } else if ("deflate".equalsIgnoreCase(contentEncoding)) {
         unFilteredStream = new InflaterInputStream(inBuffer);
-        outStream = new DeflaterOutputStream(output);
+        encoding = "deflate";
       } else {
         unFilteredStream = inBuffer;
-        outStream = output;
+        encoding = null;
+      }
+      if (encoding == null) {
+        outStream = bodyStream;
+      } else if (!UrlRewriteCompression.accepts(request.getHeader("Accept-Encoding"), encoding)) {
+        // Not worth compressing again for a client preferring another encoding
+        super.setHeader("Content-Encoding", null);
+        bodyEncoding = "";
+        outStream = bodyStream;
+      } else if ("gzip".equals(encoding)) {
+        outStream = compression.gzip(bodyStream);
+      } else {
+        outStream = compression.deflate(bodyStream);
       }
       String charset = MimeTypes.getCharset( mimeType, StandardCharsets.UTF_8.name() );
       inStream = filter.filter( unFilteredStream, charset, rewriter, this, UrlRewriter.Direction.OUT, filterContentConfig );
     } else {
-      inStream = input;
-      outStream = output;
+      // Nothing to rewrite and no encoding to change, so hand the body to the container untouched
+      ResponseStreamUtils.passThrough(input, output, STREAM_BUFFER_SIZE);
+      return;
     }
 
     try {
@@ -209,6 +333,39 @@ public class UrlRewriteResponse extends GatewayResponseWrapper implements Params
     } finally {
       outStream.close();
     }
+    if( cacheStream != null ) {
+      byte[] body = cacheStream.getBody();
+      if( body == null ) {
+        responseCache.remove( responseCacheKey );
+      } else {
+        responseCache.put( responseCacheKey, new UrlRewriteResponseCache.Entry(
+            etag, lastModified, getContentType(), bodyEncoding, body ) );
+      }
+    }
+  }
+
+  /*
+   * Only successful responses carrying a validator, which the backend did not mark as private or
+   * as varying with anything but the accepted encodings, are cached.
+   */
+  private boolean isResponseCacheable() {
+    if( responseCache == null || getStatus() != HttpServletResponse.SC_OK || ( etag == null && lastModified == null ) ) {
+      return false;
+    }
+    if( cacheControl != null ) {
+      String directives = cacheControl.toLowerCase( Locale.ROOT );
+      if( directives.contains( "no-store" ) || directives.contains( "private" ) ) {
+        return false;
+      }
+    }
+    if( vary != null ) {
+      for( String header : vary.split( "," ) ) {
+        if( !header.trim().isEmpty() && !"Accept-Encoding".equalsIgnoreCase( header.trim() ) ) {
+          return false;
+        }
+      }
+    }
+    return true;
   }
 
   //TODO: Need to buffer the output here and when it is closed, rewrite it and then write the result to the stream.
@@ -227,8 +384,16 @@ public class UrlRewriteResponse extends GatewayResponseWrapper implements Params
   }
 
   @Override
-  @SuppressWarnings( "unchecked" )
   public List<String> resolve( String name ) {
+    List<String> values = resolvedParams.get( name );
+    if( values == null && !resolvedParams.containsKey( name ) ) {
+      values = resolveParam( name );
+      resolvedParams.put( name, values );
+    }
+    return values;
+  }
+
+  private List<String> resolveParam( String name ) {
     if( name.startsWith( REQUEST_PARAM_PREFIX ) ) {
       return Collections.singletonList(getRequestParam(name.substring(REQUEST_PARAM_PREFIX.length())));
     } else if ( name.startsWith( GATEWAY_PARAM_PREFIX ) ) {
@@ -243,17 +408,24 @@ public class UrlRewriteResponse extends GatewayResponseWrapper implements Params
   }
 
   // KNOX-464: Doing this because Jetty only returns the string version of the IP address for request.getLocalName().
-  // Hopefully the local hostname will be cached so this will not be a significant performance hit.
+  // The reverse lookup blocks, so its result is kept for a few minutes rather than looked up for every request.
   // Previously this was an inline request.getServerName() but this ended up mixing the hostname from the Host header
   // and the local port which was making load balancer configuration difficult if not impossible.
   private String getRequestLocalHostName() {
     String hostName = request.getLocalName();
+    if( hostName == null ) {
+      return lookupHostName( null );
+    }
+    return LOCAL_HOST_NAMES.get( hostName, UrlRewriteResponse::lookupHostName );
+  }
+
+  private static String lookupHostName( String hostName ) {
     try {
-      hostName = InetAddress.getByName( hostName ).getHostName();
+      return InetAddress.getByName( hostName ).getHostName();
     } catch( UnknownHostException e ) {
       // Ignore it and use the original hostname.
+      return hostName;
     }
-    return hostName;
   }
 
   private String getGatewayParam( String name ) {
@@ -356,4 +528,43 @@ public class UrlRewriteResponse extends GatewayResponseWrapper implements Params
       xForwardedPort = Integer.toString( request.getLocalPort() );
     }
   }
+
+  /*
+   * Keeps a copy of the body written to the client, unless it gets larger than the given size.
+   */
+  private static class ResponseCacheOutputStream extends FilterOutputStream {
+    private final int maxSize;
+    private ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+    ResponseCacheOutputStream( OutputStream output, int maxSize ) {
+      super( output );
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    public void write( int b ) throws IOException {
+      out.write( b );
+      capture( new byte[]{ (byte)b }, 0, 1 );
+    }
+
+    @Override
+    public void write( byte[] b, int off, int len ) throws IOException {
+      out.write( b, off, len );
+      capture( b, off, len );
+    }
+
+    private void capture( byte[] b, int off, int len ) {
+      if( body != null ) {
+        if( body.size() + len > maxSize ) {
+          body = null;
+        } else {
+          body.write( b, off, len );
+        }
+      }
+    }
+
+    byte[] getBody() {
+      return body == null ? null : body.toByteArray();
+    }
+  }
 }
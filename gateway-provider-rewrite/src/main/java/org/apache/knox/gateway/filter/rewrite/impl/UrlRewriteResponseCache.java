@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.filter.rewrite.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.apache.knox.gateway.security.SubjectUtils;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Keeps the rewritten bodies of the backend responses of a topology, so a response the backend
+ * reports as not modified is served without fetching and rewriting the body again. The bodies
+ * are kept as written to the client, already compressed when the backend compressed them.
+ * <p>
+ * An entry is identified by the request URL and everything else the rewriting of a body may
+ * depend on: the client facing address of the gateway, the accepted encodings, the body filter
+ * and the user. A cache belongs to a single deployment of the topology, so the rewrite rules never
+ * change during its lifetime.
+ * <p>
+ * Each entry weighs at least the maximum size divided by the maximum number of entries, which
+ * bounds both the total size of the bodies and the number of entries.
+ */
+public class UrlRewriteResponseCache {
+
+  public static final String ATTRIBUTE_NAME = UrlRewriteResponseCache.class.getName();
+
+  private final Cache<String, Entry> entries;
+  private final int maxEntrySize;
+
+  public UrlRewriteResponseCache( long maxSize, int maxEntries, int maxEntrySize ) {
+    final long minWeight = Math.max( 1, maxSize / Math.max( 1, maxEntries ) );
+    this.entries = Caffeine.newBuilder()
+        .maximumWeight( maxSize )
+        .weigher( ( String key, Entry entry ) -> (int)Math.min( Integer.MAX_VALUE, Math.max( minWeight, entry.body.length ) ) )
+        .build();
+    this.maxEntrySize = maxEntrySize;
+  }
+
+  /**
+   * @return the key of the response to the request, or <code>null</code> if it may not be cached
+   */
+  public static String getKey( HttpServletRequest request, String bodyFilterName ) {
+    if( !"GET".equals( request.getMethod() )
+        || request.getHeader( "If-None-Match" ) != null
+        || request.getHeader( "If-Modified-Since" ) != null
+        || request.getHeader( "Range" ) != null ) {
+      return null;
+    }
+    StringBuilder key = new StringBuilder( 256 );
+    key.append( request.getRequestURL() ).append( '?' ).append( request.getQueryString() )
+        .append( '\n' ).append( request.getHeader( "X-Forwarded-Proto" ) )
+        .append( '\n' ).append( request.getHeader( "X-Forwarded-Host" ) )
+        .append( '\n' ).append( request.getHeader( "X-Forwarded-Port" ) )
+        .append( '\n' ).append( request.getScheme() )
+        .append( '\n' ).append( request.getServerName() )
+        .append( '\n' ).append( request.getLocalName() )
+        .append( '\n' ).append( request.getLocalPort() )
+        .append( '\n' ).append( request.getHeader( "Accept-Encoding" ) )
+        .append( '\n' ).append( bodyFilterName )
+        .append( '\n' ).append( SubjectUtils.getCurrentEffectivePrincipalName() );
+    return key.toString();
+  }
+
+  public Entry get( String key ) {
+    return entries.getIfPresent( key );
+  }
+
+  public void put( String key, Entry entry ) {
+    entries.put( key, entry );
+  }
+
+  public void remove( String key ) {
+    entries.invalidate( key );
+  }
+
+  public long size() {
+    entries.cleanUp();
+    return entries.estimatedSize();
+  }
+
+  /**
+   * @return the maximum size in bytes of a body to be cached
+   */
+  public int getMaxEntrySize() {
+    return maxEntrySize;
+  }
+
+  /**
+   * A rewritten body with the validators of the backend response it was rewritten from.
+   */
+  public static class Entry {
+    private final String etag;
+    private final String lastModified;
+    private final String contentType;
+    private final String contentEncoding;
+    private final byte[] body;
+
+    public Entry( String etag, String lastModified, String contentType, String contentEncoding, byte[] body ) {
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.contentType = contentType;
+      this.contentEncoding = contentEncoding;
+      this.body = body;
+    }
+
+    public String getETag() {
+      return etag;
+    }
+
+    public String getLastModified() {
+      return lastModified;
+    }
+
+    public String getContentType() {
+      return contentType;
+    }
+
+    public String getContentEncoding() {
+      return contentEncoding;
+    }
+
+    public byte[] getBody() {
+      return body;
+    }
+  }
+}
@@ -20,30 +20,40 @@ package org.apache.knox.gateway.filter.rewrite.impl.javascript;
 import org.apache.knox.gateway.filter.rewrite.api.UrlRewriteFilterContentDescriptor;
 import org.apache.knox.gateway.filter.rewrite.api.UrlRewriteFilterPathDescriptor;
 import org.apache.knox.gateway.filter.rewrite.impl.UrlRewriteFilterReader;
-import org.apache.knox.gateway.filter.rewrite.impl.UrlRewriteUtil;
+import org.apache.knox.gateway.filter.rewrite.impl.UrlRewritePatternMatcher;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
-import java.io.StringWriter;
 import java.util.regex.Pattern;
 
+/**
+ * Rewrites the JavaScript read line by line, every line ending with a line feed in the output.
+ * The lines are filtered as they are read, so a long line does not need to be read entirely
+ * before its beginning is returned.
+ */
 public abstract class JavaScriptFilterReader extends Reader implements UrlRewriteFilterReader {
 
   private static final UrlRewriteFilterPathDescriptor.Compiler<Pattern> REGEX_COMPILER = new RegexCompiler();
+  private static final int CHUNK_SIZE = 8192;
 
-  private BufferedReader reader;
+  private Reader reader;
+  private char[] chunk;
+  private StringBuilder line;
+  private int filtered;
+  private boolean lineStarted;
+  private boolean skipLineFeed;
+  private boolean eof;
+  private StringBuilder buffer;
   private int offset;
-  private StringWriter writer;
-  private StringBuffer buffer;
-  private UrlRewriteFilterContentDescriptor config;
+  private UrlRewritePatternMatcher matcher;
 
   protected JavaScriptFilterReader( Reader reader, UrlRewriteFilterContentDescriptor config ) throws IOException {
-    this.reader = new BufferedReader( reader );
-    this.config = config;
-    writer = new StringWriter();
-    buffer = writer.getBuffer();
+    this.reader = reader;
+    chunk = new char[ CHUNK_SIZE ];
+    line = new StringBuilder();
+    buffer = new StringBuilder();
     offset = 0;
+    matcher = new UrlRewritePatternMatcher( config, REGEX_COMPILER );
   }
 
   @Override
@@ -51,37 +61,68 @@ public abstract class JavaScriptFilterReader extends Reader implements UrlRewrit
 
   @Override
   public int read( char[] destBuffer, int destOffset, int destCount ) throws IOException {
-    int count = 0;
     int available = buffer.length() - offset;
-    String cbuff;
-    if( available == 0 ) {
-      cbuff = reader.readLine();
-      if( cbuff != null ) {
-        count = cbuff.length();
-        writer.write( UrlRewriteUtil.filterJavaScript( cbuff, config, this, REGEX_COMPILER ) );
-        writer.write( '\n' );
-        available = buffer.length() - offset;
-      } else {
-        count = -1;
-      }
+    while( available == 0 && !eof ) {
+      offset = 0;
+      buffer.setLength( 0 );
+      fill();
+      available = buffer.length();
     }
 
+    int count = -1;
     if( available > 0 ) {
       count = Math.min( destCount, available );
       buffer.getChars( offset, offset + count, destBuffer, destOffset );
       offset += count;
-      if( offset == buffer.length() ) {
-        offset = 0;
-        buffer.setLength( 0 );
+    }
+    return count;
+  }
+
+  private void fill() throws IOException {
+    int count = reader.read( chunk, 0, chunk.length );
+    if( count < 0 ) {
+      eof = true;
+      if( lineStarted ) {
+        endLine();
       }
+      return;
     }
+    int start = 0;
+    for( int i = 0; i < count; i++ ) {
+      char c = chunk[ i ];
+      if( c == '\n' || c == '\r' ) {
+        if( skipLineFeed && c == '\n' ) {
+          // The second character of a \r\n line terminator.
+          start = i + 1;
+        } else {
+          line.append( chunk, start, i - start );
+          endLine();
+          start = i + 1;
+        }
+        skipLineFeed = c == '\r';
+      } else {
+        skipLineFeed = false;
+      }
+    }
+    if( start < count ) {
+      line.append( chunk, start, count - start );
+      lineStarted = true;
+    }
+    if( line.length() - filtered >= CHUNK_SIZE + UrlRewritePatternMatcher.MAX_PENDING_MATCH_LENGTH ) {
+      filtered = matcher.filter( line, filtered, line.length(), false, buffer, this );
+    }
+  }
 
-    return count;
+  private void endLine() {
+    matcher.filter( line, filtered, line.length(), true, buffer, this );
+    buffer.append( '\n' );
+    line.setLength( 0 );
+    filtered = 0;
+    lineStarted = false;
   }
 
   @Override
   public void close() throws IOException {
     reader.close();
-    writer.close();
   }
 }
@@ -24,13 +24,12 @@ import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.databind.node.TextNode;
 import org.apache.knox.gateway.filter.rewrite.api.UrlRewriteFilterApplyDescriptor;
 import org.apache.knox.gateway.filter.rewrite.api.UrlRewriteFilterBufferDescriptor;
 import org.apache.knox.gateway.filter.rewrite.api.UrlRewriteFilterContentDescriptor;
 import org.apache.knox.gateway.filter.rewrite.api.UrlRewriteFilterDetectDescriptor;
-import org.apache.knox.gateway.filter.rewrite.api.UrlRewriteFilterGroupDescriptor;
 import org.apache.knox.gateway.filter.rewrite.api.UrlRewriteFilterPathDescriptor;
 import org.apache.knox.gateway.filter.rewrite.i18n.UrlRewriteMessages;
 import org.apache.knox.gateway.i18n.messages.MessagesFactory;
@@ -39,10 +38,22 @@ import org.apache.knox.gateway.util.JsonPath;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
-import java.util.Stack;
 import java.util.regex.Pattern;
 
+/**
+ * Rewrites a JSON document while streaming it.
+ * <p>
+ * The top level selectors are compiled into {@link JsonPathStateMachine}s that follow the path
+ * to the current token, so string values are filtered as they are read. Only the containers
+ * selected by a buffer selector are read into a tree, on which the selectors of the buffer
+ * are evaluated before it is written. The memory used is therefore bounded by the depth of the
+ * document and the size of the buffered containers, not by the size of the document.
+ */
 class JsonFilterReader extends Reader {
 
   private static final UrlRewriteMessages LOG = MessagesFactory.get( UrlRewriteMessages.class );
@@ -59,10 +70,11 @@ class JsonFilterReader extends Reader {
   private int offset;
   private StringWriter writer;
   private StringBuffer buffer;
-  private Stack<Level> stack;
-  private Level bufferingLevel;
-  private UrlRewriteFilterBufferDescriptor bufferingConfig;
-  private UrlRewriteFilterGroupDescriptor config;
+  private List<UrlRewriteFilterPathDescriptor> selectors;
+  private JsonPathStateMachine[] paths;
+  /* The levels of the containers enclosing the current token, reused as the depth changes */
+  private List<Level> levels;
+  private int depth;
 
   JsonFilterReader( Reader reader, UrlRewriteFilterContentDescriptor config ) throws IOException {
     this.reader = reader;
@@ -73,10 +85,13 @@ class JsonFilterReader extends Reader {
     buffer = writer.getBuffer();
     offset = 0;
     generator = factory.createGenerator( writer );
-    stack = new Stack<>();
-    bufferingLevel = null;
-    bufferingConfig = null;
-    this.config = config;
+    selectors = config == null ? Collections.emptyList() : config.getSelectors();
+    paths = new JsonPathStateMachine[ selectors.size() ];
+    for( int i = 0; i < paths.length; i++ ) {
+      paths[ i ] = new JsonPathStateMachine( selectors.get( i ).path() );
+    }
+    levels = new ArrayList<>();
+    depth = 0;
   }
 
   @Override
@@ -110,16 +125,18 @@ class JsonFilterReader extends Reader {
   private void processCurrentToken() throws IOException {
     switch( parser.getCurrentToken() ) {
       case START_OBJECT:
-        processStartObject();
-        break;
-      case END_OBJECT:
-        processEndObject();
+        processStartContainer( false );
         break;
       case START_ARRAY:
-        processStartArray();
+        processStartContainer( true );
+        break;
+      case END_OBJECT:
+        depth--;
+        generator.writeEndObject();
         break;
       case END_ARRAY:
-        processEndArray();
+        depth--;
+        generator.writeEndArray();
         break;
       case FIELD_NAME:
         processFieldName(); // Could be the name of an object, array or value.
@@ -133,10 +150,10 @@ class JsonFilterReader extends Reader {
         break;
       case VALUE_TRUE:
       case VALUE_FALSE:
-        processValueBoolean();
+        generator.writeBoolean( parser.getBooleanValue() );
         break;
       case VALUE_NULL:
-        processValueNull();
+        generator.writeNull();
         break;
       case NOT_AVAILABLE:
         // Ignore it.
@@ -145,221 +162,101 @@ class JsonFilterReader extends Reader {
     generator.flush();
   }
 
-  private Level pushLevel( String field, JsonNode node, JsonNode scopeNode, UrlRewriteFilterGroupDescriptor scopeConfig ) {
-    if( !stack.isEmpty() ) {
-      Level top = stack.peek();
-      if( scopeNode == null ) {
-        scopeNode = top.scopeNode;
-        scopeConfig = top.scopeConfig;
-      }
-    }
-    Level level = new Level( field, node, scopeNode, scopeConfig );
-    stack.push( level );
-    return level;
-  }
-
-  private void processStartObject() throws IOException {
-    JsonNode node;
-    Level child;
-    Level parent;
-    if( stack.isEmpty() ) {
-      node = mapper.createObjectNode();
-      child = pushLevel( null, node, node, config );
+  private void processStartContainer( boolean array ) throws IOException {
+    Level child = pushLevel( array );
+    UrlRewriteFilterPathDescriptor selector = child.matched < 0 ? null : selectors.get( child.matched );
+    if( selector instanceof UrlRewriteFilterBufferDescriptor ) {
+      depth--;
+      JsonNode node = readBufferedNode();
+      filterBufferedNode( node, (UrlRewriteFilterBufferDescriptor)selector );
+      mapper.writeTree( generator, node );
+    } else if( array ) {
+      generator.writeStartArray();
     } else {
-      child = stack.peek();
-      if( child.node == null ) {
-        child.node = mapper.createObjectNode();
-        parent = stack.get( stack.size()-2 );
-        switch( parent.node.asToken() ) {
-          case START_ARRAY:
-            ((ArrayNode)parent.node ).add( child.node );
-            break;
-          case START_OBJECT:
-            ((ObjectNode)parent.node ).set( child.field, child.node );
-            break;
-          default:
-            throw new IllegalStateException();
-        }
-      } else if( child.isArray() ) {
-        parent = child;
-        node = mapper.createObjectNode();
-        child = pushLevel( null, node, null, null );
-        ((ArrayNode)parent.node ).add( child.node );
-      } else {
-        throw new IllegalStateException();
-      }
-    }
-    if( bufferingLevel == null && !startBuffering( child ) ) {
       generator.writeStartObject();
     }
   }
 
-  private void processEndObject() throws IOException {
-    Level child;
-    Level parent;
-    child = stack.pop();
-    if( child.equals(bufferingLevel) ) {
-      filterBufferedNode( child );
-      mapper.writeTree( generator, child.node );
-      bufferingLevel = null;
-      bufferingConfig = null;
-    } else if( bufferingLevel == null ) {
-      generator.writeEndObject();
-      if( !stack.isEmpty() ) {
-        parent = stack.peek();
-        switch( parent.node.asToken() ) {
-          case START_ARRAY:
-            ((ArrayNode)parent.node ).removeAll();
-            break;
-          case START_OBJECT:
-            ((ObjectNode)parent.node ).removeAll();
-            break;
-          default:
-            throw new IllegalStateException();
-        }
+  private Level pushLevel( boolean array ) {
+    Level parent = depth == 0 ? null : levels.get( depth - 1 );
+    if( depth == levels.size() ) {
+      levels.add( new Level( paths.length ) );
+    }
+    Level child = levels.get( depth++ );
+    child.array = array;
+    child.field = null;
+    child.matched = -1;
+    if( parent == null ) {
+      child.name = null;
+      for( int i = 0; i < paths.length; i++ ) {
+        child.states[ i ] = paths[ i ].start();
       }
-    }
-  }
-
-  private void processStartArray() throws IOException {
-    JsonNode node;
-    Level child;
-    Level parent;
-    if( stack.isEmpty() ) {
-      node = mapper.createArrayNode();
-      child = pushLevel( null, node, node, config );
     } else {
-      child = stack.peek();
-      if( child.node == null ) {
-        child.node = mapper.createArrayNode();
-        parent = stack.get( stack.size() - 2 );
-        switch( parent.node.asToken() ) {
-          case START_ARRAY:
-            ((ArrayNode)parent.node ).add( child.node );
-            break;
-          case START_OBJECT:
-            ((ObjectNode)parent.node ).set( child.field, child.node );
-            break;
-          default:
-            throw new IllegalStateException();
+      child.name = parent.array ? null : parent.field;
+      parent.step( paths, child.states );
+      child.matched = parent.matched;
+    }
+    // The first selector matching the container or one of the enclosing ones decides whether it is buffered.
+    if( child.matched < 0 ) {
+      for( int i = 0; i < paths.length; i++ ) {
+        if( paths[ i ].matches( child.states[ i ] ) ) {
+          child.matched = i;
+          break;
         }
-      } else if( child.isArray() ) {
-        parent = child;
-        child = pushLevel( null, mapper.createArrayNode(), null, null );
-        ((ArrayNode)parent.node ).add( child.node );
-      } else {
-        throw new IllegalStateException();
       }
     }
-    if( bufferingLevel == null && !startBuffering( child ) ) {
-      generator.writeStartArray();
-    }
+    return child;
   }
 
-  private void processEndArray() throws IOException {
-    Level child;
-    Level parent;
-    child = stack.pop();
-    if( child.equals(bufferingLevel) ) {
-      filterBufferedNode( child );
-      mapper.writeTree( generator, child.node );
-      bufferingLevel = null;
-      bufferingConfig = null;
-    } else if( bufferingLevel == null ) {
-      generator.writeEndArray();
-      if( !stack.isEmpty() ) {
-        parent = stack.peek();
-        switch( parent.node.asToken() ) {
-          case START_ARRAY:
-            ((ArrayNode)parent.node ).removeAll();
-            break;
-          case START_OBJECT:
-            ((ObjectNode)parent.node ).removeAll();
-            break;
-          default:
-            throw new IllegalStateException();
-        }
-      }
-    }
+  private void processFieldName() throws IOException {
+    Level level = levels.get( depth - 1 );
+    level.field = filterFieldName();
+    generator.writeFieldName( level.field );
   }
 
-  private void processFieldName() throws IOException {
-    Level child = pushLevel( parser.getCurrentName(), null, null, null );
+  private String filterFieldName() throws IOException {
+    String field = parser.getCurrentName();
     try {
-      child.field = filterFieldName( child.field );
+      field = filterFieldName( field );
     } catch( Exception e ) {
-      LOG.failedToFilterFieldName( child.field, e );
+      LOG.failedToFilterFieldName( field, e );
       // Write original name.
     }
-    if( bufferingLevel == null ) {
-      generator.writeFieldName( child.field );
-    }
+    return field;
   }
 
   private void processValueString() throws IOException {
-    Level child;
-    Level parent;
-    String value = null;
-    if(stack.isEmpty()) {
-      generator.writeString( parser.getText() );
-      return;
-    }
-    parent = stack.peek();
-    if( parent.isArray() ) {
-      ArrayNode array = (ArrayNode)parent.node;
-      array.add( parser.getText() );
-      if( bufferingLevel == null ) {
-        value = filterStreamValue( parent );
-        array.set( array.size()-1, new TextNode( value ) );
-      } else {
-        array.removeAll();
-      }
-    } else {
-      child = stack.pop();
-      parent = stack.peek();
-      ((ObjectNode)parent.node ).put( child.field, parser.getText() );
-      if( bufferingLevel == null ) {
-        child.node = parent.node; // Populate the JsonNode of the child for filtering.
-        value = filterStreamValue( child );
-      }
-    }
-    if( bufferingLevel == null ) {
-      if( parent.node.isArray() ) {
-        ((ArrayNode)parent.node).removeAll();
-      } else {
-        ((ObjectNode)parent.node).removeAll();
-      }
-      generator.writeString( value );
+    String value = parser.getText();
+    if( depth > 0 ) {
+      Level parent = levels.get( depth - 1 );
+      value = filterStreamValue( parent, value );
     }
+    generator.writeString( value );
   }
 
-  private void processValueNumber() throws IOException {
-    Level child;
-    Level parent;
-    if(stack.isEmpty()) {
-      processedUnbufferedValueNumber();
-      return;
-    }
-    parent = stack.peek();
-    if( parent.isArray() ) {
-      if( bufferingLevel != null ) {
-        ArrayNode array = (ArrayNode)parent.node;
-        processBufferedArrayValueNumber( array );
-      }
-    } else {
-      child = stack.pop();
-      if( bufferingLevel != null ) {
-        parent = stack.peek();
-        ObjectNode object = (ObjectNode)parent.node;
-        processBufferedFieldValueNumber( child, object );
+  /*
+   * The rule is the one of the first apply selector matching the value but none of its enclosing containers.
+   */
+  private String filterStreamValue( Level parent, String value ) {
+    String rule = null;
+    String field = parent.array ? null : parent.field;
+    for( int i = 0; i < paths.length; i++ ) {
+      long states = paths[ i ].step( parent.states[ i ], field );
+      if( paths[ i ].matches( states ) && !JsonPathStateMachine.matchedAbove( states )
+          && selectors.get( i ) instanceof UrlRewriteFilterApplyDescriptor ) {
+        rule = ( (UrlRewriteFilterApplyDescriptor)selectors.get( i ) ).rule();
+        break;
       }
     }
-    if( bufferingLevel == null ) {
-      processedUnbufferedValueNumber();
+    try {
+      value = filterValueString( parent.array ? parent.name : parent.field, value, rule );
+    } catch( Exception e ) {
+      LOG.failedToFilterValue( value, rule, e );
     }
+    return value;
   }
 
-  private void processedUnbufferedValueNumber() throws IOException {
+  private void processValueNumber() throws IOException {
     switch( parser.getNumberType() ) {
       case INT:
         generator.writeNumber( parser.getIntValue() );
@@ -382,170 +279,85 @@ class JsonFilterReader extends Reader {
     }
   }
 
-  private void processBufferedFieldValueNumber( Level child, ObjectNode object ) throws IOException {
-    //object.put( child.field, parser.getDecimalValue() );
-    switch( parser.getNumberType() ) {
-      case INT:
-        object.put( child.field, parser.getIntValue() );
-        break;
-      case LONG:
-        object.put( child.field, parser.getLongValue() );
-        break;
-      case BIG_INTEGER:
-        object.put( child.field, parser.getDecimalValue() );
-        break;
-      case FLOAT:
-        object.put( child.field, parser.getFloatValue() );
-        break;
-      case DOUBLE:
-        object.put( child.field, parser.getDoubleValue() );
-        break;
-      case BIG_DECIMAL:
-        object.put( child.field, parser.getDecimalValue() );
-        break;
+  /*
+   * Reads the container starting at the current token into a tree, up to its end token.
+   */
+  private JsonNode readBufferedNode() throws IOException {
+    Deque<JsonNode> containers = new ArrayDeque<>();
+    JsonNode root = null;
+    String field = null;
+    for( JsonToken token = parser.getCurrentToken(); token != null; token = parser.nextToken() ) {
+      JsonNode value;
+      switch( token ) {
+        case START_OBJECT:
+          value = mapper.createObjectNode();
+          break;
+        case START_ARRAY:
+          value = mapper.createArrayNode();
+          break;
+        case END_OBJECT:
+        case END_ARRAY:
+          containers.pop();
+          if( containers.isEmpty() ) {
+            return root;
+          }
+          continue;
+        case FIELD_NAME:
+          field = filterFieldName();
+          continue;
+        case VALUE_STRING:
+          value = JsonNodeFactory.instance.textNode( parser.getText() );
+          break;
+        case VALUE_NUMBER_INT:
+        case VALUE_NUMBER_FLOAT:
+          value = bufferedValueNumber();
+          break;
+        case VALUE_TRUE:
+        case VALUE_FALSE:
+          value = JsonNodeFactory.instance.booleanNode( parser.getBooleanValue() );
+          break;
+        case VALUE_NULL:
+          value = JsonNodeFactory.instance.nullNode();
+          break;
+        default:
+          continue;
+      }
+      JsonNode parent = containers.peek();
+      if( parent == null ) {
+        root = value;
+      } else if( parent.isArray() ) {
+        ((ArrayNode)parent).add( value );
+      } else {
+        ((ObjectNode)parent).set( field, value );
+      }
+      if( value.isContainerNode() ) {
+        containers.push( value );
+      }
     }
+    return root;
   }
 
-  private void processBufferedArrayValueNumber( ArrayNode array ) throws IOException {
-    //array.add( parser.getDecimalValue() );
+  private JsonNode bufferedValueNumber() throws IOException {
     switch( parser.getNumberType() ) {
       case INT:
-        array.add( parser.getIntValue() );
-        break;
+        return JsonNodeFactory.instance.numberNode( parser.getIntValue() );
       case LONG:
-        array.add( parser.getLongValue() );
-        break;
+        return JsonNodeFactory.instance.numberNode( parser.getLongValue() );
       case BIG_INTEGER:
-        array.add( parser.getDecimalValue() );
-        break;
+        return JsonNodeFactory.instance.numberNode( parser.getBigIntegerValue() );
       case FLOAT:
-        array.add( parser.getFloatValue() );
-        break;
+        return JsonNodeFactory.instance.numberNode( parser.getFloatValue() );
       case DOUBLE:
-        array.add( parser.getDoubleValue() );
-        break;
-      case BIG_DECIMAL:
-        array.add( parser.getDecimalValue() );
-        break;
-    }
-  }
-
-  private void processValueBoolean() throws IOException {
-    Level child;
-    Level parent;
-    if(stack.isEmpty()) {
-      generator.writeBoolean(parser.getBooleanValue());
-      return;
-    }
-    parent = stack.peek();
-    if( parent.isArray() ) {
-      ((ArrayNode)parent.node ).add( parser.getBooleanValue() );
-      //dump();
-      if( bufferingLevel == null ) {
-        ((ArrayNode)parent.node ).removeAll();
-      }
-    } else {
-      child = stack.pop();
-      parent = stack.peek();
-      ((ObjectNode)parent.node ).put( child.field, parser.getBooleanValue() );
-      //dump();
-      if( bufferingLevel == null ) {
-        ((ObjectNode)parent.node ).remove( child.field );
-      }
-    }
-    if( bufferingLevel == null ) {
-      generator.writeBoolean( parser.getBooleanValue() );
-    }
-  }
-
-  private void processValueNull() throws IOException {
-    Level child;
-    if(stack.isEmpty()) {
-      generator.writeNull();
-      return;
+        return JsonNodeFactory.instance.numberNode( parser.getDoubleValue() );
+      default:
+        return JsonNodeFactory.instance.numberNode( parser.getDecimalValue() );
     }
-    Level parent = stack.peek();
-    if( parent.isArray() ) {
-      ((ArrayNode)parent.node ).addNull();
-      //dump();
-      if( bufferingLevel == null ) {
-        ((ArrayNode)parent.node ).removeAll();
-      }
-    } else {
-      child = stack.pop();
-      parent = stack.peek();
-      ((ObjectNode)parent.node ).putNull( child.field );
-      //dump();
-      if( bufferingLevel == null ) {
-        ((ObjectNode)parent.node ).remove( child.field );
-      }
-    }
-    if( bufferingLevel == null ) {
-      generator.writeNull();
-    }
-  }
-
-  protected boolean startBuffering( Level node ) {
-    boolean buffered = false;
-    UrlRewriteFilterGroupDescriptor scope = node.scopeConfig;
-    if( scope != null ) {
-      for( UrlRewriteFilterPathDescriptor selector : scope.getSelectors() ) {
-        JsonPath.Expression path = (JsonPath.Expression)selector.compiledPath( JPATH_COMPILER );
-        List<JsonPath.Match> matches = path.evaluate( node.scopeNode );
-        if( matches != null && !matches.isEmpty() ) {
-          if( selector instanceof UrlRewriteFilterBufferDescriptor ) {
-            bufferingLevel = node;
-            bufferingConfig = (UrlRewriteFilterBufferDescriptor)selector;
-            buffered = true;
-          }
-          break;
-        }
-      }
-    }
-    return buffered;
-  }
-
-  protected String filterStreamValue( Level node ) {
-    String value;
-    if( node.isArray() ) {
-      value = node.node.get( 0 ).asText();
-    } else {
-      value = node.node.get( node.field ).asText();
-    }
-    String rule = null;
-    UrlRewriteFilterGroupDescriptor scope = node.scopeConfig;
-    //TODO: Scan the top level apply rules for the first match.
-    if( scope != null ) {
-      for( UrlRewriteFilterPathDescriptor selector : scope.getSelectors() ) {
-        JsonPath.Expression path = (JsonPath.Expression)selector.compiledPath( JPATH_COMPILER );
-        List<JsonPath.Match> matches = path.evaluate( node.scopeNode );
-        if( matches != null && !matches.isEmpty() ) {
-          JsonPath.Match match = matches.get( 0 );
-          if( match.getNode().isTextual() && selector instanceof UrlRewriteFilterApplyDescriptor ) {
-            UrlRewriteFilterApplyDescriptor apply = (UrlRewriteFilterApplyDescriptor)selector;
-            rule = apply.rule();
-            break;
-          }
-        }
-      }
-    }
-    try {
-      value = filterValueString( node.field, value, rule );
-      if( node.isArray() ) {
-        ((ArrayNode)node.node).set( 0, new TextNode( value ) );
-      } else {
-        ((ObjectNode)node.node).put( node.field, value );
-      }
-    } catch( Exception e ) {
-      LOG.failedToFilterValue( value, rule, e );
-    }
-    return value;
   }
 
-  private void filterBufferedNode( Level node ) {
+  private void filterBufferedNode( JsonNode node, UrlRewriteFilterBufferDescriptor bufferingConfig ) {
     for( UrlRewriteFilterPathDescriptor selector : bufferingConfig.getSelectors() ) {
       JsonPath.Expression path = (JsonPath.Expression)selector.compiledPath( JPATH_COMPILER );
-      List<JsonPath.Match> matches = path.evaluate( node.node );
+      List<JsonPath.Match> matches = path.evaluate( node );
       for( JsonPath.Match match : matches ) {
         if( selector instanceof UrlRewriteFilterApplyDescriptor ) {
           if( match.getNode().isTextual() ) {
@@ -554,7 +366,7 @@ class JsonFilterReader extends Reader {
         } else if( selector instanceof UrlRewriteFilterDetectDescriptor ) {
           UrlRewriteFilterDetectDescriptor detectConfig = (UrlRewriteFilterDetectDescriptor)selector;
           JsonPath.Expression detectPath = (JsonPath.Expression)detectConfig.compiledPath( JPATH_COMPILER );
-          List<JsonPath.Match> detectMatches = detectPath.evaluate( node.node );
+          List<JsonPath.Match> detectMatches = detectPath.evaluate( node );
           for( JsonPath.Match detectMatch : detectMatches ) {
             if( detectMatch.getNode().isTextual() ) {
               String detectValue = detectMatch.getNode().asText();
@@ -569,10 +381,10 @@ class JsonFilterReader extends Reader {
     }
   }
 
-  private void filterBufferedValues( Level node, List<UrlRewriteFilterPathDescriptor> selectors ) {
+  private void filterBufferedValues( JsonNode node, List<UrlRewriteFilterPathDescriptor> selectors ) {
     for( UrlRewriteFilterPathDescriptor selector : selectors ) {
       JsonPath.Expression path = (JsonPath.Expression)selector.compiledPath( JPATH_COMPILER );
-      List<JsonPath.Match> matches = path.evaluate( node.node );
+      List<JsonPath.Match> matches = path.evaluate( node );
       for( JsonPath.Match match : matches ) {
         if( match.getNode().isTextual() && selector instanceof UrlRewriteFilterApplyDescriptor ) {
           filterBufferedValue( match, (UrlRewriteFilterApplyDescriptor)selector );
@@ -609,18 +421,23 @@ class JsonFilterReader extends Reader {
   }
 
   private static class Level {
+    /* The states of the selectors at the container */
+    final long[] states;
+    boolean array;
+    /* The name of the container in its parent object */
+    String name;
+    /* The name of the current field of an object */
     String field;
-    JsonNode node;
-    JsonNode scopeNode;
-    UrlRewriteFilterGroupDescriptor scopeConfig;
-    Level( String field, JsonNode node, JsonNode scopeNode, UrlRewriteFilterGroupDescriptor scopeConfig ) {
-      this.field = field;
-      this.node = node;
-      this.scopeNode = scopeNode;
-      this.scopeConfig = scopeConfig;
-    }
-    public boolean isArray() {
-      return node != null && node.isArray();
+    /* The first selector matching the container or one of the enclosing ones, -1 if there is none */
+    int matched;
+    Level( int selectors ) {
+      states = new long[ selectors ];
+    }
+    void step( JsonPathStateMachine[] paths, long[] childStates ) {
+      String step = array ? null : field;
+      for( int i = 0; i < paths.length; i++ ) {
+        childStates[ i ] = paths[ i ].step( states[ i ], step );
+      }
     }
   }
 
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.filter.rewrite.impl.json;
+
+import org.apache.knox.gateway.util.JsonPath;
+
+/**
+ * A JSONPath expression compiled into a state machine driven by the steps from the root of a
+ * document down to the current token of a streaming parser, so selectors can be matched without
+ * building the document tree.
+ * <p>
+ * A state is the number of segments matched so far and a set of states is kept as a bit mask,
+ * which limits expressions to {@link #MAX_SEGMENTS} segments. The highest bit of a mask records
+ * that the expression already matched one of the enclosing nodes.
+ * <p>
+ * Array elements are matched the way the tree based evaluation saw them while streaming, where
+ * only the current element was kept: an index segment matches every element when it is 0 and
+ * none otherwise.
+ */
+class JsonPathStateMachine {
+
+  static final int MAX_SEGMENTS = 62;
+
+  private static final long MATCHED_ABOVE = Long.MIN_VALUE;
+
+  private final JsonPath.Segment[] segments;
+  private final long accept;
+  private final long initial;
+
+  JsonPathStateMachine( String path ) {
+    JsonPath.Segment[] all = JsonPath.compile( path ).getSegments();
+    // The first segment is always the root.
+    if( all.length - 1 > MAX_SEGMENTS ) {
+      throw new IllegalArgumentException( path );
+    }
+    segments = new JsonPath.Segment[ all.length - 1 ];
+    System.arraycopy( all, 1, segments, 0, segments.length );
+    accept = 1L << segments.length;
+    initial = closure( 1L );
+  }
+
+  /**
+   * @return the states at the root of the document
+   */
+  long start() {
+    return initial;
+  }
+
+  /**
+   * @param states the states at a container
+   * @param field the name of the child in an object, <code>null</code> for an element of an array
+   * @return the states at the child
+   */
+  long step( long states, String field ) {
+    long next = 0L;
+    for( long active = states & ~MATCHED_ABOVE & ~accept; active != 0L; active &= active - 1 ) {
+      int i = Long.numberOfTrailingZeros( active );
+      JsonPath.Segment segment = segments[ i ];
+      switch( segment.getType() ) {
+        case FIELD:
+          if( field != null && field.equals( segment.getField() ) ) {
+            next |= 1L << ( i + 1 );
+          }
+          break;
+        case INDEX:
+          if( field == null && segment.getIndex() == 0 ) {
+            next |= 1L << ( i + 1 );
+          }
+          break;
+        case WILD:
+          next |= 1L << ( i + 1 );
+          break;
+        case GLOB:
+          next |= 1L << i;
+          break;
+        default:
+          throw new IllegalStateException();
+      }
+    }
+    next = closure( next );
+    if( ( states & ( accept | MATCHED_ABOVE ) ) != 0L ) {
+      next |= MATCHED_ABOVE;
+    }
+    return next;
+  }
+
+  /**
+   * @return whether the expression matches the node the states were reached at
+   */
+  boolean matches( long states ) {
+    return ( states & accept ) != 0L;
+  }
+
+  /**
+   * @return whether the expression matches one of the enclosing nodes of the node the states
+   * were reached at
+   */
+  static boolean matchedAbove( long states ) {
+    return ( states & MATCHED_ABOVE ) != 0L;
+  }
+
+  /*
+   * A glob also matches no step at all
+   */
+  private long closure( long states ) {
+    for( int i = 0; i < segments.length; i++ ) {
+      if( ( states & ( 1L << i ) ) != 0L && segments[ i ].getType() == JsonPath.Segment.Type.GLOB ) {
+        states |= 1L << ( i + 1 );
+      }
+    }
+    return states;
+  }
+}
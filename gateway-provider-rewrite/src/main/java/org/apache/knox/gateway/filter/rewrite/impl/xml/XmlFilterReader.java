@@ -62,10 +62,22 @@ import java.io.IOException;
 import java.io.Reader;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Stack;
+import java.util.Map;
 import java.util.regex.Pattern;
 
+/**
+ * Rewrites an XML document while streaming it.
+ * <p>
+ * When every selector that has to be matched while streaming is a simple path, see
+ * {@link XmlStreamPath}, the selectors are matched against the elements enclosing the current
+ * event and only the elements selected by a buffer selector are read into a DOM, on which the
+ * XPath selectors of the buffer are evaluated. Otherwise the elements enclosing the current event
+ * are mirrored into a DOM to evaluate the selectors as XPath expressions for every event.
+ */
 public abstract class XmlFilterReader extends Reader {
   private static final UrlRewriteResources RES = ResourcesFactory.get( UrlRewriteResources.class );
 
@@ -82,8 +94,10 @@ public abstract class XmlFilterReader extends Reader {
   private XMLInputFactory factory;
   private XMLEventReader parser;
   private Document document;
-  private Stack<Level> stack;
+  private Deque<Level> stack;
   private boolean isEmptyElement;
+  /* The compiled paths of the streamed selectors, null when the document has to be mirrored */
+  private Map<UrlRewriteFilterPathDescriptor, XmlStreamPath> streamPaths;
 
   protected XmlFilterReader( Reader reader, UrlRewriteFilterContentDescriptor config ) throws IOException, XMLStreamException {
     this.reader = reader;
@@ -92,8 +106,9 @@ public abstract class XmlFilterReader extends Reader {
     buffer = writer.getBuffer();
     offset = 0;
     document = null;
-    stack = new Stack<>();
+    stack = new ArrayDeque<>();
     isEmptyElement = false;
+    streamPaths = config == null ? new HashMap<>() : compileStreamPaths( config, new HashMap<>() );
     factory = XMLInputFactory.newFactory();
     //KNOX-620 factory.setProperty( XMLConstants.ACCESS_EXTERNAL_DTD, Boolean.FALSE );
     //KNOX-620 factory.setProperty( XMLConstants.ACCESS_EXTERNAL_SCHEMA, Boolean.FALSE );
@@ -188,8 +203,12 @@ public abstract class XmlFilterReader extends Reader {
   private void processStartDocument( StartDocument event ) throws ParserConfigurationException {
     String s;
 
-    document = XmlUtils.createDocument( false );
-    pushLevel( null, document, document, config );
+    if( streamPaths == null ) {
+      document = XmlUtils.createDocument( false );
+      pushLevel( null, document, document, config );
+    } else {
+      pushLevel( null, null, null, config );
+    }
 
     writer.write( "<?xml" );
 
@@ -220,7 +239,11 @@ public abstract class XmlFilterReader extends Reader {
     document = null;
   }
 
-  private void processStartElement( StartElement event ) throws XPathExpressionException {
+  private void processStartElement( StartElement event ) throws XPathExpressionException, ParserConfigurationException {
+    if( streamPaths != null && !currentlyBuffering() ) {
+      streamStartElement( event );
+      return;
+    }
     // Create a new "empty" element and add it to the document.
     Element element = bufferElement( event );
     Level parent = stack.peek();
@@ -259,12 +282,53 @@ public abstract class XmlFilterReader extends Reader {
     }
   }
 
+  private void streamStartElement( StartElement event ) throws XPathExpressionException, ParserConfigurationException {
+    Level parent = stack.peek();
+    Level level = pushLevel( parent, null, parent.scopeNode, parent.scopeConfig );
+    level.name = event.getName();
+    UrlRewriteFilterPathDescriptor descriptor = pickFirstStreamedPath( level, null );
+    if( descriptor instanceof UrlRewriteFilterBufferDescriptor ) {
+      startBuffering( level, event, (UrlRewriteFilterBufferDescriptor)descriptor );
+    } else {
+      if( descriptor instanceof UrlRewriteFilterScopeDescriptor ) {
+        level.scopeConfig = (UrlRewriteFilterScopeDescriptor)descriptor;
+        level.scopeDepth = level.depth;
+      }
+      streamElement( event, null );
+    }
+  }
+
+  /*
+   * Reads the element into a DOM fragment, under copies of its enclosing elements so that absolute paths still work.
+   */
+  private void startBuffering( Level level, StartElement event, UrlRewriteFilterBufferDescriptor descriptor ) throws ParserConfigurationException {
+    document = XmlUtils.createDocument( false );
+    Node parent = document;
+    QName[] names = new QName[ level.depth - 1 ];
+    for( Level ancestor = level.parent; ancestor.parent != null; ancestor = ancestor.parent ) {
+      names[ ancestor.depth - 1 ] = ancestor.name;
+    }
+    for( QName name : names ) {
+      parent = parent.appendChild( createElement( name ) );
+    }
+    Element element = bufferElement( event );
+    parent.appendChild( element );
+    level.node = element;
+    level.scopeNode = element;
+    level.scopeConfig = descriptor;
+    level.buffered = true;
+    bufferAttributes( event, element );
+  }
+
   private void processEndElement( EndElement event ) throws XPathExpressionException, IOException {
     boolean buffering = currentlyBuffering();
     Level child = stack.pop();
     if( buffering ) {
       if( child.node == child.scopeNode ) {
         processBufferedElement( child );
+        if( streamPaths != null ) {
+          document = null;
+        }
       }
     } else {
       if( ! isEmptyElement ) {
@@ -278,12 +342,21 @@ public abstract class XmlFilterReader extends Reader {
         writer.write( n.getLocalPart() );
         writer.write( ">" );
       }
-      child.node.getParentNode().removeChild( child.node );
+      if( child.node != null ) {
+        child.node.getParentNode().removeChild( child.node );
+      }
     }
   }
 
   private Element bufferElement( StartElement event ) {
-    QName qname = event.getName();
+    Element element = createElement( event.getName() );
+    // Always need to buffer the namespaces regardless of what else happens so that XPath will work on attributes
+    // namespace qualified attributes.
+    bufferNamespaces( event, element );
+    return element;
+  }
+
+  private Element createElement( QName qname ) {
     String prefix = qname.getPrefix();
     String uri = qname.getNamespaceURI();
     Element element;
@@ -295,9 +368,6 @@ public abstract class XmlFilterReader extends Reader {
         element.setPrefix( prefix );
       }
     }
-    // Always need to buffer the namespaces regardless of what else happens so that XPath will work on attributes
-    // namespace qualified attributes.
-    bufferNamespaces( event, element );
     return element;
   }
 
@@ -456,11 +526,13 @@ public abstract class XmlFilterReader extends Reader {
   }
 
   private void streamAttribute( Element element, Attribute attribute ) throws XPathExpressionException {
-    Attr node;
+    Attr node = null;
     QName name = attribute.getName();
     String prefix = name.getPrefix();
     String uri = name.getNamespaceURI();
-    if( uri == null || uri.isEmpty() ) {
+    if( element == null ) {
+      // Streaming without mirroring the document.
+    } else if( uri == null || uri.isEmpty() ) {
       node = document.createAttribute( name.getLocalPart() );
       element.setAttributeNode( node );
     } else {
@@ -475,13 +547,11 @@ public abstract class XmlFilterReader extends Reader {
     Level level = stack.peek();
     if( ( level.scopeConfig ) == null || ( level.scopeConfig.getSelectors().isEmpty() ) ) {
       value = filterAttribute( null, attribute.getName(), value, null );
-      node.setValue( value );
     } else {
-      UrlRewriteFilterPathDescriptor path = pickFirstMatchingPath( level );
+      UrlRewriteFilterPathDescriptor path = node == null ? pickFirstStreamedPath( level, name ) : pickFirstMatchingPath( level );
       if( path instanceof UrlRewriteFilterApplyDescriptor ) {
         String rule = ((UrlRewriteFilterApplyDescriptor)path).rule();
         value = filterAttribute( null, attribute.getName(), value, rule );
-        node.setValue( value );
       }
     }
 
@@ -497,13 +567,17 @@ public abstract class XmlFilterReader extends Reader {
     writer.write( "=\"" );
     writer.write( value );
     writer.write( "\"" );
-    element.removeAttributeNode( node );
+    if( node != null ) {
+      element.removeAttributeNode( node );
+    }
   }
 
   private void processCharacters( Characters event ) {
     Level level = stack.peek();
-    Node node = stack.peek().node;
-    if( event.isCData() ) {
+    Node node = level.node;
+    if( node == null ) {
+      level.hasText = true;
+    } else if( event.isCData() ) {
       node.appendChild( document.createCDATASection( event.getData() ) );
     } else {
       node.appendChild( document.createTextNode( event.getData() ) );
@@ -511,13 +585,14 @@ public abstract class XmlFilterReader extends Reader {
     if( !currentlyBuffering() ) {
       String value = event.getData();
       if( !event.isWhiteSpace() ) {
+        QName name = node == null ? level.name : extractQName( node );
         if( level.scopeConfig == null || level.scopeConfig.getSelectors().isEmpty() ) {
-          value = filterText( extractQName( node ), value, null );
+          value = filterText( name, value, null );
         } else {
-          UrlRewriteFilterPathDescriptor path = pickFirstMatchingPath( level );
+          UrlRewriteFilterPathDescriptor path = node == null ? pickFirstStreamedPath( level, null ) : pickFirstMatchingPath( level );
           if( path instanceof UrlRewriteFilterApplyDescriptor ) {
             String rule = ((UrlRewriteFilterApplyDescriptor)path).rule();
-            value = filterText( extractQName( node ), value, rule );
+            value = filterText( name, value, rule );
           }
         }
       }
@@ -572,6 +647,72 @@ public abstract class XmlFilterReader extends Reader {
     return match;
   }
 
+  private UrlRewriteFilterPathDescriptor pickFirstStreamedPath( Level level, QName attribute ) {
+    if( level.scopeConfig != null ) {
+      for( UrlRewriteFilterPathDescriptor selector : level.scopeConfig.getSelectors() ) {
+        if( matches( streamPaths.get( selector ), level, attribute ) ) {
+          return selector;
+        }
+      }
+    }
+    return null;
+  }
+
+  /*
+   * Whether the path selects one of the nodes the document mirror would contain: the elements
+   * enclosing the current event, whether they have text so far and the attribute being streamed.
+   */
+  private static boolean matches( XmlStreamPath path, Level level, QName attribute ) {
+    int base = path.isAbsolute() ? 0 : level.scopeDepth;
+    int depth = base + path.getStepCount();
+    Level element = level;
+    while( element.depth > depth ) {
+      element = element.parent;
+    }
+    if( element.depth != depth ) {
+      return false;
+    }
+    switch( path.getTarget() ) {
+      case TEXT:
+        if( !element.hasText ) {
+          return false;
+        }
+        break;
+      case ATTRIBUTE:
+        if( element.depth != level.depth || attribute == null || !path.matchesAttribute( attribute ) ) {
+          return false;
+        }
+        break;
+      default:
+        break;
+    }
+    for( Level step = element; step.depth > base; step = step.parent ) {
+      if( !path.matchesStep( step.depth - base - 1, step.name ) ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /*
+   * Compiles the selectors matched while streaming, returns null if one of them is not a simple path.
+   */
+  private static Map<UrlRewriteFilterPathDescriptor, XmlStreamPath> compileStreamPaths(
+      UrlRewriteFilterGroupDescriptor group, Map<UrlRewriteFilterPathDescriptor, XmlStreamPath> paths ) {
+    for( UrlRewriteFilterPathDescriptor selector : group.getSelectors() ) {
+      XmlStreamPath path = XmlStreamPath.compile( selector.path() );
+      if( path == null ) {
+        return null;
+      }
+      paths.put( selector, path );
+      if( selector instanceof UrlRewriteFilterScopeDescriptor
+          && compileStreamPaths( (UrlRewriteFilterScopeDescriptor)selector, paths ) == null ) {
+        return null;
+      }
+    }
+    return paths;
+  }
+
   private boolean currentlyBuffering() {
     return stack.peek().buffered;
   }
@@ -583,17 +724,26 @@ public abstract class XmlFilterReader extends Reader {
   }
 
   private static class Level {
+    private Level parent;
     private Node node;
     private UrlRewriteFilterGroupDescriptor scopeConfig;
     private Node scopeNode;
     private boolean buffered;
+    // Used when streaming without mirroring the document.
+    private QName name;
+    private int depth;
+    private int scopeDepth;
+    private boolean hasText;
 
     Level( Level parent, Node node, Node scopeNode, UrlRewriteFilterGroupDescriptor scopeConfig ) {
+      this.parent = parent;
       this.node = node;
       this.scopeConfig = scopeConfig;
       this.scopeNode = scopeNode;
       this.buffered = ( parent != null && parent.buffered ) ||
                       (scopeConfig instanceof UrlRewriteFilterBufferDescriptor);
+      this.depth = parent == null ? 0 : parent.depth + 1;
+      this.scopeDepth = parent == null ? 0 : parent.scopeDepth;
     }
   }
 
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.filter.rewrite.impl.xml;
+
+import javax.xml.namespace.QName;
+import java.util.regex.Pattern;
+
+/**
+ * A selector path in the subset of XPath that can be matched against the elements enclosing the
+ * current event of a streaming parser: absolute or relative location paths made of child element
+ * steps, by name or <code>*</code>, optionally ending with an attribute step or <code>text()</code>.
+ * Names without a prefix only match nodes without a namespace, as in XPath.
+ */
+class XmlStreamPath {
+
+  enum Target { ELEMENT, TEXT, ATTRIBUTE }
+
+  private static final Pattern NAME = Pattern.compile( "[A-Za-z_][A-Za-z0-9_.\\-]*" );
+  private static final String WILDCARD = "*";
+  private static final String TEXT = "text()";
+
+  private final boolean absolute;
+  /* The names of the element steps, null for a wildcard */
+  private final String[] steps;
+  private final Target target;
+  private final String attribute;
+
+  private XmlStreamPath( boolean absolute, String[] steps, Target target, String attribute ) {
+    this.absolute = absolute;
+    this.steps = steps;
+    this.target = target;
+    this.attribute = attribute;
+  }
+
+  /**
+   * @return the compiled path, or <code>null</code> if the path is not in the supported subset
+   */
+  static XmlStreamPath compile( String path ) {
+    if( path == null ) {
+      return null;
+    }
+    String expression = path.trim();
+    boolean absolute = expression.startsWith( "/" );
+    if( absolute ) {
+      expression = expression.substring( 1 );
+    }
+    if( expression.isEmpty() ) {
+      return absolute ? new XmlStreamPath( true, new String[ 0 ], Target.ELEMENT, null ) : null;
+    }
+    String[] parts = expression.split( "/", -1 );
+    String last = parts[ parts.length - 1 ];
+    Target target = Target.ELEMENT;
+    String attribute = null;
+    int count = parts.length;
+    if( TEXT.equals( last ) ) {
+      target = Target.TEXT;
+      count--;
+    } else if( last.startsWith( "@" ) ) {
+      attribute = last.substring( 1 );
+      if( !NAME.matcher( attribute ).matches() ) {
+        return null;
+      }
+      target = Target.ATTRIBUTE;
+      count--;
+    }
+    String[] steps = new String[ count ];
+    for( int i = 0; i < count; i++ ) {
+      if( !WILDCARD.equals( parts[ i ] ) ) {
+        if( !NAME.matcher( parts[ i ] ).matches() ) {
+          return null;
+        }
+        steps[ i ] = parts[ i ];
+      }
+    }
+    return new XmlStreamPath( absolute, steps, target, attribute );
+  }
+
+  boolean isAbsolute() {
+    return absolute;
+  }
+
+  int getStepCount() {
+    return steps.length;
+  }
+
+  Target getTarget() {
+    return target;
+  }
+
+  boolean matchesStep( int step, QName element ) {
+    return steps[ step ] == null || ( isLocal( element ) && steps[ step ].equals( element.getLocalPart() ) );
+  }
+
+  boolean matchesAttribute( QName name ) {
+    return isLocal( name ) && attribute.equals( name.getLocalPart() );
+  }
+
+  private static boolean isLocal( QName name ) {
+    return name.getNamespaceURI() == null || name.getNamespaceURI().isEmpty();
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.filter.rewrite.ext;
+
+import org.apache.knox.gateway.filter.rewrite.impl.UrlRewriteRuleProcessorHolder;
+import org.apache.knox.gateway.util.urltemplate.Matcher;
+import org.apache.knox.gateway.util.urltemplate.Parser;
+import org.apache.knox.gateway.util.urltemplate.Template;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ScopedMatcherTest {
+
+  private final List<String> consultedScopes = new ArrayList<>();
+
+  @Test
+  public void testOnlyRequestedAndGlobalScopesAreConsulted() throws Exception {
+    ScopedMatcher matcher = createMatcher();
+    for (int i = 0; i < 60; i++) {
+      add(matcher, "/service-" + i + "/**", "SERVICE" + i);
+    }
+    add(matcher, "/global/**", ScopedMatcher.GLOBAL_SCOPE);
+
+    assertEquals("SERVICE7", matcher.match(Parser.parseLiteral("/service-7/path"), "SERVICE7").getValue().getScope());
+    assertEquals(1, consultedScopes.size());
+
+    consultedScopes.clear();
+    assertEquals(ScopedMatcher.GLOBAL_SCOPE,
+        matcher.match(Parser.parseLiteral("/global/path"), "SERVICE7").getValue().getScope());
+    assertEquals(2, consultedScopes.size());
+
+    // Rules of other services never match
+    consultedScopes.clear();
+    assertNull(matcher.match(Parser.parseLiteral("/service-8/path"), "SERVICE7"));
+    assertEquals(2, consultedScopes.size());
+  }
+
+  @Test
+  public void testScopePrecedence() throws Exception {
+    ScopedMatcher matcher = createMatcher();
+    add(matcher, "/foo/**", null);
+    add(matcher, "/foo/**", "SERVICE1");
+    add(matcher, "/foo/**", ScopedMatcher.GLOBAL_SCOPE);
+    add(matcher, "/bar/**", null);
+    add(matcher, "/bar/**", "SERVICE2");
+
+    Template foo = Parser.parseLiteral("/foo/path");
+    assertEquals("SERVICE1", matcher.match(foo, "SERVICE1").getValue().getScope());
+    assertEquals(ScopedMatcher.GLOBAL_SCOPE, matcher.match(foo, "SERVICE2").getValue().getScope());
+    assertEquals(ScopedMatcher.GLOBAL_SCOPE, matcher.match(foo).getValue().getScope());
+
+    Template bar = Parser.parseLiteral("/bar/path");
+    assertNull(matcher.match(bar, "SERVICE1").getValue().getScope());
+    assertEquals("SERVICE2", matcher.match(bar, "SERVICE2").getValue().getScope());
+    assertNull(matcher.match(bar).getValue().getScope());
+
+    // Without scope information the rules of any scope may match
+    add(matcher, "/baz/**", "SERVICE2");
+    assertEquals("SERVICE2", matcher.match(Parser.parseLiteral("/baz/path")).getValue().getScope());
+    assertNull(matcher.match(Parser.parseLiteral("/baz/path"), "SERVICE1"));
+  }
+
+  private ScopedMatcher createMatcher() {
+    return new ScopedMatcher() {
+      @Override
+      protected Matcher<UrlRewriteRuleProcessorHolder> createMatcher() {
+        return new Matcher<UrlRewriteRuleProcessorHolder>() {
+          @Override
+          public Match match(Template input) {
+            Match match = super.match(input);
+            consultedScopes.add(match == null ? "" : match.getValue().getScope());
+            return match;
+          }
+        };
+      }
+    };
+  }
+
+  private static void add(ScopedMatcher matcher, String pattern, String scope) throws Exception {
+    matcher.add(Parser.parseTemplate(pattern), new UrlRewriteRuleProcessorHolder() {
+      @Override
+      public String getScope() {
+        return scope;
+      }
+    });
+  }
+}
@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.filter.rewrite.impl;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UrlRewriteCompressionTest {
+
+  @Test
+  public void testAccepts() {
+    assertTrue( UrlRewriteCompression.accepts( null, "gzip" ) );
+    assertTrue( UrlRewriteCompression.accepts( "gzip, deflate, br", "gzip" ) );
+    assertTrue( UrlRewriteCompression.accepts( "GZIP;q=0.5", "gzip" ) );
+    assertTrue( UrlRewriteCompression.accepts( "x-gzip", "gzip" ) );
+    assertTrue( UrlRewriteCompression.accepts( "br, *", "deflate" ) );
+    assertFalse( UrlRewriteCompression.accepts( "", "gzip" ) );
+    assertFalse( UrlRewriteCompression.accepts( "identity", "gzip" ) );
+    assertFalse( UrlRewriteCompression.accepts( "br", "gzip" ) );
+    assertFalse( UrlRewriteCompression.accepts( "gzip;q=0", "gzip" ) );
+    assertFalse( UrlRewriteCompression.accepts( "*, gzip;q=0.0", "gzip" ) );
+    assertFalse( UrlRewriteCompression.accepts( "*;q=0", "deflate" ) );
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.filter.rewrite.impl;
+
+import org.easymock.EasyMock;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class UrlRewriteResponseCacheTest {
+
+  @Test
+  public void testEntryCountIsBounded() {
+    UrlRewriteResponseCache cache = new UrlRewriteResponseCache( 1000, 2, 100 );
+    for( int i = 0; i < 10; i++ ) {
+      cache.put( "key-" + i, new UrlRewriteResponseCache.Entry( "\"" + i + "\"", null, "text/css", "", new byte[ 10 ] ) );
+    }
+    assertTrue( cache.size() <= 2 );
+  }
+
+  @Test
+  public void testSizeIsBounded() {
+    UrlRewriteResponseCache cache = new UrlRewriteResponseCache( 1000, 100, 1000 );
+    for( int i = 0; i < 10; i++ ) {
+      cache.put( "key-" + i, new UrlRewriteResponseCache.Entry( "\"" + i + "\"", null, "text/css", "", new byte[ 400 ] ) );
+    }
+    assertTrue( cache.size() <= 2 );
+  }
+
+  @Test
+  public void testKey() {
+    String key = UrlRewriteResponseCache.getKey( createRequest( "GET", null, "gateway.example.com" ), "filter" );
+    assertNotNull( key );
+    assertEquals( key, UrlRewriteResponseCache.getKey( createRequest( "GET", null, "gateway.example.com" ), "filter" ) );
+    assertNotEquals( key, UrlRewriteResponseCache.getKey( createRequest( "GET", null, "proxy.example.com" ), "filter" ) );
+    assertNotEquals( key, UrlRewriteResponseCache.getKey( createRequest( "GET", null, "gateway.example.com" ), "other-filter" ) );
+    assertNull( UrlRewriteResponseCache.getKey( createRequest( "POST", null, "gateway.example.com" ), "filter" ) );
+    assertNull( UrlRewriteResponseCache.getKey( createRequest( "GET", "\"v1\"", "gateway.example.com" ), "filter" ) );
+  }
+
+  private static HttpServletRequest createRequest( String method, String ifNoneMatch, String forwardedHost ) {
+    HttpServletRequest request = EasyMock.createNiceMock( HttpServletRequest.class );
+    EasyMock.expect( request.getMethod() ).andReturn( method ).anyTimes();
+    EasyMock.expect( request.getRequestURL() ).andAnswer( () -> new StringBuffer( "http://localhost:8443/gateway/sandbox/yarn/static/app.css" ) ).anyTimes();
+    EasyMock.expect( request.getHeader( "If-None-Match" ) ).andReturn( ifNoneMatch ).anyTimes();
+    EasyMock.expect( request.getHeader( "X-Forwarded-Host" ) ).andReturn( forwardedHost ).anyTimes();
+    EasyMock.replay( request );
+    return request;
+  }
+}
@@ -26,8 +26,12 @@ import org.junit.Test;
 
 import javax.servlet.FilterConfig;
 import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -41,8 +45,12 @@ import java.util.zip.GZIPOutputStream;
 import java.util.zip.InflaterInputStream;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.IsIterableContaining.hasItems;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class UrlRewriteResponseTest {
 
@@ -116,6 +124,33 @@ public class UrlRewriteResponseTest {
     assertThat( path, hasItems( new String[]{ "/mock-path" } ) );
   }
 
+  @Test
+  public void testResolvedParamsAreReused() throws Exception {
+    UrlRewriteProcessor rewriter = EasyMock.createNiceMock( UrlRewriteProcessor.class );
+
+    ServletContext context = EasyMock.createNiceMock( ServletContext.class );
+    EasyMock.expect( context.getAttribute( UrlRewriteServletContextListener.PROCESSOR_ATTRIBUTE_NAME ) ).andReturn( rewriter ).anyTimes();
+
+    FilterConfig config = EasyMock.createNiceMock( FilterConfig.class );
+    EasyMock.expect( config.getServletContext() ).andReturn( context ).anyTimes();
+
+    HttpServletRequest request = EasyMock.createNiceMock( HttpServletRequest.class );
+    EasyMock.expect( request.getScheme() ).andReturn( "mock-scheme" ).anyTimes();
+    EasyMock.expect( request.getLocalName() ).andReturn( "mock-host" ).anyTimes();
+    EasyMock.expect( request.getLocalPort() ).andReturn( 42 ).anyTimes();
+    // The context path is only needed once however many URLs are rewritten
+    EasyMock.expect( request.getContextPath() ).andReturn( "/mock-path" ).once();
+    HttpServletResponse response = EasyMock.createNiceMock( HttpServletResponse.class );
+
+    EasyMock.replay( rewriter, context, config, request, response );
+
+    UrlRewriteResponse rewriteResponse = new UrlRewriteResponse( config, request, response );
+    List<String> url = rewriteResponse.resolve( "gateway.url" );
+    assertThat( url, hasItems( new String[]{ "mock-scheme://mock-host:42/mock-path" } ) );
+    assertSame( url, rewriteResponse.resolve( "gateway.url" ) );
+    EasyMock.verify( request );
+  }
+
   @Test
   public void testStreamXmlUnicodeResponse() throws IOException {
     UrlRewriteProcessor rewriter = EasyMock.createNiceMock(UrlRewriteProcessor.class);
@@ -165,6 +200,154 @@ public class UrlRewriteResponseTest {
     testStreamResponse(content, rewriteResponse, "deflate");
   }
 
+  @Test
+  public void testParallelGzipResponse() throws IOException {
+    UrlRewriteProcessor rewriter = EasyMock.createNiceMock( UrlRewriteProcessor.class );
+    EasyMock.expect( rewriter.getConfig() ).andReturn( null ).anyTimes();
+
+    ServletContext context = EasyMock.createNiceMock( ServletContext.class );
+    EasyMock.expect( context.getAttribute( UrlRewriteServletContextListener.PROCESSOR_ATTRIBUTE_NAME ) ).andReturn( rewriter ).anyTimes();
+    EasyMock.expect( context.getAttribute( UrlRewriteCompression.ATTRIBUTE_NAME ) )
+        .andReturn( new UrlRewriteCompression( 1, 32 * 1024, 2 ) ).anyTimes();
+
+    FilterConfig config = EasyMock.createNiceMock( FilterConfig.class );
+    EasyMock.expect( config.getInitParameter( UrlRewriteServletFilter.RESPONSE_BODY_FILTER_PARAM ) ).andReturn( "test-filter" ).anyTimes();
+    EasyMock.expect( config.getServletContext() ).andReturn( context ).anyTimes();
+
+    HttpServletRequest request = EasyMock.createNiceMock( HttpServletRequest.class );
+    EasyMock.expect( request.getHeader( "Accept-Encoding" ) ).andReturn( "gzip, deflate" ).anyTimes();
+    HttpServletResponse response = EasyMock.createNiceMock( HttpServletResponse.class );
+    EasyMock.expect( response.getContentType() ).andReturn( "text/javascript" ).anyTimes();
+
+    EasyMock.replay( rewriter, context, config, request, response );
+
+    UrlRewriteResponse rewriteResponse = new UrlRewriteResponse( config, request, response );
+    StringBuilder content = new StringBuilder( 262144 );
+    for( int i = 0; i < 10000; i++ ) {
+      content.append( "content to test parallel gzip streaming " ).append( i ).append( '\n' );
+    }
+    testStreamResponse( content.toString(), rewriteResponse, "gzip" );
+  }
+
+  @Test
+  public void testResponseIsNotCompressedAgainForIdentityClient() throws IOException {
+    UrlRewriteProcessor rewriter = EasyMock.createNiceMock( UrlRewriteProcessor.class );
+    EasyMock.expect( rewriter.getConfig() ).andReturn( null ).anyTimes();
+
+    ServletContext context = EasyMock.createNiceMock( ServletContext.class );
+    EasyMock.expect( context.getAttribute( UrlRewriteServletContextListener.PROCESSOR_ATTRIBUTE_NAME ) ).andReturn( rewriter ).anyTimes();
+
+    FilterConfig config = EasyMock.createNiceMock( FilterConfig.class );
+    EasyMock.expect( config.getInitParameter( UrlRewriteServletFilter.RESPONSE_BODY_FILTER_PARAM ) ).andReturn( "test-filter" ).anyTimes();
+    EasyMock.expect( config.getServletContext() ).andReturn( context ).anyTimes();
+
+    HttpServletRequest request = EasyMock.createNiceMock( HttpServletRequest.class );
+    EasyMock.expect( request.getHeader( "Accept-Encoding" ) ).andReturn( "identity" ).anyTimes();
+    HttpServletResponse response = EasyMock.createNiceMock( HttpServletResponse.class );
+    EasyMock.expect( response.getContentType() ).andReturn( "text/javascript" ).anyTimes();
+    response.setHeader( "Content-Encoding", "gzip" );
+    EasyMock.expectLastCall();
+    response.setHeader( "Content-Encoding", null );
+    EasyMock.expectLastCall();
+
+    EasyMock.replay( rewriter, context, config, request, response );
+
+    UrlRewriteResponse rewriteResponse = new UrlRewriteResponse( config, request, response );
+    rewriteResponse.setHeader( "Content-Encoding", "gzip" );
+    String content = "var content = 'to test gzip streaming';\n";
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try( OutputStream output = new GZIPOutputStream( compressed ) ) {
+      output.write( content.getBytes( StandardCharsets.UTF_8 ) );
+    }
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    rewriteResponse.streamResponse( new ByteArrayInputStream( compressed.toByteArray() ), body );
+    assertThat( body.toString( StandardCharsets.UTF_8.name() ), is( content ) );
+    EasyMock.verify( response );
+  }
+
+  @Test
+  public void testResponseCache() throws IOException {
+    UrlRewriteProcessor rewriter = EasyMock.createNiceMock( UrlRewriteProcessor.class );
+    EasyMock.expect( rewriter.getConfig() ).andReturn( null ).anyTimes();
+
+    ServletContext context = EasyMock.createNiceMock( ServletContext.class );
+    EasyMock.expect( context.getAttribute( UrlRewriteServletContextListener.PROCESSOR_ATTRIBUTE_NAME ) ).andReturn( rewriter ).anyTimes();
+
+    FilterConfig config = EasyMock.createNiceMock( FilterConfig.class );
+    EasyMock.expect( config.getInitParameter( UrlRewriteServletFilter.RESPONSE_BODY_FILTER_PARAM ) ).andReturn( "test-filter" ).anyTimes();
+    EasyMock.expect( config.getServletContext() ).andReturn( context ).anyTimes();
+
+    HttpServletRequest request = EasyMock.createNiceMock( HttpServletRequest.class );
+    EasyMock.expect( request.getMethod() ).andReturn( "GET" ).anyTimes();
+    EasyMock.expect( request.getRequestURL() ).andAnswer( () -> new StringBuffer( "http://localhost:8443/gateway/sandbox/yarn/static/app.js" ) ).anyTimes();
+
+    HttpServletResponse response = EasyMock.createNiceMock( HttpServletResponse.class );
+    EasyMock.expect( response.getStatus() ).andReturn( HttpServletResponse.SC_OK ).anyTimes();
+    EasyMock.expect( response.getContentType() ).andReturn( "text/javascript" ).anyTimes();
+
+    ByteArrayOutputStream cachedBody = new ByteArrayOutputStream();
+    HttpServletResponse notModifiedResponse = EasyMock.createNiceMock( HttpServletResponse.class );
+    notModifiedResponse.setStatus( HttpServletResponse.SC_OK );
+    EasyMock.expectLastCall();
+    notModifiedResponse.setContentType( "text/javascript" );
+    EasyMock.expectLastCall();
+    EasyMock.expect( notModifiedResponse.getOutputStream() ).andReturn( new CapturingServletOutputStream( cachedBody ) ).anyTimes();
+
+    EasyMock.replay( rewriter, context, config, request, response, notModifiedResponse );
+
+    UrlRewriteResponseCache cache = new UrlRewriteResponseCache( 1024 * 1024, 16, 1024 );
+    String content = "var url = '/webhdfs/v1';";
+
+    UrlRewriteResponse rewriteResponse = new UrlRewriteResponse( config, request, response );
+    assertSame( request, rewriteResponse.useResponseCache( cache, request ) );
+    rewriteResponse.setHeader( "ETag", "\"v1\"" );
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    rewriteResponse.streamResponse( new ByteArrayInputStream( content.getBytes( StandardCharsets.UTF_8 ) ), body );
+    assertFalse( rewriteResponse.writeCachedResponse() );
+    assertThat( cache.size(), is( 1L ) );
+
+    // The next request asks the backend whether the rewritten body is still current
+    rewriteResponse = new UrlRewriteResponse( config, request, notModifiedResponse );
+    HttpServletRequest conditionalRequest = rewriteResponse.useResponseCache( cache, request );
+    assertThat( conditionalRequest.getHeader( "If-None-Match" ), is( "\"v1\"" ) );
+    assertThat( conditionalRequest.getHeader( "If-Modified-Since" ), nullValue() );
+    assertFalse( conditionalRequest.isAsyncSupported() );
+    rewriteResponse.setStatus( HttpServletResponse.SC_NOT_MODIFIED );
+    assertTrue( rewriteResponse.writeCachedResponse() );
+    assertThat( cachedBody.toString( StandardCharsets.UTF_8.name() ), is( body.toString( StandardCharsets.UTF_8.name() ) ) );
+    EasyMock.verify( notModifiedResponse );
+  }
+
+  @Test
+  public void testPrivateResponseIsNotCached() throws IOException {
+    UrlRewriteProcessor rewriter = EasyMock.createNiceMock( UrlRewriteProcessor.class );
+    EasyMock.expect( rewriter.getConfig() ).andReturn( null ).anyTimes();
+
+    ServletContext context = EasyMock.createNiceMock( ServletContext.class );
+    EasyMock.expect( context.getAttribute( UrlRewriteServletContextListener.PROCESSOR_ATTRIBUTE_NAME ) ).andReturn( rewriter ).anyTimes();
+
+    FilterConfig config = EasyMock.createNiceMock( FilterConfig.class );
+    EasyMock.expect( config.getServletContext() ).andReturn( context ).anyTimes();
+
+    HttpServletRequest request = EasyMock.createNiceMock( HttpServletRequest.class );
+    EasyMock.expect( request.getMethod() ).andReturn( "GET" ).anyTimes();
+    EasyMock.expect( request.getRequestURL() ).andAnswer( () -> new StringBuffer( "http://localhost:8443/gateway/sandbox/yarn/cluster" ) ).anyTimes();
+
+    HttpServletResponse response = EasyMock.createNiceMock( HttpServletResponse.class );
+    EasyMock.expect( response.getStatus() ).andReturn( HttpServletResponse.SC_OK ).anyTimes();
+    EasyMock.expect( response.getContentType() ).andReturn( "text/html" ).anyTimes();
+
+    EasyMock.replay( rewriter, context, config, request, response );
+
+    UrlRewriteResponseCache cache = new UrlRewriteResponseCache( 1024 * 1024, 16, 1024 );
+    UrlRewriteResponse rewriteResponse = new UrlRewriteResponse( config, request, response );
+    rewriteResponse.useResponseCache( cache, request );
+    rewriteResponse.setHeader( "ETag", "\"v1\"" );
+    rewriteResponse.addHeader( "Cache-Control", "private" );
+    rewriteResponse.streamResponse( new ByteArrayInputStream( "<html/>".getBytes( StandardCharsets.UTF_8 ) ), new ByteArrayOutputStream() );
+    assertThat( cache.size(), is( 0L ) );
+  }
+
   private void testStreamResponse(String content, UrlRewriteResponse rewriteResponse, String contentType) throws IOException {
     Path inputFile = Files.createTempFile("input", "test");
     Path outputFile = Files.createTempFile("output", "test");
@@ -192,4 +375,26 @@ public class UrlRewriteResponseTest {
       Files.delete(outputFile);
     }
   }
+
+  private static class CapturingServletOutputStream extends ServletOutputStream {
+    private final OutputStream output;
+
+    CapturingServletOutputStream( OutputStream output ) {
+      this.output = output;
+    }
+
+    @Override
+    public void write( int b ) throws IOException {
+      output.write( b );
+    }
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void setWriteListener( WriteListener writeListener ) {
+    }
+  }
 }
@@ -20,6 +20,7 @@ package org.apache.knox.gateway.filter.rewrite.impl.javascript;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Pattern;
@@ -115,4 +116,37 @@ public class JavaScriptFilterReaderTest {
         "}).error(network_error_handler(url));\n";
     assertThat( outputJs, is ( expectedOutputJs ) );
   }
+
+  @Test
+  public void testLongLine() throws IOException {
+    Map<String, Map<String, String>> rules = new HashMap<>();
+    rules.put( "test-rule", Collections.singletonMap( "/webhdfs/v1", "https://knoxhost:8443/webhdfs/v1" ) );
+    StringBuilder inputJs = new StringBuilder( 262144 );
+    StringBuilder expectedOutputJs = new StringBuilder( 524288 );
+    for( int i = 0; i < 10000; i++ ) {
+      inputJs.append( "f('/webhdfs/v1/" ).append( i ).append( "');" );
+      expectedOutputJs.append( "f('https://knoxhost:8443/webhdfs/v1/" ).append( i ).append( "');" );
+    }
+    inputJs.append( "\r\nf('/webhdfs/v1');\r\n" );
+    expectedOutputJs.append( "\nf('https://knoxhost:8443/webhdfs/v1');\n" );
+    UrlRewriteFilterContentDescriptor config = new UrlRewriteFilterContentDescriptorImpl();
+    config.addApply( "/webhdfs/v1", "test-rule" );
+    JavaScriptFilterReader filterReader = new MatchRuleJsFilterReader( new StringReader( inputJs.toString() ), rules, config );
+    String outputJs = new String( IOUtils.toCharArray( filterReader ) );
+    assertThat( outputJs, is ( expectedOutputJs.toString() ) );
+  }
+
+  @Test
+  public void testRewrittenValuesAreNotMatchedAgain() throws IOException {
+    Map<String, Map<String, String>> rules = new HashMap<>();
+    rules.put( "host-rule", Collections.singletonMap( "http://testhost:8088", "https://knoxhost:8443/gateway/yarn" ) );
+    rules.put( "path-rule", Collections.singletonMap( "/gateway/yarn", "/should/not/be/rewritten" ) );
+    String inputJs = "var url = 'http://testhost:8088/cluster/app';\n";
+    UrlRewriteFilterContentDescriptor config = new UrlRewriteFilterContentDescriptorImpl();
+    config.addApply( "http://testhost:8088", "host-rule" );
+    config.addApply( "/gateway/yarn", "path-rule" );
+    JavaScriptFilterReader filterReader = new MatchRuleJsFilterReader( new StringReader( inputJs ), rules, config );
+    String outputJs = new String( IOUtils.toCharArray( filterReader ) );
+    assertThat( outputJs, is ( "var url = 'https://knoxhost:8443/gateway/yarn/cluster/app';\n" ) );
+  }
 }
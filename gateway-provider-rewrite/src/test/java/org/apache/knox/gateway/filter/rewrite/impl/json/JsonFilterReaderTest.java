@@ -308,6 +308,50 @@ public class JsonFilterReaderTest {
     JsonAssert.with( output ).assertThat( "name<properties>[2].name<property>.name<property-value>", is( "value:test-rule<test-value-3>" ) );
   }
 
+  @Test
+  public void testStreamedArrayValues() throws IOException {
+    StringBuilder input = new StringBuilder( 65536 );
+    input.append( "{\"FileStatuses\":{\"FileStatus\":[" );
+    for( int i = 0; i < 1000; i++ ) {
+      if( i > 0 ) {
+        input.append( ',' );
+      }
+      input.append( "{\"pathSuffix\":\"file-" ).append( i ).append( "\",\"owner\":\"hdfs\",\"length\":" ).append( i ).append( '}' );
+    }
+    input.append( "]}}" );
+
+    UrlRewriteRulesDescriptor rulesConfig = UrlRewriteRulesDescriptorFactory.create();
+    UrlRewriteFilterDescriptor filterConfig = rulesConfig.addFilter( "filter-1" );
+    UrlRewriteFilterContentDescriptor contentConfig = filterConfig.addContent( "text/json" );
+    contentConfig.addApply( "$.name<FileStatuses>.name<FileStatus>[*].name<pathSuffix>", "test-rule" );
+
+    JsonFilterReader filter = new TestJsonFilterReader( new StringReader( input.toString() ), contentConfig );
+    String output = IOUtils.toString( filter );
+
+    JsonAssert.with( output ).assertThat( "name<FileStatuses>.name<FileStatus>[0].name<pathSuffix>", is( "value:test-rule<file-0>" ) );
+    JsonAssert.with( output ).assertThat( "name<FileStatuses>.name<FileStatus>[999].name<pathSuffix>", is( "value:test-rule<file-999>" ) );
+    JsonAssert.with( output ).assertThat( "name<FileStatuses>.name<FileStatus>[999].name<owner>", is( "value:null<hdfs>" ) );
+    JsonAssert.with( output ).assertThat( "name<FileStatuses>.name<FileStatus>[999].name<length>", is( 999 ) );
+  }
+
+  @Test
+  public void testBufferedArrayValues() throws IOException {
+    String input = "{\"apps\":[{\"id\":\"one\",\"urls\":[\"a\",\"b\"]},{\"id\":\"two\",\"urls\":[]}]}";
+
+    UrlRewriteRulesDescriptor rulesConfig = UrlRewriteRulesDescriptorFactory.create();
+    UrlRewriteFilterDescriptor filterConfig = rulesConfig.addFilter( "filter-1" );
+    UrlRewriteFilterContentDescriptor contentConfig = filterConfig.addContent( "text/json" );
+    UrlRewriteFilterBufferDescriptor bufferConfig = contentConfig.addBuffer( "$.name<apps>[*]" );
+    bufferConfig.addApply( "$.name<id>", "test-rule" );
+
+    JsonFilterReader filter = new TestJsonFilterReader( new StringReader( input ), contentConfig );
+    String output = IOUtils.toString( filter );
+
+    JsonAssert.with( output ).assertThat( "name<apps>[0].name<id>", is( "value:test-rule<one>" ) );
+    JsonAssert.with( output ).assertThat( "name<apps>[0].name<urls>", is( Arrays.asList( "a", "b" ) ) );
+    JsonAssert.with( output ).assertThat( "name<apps>[1].name<id>", is( "value:test-rule<two>" ) );
+  }
+
   @Test
   public void testInvalidConfigShouldThrowException() throws Exception {
     String input = "{\"test-name\":\"test-value\"}";
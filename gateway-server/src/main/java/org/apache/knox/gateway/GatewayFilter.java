@@ -33,6 +33,7 @@ import org.apache.knox.gateway.i18n.messages.MessagesFactory;
 import org.apache.knox.gateway.i18n.resources.ResourcesFactory;
 import org.apache.knox.gateway.topology.Topology;
 import org.apache.knox.gateway.util.ServletRequestUtils;
+import org.apache.knox.gateway.util.TemplateCacheUtils;
 import org.apache.knox.gateway.util.urltemplate.Matcher;
 import org.apache.knox.gateway.util.urltemplate.Parser;
 import org.apache.knox.gateway.util.urltemplate.Template;
@@ -86,6 +87,8 @@ public class GatewayFilter implements Filter {
   @Override
   public void init( FilterConfig filterConfig ) throws ServletException {
     this.config = filterConfig;
+    // All the chains have been added at deployment time.
+    chains.compile();
   }
 
   @Override
@@ -108,7 +111,7 @@ public class GatewayFilter implements Filter {
 
     Template pathWithQueryTemplate;
     try {
-      pathWithQueryTemplate = Parser.parseLiteral( requestPathWithQuery );
+      pathWithQueryTemplate = TemplateCacheUtils.parseLiteral( httpRequest, requestPathWithQuery );
     } catch( URISyntaxException e ) {
       throw new ServletException( e );
     }
@@ -130,7 +133,7 @@ public class GatewayFilter implements Filter {
         if (defaultServicePath != null) {
           try {
             String newPathWithQuery = defaultServicePath + "/" + pathWithQueryTemplate;
-            match = chains.match(Parser.parseLiteral(newPathWithQuery));
+            match = chains.match(TemplateCacheUtils.parseLiteral(httpRequest, newPathWithQuery));
             String origUrl = ((HttpServletRequest) servletRequest).getRequestURL().toString();
             String url = origUrl;
             if (path == null || "/".equals(path)) {
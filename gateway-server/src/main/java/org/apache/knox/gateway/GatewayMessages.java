@@ -713,4 +713,19 @@ public interface GatewayMessages {
 
   @Message(level = MessageLevel.ERROR, text = "Error while initiatalizing {0}: {1}")
   void errorInitializingService(String implementation, String error, @StackTrace(level = MessageLevel.DEBUG) Exception e);
+
+  @Message(level = MessageLevel.INFO, text = "Creating shared connection pool {0} with at most {1} connections and {2} connections per route")
+  void creatingSharedConnectionPool(String poolName, int maxTotal, int maxPerRoute);
+
+  @Message(level = MessageLevel.WARN, text = "Failed to evict idle connections of shared connection pool {0}: {1}")
+  void failedToEvictPooledConnections(String poolName, @StackTrace(level = MessageLevel.DEBUG) Exception e);
+
+  @Message(level = MessageLevel.INFO, text = "Pooling request body replay buffers in up to {0} bytes of direct memory")
+  void creatingReplayBufferPool(long maxSize);
+
+  @Message(level = MessageLevel.DEBUG, text = "Replay buffer pool exhausted, {0} of {1} bytes in use; allocating a {2} bytes buffer on the heap")
+  void replayBufferPoolExhausted(long used, long maxSize, int size);
+
+  @Message(level = MessageLevel.WARN, text = "HTTP/2 is enabled but no ALPN implementation is available, TLS connectors only support HTTP/1.1: {0}")
+  void http2AlpnNotAvailable(String reason);
 }
@@ -57,6 +57,10 @@ import org.apache.knox.gateway.util.Urls;
 import org.apache.knox.gateway.util.XmlUtils;
 import org.apache.knox.gateway.websockets.GatewayWebsocketHandler;
 import org.apache.log4j.PropertyConfigurator;
+import org.eclipse.jetty.alpn.server.ALPNServerConnectionFactory;
+import org.eclipse.jetty.http2.HTTP2Cipher;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory;
 import org.eclipse.jetty.server.ConnectionFactory;
 import org.eclipse.jetty.server.Connector;
 import org.eclipse.jetty.server.Handler;
@@ -66,6 +70,7 @@ import org.eclipse.jetty.server.NetworkConnector;
 import org.eclipse.jetty.server.SecureRequestCustomizer;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.SslConnectionFactory;
 import org.eclipse.jetty.server.handler.ContextHandlerCollection;
 import org.eclipse.jetty.server.handler.HandlerCollection;
 import org.eclipse.jetty.server.handler.RequestLogHandler;
@@ -445,7 +450,9 @@ public class GatewayServer {
       httpsConfig.addCustomizer( new SecureRequestCustomizer() );
       SSLService ssl = services.getService(ServiceType.SSL_SERVICE);
       SslContextFactory sslContextFactory = (SslContextFactory)ssl.buildSslContextFactory( config );
-      connector = new ServerConnector( server, sslContextFactory, new HttpConnectionFactory( httpsConfig ) );
+      connector = createSslConnector( server, config, httpsConfig, sslContextFactory );
+    } else if (config.isHttp2CleartextEnabled()) {
+      connector = createCleartextHttp2Connector( server, config, httpConfig );
     } else {
       connector = new ServerConnector( server );
     }
@@ -464,6 +471,40 @@ public class GatewayServer {
     return connector;
   }
 
+  /**
+   * Create a TLS connector that negotiates HTTP/2 through ALPN when enabled. If no ALPN
+   * implementation is available on this JVM the connector only speaks HTTP/1.1.
+   */
+  static ServerConnector createSslConnector(final Server server, final GatewayConfig config,
+      final HttpConfiguration httpsConfig, final SslContextFactory sslContextFactory) {
+    HttpConnectionFactory http1 = new HttpConnectionFactory( httpsConfig );
+    if (config.isHttp2Enabled()) {
+      try {
+        HTTP2ServerConnectionFactory h2 = new HTTP2ServerConnectionFactory( httpsConfig );
+        h2.setMaxConcurrentStreams( config.getHttp2MaxConcurrentStreams() );
+        ALPNServerConnectionFactory alpn = new ALPNServerConnectionFactory( h2.getProtocol(), http1.getProtocol() );
+        alpn.setDefaultProtocol( http1.getProtocol() );
+        // HTTP/2 blacklists many TLS 1.2 ciphers, so make sure an acceptable one is preferred
+        sslContextFactory.setCipherComparator( HTTP2Cipher.COMPARATOR );
+        return new ServerConnector( server, new SslConnectionFactory( sslContextFactory, alpn.getProtocol() ), alpn, h2, http1 );
+      } catch (IllegalStateException e) {
+        log.http2AlpnNotAvailable( e.getMessage() );
+      }
+    }
+    return new ServerConnector( server, sslContextFactory, http1 );
+  }
+
+  /**
+   * Create a plain text connector accepting both HTTP/1.1, including upgrades to h2c, and
+   * HTTP/2 with prior knowledge.
+   */
+  static ServerConnector createCleartextHttp2Connector(final Server server, final GatewayConfig config,
+      final HttpConfiguration httpConfig) {
+    HTTP2CServerConnectionFactory h2c = new HTTP2CServerConnectionFactory( httpConfig );
+    h2c.setMaxConcurrentStreams( config.getHttp2MaxConcurrentStreams() );
+    return new ServerConnector( server, new HttpConnectionFactory( httpConfig ), h2c );
+  }
+
   private static HandlerCollection createHandlers(
       final GatewayConfig config,
       final GatewayServices services,
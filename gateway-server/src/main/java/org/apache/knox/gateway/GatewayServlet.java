@@ -19,6 +19,7 @@ package org.apache.knox.gateway;
 
 import org.apache.knox.gateway.audit.api.Action;
 import org.apache.knox.gateway.audit.api.ActionOutcome;
+import org.apache.knox.gateway.audit.api.AuditContext;
 import org.apache.knox.gateway.audit.api.AuditService;
 import org.apache.knox.gateway.audit.api.AuditServiceFactory;
 import org.apache.knox.gateway.audit.api.Auditor;
@@ -35,6 +36,9 @@ import org.apache.knox.gateway.services.GatewayServices;
 import org.apache.knox.gateway.services.metrics.MetricsService;
 import org.apache.knox.gateway.util.ServletRequestUtils;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
@@ -44,6 +48,8 @@ import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.InputStream;
@@ -132,7 +138,11 @@ public class GatewayServlet implements Servlet, Filter {
       GatewayFilter f = filter;
       if( f != null ) {
         try {
-          f.doFilter( servletRequest, servletResponse, null );
+          ServletRequest request = servletRequest;
+          if( servletRequest.isAsyncSupported() && servletRequest instanceof HttpServletRequest ) {
+            request = new AuditedAsyncRequest( (HttpServletRequest)servletRequest, servletResponse );
+          }
+          f.doFilter( request, servletResponse, null );
         } catch( IOException | RuntimeException | ServletException e ) {
           LOG.failedToExecuteFilter( e );
           throw e;
@@ -140,7 +150,10 @@ public class GatewayServlet implements Servlet, Filter {
       } else {
         ((HttpServletResponse)servletResponse).setStatus( HttpServletResponse.SC_SERVICE_UNAVAILABLE );
       }
-      auditLog(servletRequest, servletResponse);
+      // An asynchronously processed request is audited once the exchange completes
+      if( !servletRequest.isAsyncStarted() ) {
+        auditLog(servletRequest, servletResponse);
+      }
     } finally {
       auditService.detachContext();
     }
@@ -187,6 +200,68 @@ public class GatewayServlet implements Servlet, Filter {
     auditor.audit(Action.ACCESS, requestUri, ResourceType.URI, actionOutcome, res.responseStatus(status));
   }
 
+  /*
+   * Registers the audit of the request as soon as async processing starts, before the
+   * dispatch can hand the exchange over to another thread which may complete it
+   */
+  private class AuditedAsyncRequest extends HttpServletRequestWrapper {
+    private final ServletResponse servletResponse;
+
+    AuditedAsyncRequest( HttpServletRequest request, ServletResponse servletResponse ) {
+      super( request );
+      this.servletResponse = servletResponse;
+    }
+
+    @Override
+    public AsyncContext startAsync() {
+      return audit( super.startAsync() );
+    }
+
+    @Override
+    public AsyncContext startAsync( ServletRequest servletRequest, ServletResponse servletResponse ) {
+      return audit( super.startAsync( servletRequest, servletResponse ) );
+    }
+
+    private AsyncContext audit( AsyncContext asyncContext ) {
+      asyncContext.addListener( new AuditAsyncListener( auditService.getContext(), getRequest(), servletResponse ) );
+      return asyncContext;
+    }
+  }
+
+  private class AuditAsyncListener implements AsyncListener {
+    private final AuditContext auditContext;
+    private final ServletRequest servletRequest;
+    private final ServletResponse servletResponse;
+
+    AuditAsyncListener( AuditContext auditContext, ServletRequest servletRequest, ServletResponse servletResponse ) {
+      this.auditContext = auditContext;
+      this.servletRequest = servletRequest;
+      this.servletResponse = servletResponse;
+    }
+
+    @Override
+    public void onComplete( AsyncEvent event ) {
+      auditService.attachContext( auditContext );
+      try {
+        auditLog( servletRequest, servletResponse );
+      } finally {
+        auditService.detachContext();
+      }
+    }
+
+    @Override
+    public void onTimeout( AsyncEvent event ) {
+    }
+
+    @Override
+    public void onError( AsyncEvent event ) {
+    }
+
+    @Override
+    public void onStartAsync( AsyncEvent event ) {
+    }
+  }
+
   @Override
   public String getServletInfo() {
     return res.gatewayServletInfo();
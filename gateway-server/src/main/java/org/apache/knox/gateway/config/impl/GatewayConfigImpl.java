@@ -260,11 +260,23 @@ public class GatewayConfigImpl extends Configuration implements GatewayConfig {
   private static final String KNOX_TOKEN_EVICTION_INTERVAL = GATEWAY_CONFIG_FILE_PREFIX + ".knox.token.eviction.interval";
   private static final String KNOX_TOKEN_EVICTION_GRACE_PERIOD = GATEWAY_CONFIG_FILE_PREFIX + ".knox.token.eviction.grace.period";
   private static final String KNOX_TOKEN_ALIAS_PERSISTENCE_INTERVAL = GATEWAY_CONFIG_FILE_PREFIX + ".knox.token.state.alias.persistence.interval";
+  private static final String KNOX_TOKEN_STATE_LOG_SYNC_INTERVAL = GATEWAY_CONFIG_FILE_PREFIX + ".knox.token.state.log.sync.interval";
+  private static final String KNOX_TOKEN_STATE_ZOOKEEPER_LOOKUP_TIMEOUT = GATEWAY_CONFIG_FILE_PREFIX + ".knox.token.state.zookeeper.lookup.timeout";
+  private static final String KNOX_TOKEN_STATE_JDBC_BATCH_LATENCY = GATEWAY_CONFIG_FILE_PREFIX + ".knox.token.state.jdbc.batch.latency";
+  private static final String KNOX_TOKEN_STATE_JDBC_QUEUE_SIZE = GATEWAY_CONFIG_FILE_PREFIX + ".knox.token.state.jdbc.queue.size";
+  private static final String KNOX_TOKEN_STATE_JDBC_CACHE_SIZE = GATEWAY_CONFIG_FILE_PREFIX + ".knox.token.state.jdbc.cache.size";
+  private static final String KNOX_TOKEN_STATE_JDBC_CACHE_TTL = GATEWAY_CONFIG_FILE_PREFIX + ".knox.token.state.jdbc.cache.ttl";
   private static final String KNOX_TOKEN_PERMISSIVE_VALIDATION_ENABLED = GATEWAY_CONFIG_FILE_PREFIX + ".knox.token.permissive.validation";
   private static final String KNOX_TOKEN_HASH_ALGORITHM = GATEWAY_CONFIG_FILE_PREFIX + ".knox.token.hash.algorithm";
   private static final long KNOX_TOKEN_EVICTION_INTERVAL_DEFAULT = TimeUnit.MINUTES.toSeconds(5);
   private static final long KNOX_TOKEN_EVICTION_GRACE_PERIOD_DEFAULT = TimeUnit.HOURS.toSeconds(24);
   private static final long KNOX_TOKEN_ALIAS_PERSISTENCE_INTERVAL_DEFAULT = TimeUnit.SECONDS.toSeconds(15);
+  private static final long KNOX_TOKEN_STATE_LOG_SYNC_INTERVAL_DEFAULT = 1;
+  private static final long KNOX_TOKEN_STATE_ZOOKEEPER_LOOKUP_TIMEOUT_DEFAULT = 3000;
+  private static final long KNOX_TOKEN_STATE_JDBC_BATCH_LATENCY_DEFAULT = 50;
+  private static final int KNOX_TOKEN_STATE_JDBC_QUEUE_SIZE_DEFAULT = 10000;
+  private static final long KNOX_TOKEN_STATE_JDBC_CACHE_SIZE_DEFAULT = 100000;
+  private static final long KNOX_TOKEN_STATE_JDBC_CACHE_TTL_DEFAULT = TimeUnit.SECONDS.toMillis(5);
   private static final boolean KNOX_TOKEN_PERMISSIVE_VALIDATION_ENABLED_DEFAULT = false;
 
   private static final String KNOX_HOMEPAGE_PROFILE_PREFIX =  "knox.homepage.profile.";
@@ -283,6 +295,53 @@ public class GatewayConfigImpl extends Configuration implements GatewayConfig {
   private static final String GATEWAY_DATABASE_SSL_ENABLED =  GATEWAY_CONFIG_FILE_PREFIX + ".database.ssl.enabled";
   private static final String GATEWAY_DATABASE_VERIFY_SERVER_CERT =  GATEWAY_CONFIG_FILE_PREFIX + ".database.ssl.verify.server.cert";
   private static final String GATEWAY_DATABASE_TRUSTSTORE_FILE =  GATEWAY_CONFIG_FILE_PREFIX + ".database.ssl.truststore.file";
+  private static final String GATEWAY_DATABASE_POOL_MAX_SIZE =  GATEWAY_CONFIG_FILE_PREFIX + ".database.pool.max.size";
+  private static final String GATEWAY_DATABASE_POOL_CONNECTION_TIMEOUT =  GATEWAY_CONFIG_FILE_PREFIX + ".database.pool.connection.timeout";
+  private static final int GATEWAY_DATABASE_POOL_MAX_SIZE_DEFAULT = 10;
+  private static final long GATEWAY_DATABASE_POOL_CONNECTION_TIMEOUT_DEFAULT = TimeUnit.SECONDS.toMillis(30);
+
+  private static final String GATEWAY_SERVLET_ASYNC_SUPPORTED = GATEWAY_CONFIG_FILE_PREFIX + ".servlet.async.supported";
+  private static final boolean GATEWAY_SERVLET_ASYNC_SUPPORTED_DEFAULT = false;
+  private static final String GATEWAY_SERVLET_ASYNC_TIMEOUT = GATEWAY_CONFIG_FILE_PREFIX + ".servlet.async.timeout";
+  private static final long GATEWAY_SERVLET_ASYNC_TIMEOUT_DEFAULT = TimeUnit.MINUTES.toMillis(10);
+
+  private static final String HTTP_CLIENT_CONNECTION_POOL_ENABLED = GATEWAY_CONFIG_FILE_PREFIX + ".httpclient.connectionPool.enabled";
+  private static final boolean HTTP_CLIENT_CONNECTION_POOL_ENABLED_DEFAULT = false;
+  private static final String HTTP_CLIENT_CONNECTION_POOL_MAX_TOTAL = GATEWAY_CONFIG_FILE_PREFIX + ".httpclient.connectionPool.maxTotal";
+  private static final int HTTP_CLIENT_CONNECTION_POOL_MAX_TOTAL_DEFAULT = 1024;
+  private static final String HTTP_CLIENT_CONNECTION_POOL_MAX_PER_ROUTE = GATEWAY_CONFIG_FILE_PREFIX + ".httpclient.connectionPool.maxPerRoute";
+  private static final int HTTP_CLIENT_CONNECTION_POOL_MAX_PER_ROUTE_DEFAULT = 64;
+  private static final String HTTP_CLIENT_CONNECTION_POOL_VALIDATE_AFTER_INACTIVITY = GATEWAY_CONFIG_FILE_PREFIX + ".httpclient.connectionPool.validateAfterInactivity";
+  private static final int HTTP_CLIENT_CONNECTION_POOL_VALIDATE_AFTER_INACTIVITY_DEFAULT = 2000;
+  private static final String HTTP_CLIENT_CONNECTION_POOL_IDLE_TIMEOUT = GATEWAY_CONFIG_FILE_PREFIX + ".httpclient.connectionPool.idleTimeout";
+  private static final long HTTP_CLIENT_CONNECTION_POOL_IDLE_TIMEOUT_DEFAULT = TimeUnit.SECONDS.toMillis(60);
+  private static final String HTTP_CLIENT_CONNECTION_POOL_EVICTION_INTERVAL = GATEWAY_CONFIG_FILE_PREFIX + ".httpclient.connectionPool.evictionInterval";
+  private static final long HTTP_CLIENT_CONNECTION_POOL_EVICTION_INTERVAL_DEFAULT = TimeUnit.SECONDS.toMillis(30);
+
+  private static final String HTTP2_ENABLED = GATEWAY_CONFIG_FILE_PREFIX + ".http2.enabled";
+  private static final boolean HTTP2_ENABLED_DEFAULT = false;
+  private static final String HTTP2_CLEARTEXT_ENABLED = GATEWAY_CONFIG_FILE_PREFIX + ".http2.cleartext.enabled";
+  private static final boolean HTTP2_CLEARTEXT_ENABLED_DEFAULT = false;
+  private static final String HTTP2_MAX_CONCURRENT_STREAMS = GATEWAY_CONFIG_FILE_PREFIX + ".http2.maxConcurrentStreams";
+  private static final int HTTP2_MAX_CONCURRENT_STREAMS_DEFAULT = 128;
+
+  private static final String HTTP_CLIENT_REPLAY_BUFFER_POOL_MAX_SIZE = GATEWAY_CONFIG_FILE_PREFIX + ".httpclient.replayBufferPool.maxSize";
+  private static final long HTTP_CLIENT_REPLAY_BUFFER_POOL_MAX_SIZE_DEFAULT = 64L * 1024 * 1024;
+
+  private static final String REWRITE_RESPONSE_CACHE_ENABLED = GATEWAY_CONFIG_FILE_PREFIX + ".rewrite.responseCache.enabled";
+  private static final boolean REWRITE_RESPONSE_CACHE_ENABLED_DEFAULT = false;
+  private static final String REWRITE_RESPONSE_CACHE_MAX_SIZE = GATEWAY_CONFIG_FILE_PREFIX + ".rewrite.responseCache.maxSize";
+  private static final long REWRITE_RESPONSE_CACHE_MAX_SIZE_DEFAULT = 64L * 1024 * 1024;
+  private static final String REWRITE_RESPONSE_CACHE_MAX_ENTRIES = GATEWAY_CONFIG_FILE_PREFIX + ".rewrite.responseCache.maxEntries";
+  private static final int REWRITE_RESPONSE_CACHE_MAX_ENTRIES_DEFAULT = 1024;
+  private static final String REWRITE_RESPONSE_CACHE_MAX_ENTRY_SIZE = GATEWAY_CONFIG_FILE_PREFIX + ".rewrite.responseCache.maxEntrySize";
+  private static final int REWRITE_RESPONSE_CACHE_MAX_ENTRY_SIZE_DEFAULT = 4 * 1024 * 1024;
+  private static final String REWRITE_COMPRESSION_LEVEL = GATEWAY_CONFIG_FILE_PREFIX + ".rewrite.compression.level";
+  private static final int REWRITE_COMPRESSION_LEVEL_DEFAULT = -1;
+  private static final String REWRITE_COMPRESSION_BLOCK_SIZE = GATEWAY_CONFIG_FILE_PREFIX + ".rewrite.compression.blockSize";
+  private static final int REWRITE_COMPRESSION_BLOCK_SIZE_DEFAULT = 128 * 1024;
+  private static final String REWRITE_COMPRESSION_THREADS = GATEWAY_CONFIG_FILE_PREFIX + ".rewrite.compression.threads";
+  private static final int REWRITE_COMPRESSION_THREADS_DEFAULT = 0;
 
   public GatewayConfigImpl() {
     init();
@@ -1180,6 +1239,36 @@ public class GatewayConfigImpl extends Configuration implements GatewayConfig {
     return getLong(KNOX_TOKEN_ALIAS_PERSISTENCE_INTERVAL, KNOX_TOKEN_ALIAS_PERSISTENCE_INTERVAL_DEFAULT);
   }
 
+  @Override
+  public long getKnoxTokenStateLogSyncInterval() {
+    return getLong(KNOX_TOKEN_STATE_LOG_SYNC_INTERVAL, KNOX_TOKEN_STATE_LOG_SYNC_INTERVAL_DEFAULT);
+  }
+
+  @Override
+  public long getKnoxTokenStateZookeeperLookupTimeout() {
+    return getLong(KNOX_TOKEN_STATE_ZOOKEEPER_LOOKUP_TIMEOUT, KNOX_TOKEN_STATE_ZOOKEEPER_LOOKUP_TIMEOUT_DEFAULT);
+  }
+
+  @Override
+  public long getKnoxTokenStateJdbcBatchLatency() {
+    return getLong(KNOX_TOKEN_STATE_JDBC_BATCH_LATENCY, KNOX_TOKEN_STATE_JDBC_BATCH_LATENCY_DEFAULT);
+  }
+
+  @Override
+  public int getKnoxTokenStateJdbcQueueSize() {
+    return getInt(KNOX_TOKEN_STATE_JDBC_QUEUE_SIZE, KNOX_TOKEN_STATE_JDBC_QUEUE_SIZE_DEFAULT);
+  }
+
+  @Override
+  public long getKnoxTokenStateJdbcCacheSize() {
+    return getLong(KNOX_TOKEN_STATE_JDBC_CACHE_SIZE, KNOX_TOKEN_STATE_JDBC_CACHE_SIZE_DEFAULT);
+  }
+
+  @Override
+  public long getKnoxTokenStateJdbcCacheTtl() {
+    return getLong(KNOX_TOKEN_STATE_JDBC_CACHE_TTL, KNOX_TOKEN_STATE_JDBC_CACHE_TTL_DEFAULT);
+  }
+
   @Override
   public String getKnoxTokenHashAlgorithm() {
     return get(KNOX_TOKEN_HASH_ALGORITHM, HmacAlgorithms.HMAC_SHA_256.getName());
@@ -1290,4 +1379,109 @@ public class GatewayConfigImpl extends Configuration implements GatewayConfig {
     return get(GATEWAY_DATABASE_TRUSTSTORE_FILE);
   }
 
+  @Override
+  public int getDatabasePoolMaxSize() {
+    return getInt(GATEWAY_DATABASE_POOL_MAX_SIZE, GATEWAY_DATABASE_POOL_MAX_SIZE_DEFAULT);
+  }
+
+  @Override
+  public long getDatabasePoolConnectionTimeout() {
+    return getLong(GATEWAY_DATABASE_POOL_CONNECTION_TIMEOUT, GATEWAY_DATABASE_POOL_CONNECTION_TIMEOUT_DEFAULT);
+  }
+
+  @Override
+  public boolean isAsyncSupported() {
+    return getBoolean(GATEWAY_SERVLET_ASYNC_SUPPORTED, GATEWAY_SERVLET_ASYNC_SUPPORTED_DEFAULT);
+  }
+
+  @Override
+  public long getAsyncDispatchTimeout() {
+    return getLong(GATEWAY_SERVLET_ASYNC_TIMEOUT, GATEWAY_SERVLET_ASYNC_TIMEOUT_DEFAULT);
+  }
+
+  @Override
+  public boolean isHttpClientConnectionPoolEnabled() {
+    return getBoolean(HTTP_CLIENT_CONNECTION_POOL_ENABLED, HTTP_CLIENT_CONNECTION_POOL_ENABLED_DEFAULT);
+  }
+
+  @Override
+  public int getHttpClientConnectionPoolMaxTotal() {
+    return getInt(HTTP_CLIENT_CONNECTION_POOL_MAX_TOTAL, HTTP_CLIENT_CONNECTION_POOL_MAX_TOTAL_DEFAULT);
+  }
+
+  @Override
+  public int getHttpClientConnectionPoolMaxPerRoute() {
+    return getInt(HTTP_CLIENT_CONNECTION_POOL_MAX_PER_ROUTE, HTTP_CLIENT_CONNECTION_POOL_MAX_PER_ROUTE_DEFAULT);
+  }
+
+  @Override
+  public int getHttpClientConnectionPoolValidateAfterInactivity() {
+    return getInt(HTTP_CLIENT_CONNECTION_POOL_VALIDATE_AFTER_INACTIVITY, HTTP_CLIENT_CONNECTION_POOL_VALIDATE_AFTER_INACTIVITY_DEFAULT);
+  }
+
+  @Override
+  public long getHttpClientConnectionPoolIdleTimeout() {
+    return getLong(HTTP_CLIENT_CONNECTION_POOL_IDLE_TIMEOUT, HTTP_CLIENT_CONNECTION_POOL_IDLE_TIMEOUT_DEFAULT);
+  }
+
+  @Override
+  public long getHttpClientConnectionPoolEvictionInterval() {
+    return getLong(HTTP_CLIENT_CONNECTION_POOL_EVICTION_INTERVAL, HTTP_CLIENT_CONNECTION_POOL_EVICTION_INTERVAL_DEFAULT);
+  }
+
+  @Override
+  public boolean isHttp2Enabled() {
+    return getBoolean(HTTP2_ENABLED, HTTP2_ENABLED_DEFAULT);
+  }
+
+  @Override
+  public boolean isHttp2CleartextEnabled() {
+    return getBoolean(HTTP2_CLEARTEXT_ENABLED, HTTP2_CLEARTEXT_ENABLED_DEFAULT);
+  }
+
+  @Override
+  public int getHttp2MaxConcurrentStreams() {
+    return getInt(HTTP2_MAX_CONCURRENT_STREAMS, HTTP2_MAX_CONCURRENT_STREAMS_DEFAULT);
+  }
+
+  @Override
+  public long getHttpClientReplayBufferPoolMaxSize() {
+    return getLong(HTTP_CLIENT_REPLAY_BUFFER_POOL_MAX_SIZE, HTTP_CLIENT_REPLAY_BUFFER_POOL_MAX_SIZE_DEFAULT);
+  }
+
+  @Override
+  public boolean isRewriteResponseCacheEnabled() {
+    return getBoolean(REWRITE_RESPONSE_CACHE_ENABLED, REWRITE_RESPONSE_CACHE_ENABLED_DEFAULT);
+  }
+
+  @Override
+  public long getRewriteResponseCacheMaxSize() {
+    return getLong(REWRITE_RESPONSE_CACHE_MAX_SIZE, REWRITE_RESPONSE_CACHE_MAX_SIZE_DEFAULT);
+  }
+
+  @Override
+  public int getRewriteResponseCacheMaxEntries() {
+    return getInt(REWRITE_RESPONSE_CACHE_MAX_ENTRIES, REWRITE_RESPONSE_CACHE_MAX_ENTRIES_DEFAULT);
+  }
+
+  @Override
+  public int getRewriteResponseCacheMaxEntrySize() {
+    return getInt(REWRITE_RESPONSE_CACHE_MAX_ENTRY_SIZE, REWRITE_RESPONSE_CACHE_MAX_ENTRY_SIZE_DEFAULT);
+  }
+
+  @Override
+  public int getRewriteCompressionLevel() {
+    return getInt(REWRITE_COMPRESSION_LEVEL, REWRITE_COMPRESSION_LEVEL_DEFAULT);
+  }
+
+  @Override
+  public int getRewriteCompressionBlockSize() {
+    return getInt(REWRITE_COMPRESSION_BLOCK_SIZE, REWRITE_COMPRESSION_BLOCK_SIZE_DEFAULT);
+  }
+
+  @Override
+  public int getRewriteCompressionThreads() {
+    return getInt(REWRITE_COMPRESSION_THREADS, REWRITE_COMPRESSION_THREADS_DEFAULT);
+  }
+
 }
@@ -369,7 +369,8 @@ public abstract class DeploymentFactory {
     String topoName = context.getTopology().getName();
     if( applications == null ) {
       String servletName = topoName + SERVLET_NAME_SUFFIX;
-      wad.createServlet().servletName( servletName ).servletClass( GatewayServlet.class.getName() );
+      wad.createServlet().servletName( servletName ).servletClass( GatewayServlet.class.getName() )
+          .asyncSupported( context.getGatewayConfig().isAsyncSupported() );
       wad.createServletMapping().servletName( servletName ).urlPattern( "/*" );
     } else {
       String filterName = topoName + FILTER_NAME_SUFFIX;
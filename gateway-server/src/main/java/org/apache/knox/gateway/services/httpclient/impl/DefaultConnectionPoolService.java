@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.services.httpclient.impl;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.knox.gateway.GatewayMessages;
+import org.apache.knox.gateway.config.GatewayConfig;
+import org.apache.knox.gateway.i18n.messages.MessagesFactory;
+import org.apache.knox.gateway.services.ServiceLifecycleException;
+import org.apache.knox.gateway.services.httpclient.ConnectionPoolService;
+import org.apache.knox.gateway.services.metrics.impl.DefaultMetricsService;
+import org.apache.knox.gateway.util.ExecutorServiceUtils;
+
+import javax.net.ssl.SSLContext;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Keeps one {@link PoolingHttpClientConnectionManager} per pool name for the lifetime of the gateway.
+ * Connections are pooled per backend route, so every dispatch pointing at the same backend shares
+ * the same keep-alive connections regardless of the topology it was deployed with.
+ */
+public class DefaultConnectionPoolService implements ConnectionPoolService {
+  private static final GatewayMessages LOG = MessagesFactory.get(GatewayMessages.class);
+
+  static final String METRICS_PREFIX = "connection-pool";
+
+  private final Map<String, PoolingHttpClientConnectionManager> pools = new ConcurrentHashMap<>();
+  private final Set<String> registeredGauges = ConcurrentHashMap.newKeySet();
+
+  private boolean enabled;
+  private boolean metricsEnabled;
+  private int maxTotal;
+  private int maxPerRoute;
+  private int validateAfterInactivity;
+  private long idleTimeout;
+  private long evictionInterval;
+  private ScheduledExecutorService evictionScheduler;
+
+  @Override
+  public void init(GatewayConfig config, Map<String, String> options) throws ServiceLifecycleException {
+    enabled = config.isHttpClientConnectionPoolEnabled();
+    metricsEnabled = config.isMetricsEnabled();
+    maxTotal = config.getHttpClientConnectionPoolMaxTotal();
+    maxPerRoute = config.getHttpClientConnectionPoolMaxPerRoute();
+    validateAfterInactivity = config.getHttpClientConnectionPoolValidateAfterInactivity();
+    idleTimeout = config.getHttpClientConnectionPoolIdleTimeout();
+    evictionInterval = config.getHttpClientConnectionPoolEvictionInterval();
+  }
+
+  @Override
+  public void start() throws ServiceLifecycleException {
+    if (enabled && evictionInterval > 0) {
+      evictionScheduler = Executors.newSingleThreadScheduledExecutor(new BasicThreadFactory.Builder()
+          .namingPattern("ConnectionPoolEviction-%d").daemon(true).build());
+      evictionScheduler.scheduleAtFixedRate(this::evictConnections, evictionInterval, evictionInterval, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @Override
+  public void stop() throws ServiceLifecycleException {
+    if (evictionScheduler != null) {
+      ExecutorServiceUtils.shutdownAndAwaitTermination(evictionScheduler, 10, TimeUnit.SECONDS);
+    }
+    for (PoolingHttpClientConnectionManager pool : pools.values()) {
+      pool.shutdown();
+    }
+    pools.clear();
+  }
+
+  @Override
+  public HttpClientConnectionManager getConnectionManager(String poolName, SSLContext sslContext) {
+    return pools.computeIfAbsent(poolName, name -> createPool(name, sslContext));
+  }
+
+  @Override
+  public Map<HttpRoute, PoolStats> getRouteStats(String poolName) {
+    final PoolingHttpClientConnectionManager pool = pools.get(poolName);
+    if (pool == null) {
+      return Collections.emptyMap();
+    }
+    final Map<HttpRoute, PoolStats> stats = new LinkedHashMap<>();
+    for (HttpRoute route : pool.getRoutes()) {
+      stats.put(route, pool.getStats(route));
+    }
+    return stats;
+  }
+
+  @Override
+  public PoolStats getTotalStats(String poolName) {
+    final PoolingHttpClientConnectionManager pool = pools.get(poolName);
+    return pool == null ? null : pool.getTotalStats();
+  }
+
+  private PoolingHttpClientConnectionManager createPool(String poolName, SSLContext sslContext) {
+    final Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+        .register("http", PlainConnectionSocketFactory.getSocketFactory())
+        .register("https", sslContext == null ? SSLConnectionSocketFactory.getSocketFactory() : new SSLConnectionSocketFactory(sslContext))
+        .build();
+    final PoolingHttpClientConnectionManager pool = new PoolingHttpClientConnectionManager(socketFactoryRegistry);
+    pool.setMaxTotal(maxTotal);
+    pool.setDefaultMaxPerRoute(maxPerRoute);
+    pool.setValidateAfterInactivity(validateAfterInactivity);
+    LOG.creatingSharedConnectionPool(poolName, maxTotal, maxPerRoute);
+    if (metricsEnabled) {
+      registerGauges(MetricRegistry.name(METRICS_PREFIX, poolName), pool::getTotalStats);
+    }
+    return pool;
+  }
+
+  /*
+   * Closes expired and idle connections of every pool. Routes that showed up since the previous
+   * run get their gauges registered here, since the pool does not notify about new routes.
+   */
+  void evictConnections() {
+    for (Map.Entry<String, PoolingHttpClientConnectionManager> entry : pools.entrySet()) {
+      final PoolingHttpClientConnectionManager pool = entry.getValue();
+      try {
+        pool.closeExpiredConnections();
+        if (idleTimeout > 0) {
+          pool.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+        }
+        if (metricsEnabled) {
+          for (HttpRoute route : pool.getRoutes()) {
+            registerGauges(MetricRegistry.name(METRICS_PREFIX, entry.getKey(), route.getTargetHost().toURI()),
+                () -> pool.getStats(route));
+          }
+        }
+      } catch (Exception e) {
+        LOG.failedToEvictPooledConnections(entry.getKey(), e);
+      }
+    }
+  }
+
+  private void registerGauges(String name, Supplier<PoolStats> stats) {
+    if (registeredGauges.add(name)) {
+      final MetricRegistry registry = DefaultMetricsService.getMetricRegistry();
+      registry.register(MetricRegistry.name(name, "leased"), (Gauge<Integer>) () -> stats.get().getLeased());
+      registry.register(MetricRegistry.name(name, "available"), (Gauge<Integer>) () -> stats.get().getAvailable());
+      registry.register(MetricRegistry.name(name, "pending"), (Gauge<Integer>) () -> stats.get().getPending());
+      registry.register(MetricRegistry.name(name, "max"), (Gauge<Integer>) () -> stats.get().getMax());
+    }
+  }
+}
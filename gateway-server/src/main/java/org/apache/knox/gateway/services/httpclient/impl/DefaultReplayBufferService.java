@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.services.httpclient.impl;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.apache.knox.gateway.GatewayMessages;
+import org.apache.knox.gateway.config.GatewayConfig;
+import org.apache.knox.gateway.i18n.messages.MessagesFactory;
+import org.apache.knox.gateway.services.ServiceLifecycleException;
+import org.apache.knox.gateway.services.httpclient.ReplayBufferService;
+import org.apache.knox.gateway.services.metrics.impl.DefaultMetricsService;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pools direct buffers in power of two size classes, from 4 KB up to 1 GB.
+ * <p>
+ * The pool accounts for every buffer it allocated, whether in use or idle, against the
+ * configured maximum size. When a buffer of a size class without idle buffers is needed
+ * and the limit is reached, idle buffers of the other classes are dropped to make room;
+ * if that is not enough no buffer is returned and the caller falls back to the heap.
+ */
+public class DefaultReplayBufferService implements ReplayBufferService {
+  private static final GatewayMessages LOG = MessagesFactory.get(GatewayMessages.class);
+
+  static final String METRICS_PREFIX = "replay-buffer-pool";
+  static final int MIN_SIZE_CLASS_SHIFT = 12;
+  static final int MAX_SIZE_CLASS_SHIFT = 30;
+
+  private final List<Deque<ByteBuffer>> idleBuffers = new ArrayList<>();
+  /* Bytes of the buffers allocated by the pool, in use or idle */
+  private final AtomicLong allocatedSize = new AtomicLong();
+  private final AtomicLong usedSize = new AtomicLong();
+
+  private long maxSize;
+  private boolean metricsEnabled;
+
+  public DefaultReplayBufferService() {
+    for (int shift = MIN_SIZE_CLASS_SHIFT; shift <= MAX_SIZE_CLASS_SHIFT; shift++) {
+      idleBuffers.add(new ConcurrentLinkedDeque<>());
+    }
+  }
+
+  @Override
+  public void init(GatewayConfig config, Map<String, String> options) throws ServiceLifecycleException {
+    maxSize = config.getHttpClientReplayBufferPoolMaxSize();
+    metricsEnabled = config.isMetricsEnabled();
+  }
+
+  @Override
+  public void start() throws ServiceLifecycleException {
+    if (maxSize > 0) {
+      LOG.creatingReplayBufferPool(maxSize);
+      if (metricsEnabled) {
+        final MetricRegistry registry = DefaultMetricsService.getMetricRegistry();
+        registry.removeMatching((name, metric) -> name.startsWith(METRICS_PREFIX + "."));
+        registry.register(MetricRegistry.name(METRICS_PREFIX, "used"), (Gauge<Long>) this::getUsedSize);
+        registry.register(MetricRegistry.name(METRICS_PREFIX, "idle"), (Gauge<Long>) this::getIdleSize);
+        registry.register(MetricRegistry.name(METRICS_PREFIX, "max"), (Gauge<Long>) this::getMaxSize);
+      }
+    }
+  }
+
+  @Override
+  public void stop() throws ServiceLifecycleException {
+    for (Deque<ByteBuffer> buffers : idleBuffers) {
+      for (ByteBuffer buffer = buffers.pollFirst(); buffer != null; buffer = buffers.pollFirst()) {
+        allocatedSize.addAndGet(-buffer.capacity());
+      }
+    }
+  }
+
+  @Override
+  public ByteBuffer acquire(int size) {
+    if (maxSize <= 0 || size <= 0) {
+      return null;
+    }
+    final int shift = Math.max(MIN_SIZE_CLASS_SHIFT, Integer.SIZE - Integer.numberOfLeadingZeros(size - 1));
+    if (shift > MAX_SIZE_CLASS_SHIFT) {
+      return null;
+    }
+    final int capacity = 1 << shift;
+    ByteBuffer buffer = idleBuffers.get(shift - MIN_SIZE_CLASS_SHIFT).pollFirst();
+    if (buffer == null) {
+      if (!reserve(capacity)) {
+        LOG.replayBufferPoolExhausted(usedSize.get(), maxSize, size);
+        return null;
+      }
+      buffer = ByteBuffer.allocateDirect(capacity);
+    }
+    usedSize.addAndGet(capacity);
+    return buffer;
+  }
+
+  @Override
+  public void release(ByteBuffer buffer) {
+    if (buffer == null || !buffer.isDirect()) {
+      return;
+    }
+    final int shift = Integer.numberOfTrailingZeros(buffer.capacity());
+    buffer.clear();
+    usedSize.addAndGet(-buffer.capacity());
+    // Most recently used first, its memory is the most likely to still be cached
+    idleBuffers.get(shift - MIN_SIZE_CLASS_SHIFT).offerFirst(buffer);
+  }
+
+  @Override
+  public long getUsedSize() {
+    return usedSize.get();
+  }
+
+  @Override
+  public long getIdleSize() {
+    return allocatedSize.get() - usedSize.get();
+  }
+
+  @Override
+  public long getMaxSize() {
+    return maxSize;
+  }
+
+  /*
+   * Accounts for a new buffer, dropping idle buffers, largest first, while the limit is exceeded.
+   * The memory of dropped buffers is freed once they are garbage collected.
+   */
+  private boolean reserve(int capacity) {
+    if (usedSize.get() + capacity > maxSize) {
+      return false;
+    }
+    while (true) {
+      final long allocated = allocatedSize.get();
+      if (allocated + capacity <= maxSize) {
+        if (allocatedSize.compareAndSet(allocated, allocated + capacity)) {
+          return true;
+        }
+      } else if (!dropIdleBuffer()) {
+        return false;
+      }
+    }
+  }
+
+  private boolean dropIdleBuffer() {
+    for (int i = idleBuffers.size() - 1; i >= 0; i--) {
+      final ByteBuffer buffer = idleBuffers.get(i).pollFirst();
+      if (buffer != null) {
+        allocatedSize.addAndGet(-buffer.capacity());
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -26,6 +26,8 @@ import com.codahale.metrics.jvm.JvmAttributeGaugeSet;
 import com.codahale.metrics.jvm.MemoryUsageGaugeSet;
 import org.apache.knox.gateway.GatewayMessages;
 import org.apache.knox.gateway.config.GatewayConfig;
+import org.apache.knox.gateway.dispatch.HadoopAuthCookieCache;
+import org.apache.knox.gateway.dispatch.Http2ClientRegistry;
 import org.apache.knox.gateway.i18n.messages.MessagesFactory;
 import org.apache.knox.gateway.services.ServiceLifecycleException;
 import org.apache.knox.gateway.services.metrics.InstrumentationProvider;
@@ -74,6 +76,10 @@ public class DefaultMetricsService implements MetricsService {
       loadInstrumentationProviders();
       loadAndInitReporters(config);
       registerJvmMetricSets();
+      metrics.registerAll(Http2ClientRegistry.getInstance());
+      if (config.isHadoopKerberosSecured()) {
+        metrics.registerAll(HadoopAuthCookieCache.getInstance());
+      }
     }
   }
 
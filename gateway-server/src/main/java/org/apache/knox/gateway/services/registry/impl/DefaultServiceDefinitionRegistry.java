@@ -107,6 +107,7 @@ public class DefaultServiceDefinitionRegistry implements ServiceDefinitionRegist
         }
       }
     }
+    entries.compile();
   }
 
   private void addServiceDefEntry(Template template, ServiceDefinition serviceDefinition) {
@@ -29,6 +29,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -71,6 +72,8 @@ public class AliasBasedTokenStateService extends DefaultTokenStateService implem
 
   private final AtomicBoolean readyForEviction = new AtomicBoolean(false);
 
+  private final AtomicBoolean immediatePersistenceScheduled = new AtomicBoolean(false);
+
   private TokenStateJournal journal;
 
   private Path gatewayCredentialsFilePath;
@@ -101,12 +104,7 @@ public class AliasBasedTokenStateService extends DefaultTokenStateService implem
 
           // Add the token state to memory
           super.addToken(id, issueTime, expiration, maxLifetime);
-
-          synchronized (unpersistedState) {
-            // The max lifetime entry is added by way of the call to super.addToken(),
-            // so only need to add the expiration entry here.
-            unpersistedState.add(new TokenExpiration(id, expiration));
-          }
+          addUnpersistedState(id, issueTime, expiration, maxLifetime);
         } catch (Exception e) {
           log.failedToLoadJournalEntry(Tokens.getTokenIDDisplayText(id), e);
         }
@@ -217,6 +215,26 @@ public class AliasBasedTokenStateService extends DefaultTokenStateService implem
     scheduleTokenStatePersistence();
   }
 
+  /**
+   * Persists the unpersisted token state as soon as possible rather than at the next persistence interval.
+   * The state is persisted by the persistence task thread, so that the writes of an alias remain ordered,
+   * and all the requests made while such a persistence is pending are served by it.
+   */
+  protected void persistTokenStateImmediately() {
+    final ScheduledExecutorService scheduler = statePersistenceScheduler;
+    if (scheduler != null && immediatePersistenceScheduled.compareAndSet(false, true)) {
+      try {
+        scheduler.execute(() -> {
+          immediatePersistenceScheduled.set(false);
+          persistTokenState();
+        });
+      } catch (RejectedExecutionException e) {
+        // The service is stopping or the persistence task is being rescheduled; the state is persisted by then
+        immediatePersistenceScheduled.set(false);
+      }
+    }
+  }
+
   protected void persistTokenState() {
     Set<String> tokenIds = new HashSet<>(); // Collect the tokenIds for logging
 
@@ -272,10 +290,7 @@ public class AliasBasedTokenStateService extends DefaultTokenStateService implem
                              long   expiration,
                              long   maxLifetimeDuration) {
     super.addToken(tokenId, issueTime, expiration, maxLifetimeDuration);
-
-    synchronized (unpersistedState) {
-      unpersistedState.add(new TokenExpiration(tokenId, expiration));
-    }
+    addUnpersistedState(tokenId, issueTime, expiration, maxLifetimeDuration);
 
     try {
       journal.add(tokenId, issueTime, expiration, maxLifetimeDuration, null);
@@ -284,6 +299,17 @@ public class AliasBasedTokenStateService extends DefaultTokenStateService implem
     }
   }
 
+  /*
+   * The in-memory state of a new token is stored at once, so all of it is queued for persistence here
+   */
+  private void addUnpersistedState(String tokenId, long issueTime, long expiration, long maxLifetimeDuration) {
+    synchronized (unpersistedState) {
+      unpersistedState.add(new TokenIssueTime(tokenId, issueTime));
+      unpersistedState.add(new TokenExpiration(tokenId, expiration));
+      unpersistedState.add(new TokenMaxLifetime(tokenId, issueTime, maxLifetimeDuration));
+    }
+  }
+
   @Override
   protected void setIssueTime(String tokenId, long issueTime) {
     synchronized (unpersistedState) {
@@ -23,11 +23,9 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 import javax.management.InstanceAlreadyExistsException;
 import javax.management.MBeanRegistrationException;
@@ -60,13 +58,7 @@ public class DefaultTokenStateService implements TokenStateService {
 
   protected static final TokenStateServiceMessages log = MessagesFactory.get(TokenStateServiceMessages.class);
 
-  private final Map<String, Long> tokenExpirations = new ConcurrentHashMap<>();
-
-  private final Map<String, Long> tokenIssueTimes = new ConcurrentHashMap<>();
-
-  private final Map<String, Long> maxTokenLifetimes = new ConcurrentHashMap<>();
-
-  private final Map<String, TokenMetadata> metadataMap = new ConcurrentHashMap<>();
+  private final TokenStateStore tokenStates = new TokenStateStore();
 
   // Token eviction interval (in seconds)
   private long tokenEvictionInterval;
@@ -141,9 +133,7 @@ public class DefaultTokenStateService implements TokenStateService {
                              long   expiration,
                              long   maxLifetimeDuration) {
     validateTokenIdentifier(tokenId);
-    setIssueTime(tokenId, issueTime);
-    tokenExpirations.put(tokenId, expiration);
-    setMaxLifetime(tokenId, issueTime, maxLifetimeDuration);
+    tokenStates.add(tokenId, issueTime, expiration, issueTime + maxLifetimeDuration);
     log.addedToken(Tokens.getTokenIDDisplayText(tokenId), getTimestampDisplay(expiration));
     if (tokenStateServiceStatistics != null) {
       tokenStateServiceStatistics.addToken();
@@ -151,17 +141,17 @@ public class DefaultTokenStateService implements TokenStateService {
   }
 
   protected void setIssueTime(String tokenId, long issueTime) {
-    tokenIssueTimes.put(tokenId, issueTime);
+    tokenStates.setIssueTime(tokenId, issueTime);
   }
 
   @Override
   public long getTokenIssueTime(String tokenId) throws UnknownTokenException {
     validateToken(tokenId);
-    final Long issueTime = tokenIssueTimes.get(tokenId);
-    if (issueTime == null) {
+    final long issueTime = tokenStates.getIssueTime(tokenId);
+    if (issueTime == TokenStateStore.NO_VALUE) {
       throw new UnknownTokenException(tokenId);
     }
-    return issueTime.longValue();
+    return issueTime;
   }
 
   @Override
@@ -198,11 +188,11 @@ public class DefaultTokenStateService implements TokenStateService {
       validateToken(tokenId);
     }
 
-    final Long expiration = tokenExpirations.get(tokenId);
-    if (expiration == null) {
+    final long expiration = tokenStates.getExpiration(tokenId);
+    if (expiration == TokenStateStore.NO_VALUE) {
       throw new UnknownTokenException(tokenId);
     }
-    return expiration.longValue();
+    return expiration;
   }
 
   @Override
@@ -267,11 +257,11 @@ public class DefaultTokenStateService implements TokenStateService {
   }
 
   protected void setMaxLifetime(final String token, long parsedMaxLifeTime) {
-    maxTokenLifetimes.put(token, parsedMaxLifeTime);
+    tokenStates.setMaxLifetime(token, parsedMaxLifeTime);
   }
 
   protected void setMaxLifetime(final String token, long issueTime, long maxLifetimeDuration) {
-    maxTokenLifetimes.put(token, issueTime + maxLifetimeDuration);
+    tokenStates.setMaxLifetime(token, issueTime + maxLifetimeDuration);
   }
 
   /**
@@ -279,11 +269,11 @@ public class DefaultTokenStateService implements TokenStateService {
    * @return false, if the service has previously stored the specified token; Otherwise, true.
    */
   protected boolean isUnknown(final String token) {
-    return !tokenExpirations.containsKey(token);
+    return !tokenStates.hasExpiration(token);
   }
 
   protected void updateExpiration(final String tokenId, long expiration) {
-    tokenExpirations.put(tokenId, expiration);
+    tokenStates.setExpiration(tokenId, expiration);
   }
 
   protected void removeToken(final String tokenId) throws UnknownTokenException {
@@ -301,10 +291,7 @@ public class DefaultTokenStateService implements TokenStateService {
   }
 
   private void removeTokenState(final Set<String> tokenIds) {
-    tokenIssueTimes.keySet().removeAll(tokenIds);
-    tokenExpirations.keySet().removeAll(tokenIds);
-    maxTokenLifetimes.keySet().removeAll(tokenIds);
-    metadataMap.keySet().removeAll(tokenIds);
+    tokenStates.remove(tokenIds);
     log.removedTokenState(String.join(", ", Tokens.getDisplayableTokenIDsText(tokenIds)));
   }
 
@@ -314,7 +301,8 @@ public class DefaultTokenStateService implements TokenStateService {
   }
 
   protected long getMaxLifetime(final String tokenId) {
-    return maxTokenLifetimes.getOrDefault(tokenId, 0L);
+    final long maxLifetime = tokenStates.getMaxLifetime(tokenId);
+    return maxLifetime == TokenStateStore.NO_VALUE ? 0L : maxLifetime;
   }
 
   private void validateTokenIdentifier(final String tokenId) {
@@ -353,7 +341,12 @@ public class DefaultTokenStateService implements TokenStateService {
       final Set<String> tokensToEvict = getExpiredTokens();
 
       if (!tokensToEvict.isEmpty()) {
-        removeTokens(tokensToEvict);
+        try {
+          removeTokens(tokensToEvict);
+        } finally {
+          // Tokens that could not be removed stay candidates for the next eviction
+          tokenStates.reindex(tokensToEvict);
+        }
       }
     } else {
       log.skipEviction();
@@ -366,7 +359,10 @@ public class DefaultTokenStateService implements TokenStateService {
 
   protected Set<String> getExpiredTokens() {
     final Set<String> expiredTokens = new HashSet<>();
-    for (final String tokenId : getTokenIds()) {
+    // Only the tokens the expiration index reports as expired, rather than every token
+    final long expirationLimit = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(tokenEvictionGracePeriod);
+    final Set<String> drainedTokens = tokenStates.drainExpiredTokenIds(expirationLimit);
+    for (final String tokenId : drainedTokens) {
       try {
         if (needsEviction(tokenId)) {
           log.evictToken(Tokens.getTokenIDDisplayText(tokenId));
@@ -376,6 +372,9 @@ public class DefaultTokenStateService implements TokenStateService {
         log.failedExpiredTokenEviction(Tokens.getTokenIDDisplayText(tokenId), e);
       }
     }
+    // The tokens that are kept must stay in the expiration index
+    drainedTokens.removeAll(expiredTokens);
+    tokenStates.reindex(drainedTokens);
     return expiredTokens;
   }
 
@@ -399,19 +398,20 @@ public class DefaultTokenStateService implements TokenStateService {
    * @return
    */
   protected List<String> getTokenIds() {
-    return tokenExpirations.keySet().stream().collect(Collectors.toList());
+    return tokenStates.getTokenIds();
   }
 
   @Override
   public void addMetadata(String tokenId, TokenMetadata metadata) {
-    metadataMap.put(tokenId, metadata);
+    tokenStates.setMetadata(tokenId, metadata);
   }
 
   @Override
   public TokenMetadata getTokenMetadata(String tokenId) throws UnknownTokenException {
-    if (!metadataMap.containsKey(tokenId)) {
+    final TokenMetadata metadata = tokenStates.getMetadata(tokenId);
+    if (metadata == null) {
       throw new UnknownTokenException(tokenId);
     }
-    return metadataMap.get(tokenId);
+    return metadata;
   }
 }
@@ -18,30 +18,70 @@
 package org.apache.knox.gateway.services.token.impl;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.knox.gateway.config.GatewayConfig;
 import org.apache.knox.gateway.services.ServiceLifecycleException;
 import org.apache.knox.gateway.services.security.AliasService;
 import org.apache.knox.gateway.services.security.token.TokenMetadata;
 import org.apache.knox.gateway.services.security.token.TokenStateServiceException;
 import org.apache.knox.gateway.services.security.token.UnknownTokenException;
+import org.apache.knox.gateway.services.token.impl.TokenStateDatabase.PersistedTokenState;
 import org.apache.knox.gateway.util.JDBCUtils;
+import org.apache.knox.gateway.util.PooledDataSource;
 import org.apache.knox.gateway.util.Tokens;
 
+/**
+ * Keeps the token state in a database.
+ * <p>
+ * The state of the tokens issued or updated by this gateway is kept in memory and written to the
+ * database behind the requests: the updates are queued and a single writer groups those queued
+ * within the configured latency window into one transaction. The state of the other tokens, e.g.
+ * those issued by the other gateways of a cluster, is read from the database through a bounded
+ * cache whose entries expire after the configured time-to-live: it is the delay after which the
+ * revocations, disablements and renewals made by the other gateways are seen by this one.
+ */
 public class JDBCTokenStateService extends DefaultTokenStateService {
+  private static final int MAX_BATCH_SIZE = 1000;
+  private static final long QUEUE_OFFER_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+  private static final long WRITER_POLL_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+
   private AliasService aliasService; // connection username/pw and passcode HMAC secret are stored here
+  private PooledDataSource dataSource;
   private TokenStateDatabase tokenDatabase;
   private AtomicBoolean initialized = new AtomicBoolean(false);
   private Lock initLock = new ReentrantLock(true);
-  private Lock addMetadataLock = new ReentrantLock(true);
+
+  private long batchLatency;
+  private BlockingQueue<Consumer<TokenStateBatch>> pendingUpdates;
+  private ExecutorService databaseWriter;
+  private final AtomicBoolean stopping = new AtomicBoolean(false);
+  // The tokens whose removal is not written yet, which must not be read back from the database
+  private final Set<String> pendingRemovals = ConcurrentHashMap.newKeySet();
+  private LoadingCache<String, PersistedTokenState> persistedTokenStates;
+  private LoadingCache<String, TokenMetadata> persistedTokenMetadata;
 
   public void setAliasService(AliasService aliasService) {
     this.aliasService = aliasService;
@@ -57,7 +97,17 @@ public class JDBCTokenStateService extends DefaultTokenStateService {
           throw new ServiceLifecycleException("The required AliasService reference has not been set.");
         }
         try {
-          this.tokenDatabase = new TokenStateDatabase(JDBCUtils.getDataSource(config, aliasService));
+          this.dataSource = JDBCUtils.getPooledDataSource(config, aliasService);
+          this.tokenDatabase = new TokenStateDatabase(dataSource);
+          this.batchLatency = config.getKnoxTokenStateJdbcBatchLatency();
+          this.pendingUpdates = new ArrayBlockingQueue<>(Math.max(1, config.getKnoxTokenStateJdbcQueueSize()));
+          final long cacheTtl = Math.max(0, config.getKnoxTokenStateJdbcCacheTtl());
+          this.persistedTokenStates = Caffeine.newBuilder().expireAfterWrite(cacheTtl, TimeUnit.MILLISECONDS)
+              .maximumSize(config.getKnoxTokenStateJdbcCacheSize()).build(this::loadTokenState);
+          this.persistedTokenMetadata = Caffeine.newBuilder().expireAfterWrite(cacheTtl, TimeUnit.MILLISECONDS)
+              .maximumSize(config.getKnoxTokenStateJdbcCacheSize()).build(this::loadTokenMetadata);
+          this.databaseWriter = Executors.newSingleThreadExecutor(new BasicThreadFactory.Builder().namingPattern("TokenStateDatabaseWriter").daemon(true).build());
+          databaseWriter.execute(this::writePendingUpdates);
           initialized.set(true);
         } catch (Exception e) {
           throw new ServiceLifecycleException("Error while initiating JDBCTokenStateService: " + e, e);
@@ -69,24 +119,34 @@ public class JDBCTokenStateService extends DefaultTokenStateService {
   }
 
   @Override
-  public void addToken(String tokenId, long issueTime, long expiration, long maxLifetimeDuration) {
-    try {
-      final boolean added = tokenDatabase.addToken(tokenId, issueTime, expiration, maxLifetimeDuration);
-      if (added) {
-        log.savedTokenInDatabase(Tokens.getTokenIDDisplayText(tokenId));
-
-        // add in-memory
-        super.addToken(tokenId, issueTime, expiration, maxLifetimeDuration);
-      } else {
-        log.failedToSaveTokenInDatabase(Tokens.getTokenIDDisplayText(tokenId));
-        throw new TokenStateServiceException("Failed to save token " + Tokens.getTokenIDDisplayText(tokenId) + " in the database");
+  public void stop() throws ServiceLifecycleException {
+    super.stop();
+    if (databaseWriter != null) {
+      stopping.set(true);
+      databaseWriter.shutdown();
+      try {
+        databaseWriter.awaitTermination(QUEUE_OFFER_TIMEOUT, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
       }
-    } catch (SQLException e) {
-      log.errorSavingTokenInDatabase(Tokens.getTokenIDDisplayText(tokenId), e.getMessage(), e);
-      throw new TokenStateServiceException("An error occurred while saving token " + Tokens.getTokenIDDisplayText(tokenId) + " in the database", e);
+      // The updates queued while the writer was stopping
+      final List<Consumer<TokenStateBatch>> updates = new ArrayList<>();
+      pendingUpdates.drainTo(updates);
+      if (!updates.isEmpty()) {
+        writeUpdates(updates);
+      }
+      dataSource.close();
     }
   }
 
+  @Override
+  public void addToken(String tokenId, long issueTime, long expiration, long maxLifetimeDuration) {
+    queueUpdate(batch -> batch.addToken(tokenId, issueTime, expiration, issueTime + maxLifetimeDuration));
+
+    // add in-memory
+    super.addToken(tokenId, issueTime, expiration, maxLifetimeDuration);
+  }
+
   @Override
   public long getTokenIssueTime(String tokenId) throws UnknownTokenException {
     try {
@@ -98,15 +158,11 @@ public class JDBCTokenStateService extends DefaultTokenStateService {
 
     long issueTime = 0;
     try {
-      issueTime = tokenDatabase.getTokenIssueTime(tokenId);
-      if (issueTime > 0) {
-        log.fetchedIssueTimeFromDatabase(Tokens.getTokenIDDisplayText(tokenId), issueTime);
-
-        // Update the in-memory cache to avoid subsequent DB look-ups for the same state
-        super.setIssueTime(tokenId, issueTime);
-      } else {
+      final PersistedTokenState tokenState = getPersistedTokenState(tokenId);
+      if (tokenState == null) {
         throw new UnknownTokenException(tokenId);
       }
+      issueTime = tokenState.issueTime;
     } catch (SQLException e) {
       log.errorFetchingIssueTimeFromDatabase(Tokens.getTokenIDDisplayText(tokenId), e.getMessage(), e);
     }
@@ -128,15 +184,11 @@ public class JDBCTokenStateService extends DefaultTokenStateService {
 
     long expiration = 0;
     try {
-      expiration = tokenDatabase.getTokenExpiration(tokenId);
-      if (expiration > 0) {
-        log.fetchedExpirationFromDatabase(Tokens.getTokenIDDisplayText(tokenId), expiration);
-
-        // Update the in-memory cache to avoid subsequent DB look-ups for the same state
-        super.updateExpiration(tokenId, expiration);
-      } else {
+      final PersistedTokenState tokenState = getPersistedTokenState(tokenId);
+      if (tokenState == null) {
         throw new UnknownTokenException(tokenId);
       }
+      expiration = tokenState.expiration;
     } catch (SQLException e) {
       log.errorFetchingExpirationFromDatabase(Tokens.getTokenIDDisplayText(tokenId), e.getMessage(), e);
     }
@@ -145,21 +197,11 @@ public class JDBCTokenStateService extends DefaultTokenStateService {
 
   @Override
   protected void updateExpiration(String tokenId, long expiration) {
-    try {
-      final boolean updated = tokenDatabase.updateExpiration(tokenId, expiration);
-      if (updated) {
-        log.updatedExpirationInDatabase(Tokens.getTokenIDDisplayText(tokenId), expiration);
+    queueUpdate(batch -> batch.updateExpiration(tokenId, expiration));
 
-        // Update in-memory
-        super.updateExpiration(tokenId, expiration);
-      } else {
-        log.failedToUpdateExpirationInDatabase(Tokens.getTokenIDDisplayText(tokenId), expiration);
-        throw new TokenStateServiceException("Failed to updated expiration for " + Tokens.getTokenIDDisplayText(tokenId) + " in the database");
-      }
-    } catch (SQLException e) {
-      log.errorUpdatingExpirationInDatabase(Tokens.getTokenIDDisplayText(tokenId), e.getMessage(), e);
-      throw new TokenStateServiceException("An error occurred while updating expiration for " + Tokens.getTokenIDDisplayText(tokenId) + " in the database", e);
-    }
+    // Update in-memory
+    super.updateExpiration(tokenId, expiration);
+    persistedTokenStates.invalidate(tokenId);
   }
 
   @Override
@@ -169,8 +211,8 @@ public class JDBCTokenStateService extends DefaultTokenStateService {
     // If there is no result from the in-memory collection, proceed to check the Database
     if (maxLifetime < 1L) {
       try {
-        maxLifetime = tokenDatabase.getMaxLifetime(tokenId);
-        log.fetchedMaxLifetimeFromDatabase(Tokens.getTokenIDDisplayText(tokenId), maxLifetime);
+        final PersistedTokenState tokenState = getPersistedTokenState(tokenId);
+        maxLifetime = tokenState == null ? -1 : tokenState.maxLifetime;
       } catch (SQLException e) {
         log.errorFetchingMaxLifetimeFromDatabase(Tokens.getTokenIDDisplayText(tokenId), e.getMessage(), e);
       }
@@ -185,7 +227,7 @@ public class JDBCTokenStateService extends DefaultTokenStateService {
     // If it's not in the cache, then check in the Database
     if (isUnknown) {
       try {
-        isUnknown = tokenDatabase.getMaxLifetime(tokenId) < 0;
+        isUnknown = getPersistedTokenState(tokenId) == null;
       } catch (SQLException e) {
         log.errorFetchingMaxLifetimeFromDatabase(Tokens.getTokenIDDisplayText(tokenId), e.getMessage(), e);
       }
@@ -195,17 +237,17 @@ public class JDBCTokenStateService extends DefaultTokenStateService {
 
   @Override
   protected void removeToken(String tokenId) throws UnknownTokenException {
+    validateToken(tokenId);
+    pendingRemovals.add(tokenId);
     try {
-      final boolean removed = tokenDatabase.removeToken(tokenId);
-      if (removed) {
-        super.removeToken(tokenId);
-        log.removedTokenFromDatabase(Tokens.getTokenIDDisplayText(tokenId));
-      } else {
-        throw new UnknownTokenException(tokenId);
-      }
-    } catch (SQLException e) {
-      log.errorRemovingTokenFromDatabase(Tokens.getTokenIDDisplayText(tokenId), e.getMessage(), e);
+      queueUpdate(batch -> batch.removeToken(tokenId));
+    } catch (TokenStateServiceException e) {
+      pendingRemovals.remove(tokenId);
+      throw e;
     }
+    persistedTokenStates.invalidate(tokenId);
+    persistedTokenMetadata.invalidate(tokenId);
+    removeTokens(Collections.singleton(tokenId));
   }
 
   @Override
@@ -218,6 +260,8 @@ public class JDBCTokenStateService extends DefaultTokenStateService {
             String.join(", ", expiredTokenIds.stream().map(tokenId -> Tokens.getTokenIDDisplayText(tokenId)).collect(Collectors.toSet())));
         final int numOfExpiredTokens = tokenDatabase.deleteExpiredTokens(expirationLimit);
         log.removedTokensFromDatabase(numOfExpiredTokens);
+        persistedTokenStates.invalidateAll(expiredTokenIds);
+        persistedTokenMetadata.invalidateAll(expiredTokenIds);
 
         // remove from in-memory collections
         super.evictExpiredTokens();
@@ -229,47 +273,19 @@ public class JDBCTokenStateService extends DefaultTokenStateService {
 
   @Override
   public void addMetadata(String tokenId, TokenMetadata metadata) {
-    try {
-      boolean added = saveMetadataMapInDatabase(tokenId, metadata.getMetadataMap());
-
-      if (added) {
-        log.updatedMetadataInDatabase(Tokens.getTokenIDDisplayText(tokenId));
-
-        // Update in-memory
-        super.addMetadata(tokenId, metadata);
-      } else {
-        log.failedToUpdateMetadataInDatabase(Tokens.getTokenIDDisplayText(tokenId));
-        throw new TokenStateServiceException("Failed to update metadata for " + Tokens.getTokenIDDisplayText(tokenId) + " in the database");
+    final Map<String, String> metadataMap = new HashMap<>();
+    for (Map.Entry<String, String> metadataMapEntry : metadata.getMetadataMap().entrySet()) {
+      if (StringUtils.isNotBlank(metadataMapEntry.getValue())) {
+        metadataMap.put(metadataMapEntry.getKey(), metadataMapEntry.getValue());
       }
-    } catch (SQLException e) {
-      log.errorUpdatingMetadataInDatabase(Tokens.getTokenIDDisplayText(tokenId), e.getMessage(), e);
-      throw new TokenStateServiceException("An error occurred while updating metadata for " + Tokens.getTokenIDDisplayText(tokenId) + " in the database", e);
     }
-  }
-
-  private boolean saveMetadataMapInDatabase(String tokenId, Map<String, String> metadataMap) throws SQLException {
-    addMetadataLock.lock();
-    try {
-      boolean saved = false;
-      for (Map.Entry<String, String> metadataMapEntry : metadataMap.entrySet()) {
-        if (StringUtils.isNotBlank(metadataMapEntry.getValue())) {
-          if (upsertTokenMetadata(tokenId, metadataMapEntry.getKey(), metadataMapEntry.getValue())) {
-            saved = true;
-          }
-        }
-      }
-      return saved;
-    } finally {
-      addMetadataLock.unlock();
+    if (!metadataMap.isEmpty()) {
+      queueUpdate(batch -> batch.addMetadata(tokenId, metadataMap));
     }
-  }
 
-  private boolean upsertTokenMetadata(String tokenId, String metadataName, String metadataValue) throws SQLException {
-    if (!tokenDatabase.updateMetadata(tokenId, metadataName, metadataValue)) {
-      return tokenDatabase.addMetadata(tokenId, metadataName, metadataValue);
-    } else {
-      return true; //successfully updated
-    }
+    // Update in-memory
+    super.addMetadata(tokenId, metadata);
+    persistedTokenMetadata.invalidate(tokenId);
   }
 
   @Override
@@ -284,13 +300,8 @@ public class JDBCTokenStateService extends DefaultTokenStateService {
 
     if (tokenMetadata == null) {
       try {
-        tokenMetadata = tokenDatabase.getTokenMetadata(tokenId);
-
-        if (tokenMetadata != null) {
-          log.fetchedMetadataFromDatabase(Tokens.getTokenIDDisplayText(tokenId));
-          // Update the in-memory cache to avoid subsequent DB look-ups for the same state
-          super.addMetadata(tokenId, tokenMetadata);
-        } else {
+        tokenMetadata = getFromCache(persistedTokenMetadata, tokenId);
+        if (tokenMetadata == null) {
           throw new UnknownTokenException(tokenId);
         }
       } catch (SQLException e) {
@@ -299,4 +310,140 @@ public class JDBCTokenStateService extends DefaultTokenStateService {
     }
     return tokenMetadata;
   }
+
+  /**
+   * Waits until the updates queued so far have been written to the database.
+   */
+  void flush() throws InterruptedException {
+    final CountDownLatch written = new CountDownLatch(1);
+    queueUpdate(batch -> batch.addWriteLatch(written));
+    written.await();
+  }
+
+  private void queueUpdate(Consumer<TokenStateBatch> update) {
+    try {
+      if (!pendingUpdates.offer(update, QUEUE_OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) {
+        log.tokenStateUpdateQueueFull(pendingUpdates.size());
+        throw new TokenStateServiceException("Timed out while queueing a token state update to be written to the database");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new TokenStateServiceException("Interrupted while queueing a token state update to be written to the database", e);
+    }
+  }
+
+  private void writePendingUpdates() {
+    final List<Consumer<TokenStateBatch>> updates = new ArrayList<>(MAX_BATCH_SIZE);
+    try {
+      while (!stopping.get() || !pendingUpdates.isEmpty()) {
+        final Consumer<TokenStateBatch> update = pendingUpdates.poll(WRITER_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+        if (update != null) {
+          updates.add(update);
+          collectPendingUpdates(updates);
+          writeUpdates(updates);
+          updates.clear();
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /*
+   * Collects the updates queued within the batch latency window opened by the first update
+   */
+  private void collectPendingUpdates(List<Consumer<TokenStateBatch>> updates) throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchLatency);
+    pendingUpdates.drainTo(updates, MAX_BATCH_SIZE - updates.size());
+    long remaining = deadline - System.nanoTime();
+    while (updates.size() < MAX_BATCH_SIZE && remaining > 0) {
+      if (pendingUpdates.drainTo(updates, MAX_BATCH_SIZE - updates.size()) == 0) {
+        final Consumer<TokenStateBatch> update = pendingUpdates.poll(remaining, TimeUnit.NANOSECONDS);
+        if (update != null) {
+          updates.add(update);
+        }
+      }
+      remaining = deadline - System.nanoTime();
+    }
+  }
+
+  private void writeUpdates(List<Consumer<TokenStateBatch>> updates) {
+    final long start = System.currentTimeMillis();
+    final TokenStateBatch batch = new TokenStateBatch();
+    updates.forEach(update -> update.accept(batch));
+    try {
+      if (!batch.isEmpty()) {
+        tokenDatabase.write(batch);
+        log.wroteTokenStateBatchToDatabase(batch.getUpdateCount(), System.currentTimeMillis() - start);
+      }
+    } catch (SQLException e) {
+      if (updates.size() > 1) {
+        // A single failing update, e.g. the metadata of an unknown token, must not fail the others
+        log.errorWritingTokenStateBatchToDatabase(batch.getUpdateCount(), e.getMessage(), e);
+        updates.forEach(this::writeUpdate);
+      } else {
+        logWriteError(batch, e);
+      }
+    } finally {
+      pendingRemovals.removeAll(batch.getRemovedTokens());
+      batch.getWriteLatches().forEach(CountDownLatch::countDown);
+    }
+  }
+
+  private void writeUpdate(Consumer<TokenStateBatch> update) {
+    final TokenStateBatch batch = new TokenStateBatch();
+    update.accept(batch);
+    try {
+      if (!batch.isEmpty()) {
+        tokenDatabase.write(batch);
+      }
+    } catch (SQLException e) {
+      logWriteError(batch, e);
+    }
+  }
+
+  private void logWriteError(TokenStateBatch batch, SQLException e) {
+    log.errorWritingTokenStateToDatabase(String.join(", ", Tokens.getDisplayableTokenIDsText(batch.getTokenIds())), e.getMessage(), e);
+  }
+
+  private PersistedTokenState getPersistedTokenState(String tokenId) throws SQLException {
+    return getFromCache(persistedTokenStates, tokenId);
+  }
+
+  private PersistedTokenState loadTokenState(String tokenId) throws SQLException {
+    if (pendingRemovals.contains(tokenId)) {
+      return null;
+    }
+    final PersistedTokenState tokenState = tokenDatabase.getTokenState(tokenId);
+    if (tokenState != null) {
+      log.loadedTokenStateFromDatabase(Tokens.getTokenIDDisplayText(tokenId));
+    }
+    return tokenState;
+  }
+
+  private TokenMetadata loadTokenMetadata(String tokenId) throws SQLException {
+    if (pendingRemovals.contains(tokenId)) {
+      return null;
+    }
+    final TokenMetadata tokenMetadata = tokenDatabase.getTokenMetadata(tokenId);
+    if (tokenMetadata != null) {
+      log.fetchedMetadataFromDatabase(Tokens.getTokenIDDisplayText(tokenId));
+    }
+    return tokenMetadata;
+  }
+
+  /*
+   * The cache returns null for the tokens not in the database, without caching that absence
+   */
+  private static <T> T getFromCache(LoadingCache<String, T> cache, String tokenId) throws SQLException {
+    try {
+      return cache.get(tokenId);
+    } catch (CompletionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof SQLException) {
+        throw (SQLException) cause;
+      }
+      throw e;
+    }
+  }
 }
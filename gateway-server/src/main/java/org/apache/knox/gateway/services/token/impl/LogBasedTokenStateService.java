@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.knox.gateway.services.token.impl;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.knox.gateway.config.GatewayConfig;
+import org.apache.knox.gateway.services.ServiceLifecycleException;
+import org.apache.knox.gateway.services.security.MasterService;
+import org.apache.knox.gateway.services.security.token.TokenMetadata;
+import org.apache.knox.gateway.services.security.token.UnknownTokenException;
+import org.apache.knox.gateway.services.token.impl.state.TokenStateLog;
+import org.apache.knox.gateway.util.Tokens;
+
+/**
+ * A TokenStateService implementation that keeps the token state in memory and persists every
+ * change as an append to a {@link TokenStateLog}, which is compacted in the background and
+ * loaded back at startup.
+ */
+public class LogBasedTokenStateService extends DefaultTokenStateService {
+
+  /* The log is compacted once it holds twice as many records as live tokens, and at least this many */
+  static final long MIN_COMPACTION_RECORDS = 10000;
+
+  private static final long COMPACTION_CHECK_INTERVAL = TimeUnit.MINUTES.toSeconds(1);
+
+  private final ScheduledExecutorService logScheduler =
+      Executors.newSingleThreadScheduledExecutor(new BasicThreadFactory.Builder().namingPattern("TokenStateLog-%d").build());
+
+  /*
+   * Held while a change is applied in memory and appended, so that the log has the changes in the order
+   * they were applied. A compaction may still snapshot a change whose record goes to the new segment,
+   * which is harmless since replaying a record over its own effect changes nothing.
+   */
+  private final Object stateLock = new Object();
+
+  private MasterService masterService;
+  private TokenStateLog tokenStateLog;
+  private long syncInterval;
+
+  public void setMasterService(MasterService masterService) {
+    this.masterService = masterService;
+  }
+
+  @Override
+  public void init(final GatewayConfig config, final Map<String, String> options) throws ServiceLifecycleException {
+    super.init(config, options);
+    if (masterService == null) {
+      throw new ServiceLifecycleException("The required MasterService reference has not been set.");
+    }
+    syncInterval = config.getKnoxTokenStateLogSyncInterval();
+
+    final long start = System.currentTimeMillis();
+    try {
+      tokenStateLog = new TokenStateLog(config, masterService.getMasterSecret());
+      final long records = tokenStateLog.open(new TokenStateLog.RecordHandler() {
+        @Override
+        public void tokenAdded(String tokenId, long issueTime, long expiration, long maxLifetimeDuration) {
+          LogBasedTokenStateService.super.addToken(tokenId, issueTime, expiration, maxLifetimeDuration);
+        }
+
+        @Override
+        public void expirationUpdated(String tokenId, long expiration) {
+          LogBasedTokenStateService.super.updateExpiration(tokenId, expiration);
+        }
+
+        @Override
+        public void metadataAdded(String tokenId, TokenMetadata metadata) {
+          LogBasedTokenStateService.super.addMetadata(tokenId, metadata);
+        }
+
+        @Override
+        public void tokensRemoved(Set<String> tokenIds) {
+          LogBasedTokenStateService.super.removeTokens(tokenIds);
+        }
+      });
+      log.loadedTokenStateLog(records, System.currentTimeMillis() - start);
+    } catch (IOException e) {
+      throw new ServiceLifecycleException("Failed to load the token state log", e);
+    }
+  }
+
+  @Override
+  public void start() throws ServiceLifecycleException {
+    super.start();
+    if (syncInterval > 0) {
+      logScheduler.scheduleAtFixedRate(this::syncLog, syncInterval, syncInterval, TimeUnit.SECONDS);
+    }
+    logScheduler.scheduleWithFixedDelay(this::compactLogIfNeeded, COMPACTION_CHECK_INTERVAL, COMPACTION_CHECK_INTERVAL, TimeUnit.SECONDS);
+  }
+
+  @Override
+  public void stop() throws ServiceLifecycleException {
+    super.stop();
+    logScheduler.shutdown();
+    try {
+      logScheduler.awaitTermination(10, TimeUnit.SECONDS);
+      tokenStateLog.close();
+    } catch (IOException e) {
+      log.failedToSyncTokenStateLog(e.getMessage(), e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public void addToken(final String tokenId, long issueTime, long expiration, long maxLifetimeDuration) {
+    synchronized (stateLock) {
+      super.addToken(tokenId, issueTime, expiration, maxLifetimeDuration);
+      try {
+        tokenStateLog.appendAdd(tokenId, issueTime, expiration, maxLifetimeDuration);
+      } catch (IOException e) {
+        log.failedToAppendToTokenStateLog(Tokens.getTokenIDDisplayText(tokenId), e.getMessage(), e);
+      }
+    }
+  }
+
+  @Override
+  protected void updateExpiration(final String tokenId, long expiration) {
+    synchronized (stateLock) {
+      super.updateExpiration(tokenId, expiration);
+      try {
+        tokenStateLog.appendExpiration(tokenId, expiration);
+      } catch (IOException e) {
+        log.failedToAppendToTokenStateLog(Tokens.getTokenIDDisplayText(tokenId), e.getMessage(), e);
+      }
+    }
+  }
+
+  @Override
+  public void addMetadata(String tokenId, TokenMetadata metadata) {
+    synchronized (stateLock) {
+      super.addMetadata(tokenId, metadata);
+      try {
+        tokenStateLog.appendMetadata(tokenId, metadata);
+      } catch (IOException e) {
+        log.failedToAppendToTokenStateLog(Tokens.getTokenIDDisplayText(tokenId), e.getMessage(), e);
+      }
+    }
+  }
+
+  @Override
+  protected void removeTokens(final Set<String> tokenIds) {
+    synchronized (stateLock) {
+      super.removeTokens(tokenIds);
+      try {
+        tokenStateLog.appendRemoval(tokenIds);
+      } catch (IOException e) {
+        log.failedToAppendToTokenStateLog(String.join(", ", Tokens.getDisplayableTokenIDsText(tokenIds)), e.getMessage(), e);
+      }
+    }
+  }
+
+  private void syncLog() {
+    try {
+      tokenStateLog.sync();
+    } catch (IOException e) {
+      log.failedToSyncTokenStateLog(e.getMessage(), e);
+    }
+  }
+
+  void compactLogIfNeeded() {
+    if (tokenStateLog.needsCompaction(getTokenIds().size(), MIN_COMPACTION_RECORDS)) {
+      compactLog();
+    }
+  }
+
+  void compactLog() {
+    final long start = System.currentTimeMillis();
+    try {
+      final long records = tokenStateLog.compact(writer -> {
+        for (String tokenId : getTokenIds()) {
+          try {
+            final long issueTime = getTokenIssueTime(tokenId);
+            writer.tokenAdded(tokenId, issueTime, getTokenExpiration(tokenId, false), getMaxLifetime(tokenId) - issueTime);
+            writer.metadataAdded(tokenId, getTokenMetadata(tokenId));
+          } catch (UnknownTokenException e) {
+            // Removed meanwhile, or without metadata
+          }
+        }
+      });
+      log.compactedTokenStateLog(records, System.currentTimeMillis() - start);
+    } catch (IOException e) {
+      log.failedToCompactTokenStateLog(e.getMessage(), e);
+    }
+  }
+}
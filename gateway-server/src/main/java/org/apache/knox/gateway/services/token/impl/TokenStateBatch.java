@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.knox.gateway.services.token.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * The token state updates written to the database in a single transaction.
+ * <p>
+ * Successive updates of the same state are coalesced, only the last one being written. The
+ * statements are executed by kind, each kind as a JDBC batch: the new tokens first, then the
+ * expiration and metadata updates and finally the removals, which is the order the updates of a
+ * given token are made in.
+ */
+final class TokenStateBatch {
+  /* issue time, expiration and absolute max lifetime of the new tokens */
+  private final Map<String, long[]> addedTokens = new LinkedHashMap<>();
+  private final Map<String, Long> expirations = new LinkedHashMap<>();
+  private final Map<String, Map<String, String>> metadata = new LinkedHashMap<>();
+  private final Set<String> removedTokens = new LinkedHashSet<>();
+  private final List<CountDownLatch> writeLatches = new ArrayList<>();
+  private int updateCount;
+
+  void addToken(String tokenId, long issueTime, long expiration, long maxLifetime) {
+    addedTokens.put(tokenId, new long[] { issueTime, expiration, maxLifetime });
+    updateCount++;
+  }
+
+  void updateExpiration(String tokenId, long expiration) {
+    expirations.put(tokenId, expiration);
+    updateCount++;
+  }
+
+  void addMetadata(String tokenId, Map<String, String> metadataMap) {
+    metadata.computeIfAbsent(tokenId, id -> new HashMap<>()).putAll(metadataMap);
+    updateCount++;
+  }
+
+  void removeToken(String tokenId) {
+    removedTokens.add(tokenId);
+    updateCount++;
+  }
+
+  /**
+   * Registers a latch to count down once the batch has been written, or has failed to be.
+   */
+  void addWriteLatch(CountDownLatch writeLatch) {
+    writeLatches.add(writeLatch);
+  }
+
+  Map<String, long[]> getAddedTokens() {
+    return addedTokens;
+  }
+
+  Map<String, Long> getExpirations() {
+    return expirations;
+  }
+
+  Map<String, Map<String, String>> getMetadata() {
+    return metadata;
+  }
+
+  Set<String> getRemovedTokens() {
+    return removedTokens;
+  }
+
+  Set<String> getTokenIds() {
+    final Set<String> tokenIds = new LinkedHashSet<>(addedTokens.keySet());
+    tokenIds.addAll(expirations.keySet());
+    tokenIds.addAll(metadata.keySet());
+    tokenIds.addAll(removedTokens);
+    return tokenIds;
+  }
+
+  List<CountDownLatch> getWriteLatches() {
+    return writeLatches;
+  }
+
+  /**
+   * @return the number of updates, before coalescing, the batch is made of
+   */
+  int getUpdateCount() {
+    return updateCount;
+  }
+
+  boolean isEmpty() {
+    return updateCount == 0;
+  }
+}
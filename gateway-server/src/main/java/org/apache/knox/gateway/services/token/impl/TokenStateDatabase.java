@@ -45,14 +45,14 @@ public class TokenStateDatabase {
   static final String TOKEN_METADATA_TABLE_NAME = "KNOX_TOKEN_METADATA";
   private static final String ADD_TOKEN_SQL = "INSERT INTO " + TOKENS_TABLE_NAME + "(token_id, issue_time, expiration, max_lifetime) VALUES(?, ?, ?, ?)";
   private static final String REMOVE_TOKEN_SQL = "DELETE FROM " + TOKENS_TABLE_NAME + " WHERE token_id = ?";
+  private static final String GET_TOKEN_SQL = "SELECT issue_time, expiration, max_lifetime FROM " + TOKENS_TABLE_NAME + " WHERE token_id = ?";
   private static final String GET_EXPIRED_TOKENS_SQL = "SELECT token_id FROM " + TOKENS_TABLE_NAME + " WHERE expiration < ?";
   private static final String REMOVE_EXPIRED_TOKENS_SQL = "DELETE FROM " + TOKENS_TABLE_NAME + " WHERE expiration < ?";
-  static final String GET_TOKEN_ISSUE_TIME_SQL = "SELECT issue_time FROM " + TOKENS_TABLE_NAME + " WHERE token_id = ?";
   static final String GET_TOKEN_EXPIRATION_SQL = "SELECT expiration FROM " + TOKENS_TABLE_NAME + " WHERE token_id = ?";
   private static final String UPDATE_TOKEN_EXPIRATION_SQL = "UPDATE " + TOKENS_TABLE_NAME + " SET expiration = ? WHERE token_id = ?";
   static final String GET_MAX_LIFETIME_SQL = "SELECT max_lifetime FROM " + TOKENS_TABLE_NAME + " WHERE token_id = ?";
   private static final String ADD_METADATA_SQL = "INSERT INTO " + TOKEN_METADATA_TABLE_NAME + "(token_id, md_name, md_value) VALUES(?, ?, ?)";
-  private static final String UPDATE_METADATA_SQL = "UPDATE " + TOKEN_METADATA_TABLE_NAME + " SET md_value = ? WHERE token_id = ? AND md_name = ?";
+  private static final String REMOVE_METADATA_SQL = "DELETE FROM " + TOKEN_METADATA_TABLE_NAME + " WHERE token_id = ? AND md_name = ?";
   private static final String GET_METADATA_SQL = "SELECT md_name, md_value FROM " + TOKEN_METADATA_TABLE_NAME + " WHERE token_id = ?";
 
   private final DataSource dataSource;
@@ -89,54 +89,108 @@ public class TokenStateDatabase {
     }
   }
 
-  boolean addToken(String tokenId, long issueTime, long expiration, long maxLifetimeDuration) throws SQLException {
-    try (Connection connection = dataSource.getConnection(); PreparedStatement addTokenStatement = connection.prepareStatement(ADD_TOKEN_SQL)) {
-      addTokenStatement.setString(1, tokenId);
-      addTokenStatement.setLong(2, issueTime);
-      addTokenStatement.setLong(3, expiration);
-      addTokenStatement.setLong(4, issueTime + maxLifetimeDuration);
-      return addTokenStatement.executeUpdate() == 1;
+  /**
+   * @return the persisted state of the token or null if the token is not in the database
+   */
+  PersistedTokenState getTokenState(String tokenId) throws SQLException {
+    try (Connection connection = dataSource.getConnection(); PreparedStatement getTokenStatement = connection.prepareStatement(GET_TOKEN_SQL)) {
+      getTokenStatement.setString(1, tokenId);
+      try (ResultSet rs = getTokenStatement.executeQuery()) {
+        return rs.next() ? new PersistedTokenState(rs.getLong(1), rs.getLong(2), rs.getLong(3)) : null;
+      }
     }
   }
 
-  boolean removeToken(String tokenId) throws SQLException {
-    try (Connection connection = dataSource.getConnection(); PreparedStatement addTokenStatement = connection.prepareStatement(REMOVE_TOKEN_SQL)) {
-      addTokenStatement.setString(1, tokenId);
-      return addTokenStatement.executeUpdate() == 1;
+  /**
+   * Writes the updates of the batch in a single transaction, each kind of update as a JDBC batch.
+   */
+  void write(TokenStateBatch batch) throws SQLException {
+    try (Connection connection = dataSource.getConnection()) {
+      final boolean autoCommit = connection.getAutoCommit();
+      connection.setAutoCommit(false);
+      try {
+        addTokens(connection, batch.getAddedTokens());
+        updateExpirations(connection, batch.getExpirations());
+        upsertMetadata(connection, batch.getMetadata(), batch.getAddedTokens().keySet());
+        removeTokens(connection, batch.getRemovedTokens());
+        connection.commit();
+      } catch (SQLException e) {
+        connection.rollback();
+        throw e;
+      } finally {
+        connection.setAutoCommit(autoCommit);
+      }
     }
   }
 
-  long getTokenIssueTime(String tokenId) throws SQLException {
-    try (Connection connection = dataSource.getConnection(); PreparedStatement getTokenExpirationStatement = connection.prepareStatement(GET_TOKEN_ISSUE_TIME_SQL)) {
-      getTokenExpirationStatement.setString(1, tokenId);
-      try (ResultSet rs = getTokenExpirationStatement.executeQuery()) {
-        return rs.next() ? rs.getLong(1) : -1;
+  private void addTokens(Connection connection, Map<String, long[]> addedTokens) throws SQLException {
+    if (!addedTokens.isEmpty()) {
+      try (PreparedStatement addTokenStatement = connection.prepareStatement(ADD_TOKEN_SQL)) {
+        for (Map.Entry<String, long[]> addedToken : addedTokens.entrySet()) {
+          addTokenStatement.setString(1, addedToken.getKey());
+          addTokenStatement.setLong(2, addedToken.getValue()[0]);
+          addTokenStatement.setLong(3, addedToken.getValue()[1]);
+          addTokenStatement.setLong(4, addedToken.getValue()[2]);
+          addTokenStatement.addBatch();
+        }
+        addTokenStatement.executeBatch();
       }
     }
   }
 
-  long getTokenExpiration(String tokenId) throws SQLException {
-    try (Connection connection = dataSource.getConnection(); PreparedStatement getTokenExpirationStatement = connection.prepareStatement(GET_TOKEN_EXPIRATION_SQL)) {
-      getTokenExpirationStatement.setString(1, tokenId);
-      try (ResultSet rs = getTokenExpirationStatement.executeQuery()) {
-        return rs.next() ? rs.getLong(1) : -1;
+  private void updateExpirations(Connection connection, Map<String, Long> expirations) throws SQLException {
+    if (!expirations.isEmpty()) {
+      try (PreparedStatement updateTokenExpirationStatement = connection.prepareStatement(UPDATE_TOKEN_EXPIRATION_SQL)) {
+        for (Map.Entry<String, Long> expiration : expirations.entrySet()) {
+          updateTokenExpirationStatement.setLong(1, expiration.getValue());
+          updateTokenExpirationStatement.setString(2, expiration.getKey());
+          updateTokenExpirationStatement.addBatch();
+        }
+        updateTokenExpirationStatement.executeBatch();
       }
     }
   }
 
-  boolean updateExpiration(final String tokenId, long expiration) throws SQLException {
-    try (Connection connection = dataSource.getConnection(); PreparedStatement updateTokenExpirationStatement = connection.prepareStatement(UPDATE_TOKEN_EXPIRATION_SQL)) {
-      updateTokenExpirationStatement.setLong(1, expiration);
-      updateTokenExpirationStatement.setString(2, tokenId);
-      return updateTokenExpirationStatement.executeUpdate() == 1;
+  /*
+   * Deletes then inserts the metadata, which needs neither a vendor specific upsert nor a round trip per value.
+   * The tokens added by the same batch have no metadata to delete.
+   */
+  private void upsertMetadata(Connection connection, Map<String, Map<String, String>> metadata, Set<String> addedTokenIds) throws SQLException {
+    if (!metadata.isEmpty()) {
+      try (PreparedStatement removeMetadataStatement = connection.prepareStatement(REMOVE_METADATA_SQL);
+           PreparedStatement addMetadataStatement = connection.prepareStatement(ADD_METADATA_SQL)) {
+        boolean removing = false;
+        for (Map.Entry<String, Map<String, String>> tokenMetadata : metadata.entrySet()) {
+          final boolean added = addedTokenIds.contains(tokenMetadata.getKey());
+          for (Map.Entry<String, String> metadataEntry : tokenMetadata.getValue().entrySet()) {
+            if (!added) {
+              removeMetadataStatement.setString(1, tokenMetadata.getKey());
+              removeMetadataStatement.setString(2, metadataEntry.getKey());
+              removeMetadataStatement.addBatch();
+              removing = true;
+            }
+            addMetadataStatement.setString(1, tokenMetadata.getKey());
+            addMetadataStatement.setString(2, metadataEntry.getKey());
+            addMetadataStatement.setString(3, encodeMetadataValue(metadataEntry.getKey(), metadataEntry.getValue()));
+            addMetadataStatement.addBatch();
+          }
+        }
+        if (removing) {
+          removeMetadataStatement.executeBatch();
+        }
+        addMetadataStatement.executeBatch();
+      }
     }
   }
 
-  long getMaxLifetime(String tokenId) throws SQLException {
-    try (Connection connection = dataSource.getConnection(); PreparedStatement getMaxLifetimeStatement = connection.prepareStatement(GET_MAX_LIFETIME_SQL)) {
-      getMaxLifetimeStatement.setString(1, tokenId);
-      try (ResultSet rs = getMaxLifetimeStatement.executeQuery()) {
-        return rs.next() ? rs.getLong(1) : -1;
+  private void removeTokens(Connection connection, Set<String> removedTokens) throws SQLException {
+    if (!removedTokens.isEmpty()) {
+      try (PreparedStatement removeTokenStatement = connection.prepareStatement(REMOVE_TOKEN_SQL)) {
+        for (String tokenId : removedTokens) {
+          removeTokenStatement.setString(1, tokenId);
+          removeTokenStatement.addBatch();
+        }
+        removeTokenStatement.executeBatch();
       }
     }
   }
@@ -161,36 +215,38 @@ public class TokenStateDatabase {
     }
   }
 
-  boolean updateMetadata(String tokenId, String metadataName, String metadataValue) throws SQLException {
-    try (Connection connection = dataSource.getConnection(); PreparedStatement updateMetadataStatement = connection.prepareStatement(UPDATE_METADATA_SQL)) {
-      updateMetadataStatement.setString(1, metadataName.equals(TokenMetadata.PASSCODE) ? Base64.encodeBase64String(metadataValue.getBytes(UTF_8)) : metadataValue);
-      updateMetadataStatement.setString(2, tokenId);
-      updateMetadataStatement.setString(3, metadataName);
-      return updateMetadataStatement.executeUpdate() == 1;
-    }
-  }
-
-  boolean addMetadata(String tokenId, String metadataName, String metadataValue) throws SQLException {
-    try (Connection connection = dataSource.getConnection(); PreparedStatement addMetadataStatement = connection.prepareStatement(ADD_METADATA_SQL)) {
-      addMetadataStatement.setString(1, tokenId);
-      addMetadataStatement.setString(2, metadataName);
-      addMetadataStatement.setString(3, metadataName.equals(TokenMetadata.PASSCODE) ? Base64.encodeBase64String(metadataValue.getBytes(UTF_8)) : metadataValue);
-      return addMetadataStatement.executeUpdate() == 1;
-    }
-  }
-
   TokenMetadata getTokenMetadata(String tokenId) throws SQLException {
-    try (Connection connection = dataSource.getConnection(); PreparedStatement getMaxLifetimeStatement = connection.prepareStatement(GET_METADATA_SQL)) {
-      getMaxLifetimeStatement.setString(1, tokenId);
-      try (ResultSet rs = getMaxLifetimeStatement.executeQuery()) {
+    try (Connection connection = dataSource.getConnection(); PreparedStatement getMetadataStatement = connection.prepareStatement(GET_METADATA_SQL)) {
+      getMetadataStatement.setString(1, tokenId);
+      try (ResultSet rs = getMetadataStatement.executeQuery()) {
         final Map<String, String> metadataMap = new HashMap<>();
         while (rs.next()) {
           String metadataName = rs.getString(1);
-          metadataMap.put(metadataName, metadataName.equals(TokenMetadata.PASSCODE) ? new String(Base64.decodeBase64(rs.getString(2).getBytes(UTF_8)), UTF_8) : rs.getString(2));
+          metadataMap.put(metadataName, decodeMetadataValue(metadataName, rs.getString(2)));
         }
         return metadataMap.isEmpty() ? null : new TokenMetadata(metadataMap);
       }
     }
   }
 
+  private static String encodeMetadataValue(String metadataName, String metadataValue) {
+    return metadataName.equals(TokenMetadata.PASSCODE) ? Base64.encodeBase64String(metadataValue.getBytes(UTF_8)) : metadataValue;
+  }
+
+  private static String decodeMetadataValue(String metadataName, String metadataValue) {
+    return metadataName.equals(TokenMetadata.PASSCODE) ? new String(Base64.decodeBase64(metadataValue.getBytes(UTF_8)), UTF_8) : metadataValue;
+  }
+
+  static final class PersistedTokenState {
+    final long issueTime;
+    final long expiration;
+    final long maxLifetime;
+
+    PersistedTokenState(long issueTime, long expiration, long maxLifetime) {
+      this.issueTime = issueTime;
+      this.expiration = expiration;
+      this.maxLifetime = maxLifetime;
+    }
+  }
+
 }
@@ -166,11 +166,17 @@ public interface TokenStateServiceMessages {
   @Message(level = MessageLevel.DEBUG, text = "Invalid alias value for {0}; it has very likely been evicted in the meantime")
   void invalidAliasValue(String alias);
 
-  @Message(level = MessageLevel.INFO, text = "Trying to fetch value for {0} from Zookeeper...")
-  void retryZkFetchAlias(String alias);
+  @Message(level = MessageLevel.DEBUG, text = "Waiting for the value of {0} to show up in Zookeeper...")
+  void waitingForZkAlias(String alias);
+
+  @Message(level = MessageLevel.INFO, text = "The value of {0} did not show up in Zookeeper within {1} milliseconds")
+  void zkAliasLookupTimedOut(String alias, long timeout);
+
+  @Message(level = MessageLevel.DEBUG, text = "Too many Zookeeper lookups in progress; {0} is considered missing")
+  void zkAliasLookupRejected(String alias);
 
   @Message(level = MessageLevel.ERROR, text = "Error while fetching value for {0} from Zookeeper: {1}")
-  void failedRetryZkFetchAlias(String alias, String errorMessage, @StackTrace(level = MessageLevel.DEBUG) Exception e);
+  void failedZkFetchAlias(String alias, String errorMessage, @StackTrace(level = MessageLevel.DEBUG) Exception e);
 
   @Message(level = MessageLevel.INFO, text = "Processed alias {0} on receiving signal from Zookeeper ")
   void onRemoteTokenStateChanged(String alias);
@@ -178,20 +184,20 @@ public interface TokenStateServiceMessages {
   @Message(level = MessageLevel.INFO, text = "Removed related token alias {0} on receiving signal from Zookeeper ")
   void onRemoteTokenStateRemoval(String alias);
 
-  @Message(level = MessageLevel.DEBUG, text = "Token {0} has been saved in the database")
-  void savedTokenInDatabase(String tokenId);
+  @Message(level = MessageLevel.DEBUG, text = "Wrote {0} token state update(s) to the database in {1} ms")
+  void wroteTokenStateBatchToDatabase(int updateCount, long duration);
 
-  @Message(level = MessageLevel.ERROR, text = "Failed to save token {0} in the database")
-  void failedToSaveTokenInDatabase(String tokenId);
+  @Message(level = MessageLevel.WARN, text = "Failed to write a batch of {0} token state update(s) to the database, writing them one by one : {1}")
+  void errorWritingTokenStateBatchToDatabase(int updateCount, String errorMessage, @StackTrace(level = MessageLevel.DEBUG) Exception e);
 
-  @Message(level = MessageLevel.ERROR, text = "An error occurred while saving token {0} in the database : {1}")
-  void errorSavingTokenInDatabase(String tokenId, String errorMessage, @StackTrace(level = MessageLevel.DEBUG) Exception e);
+  @Message(level = MessageLevel.ERROR, text = "An error occurred while writing the state of {0} to the database : {1}")
+  void errorWritingTokenStateToDatabase(String tokenIds, String errorMessage, @StackTrace(level = MessageLevel.DEBUG) Exception e);
 
-  @Message(level = MessageLevel.DEBUG, text = "Token {0} has been removed from the database")
-  void removedTokenFromDatabase(String tokenId);
+  @Message(level = MessageLevel.ERROR, text = "The queue of the {0} token state update(s) waiting to be written to the database is full")
+  void tokenStateUpdateQueueFull(int queueSize);
 
-  @Message(level = MessageLevel.ERROR, text = "An error occurred while removing token {0} from the database : {1}")
-  void errorRemovingTokenFromDatabase(String tokenId, String errorMessage, @StackTrace(level = MessageLevel.DEBUG) Exception e);
+  @Message(level = MessageLevel.DEBUG, text = "Loaded the state of {0} from the database")
+  void loadedTokenStateFromDatabase(String tokenId);
 
   @Message(level = MessageLevel.INFO, text = "Removing {0} expired token(s) from the database: {1}")
   void removingExpiredTokensFromDatabase(int size, String expiredTokensList);
@@ -202,45 +208,39 @@ public interface TokenStateServiceMessages {
   @Message(level = MessageLevel.ERROR, text = "An error occurred while removing expired tokens from the database : {1}")
   void errorRemovingTokensFromDatabase(String errorMessage, @StackTrace(level = MessageLevel.DEBUG) Exception e);
 
-  @Message(level = MessageLevel.DEBUG, text = "Fetched issue time for {0} from the database : {1}")
-  void fetchedIssueTimeFromDatabase(String tokenId, long issueTime);
-
   @Message(level = MessageLevel.ERROR, text = "An error occurred while fetching issue time for {0} from the database : {1}")
   void errorFetchingIssueTimeFromDatabase(String tokenId, String errorMessage, @StackTrace(level = MessageLevel.DEBUG) Exception e);
 
-  @Message(level = MessageLevel.DEBUG, text = "Fetched expiration for {0} from the database : {1}")
-  void fetchedExpirationFromDatabase(String tokenId, long expiration);
-
   @Message(level = MessageLevel.ERROR, text = "An error occurred while fetching expiration for {0} from the database : {1}")
   void errorFetchingExpirationFromDatabase(String tokenId, String errorMessage, @StackTrace(level = MessageLevel.DEBUG) Exception e);
 
-  @Message(level = MessageLevel.DEBUG, text = "Updated expiration for {0} in the database to {1}")
-  void updatedExpirationInDatabase(String tokenId, long expiration);
+  @Message(level = MessageLevel.ERROR, text = "An error occurred while fetching max lifetime for {0} from the database : {1}")
+  void errorFetchingMaxLifetimeFromDatabase(String tokenId, String errorMessage, @StackTrace(level = MessageLevel.DEBUG) Exception e);
 
-  @Message(level = MessageLevel.DEBUG, text = "Failed to updated expiration for {0} in the database to {1}")
-  void failedToUpdateExpirationInDatabase(String tokenId, long expiration);
+  @Message(level = MessageLevel.DEBUG, text = "Fetched metadata for {0} from the database")
+  void fetchedMetadataFromDatabase(String tokenId);
 
-  @Message(level = MessageLevel.ERROR, text = "An error occurred while updating expiration for {0} in the database : {1}")
-  void errorUpdatingExpirationInDatabase(String tokenId, String errorMessage, @StackTrace(level = MessageLevel.DEBUG) Exception e);
+  @Message(level = MessageLevel.ERROR, text = "An error occurred while fetching metadata for {0} from the database : {1}")
+  void errorFetchingMetadataFromDatabase(String tokenId, String errorMessage, @StackTrace(level = MessageLevel.DEBUG) Exception e);
 
-  @Message(level = MessageLevel.DEBUG, text = "Fetched max lifetime for {0} from the database : {1}")
-  void fetchedMaxLifetimeFromDatabase(String tokenId, long maxLifetime);
+  @Message(level = MessageLevel.INFO, text = "Loaded {0} records of the token state log in {1} ms")
+  void loadedTokenStateLog(long records, long duration);
 
-  @Message(level = MessageLevel.ERROR, text = "An error occurred while fetching max lifetime for {0} from the database : {1}")
-  void errorFetchingMaxLifetimeFromDatabase(String tokenId, String errorMessage, @StackTrace(level = MessageLevel.DEBUG) Exception e);
+  @Message(level = MessageLevel.WARN, text = "Discarded the corrupted end of the token state log segment {0} from offset {1}")
+  void discardedCorruptedTokenStateLog(String segment, long offset);
 
-  @Message(level = MessageLevel.DEBUG, text = "Updated metadata for {0} in the database")
-  void updatedMetadataInDatabase(String tokenId);
+  @Message(level = MessageLevel.ERROR, text = "Failed to load a token state log record for {0} : {1}")
+  void failedToLoadTokenStateLogRecord(String tokenId, String errorMessage, @StackTrace(level = MessageLevel.DEBUG) Exception e);
 
-  @Message(level = MessageLevel.DEBUG, text = "Failed to save/update metadata for {0} in the database")
-  void failedToUpdateMetadataInDatabase(String tokenId);
+  @Message(level = MessageLevel.ERROR, text = "Failed to append the state of {0} to the token state log : {1}")
+  void failedToAppendToTokenStateLog(String tokenIds, String errorMessage, @StackTrace(level = MessageLevel.DEBUG) Exception e);
 
-  @Message(level = MessageLevel.ERROR, text = "An error occurred while updating metadata for {0} in the database : {1}")
-  void errorUpdatingMetadataInDatabase(String tokenId, String errorMessage, @StackTrace(level = MessageLevel.DEBUG) Exception e);
+  @Message(level = MessageLevel.ERROR, text = "Failed to sync the token state log : {0}")
+  void failedToSyncTokenStateLog(String errorMessage, @StackTrace(level = MessageLevel.DEBUG) Exception e);
 
-  @Message(level = MessageLevel.DEBUG, text = "Fetched metadata for {0} from the database")
-  void fetchedMetadataFromDatabase(String tokenId);
+  @Message(level = MessageLevel.INFO, text = "Compacted the token state log to {0} records in {1} ms")
+  void compactedTokenStateLog(long records, long duration);
 
-  @Message(level = MessageLevel.ERROR, text = "An error occurred while fetching metadata for {0} from the database : {1}")
-  void errorFetchingMetadataFromDatabase(String tokenId, String errorMessage, @StackTrace(level = MessageLevel.DEBUG) Exception e);
+  @Message(level = MessageLevel.ERROR, text = "Failed to compact the token state log : {0}")
+  void failedToCompactTokenStateLog(String errorMessage, @StackTrace(level = MessageLevel.DEBUG) Exception e);
 }
@@ -0,0 +1,573 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.knox.gateway.services.token.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.knox.gateway.services.security.token.TokenMetadata;
+
+/**
+ * Compact in-memory store of the state of the tokens: one record per token, holding the issue
+ * time, expiration and maximum lifetime as primitive fields, and the metadata.
+ * <p>
+ * The records live in open addressing hash tables made of parallel arrays, spread over
+ * independently locked segments. Token identifiers in the canonical UUID form Knox issues are
+ * packed in two longs; other identifiers are kept as strings. A token with a UUID identifier
+ * takes 41 bytes per slot, 55 to 110 bytes depending on how full the tables are, instead of the
+ * few hundred bytes of a string key and boxed values in several maps. Every update of a record
+ * is atomic.
+ * <p>
+ * The tokens are also indexed by expiration, in buckets of a minute, so that finding the expired
+ * tokens only looks at the buckets that are due rather than at every token. Index entries are not
+ * removed with the tokens or when their expiration changes; the stale ones are dropped when their
+ * bucket is swept.
+ */
+final class TokenStateStore {
+  /* Returned for the fields of the records that are not set, or of unknown tokens */
+  static final long NO_VALUE = Long.MIN_VALUE;
+
+  /* Size of a reference, assuming compressed ordinary object pointers */
+  private static final int REFERENCE_SIZE = 4;
+  private static final int ARRAY_HEADER_SIZE = 16;
+
+  private static final int SEGMENT_BITS = 6;
+  private static final int MIN_CAPACITY = 16;
+
+  /* Slot states: the kind of key in the low bits, the fields of the record that are set in the others */
+  private static final byte FREE = 0;
+  private static final byte REMOVED = 1;
+  private static final byte UUID_KEY = 2;
+  private static final byte STRING_KEY = 3;
+  private static final int KEY_MASK = 3;
+  private static final int HAS_ISSUE_TIME = 4;
+  private static final int HAS_EXPIRATION = 8;
+  private static final int HAS_MAX_LIFETIME = 16;
+
+  /* Long fields of a slot */
+  private static final int MSB = 0;
+  private static final int LSB = 1;
+  private static final int ISSUE_TIME = 2;
+  private static final int EXPIRATION = 3;
+  private static final int MAX_LIFETIME = 4;
+  private static final int FIELDS = 5;
+
+  private static final long EXPIRATION_BUCKET_WIDTH = TimeUnit.MINUTES.toMillis(1);
+
+  private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+  private final ConcurrentNavigableMap<Long, ExpirationBucket> expirationBuckets = new ConcurrentSkipListMap<>();
+
+  TokenStateStore() {
+    for (int i = 0; i < segments.length; i++) {
+      segments[i] = new Segment();
+    }
+  }
+
+  /**
+   * Stores all the fields of the state of a token at once, keeping its metadata if any.
+   */
+  void add(String tokenId, long issueTime, long expiration, long maxLifetime) {
+    final Key key = new Key(tokenId);
+    segmentFor(key).put(key, issueTime, expiration, maxLifetime);
+    indexExpiration(key, expiration);
+  }
+
+  void setIssueTime(String tokenId, long issueTime) {
+    setValue(tokenId, ISSUE_TIME, HAS_ISSUE_TIME, issueTime);
+  }
+
+  void setExpiration(String tokenId, long expiration) {
+    final Key key = new Key(tokenId);
+    segmentFor(key).putValue(key, EXPIRATION, HAS_EXPIRATION, expiration);
+    indexExpiration(key, expiration);
+  }
+
+  void setMaxLifetime(String tokenId, long maxLifetime) {
+    setValue(tokenId, MAX_LIFETIME, HAS_MAX_LIFETIME, maxLifetime);
+  }
+
+  void setMetadata(String tokenId, TokenMetadata metadata) {
+    final Key key = new Key(tokenId);
+    segmentFor(key).putMetadata(key, metadata);
+  }
+
+  /**
+   * @return the issue time of the token, or {@link #NO_VALUE}
+   */
+  long getIssueTime(String tokenId) {
+    return getValue(tokenId, ISSUE_TIME, HAS_ISSUE_TIME);
+  }
+
+  /**
+   * @return the expiration of the token, or {@link #NO_VALUE}
+   */
+  long getExpiration(String tokenId) {
+    return getValue(tokenId, EXPIRATION, HAS_EXPIRATION);
+  }
+
+  /**
+   * @return the maximum lifetime of the token, or {@link #NO_VALUE}
+   */
+  long getMaxLifetime(String tokenId) {
+    return getValue(tokenId, MAX_LIFETIME, HAS_MAX_LIFETIME);
+  }
+
+  TokenMetadata getMetadata(String tokenId) {
+    final Key key = new Key(tokenId);
+    return segmentFor(key).getMetadata(key);
+  }
+
+  boolean hasExpiration(String tokenId) {
+    return getExpiration(tokenId) != NO_VALUE;
+  }
+
+  /**
+   * Removes all the state of the tokens.
+   */
+  void remove(Collection<String> tokenIds) {
+    for (String tokenId : tokenIds) {
+      final Key key = new Key(tokenId);
+      segmentFor(key).remove(key);
+    }
+  }
+
+  /**
+   * @return the identifiers of the tokens with an expiration
+   */
+  List<String> getTokenIds() {
+    final List<String> tokenIds = new ArrayList<>();
+    for (Segment segment : segments) {
+      segment.collectTokenIds(tokenIds);
+    }
+    return tokenIds;
+  }
+
+  /**
+   * Sweeps the expiration index up to the given time. The tokens returned are no longer indexed:
+   * the caller is expected to remove them, or to {@link #reindex(Collection)} the ones it keeps.
+   *
+   * @return the identifiers of the tokens that expired at or before the given time
+   */
+  Set<String> drainExpiredTokenIds(long expirationLimit) {
+    final Set<String> tokenIds = new HashSet<>();
+    final long lastBucket = Math.floorDiv(expirationLimit, EXPIRATION_BUCKET_WIDTH);
+    for (Long bucketStart : new ArrayList<>(expirationBuckets.headMap(lastBucket, true).keySet())) {
+      final ExpirationBucket bucket = expirationBuckets.remove(bucketStart);
+      if (bucket == null) {
+        continue;
+      }
+      for (Key key : bucket.close()) {
+        final long expiration = segmentFor(key).getValue(key, EXPIRATION, HAS_EXPIRATION);
+        if (expiration == NO_VALUE) {
+          continue; // Removed
+        }
+        if (expiration <= expirationLimit) {
+          tokenIds.add(key.getTokenId());
+        } else if (Math.floorDiv(expiration, EXPIRATION_BUCKET_WIDTH) == bucketStart) {
+          // Not expired yet; entries of tokens whose expiration moved to another bucket are stale
+          indexExpiration(key, expiration);
+        }
+      }
+    }
+    return tokenIds;
+  }
+
+  /**
+   * Indexes the expiration of tokens drained from the index but not removed, so that later sweeps
+   * consider them again. Tokens without state are skipped.
+   */
+  void reindex(Collection<String> tokenIds) {
+    for (String tokenId : tokenIds) {
+      final Key key = new Key(tokenId);
+      final long expiration = segmentFor(key).getValue(key, EXPIRATION, HAS_EXPIRATION);
+      if (expiration != NO_VALUE) {
+        indexExpiration(key, expiration);
+      }
+    }
+  }
+
+  /**
+   * @return the number of tokens with some state
+   */
+  int size() {
+    int size = 0;
+    for (Segment segment : segments) {
+      size += segment.size();
+    }
+    return size;
+  }
+
+  /**
+   * @return the number of bytes taken by the tables and the expiration index of the store, not
+   * counting the metadata objects and the identifiers that are not UUIDs
+   */
+  long getMemoryUsage() {
+    long memoryUsage = 0;
+    for (Segment segment : segments) {
+      memoryUsage += segment.getMemoryUsage();
+    }
+    for (ExpirationBucket bucket : expirationBuckets.values()) {
+      memoryUsage += bucket.getMemoryUsage();
+    }
+    return memoryUsage;
+  }
+
+  private void indexExpiration(Key key, long expiration) {
+    final long bucketStart = Math.floorDiv(expiration, EXPIRATION_BUCKET_WIDTH);
+    boolean added;
+    do {
+      // A bucket being swept refuses new entries, they go to a new bucket
+      added = expirationBuckets.computeIfAbsent(bucketStart, b -> new ExpirationBucket()).add(key);
+    } while (!added);
+  }
+
+  private void setValue(String tokenId, int field, int flag, long value) {
+    final Key key = new Key(tokenId);
+    segmentFor(key).putValue(key, field, flag, value);
+  }
+
+  private long getValue(String tokenId, int field, int flag) {
+    final Key key = new Key(tokenId);
+    return segmentFor(key).getValue(key, field, flag);
+  }
+
+  private Segment segmentFor(Key key) {
+    // The top bits pick the segment, the low bits the slot in its table
+    return segments[key.hash >>> (Integer.SIZE - SEGMENT_BITS)];
+  }
+
+  private static int hash(long msb, long lsb) {
+    return mix(msb * 31 + lsb);
+  }
+
+  private static int hash(String tokenId) {
+    return mix(tokenId.hashCode());
+  }
+
+  private static int mix(long value) {
+    long h = value;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    return (int) h;
+  }
+
+  private static boolean isPackable(String tokenId) {
+    if (tokenId.length() != 36) {
+      return false;
+    }
+    for (int i = 0; i < 36; i++) {
+      final char c = tokenId.charAt(i);
+      if (i == 8 || i == 13 || i == 18 || i == 23) {
+        if (c != '-') {
+          return false;
+        }
+      } else if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f')) {
+        // Only the lower case form, so that the identifier can be given back as is
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static long parseHex(String tokenId, int start, int end, long value) {
+    long result = value;
+    for (int i = start; i < end; i++) {
+      result = (result << 4) | Character.digit(tokenId.charAt(i), 16);
+    }
+    return result;
+  }
+
+  private static final class Key {
+    final String tokenId;
+    final boolean packed;
+    final long msb;
+    final long lsb;
+    final int hash;
+
+    Key(long msb, long lsb) {
+      tokenId = null;
+      packed = true;
+      this.msb = msb;
+      this.lsb = lsb;
+      hash = hash(msb, lsb);
+    }
+
+    Key(String tokenId) {
+      this.tokenId = tokenId;
+      packed = isPackable(tokenId);
+      if (packed) {
+        msb = parseHex(tokenId, 14, 18, parseHex(tokenId, 9, 13, parseHex(tokenId, 0, 8, 0)));
+        lsb = parseHex(tokenId, 24, 36, parseHex(tokenId, 19, 23, 0));
+        hash = hash(msb, lsb);
+      } else {
+        msb = 0;
+        lsb = 0;
+        hash = hash(tokenId);
+      }
+    }
+
+    String getTokenId() {
+      return tokenId == null ? new UUID(msb, lsb).toString() : tokenId;
+    }
+  }
+
+  /*
+   * The keys of the tokens expiring within a bucket, UUIDs packed in pairs of longs
+   */
+  private static final class ExpirationBucket {
+    private long[] uuids = new long[16];
+    private int uuidsLength;
+    private List<String> tokenIds;
+    private boolean closed;
+
+    synchronized boolean add(Key key) {
+      if (closed) {
+        return false;
+      }
+      if (key.packed) {
+        if (uuidsLength == uuids.length) {
+          uuids = Arrays.copyOf(uuids, uuids.length * 2);
+        }
+        uuids[uuidsLength++] = key.msb;
+        uuids[uuidsLength++] = key.lsb;
+      } else {
+        if (tokenIds == null) {
+          tokenIds = new ArrayList<>();
+        }
+        tokenIds.add(key.tokenId);
+      }
+      return true;
+    }
+
+    synchronized List<Key> close() {
+      closed = true;
+      final List<Key> keys = new ArrayList<>(uuidsLength / 2 + (tokenIds == null ? 0 : tokenIds.size()));
+      for (int i = 0; i < uuidsLength; i += 2) {
+        keys.add(new Key(uuids[i], uuids[i + 1]));
+      }
+      if (tokenIds != null) {
+        for (String tokenId : tokenIds) {
+          keys.add(new Key(tokenId));
+        }
+      }
+      return keys;
+    }
+
+    synchronized long getMemoryUsage() {
+      long memoryUsage = ARRAY_HEADER_SIZE + uuids.length * (long) Long.BYTES;
+      if (tokenIds != null) {
+        memoryUsage += ARRAY_HEADER_SIZE + tokenIds.size() * (long) REFERENCE_SIZE;
+      }
+      return memoryUsage;
+    }
+  }
+
+  private static final class Segment {
+    private byte[] states = new byte[MIN_CAPACITY];
+    private long[] values = new long[MIN_CAPACITY * FIELDS];
+    /* Allocated with the first identifier that is not a UUID */
+    private String[] tokenIds;
+    /* Allocated with the first metadata */
+    private TokenMetadata[] metadata;
+    /* Records, and records plus removed slots */
+    private int size;
+    private int used;
+
+    synchronized void put(Key key, long issueTime, long expiration, long maxLifetime) {
+      final int slot = findOrInsert(key);
+      values[slot * FIELDS + ISSUE_TIME] = issueTime;
+      values[slot * FIELDS + EXPIRATION] = expiration;
+      values[slot * FIELDS + MAX_LIFETIME] = maxLifetime;
+      states[slot] |= HAS_ISSUE_TIME | HAS_EXPIRATION | HAS_MAX_LIFETIME;
+    }
+
+    synchronized void putValue(Key key, int field, int flag, long value) {
+      final int slot = findOrInsert(key);
+      values[slot * FIELDS + field] = value;
+      states[slot] |= flag;
+    }
+
+    synchronized long getValue(Key key, int field, int flag) {
+      final int slot = find(key);
+      return slot < 0 || (states[slot] & flag) == 0 ? NO_VALUE : values[slot * FIELDS + field];
+    }
+
+    synchronized void putMetadata(Key key, TokenMetadata tokenMetadata) {
+      final int slot = findOrInsert(key);
+      if (metadata == null) {
+        metadata = new TokenMetadata[states.length];
+      }
+      metadata[slot] = tokenMetadata;
+    }
+
+    synchronized TokenMetadata getMetadata(Key key) {
+      final int slot = find(key);
+      return slot < 0 || metadata == null ? null : metadata[slot];
+    }
+
+    synchronized void remove(Key key) {
+      final int slot = find(key);
+      if (slot >= 0) {
+        states[slot] = REMOVED;
+        if (tokenIds != null) {
+          tokenIds[slot] = null;
+        }
+        if (metadata != null) {
+          metadata[slot] = null;
+        }
+        size--;
+        if (states.length > MIN_CAPACITY && size * 8 < states.length) {
+          resize(capacityFor(size));
+        }
+      }
+    }
+
+    synchronized void collectTokenIds(List<String> ids) {
+      for (int slot = 0; slot < states.length; slot++) {
+        if ((states[slot] & HAS_EXPIRATION) != 0) {
+          ids.add(getTokenId(slot));
+        }
+      }
+    }
+
+    synchronized int size() {
+      return size;
+    }
+
+    synchronized long getMemoryUsage() {
+      long memoryUsage = ARRAY_HEADER_SIZE + states.length + ARRAY_HEADER_SIZE + values.length * (long) Long.BYTES;
+      if (tokenIds != null) {
+        memoryUsage += ARRAY_HEADER_SIZE + tokenIds.length * (long) REFERENCE_SIZE;
+      }
+      if (metadata != null) {
+        memoryUsage += ARRAY_HEADER_SIZE + metadata.length * (long) REFERENCE_SIZE;
+      }
+      return memoryUsage;
+    }
+
+    private String getTokenId(int slot) {
+      if ((states[slot] & KEY_MASK) == UUID_KEY) {
+        return new UUID(values[slot * FIELDS + MSB], values[slot * FIELDS + LSB]).toString();
+      }
+      return tokenIds[slot];
+    }
+
+    private int find(Key key) {
+      final int mask = states.length - 1;
+      for (int slot = key.hash & mask; ; slot = (slot + 1) & mask) {
+        final int kind = states[slot] & KEY_MASK;
+        if (kind == FREE) {
+          return -1;
+        }
+        if (kind != REMOVED && matches(slot, kind, key)) {
+          return slot;
+        }
+      }
+    }
+
+    private boolean matches(int slot, int kind, Key key) {
+      if (kind == UUID_KEY) {
+        return key.packed && values[slot * FIELDS + MSB] == key.msb && values[slot * FIELDS + LSB] == key.lsb;
+      }
+      return !key.packed && key.tokenId.equals(tokenIds[slot]);
+    }
+
+    private int findOrInsert(Key key) {
+      final int existing = find(key);
+      if (existing >= 0) {
+        return existing;
+      }
+      // Keep at least a quarter of the slots free so that probe sequences stay short
+      if ((used + 1) * 4 > states.length * 3) {
+        resize(capacityFor(size + 1));
+      }
+      final int mask = states.length - 1;
+      int slot = key.hash & mask;
+      while ((states[slot] & KEY_MASK) != FREE && (states[slot] & KEY_MASK) != REMOVED) {
+        slot = (slot + 1) & mask;
+      }
+      if (states[slot] == FREE) {
+        used++;
+      }
+      size++;
+      setKey(slot, key);
+      return slot;
+    }
+
+    private void setKey(int slot, Key key) {
+      if (key.packed) {
+        states[slot] = UUID_KEY;
+        values[slot * FIELDS + MSB] = key.msb;
+        values[slot * FIELDS + LSB] = key.lsb;
+      } else {
+        states[slot] = STRING_KEY;
+        if (tokenIds == null) {
+          tokenIds = new String[states.length];
+        }
+        tokenIds[slot] = key.tokenId;
+      }
+    }
+
+    /* Tables at most half full once rebuilt */
+    private static int capacityFor(int size) {
+      return Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, size) * 2 - 1) << 1);
+    }
+
+    private void resize(int capacity) {
+      final byte[] oldStates = states;
+      final long[] oldValues = values;
+      final String[] oldTokenIds = tokenIds;
+      final TokenMetadata[] oldMetadata = metadata;
+      states = new byte[capacity];
+      values = new long[capacity * FIELDS];
+      tokenIds = oldTokenIds == null ? null : new String[capacity];
+      metadata = oldMetadata == null ? null : new TokenMetadata[capacity];
+      used = size;
+
+      final int mask = capacity - 1;
+      for (int oldSlot = 0; oldSlot < oldStates.length; oldSlot++) {
+        final int kind = oldStates[oldSlot] & KEY_MASK;
+        if (kind == FREE || kind == REMOVED) {
+          continue;
+        }
+        final int hash = kind == UUID_KEY
+            ? hash(oldValues[oldSlot * FIELDS + MSB], oldValues[oldSlot * FIELDS + LSB]) : hash(oldTokenIds[oldSlot]);
+        int slot = hash & mask;
+        while (states[slot] != FREE) {
+          slot = (slot + 1) & mask;
+        }
+        states[slot] = oldStates[oldSlot];
+        System.arraycopy(oldValues, oldSlot * FIELDS, values, slot * FIELDS, FIELDS);
+        if (oldTokenIds != null) {
+          tokenIds[slot] = oldTokenIds[oldSlot];
+        }
+        if (oldMetadata != null) {
+          metadata[slot] = oldMetadata[oldSlot];
+        }
+      }
+    }
+  }
+}
@@ -19,11 +19,22 @@ package org.apache.knox.gateway.services.token.impl;
 
 import static org.apache.knox.gateway.services.ServiceType.ALIAS_SERVICE;
 
-import java.time.Instant;
 import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.knox.gateway.config.GatewayConfig;
 import org.apache.knox.gateway.services.GatewayServices;
 import org.apache.knox.gateway.services.ServiceLifecycleException;
@@ -41,9 +52,20 @@ import org.apache.knox.gateway.util.Tokens;
  */
 public class ZookeeperTokenStateService extends AliasBasedTokenStateService implements RemoteTokenStateChangeListener {
 
+  private static final int LOOKUP_THREADS = 4;
+  private static final int MAX_PENDING_LOOKUPS = 256;
+
   private final GatewayServices gatewayServices;
   private final AliasServiceFactory aliasServiceFactory;
 
+  /* Lookups of aliases not known yet, by alias; concurrent lookups of the same alias share one */
+  private final Map<String, CompletableFuture<char[]>> pendingLookups = new ConcurrentHashMap<>();
+  /* Bounds the lookups, and so the request threads, waiting for aliases that may never show up */
+  private final Semaphore pendingLookupPermits = new Semaphore(MAX_PENDING_LOOKUPS);
+  private ExecutorService lookupExecutor;
+  private ScheduledExecutorService lookupTimer;
+  private long lookupTimeout;
+
   public ZookeeperTokenStateService(GatewayServices gatewayServices) {
     this(gatewayServices, new AliasServiceFactory());
   }
@@ -65,6 +87,27 @@ public class ZookeeperTokenStateService extends AliasBasedTokenStateService impl
     super.init(config, options);
     options.remove(ZookeeperRemoteAliasService.OPTION_NAME_SHOULD_CREATE_TOKENS_SUB_NODE);
     options.remove(ZookeeperRemoteAliasService.OPTION_NAME_SHOULD_USE_LOCAL_ALIAS);
+
+    lookupTimeout = config.getKnoxTokenStateZookeeperLookupTimeout() > 0 ? config.getKnoxTokenStateZookeeperLookupTimeout()
+        : TimeUnit.SECONDS.toMillis(statePersistenceInterval + 1); // an addition of 1 second as grace period
+    lookupExecutor = new ThreadPoolExecutor(LOOKUP_THREADS, LOOKUP_THREADS, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(MAX_PENDING_LOOKUPS),
+        new BasicThreadFactory.Builder().namingPattern("ZookeeperTokenStateLookup-%d").daemon(true).build(),
+        new ThreadPoolExecutor.AbortPolicy());
+    lookupTimer = Executors.newSingleThreadScheduledExecutor(
+        new BasicThreadFactory.Builder().namingPattern("ZookeeperTokenStateLookupTimer").daemon(true).build());
+  }
+
+  @Override
+  public void stop() throws ServiceLifecycleException {
+    super.stop();
+    if (lookupExecutor != null) {
+      lookupExecutor.shutdownNow();
+    }
+    if (lookupTimer != null) {
+      lookupTimer.shutdownNow();
+    }
+    pendingLookups.values().forEach(lookup -> lookup.complete(null));
   }
 
   @Override
@@ -79,45 +122,113 @@ public class ZookeeperTokenStateService extends AliasBasedTokenStateService impl
     return true;
   }
 
+  /*
+   * In HA scenarios, it might happen, that node1 generated a token but its state
+   * reaches ZK a bit later. If there is a subsequent call to this token on another
+   * node - e.g. node2 - before it's persisted in ZK the token would be considered
+   * unknown. (see CDPD-22225)
+   *
+   * To avoid this issue without parking the request thread, the alias is read from
+   * ZK once, in the background, and if it is not there yet the lookup completes as
+   * soon as the alias shows up (see onChanged) or when the lookup timeout elapses.
+   * Concurrent lookups of the same alias share the same ZK read and wait.
+   *
+   * As unknown (e.g. forged) token IDs wait for the whole lookup timeout, the number of
+   * lookups in progress is bounded: once it is reached, the aliases not being looked up
+   * already are reported missing right away instead of parking more request threads.
+   */
   @Override
   protected char[] getPasswordUsingAliasService(String alias) throws AliasServiceException {
-    char[] password = super.getPasswordUsingAliasService(alias);
+    final CompletableFuture<char[]> lookup = lookUpAlias(alias);
+    try {
+      return lookup.get(lookupTimeout, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      log.zkAliasLookupTimedOut(getDisplayableAliasText(alias), lookupTimeout);
+      return null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.failedZkFetchAlias(getDisplayableAliasText(alias), e.getMessage(), e);
+      return null;
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof AliasServiceException) {
+        throw (AliasServiceException) e.getCause();
+      }
+      throw (RuntimeException) e.getCause();
+    }
+  }
+
+  private CompletableFuture<char[]> lookUpAlias(String alias) {
+    final CompletableFuture<char[]> lookup = new CompletableFuture<>();
+    final CompletableFuture<char[]> pendingLookup = pendingLookups.putIfAbsent(alias, lookup);
+    if (pendingLookup != null) {
+      return pendingLookup;
+    }
 
-    if (password == null) {
-      password = retry(alias);
+    if (!pendingLookupPermits.tryAcquire()) {
+      log.zkAliasLookupRejected(getDisplayableAliasText(alias));
+      pendingLookups.remove(alias, lookup);
+      lookup.complete(null);
+      return lookup;
+    }
+
+    lookup.whenComplete((password, error) -> {
+      pendingLookups.remove(alias, lookup);
+      pendingLookupPermits.release();
+    });
+    try {
+      // completing a lookup that is already done is a no-op
+      lookupTimer.schedule(() -> lookup.complete(null), lookupTimeout, TimeUnit.MILLISECONDS);
+      lookupExecutor.execute(() -> readAlias(alias, lookup));
+    } catch (RejectedExecutionException e) {
+      // the service is stopping or too many ZK reads are queued
+      log.zkAliasLookupRejected(getDisplayableAliasText(alias));
+      lookup.complete(null);
+    }
+    return lookup;
+  }
+
+  private void readAlias(String alias, CompletableFuture<char[]> lookup) {
+    try {
+      final char[] password = super.getPasswordUsingAliasService(alias);
+      if (password != null) {
+        lookup.complete(password);
+      } else if (!lookup.isDone()) {
+        log.waitingForZkAlias(getDisplayableAliasText(alias));
+      }
+    } catch (AliasServiceException | RuntimeException e) {
+      lookup.completeExceptionally(e);
     }
-    return password;
   }
 
   /*
-   * In HA scenarios, it might happen, that node1 generated a token but the state
-   * persister thread saves that token in ZK a bit later. If there is a subsequent
-   * call to this token on another node - e.g. node2 - before it's persisted in ZK
-   * the token would be considered unknown. (see CDPD-22225)
-   *
-   * To avoid this issue, the ZK token state service should retry to fetch the
-   * token from ZK in every second until the token is found or the number of
-   * retries exceeded the configured persistence interval
+   * Fresh token state is pushed to ZK right away, rather than at the next persistence interval,
+   * so that it reaches the other gateways before the token is presented to them
    */
-  private char[] retry(String alias) throws AliasServiceException {
-    char[] password = null;
-    final Instant timeLimit = Instant.now().plusSeconds(statePersistenceInterval).plusSeconds(1); // an addition of 1 second as grace period
+  @Override
+  public void addToken(String tokenId, long issueTime, long expiration, long maxLifetimeDuration) {
+    super.addToken(tokenId, issueTime, expiration, maxLifetimeDuration);
+    persistTokenStateImmediately();
+  }
 
-    while (password == null && timeLimit.isAfter(Instant.now())) {
-      try {
-        TimeUnit.SECONDS.sleep(1);
-        log.retryZkFetchAlias(getDisplayableAliasText(alias));
-        password = super.getPasswordUsingAliasService(alias);
-      } catch (InterruptedException e) {
-        log.failedRetryZkFetchAlias(getDisplayableAliasText(alias), e.getMessage(), e);
-      }
-    }
-    return password;
+  @Override
+  protected void updateExpiration(String tokenId, long expiration) {
+    super.updateExpiration(tokenId, expiration);
+    persistTokenStateImmediately();
+  }
+
+  @Override
+  public void addMetadata(String tokenId, TokenMetadata metadata) {
+    super.addMetadata(tokenId, metadata);
+    persistTokenStateImmediately();
   }
 
   @Override
   public void onChanged(String alias, String updatedState) {
     processAlias(alias, updatedState);
+    final CompletableFuture<char[]> pendingLookup = pendingLookups.get(alias);
+    if (pendingLookup != null) {
+      pendingLookup.complete(updatedState.toCharArray());
+    }
     log.onRemoteTokenStateChanged(getDisplayableAliasText(alias));
   }
 
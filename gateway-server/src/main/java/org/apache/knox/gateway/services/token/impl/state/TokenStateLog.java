@@ -0,0 +1,606 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.knox.gateway.services.token.impl.state;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.knox.gateway.config.GatewayConfig;
+import org.apache.knox.gateway.i18n.messages.MessagesFactory;
+import org.apache.knox.gateway.services.security.impl.ConfigurableEncryptor;
+import org.apache.knox.gateway.services.security.token.TokenMetadata;
+import org.apache.knox.gateway.services.token.impl.TokenStateServiceMessages;
+import org.apache.knox.gateway.util.Tokens;
+
+/**
+ * Append-only log of the changes to the token state, in the gateway security directory.
+ * <p>
+ * Every change is a checksummed record appended to the active segment file, existing data is
+ * never rewritten. The metadata of the tokens, which holds user names, comments and passcodes,
+ * is encrypted with AES-GCM under a key derived from the master secret, the token identifier
+ * being authenticated along with it.
+ * <p>
+ * Compaction rolls the appends over to a new segment, then replaces the older segments with a
+ * snapshot of the live state. Records set fields to absolute values, so replaying the segments
+ * that follow a snapshot is correct even when the snapshot already includes some of their changes.
+ */
+public class TokenStateLog implements Closeable {
+  private static final TokenStateServiceMessages LOG = MessagesFactory.get(TokenStateServiceMessages.class);
+
+  static final String LOG_DIR_NAME = "token-state-log";
+  private static final String SALT_FILE_NAME = "metadata.salt";
+  private static final String SEGMENT_PREFIX = "tokens-";
+  private static final String SEGMENT_SUFFIX = ".log";
+  private static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+  /* Segment header: magic number and kind of segment */
+  private static final int MAGIC = 0x4b545331;
+  private static final int HEADER_SIZE = Integer.BYTES + 1;
+  private static final byte LOG_SEGMENT = 0;
+  private static final byte SNAPSHOT_SEGMENT = 1;
+
+  /* Record frame: body length and CRC32 of the body */
+  private static final int FRAME_SIZE = Integer.BYTES * 2;
+  private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+
+  private static final byte ADD = 1;
+  private static final byte EXPIRATION = 2;
+  private static final byte METADATA = 3;
+  private static final byte REMOVAL = 4;
+
+  private static final String CIPHER_TRANSFORMATION = "AES/GCM/NoPadding";
+  private static final int NONCE_SIZE = 12;
+  private static final int TAG_SIZE = 128;
+  private static final int SALT_SIZE = 16;
+
+  /**
+   * Receives the records of the log, when it is loaded or to write a snapshot.
+   */
+  public interface RecordHandler {
+    void tokenAdded(String tokenId, long issueTime, long expiration, long maxLifetimeDuration);
+
+    void expirationUpdated(String tokenId, long expiration);
+
+    void metadataAdded(String tokenId, TokenMetadata metadata);
+
+    void tokensRemoved(Set<String> tokenIds);
+  }
+
+  /**
+   * The live token state, written to a snapshot when the log is compacted.
+   */
+  public interface Snapshot {
+    void writeTo(RecordHandler writer) throws IOException;
+  }
+
+  private final Path logDir;
+  private final SecretKey key;
+  private final boolean syncOnAppend;
+  private final SecureRandom random = new SecureRandom();
+  private final RecordEncoder encoder = new RecordEncoder();
+  private final Object compactionLock = new Object();
+
+  private FileChannel active;
+  private long activeGeneration;
+  private boolean unsynced;
+  /* Records in the segments that replay reads, the snapshot included */
+  private long records;
+
+  public TokenStateLog(GatewayConfig config, char[] masterSecret) throws IOException {
+    logDir = Paths.get(config.getGatewaySecurityDir(), LOG_DIR_NAME);
+    Files.createDirectories(logDir);
+    syncOnAppend = config.getKnoxTokenStateLogSyncInterval() <= 0;
+    key = deriveKey(config, masterSecret, getSalt());
+  }
+
+  /**
+   * Loads the log, handing its records over in order, and opens it for appends. A corrupted
+   * end of the last segment, left by a crash during an append, is discarded.
+   *
+   * @return the number of records loaded
+   */
+  public long open(RecordHandler handler) throws IOException {
+    synchronized (compactionLock) {
+      synchronized (this) {
+        deleteFiles(SNAPSHOT_SUFFIX);
+        final List<Long> generations = getGenerations();
+        int first = 0;
+        for (int i = generations.size() - 1; i >= 0; i--) {
+          if (getSegmentKind(generations.get(i)) == SNAPSHOT_SEGMENT) {
+            first = i;
+            break;
+          }
+        }
+        for (int i = 0; i < first; i++) {
+          Files.deleteIfExists(getSegmentPath(generations.get(i)));
+        }
+
+        records = 0;
+        byte lastKind = SNAPSHOT_SEGMENT;
+        for (int i = first; i < generations.size(); i++) {
+          lastKind = load(generations.get(i), i == generations.size() - 1, handler);
+        }
+        if (generations.isEmpty() || lastKind != LOG_SEGMENT) {
+          activeGeneration = generations.isEmpty() ? 1 : generations.get(generations.size() - 1) + 1;
+          active = createSegment(getSegmentPath(activeGeneration), LOG_SEGMENT);
+        } else {
+          activeGeneration = generations.get(generations.size() - 1);
+          active = FileChannel.open(getSegmentPath(activeGeneration), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        return records;
+      }
+    }
+  }
+
+  public synchronized void appendAdd(String tokenId, long issueTime, long expiration, long maxLifetimeDuration) throws IOException {
+    append(encoder.encodeAdd(tokenId, issueTime, expiration, maxLifetimeDuration));
+  }
+
+  public synchronized void appendExpiration(String tokenId, long expiration) throws IOException {
+    append(encoder.encodeExpiration(tokenId, expiration));
+  }
+
+  public synchronized void appendMetadata(String tokenId, TokenMetadata metadata) throws IOException {
+    append(encoder.encodeMetadata(tokenId, metadata));
+  }
+
+  public synchronized void appendRemoval(Collection<String> tokenIds) throws IOException {
+    append(encoder.encodeRemoval(tokenIds));
+  }
+
+  /**
+   * Forces the appends since the last sync to disk.
+   */
+  public synchronized void sync() throws IOException {
+    if (unsynced && active != null) {
+      active.force(false);
+      unsynced = false;
+    }
+  }
+
+  /**
+   * @return whether the log holds enough superseded records to be worth compacting
+   */
+  public synchronized boolean needsCompaction(long liveTokens, long minRecords) {
+    return records > Math.max(minRecords, liveTokens * 2);
+  }
+
+  /**
+   * Replaces the records appended so far with a snapshot of the live state. Appends go on
+   * meanwhile, to a new segment.
+   *
+   * @return the number of records of the snapshot
+   */
+  public long compact(Snapshot snapshot) throws IOException {
+    synchronized (compactionLock) {
+      final long generation;
+      synchronized (this) {
+        sync();
+        active.close();
+        generation = activeGeneration;
+        activeGeneration++;
+        active = createSegment(getSegmentPath(activeGeneration), LOG_SEGMENT);
+        records = 0;
+      }
+
+      final Path snapshotPath = logDir.resolve(getSegmentName(generation) + SNAPSHOT_SUFFIX);
+      final SnapshotWriter writer = new SnapshotWriter(createSegment(snapshotPath, SNAPSHOT_SEGMENT));
+      try {
+        snapshot.writeTo(writer);
+        writer.close();
+      } catch (IOException e) {
+        discard(writer, snapshotPath);
+        throw e;
+      } catch (UncheckedIOException e) {
+        discard(writer, snapshotPath);
+        throw e.getCause();
+      }
+      Files.move(snapshotPath, getSegmentPath(generation), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      for (long older : getGenerations()) {
+        if (older < generation) {
+          Files.deleteIfExists(getSegmentPath(older));
+        }
+      }
+
+      synchronized (this) {
+        records += writer.written;
+      }
+      return writer.written;
+    }
+  }
+
+  private static void discard(SnapshotWriter writer, Path snapshotPath) throws IOException {
+    writer.channel.close();
+    Files.deleteIfExists(snapshotPath);
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (active != null) {
+      sync();
+      active.close();
+      active = null;
+    }
+  }
+
+  private void append(ByteBuffer record) throws IOException {
+    if (active == null) {
+      throw new IOException("The token state log is not open");
+    }
+    write(active, record);
+    records++;
+    if (syncOnAppend) {
+      active.force(false);
+    } else {
+      unsynced = true;
+    }
+  }
+
+  private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private byte load(long generation, boolean last, RecordHandler handler) throws IOException {
+    final Path path = getSegmentPath(generation);
+    final RecordDecoder decoder = new RecordDecoder(handler);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      final DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 65536));
+      byte kind;
+      try {
+        if (input.readInt() != MAGIC) {
+          throw new IOException("Not a token state log segment: " + path);
+        }
+        kind = input.readByte();
+      } catch (EOFException e) {
+        // Created but never written to
+        channel.truncate(0);
+        write(channel, ByteBuffer.wrap(getHeader(LOG_SEGMENT)));
+        return LOG_SEGMENT;
+      }
+
+      long offset = HEADER_SIZE;
+      final CRC32 crc = new CRC32();
+      byte[] body = new byte[256];
+      while (true) {
+        final int length;
+        try {
+          length = input.readInt();
+        } catch (EOFException e) {
+          break;
+        }
+        boolean valid = length > 0 && length <= MAX_RECORD_SIZE;
+        if (valid) {
+          try {
+            final int checksum = input.readInt();
+            if (body.length < length) {
+              body = new byte[Math.max(length, body.length * 2)];
+            }
+            input.readFully(body, 0, length);
+            crc.reset();
+            crc.update(body, 0, length);
+            valid = (int) crc.getValue() == checksum;
+          } catch (EOFException e) {
+            valid = false;
+          }
+        }
+        if (!valid) {
+          LOG.discardedCorruptedTokenStateLog(path.toString(), offset);
+          if (last) {
+            channel.truncate(offset);
+          }
+          break;
+        }
+        decoder.decode(body, length);
+        records++;
+        offset += FRAME_SIZE + length;
+      }
+      return kind;
+    }
+  }
+
+  private byte getSegmentKind(long generation) throws IOException {
+    try (InputStream input = Files.newInputStream(getSegmentPath(generation))) {
+      final byte[] header = new byte[HEADER_SIZE];
+      if (input.read(header) != HEADER_SIZE || ByteBuffer.wrap(header).getInt() != MAGIC) {
+        return LOG_SEGMENT;
+      }
+      return header[Integer.BYTES];
+    }
+  }
+
+  private FileChannel createSegment(Path path, byte kind) throws IOException {
+    final FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.WRITE);
+    write(channel, ByteBuffer.wrap(getHeader(kind)));
+    channel.force(true);
+    return channel;
+  }
+
+  private static byte[] getHeader(byte kind) {
+    return ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).put(kind).array();
+  }
+
+  private List<Long> getGenerations() throws IOException {
+    final List<Long> generations = new ArrayList<>();
+    try (DirectoryStream<Path> segments = Files.newDirectoryStream(logDir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+      for (Path segment : segments) {
+        final String name = segment.getFileName().toString();
+        try {
+          generations.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()), 16));
+        } catch (NumberFormatException e) {
+          // Not a segment
+        }
+      }
+    }
+    Collections.sort(generations);
+    return generations;
+  }
+
+  private void deleteFiles(String suffix) throws IOException {
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(logDir, "*" + suffix)) {
+      for (Path file : files) {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+
+  private Path getSegmentPath(long generation) {
+    return logDir.resolve(getSegmentName(generation) + SEGMENT_SUFFIX);
+  }
+
+  private static String getSegmentName(long generation) {
+    return String.format(Locale.ROOT, "%s%016x", SEGMENT_PREFIX, generation);
+  }
+
+  private byte[] getSalt() throws IOException {
+    final Path saltPath = logDir.resolve(SALT_FILE_NAME);
+    if (Files.exists(saltPath)) {
+      return Files.readAllBytes(saltPath);
+    }
+    final byte[] salt = new byte[SALT_SIZE];
+    random.nextBytes(salt);
+    Files.write(saltPath, salt);
+    return salt;
+  }
+
+  private static SecretKey deriveKey(GatewayConfig config, char[] masterSecret, byte[] salt) throws IOException {
+    final ConfigurableEncryptor encryptor = new ConfigurableEncryptor(new String(masterSecret));
+    encryptor.init(config);
+    final SecretKey derived = encryptor.getKeyFromPassword(new String(masterSecret), salt);
+    if (derived == null) {
+      throw new IOException("Could not derive the token state log key from the master secret");
+    }
+    return new SecretKeySpec(derived.getEncoded(), "AES");
+  }
+
+  /*
+   * Encodes records in a buffer reused from one record to the next
+   */
+  private class RecordEncoder {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+    private final DataOutputStream output = new DataOutputStream(bytes);
+    private final CRC32 crc = new CRC32();
+    private Cipher cipher;
+
+    ByteBuffer encodeAdd(String tokenId, long issueTime, long expiration, long maxLifetimeDuration) throws IOException {
+      start(ADD, tokenId);
+      output.writeLong(issueTime);
+      output.writeLong(expiration);
+      output.writeLong(maxLifetimeDuration);
+      return finish();
+    }
+
+    ByteBuffer encodeExpiration(String tokenId, long expiration) throws IOException {
+      start(EXPIRATION, tokenId);
+      output.writeLong(expiration);
+      return finish();
+    }
+
+    ByteBuffer encodeMetadata(String tokenId, TokenMetadata metadata) throws IOException {
+      start(METADATA, tokenId);
+      final byte[] nonce = new byte[NONCE_SIZE];
+      random.nextBytes(nonce);
+      final byte[] encrypted;
+      try {
+        if (cipher == null) {
+          cipher = Cipher.getInstance(CIPHER_TRANSFORMATION);
+        }
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_SIZE, nonce));
+        cipher.updateAAD(tokenId.getBytes(StandardCharsets.UTF_8));
+        encrypted = cipher.doFinal(metadata.toJSON().getBytes(StandardCharsets.UTF_8));
+      } catch (GeneralSecurityException e) {
+        throw new IOException("Could not encrypt the token metadata", e);
+      }
+      output.write(nonce);
+      output.writeInt(encrypted.length);
+      output.write(encrypted);
+      return finish();
+    }
+
+    ByteBuffer encodeRemoval(Collection<String> tokenIds) throws IOException {
+      start(REMOVAL);
+      output.writeInt(tokenIds.size());
+      for (String tokenId : tokenIds) {
+        output.writeUTF(tokenId);
+      }
+      return finish();
+    }
+
+    private void start(byte type, String tokenId) throws IOException {
+      start(type);
+      output.writeUTF(tokenId);
+    }
+
+    private void start(byte type) throws IOException {
+      bytes.reset();
+      // Room for the frame
+      output.writeInt(0);
+      output.writeInt(0);
+      output.writeByte(type);
+    }
+
+    private ByteBuffer finish() throws IOException {
+      output.flush();
+      final byte[] record = bytes.toByteArray();
+      final int length = record.length - FRAME_SIZE;
+      crc.reset();
+      crc.update(record, FRAME_SIZE, length);
+      return ByteBuffer.wrap(record).putInt(0, length).putInt(Integer.BYTES, (int) crc.getValue());
+    }
+  }
+
+  private class RecordDecoder {
+    private final RecordHandler handler;
+    private Cipher cipher;
+
+    RecordDecoder(RecordHandler handler) {
+      this.handler = handler;
+    }
+
+    void decode(byte[] body, int length) throws IOException {
+      final DataInputStream input = new DataInputStream(new ByteArrayInputStream(body, 0, length));
+      final byte type = input.readByte();
+      if (type == REMOVAL) {
+        final int count = input.readInt();
+        final Set<String> tokenIds = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+          tokenIds.add(input.readUTF());
+        }
+        handler.tokensRemoved(tokenIds);
+        return;
+      }
+
+      final String tokenId = input.readUTF();
+      try {
+        switch (type) {
+          case ADD:
+            handler.tokenAdded(tokenId, input.readLong(), input.readLong(), input.readLong());
+            break;
+          case EXPIRATION:
+            handler.expirationUpdated(tokenId, input.readLong());
+            break;
+          case METADATA:
+            handler.metadataAdded(tokenId, decryptMetadata(tokenId, input));
+            break;
+          default:
+            throw new IOException("Unknown record type " + type);
+        }
+      } catch (IOException | GeneralSecurityException | RuntimeException e) {
+        LOG.failedToLoadTokenStateLogRecord(Tokens.getTokenIDDisplayText(tokenId), e.getMessage(), e);
+      }
+    }
+
+    private TokenMetadata decryptMetadata(String tokenId, DataInputStream input) throws IOException, GeneralSecurityException {
+      final byte[] nonce = new byte[NONCE_SIZE];
+      input.readFully(nonce);
+      final byte[] encrypted = new byte[input.readInt()];
+      input.readFully(encrypted);
+      if (cipher == null) {
+        cipher = Cipher.getInstance(CIPHER_TRANSFORMATION);
+      }
+      cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_SIZE, nonce));
+      cipher.updateAAD(tokenId.getBytes(StandardCharsets.UTF_8));
+      return TokenMetadata.fromJSON(new String(cipher.doFinal(encrypted), StandardCharsets.UTF_8));
+    }
+  }
+
+  /*
+   * Writes a snapshot with its own encoder, while appends go on
+   */
+  private class SnapshotWriter implements RecordHandler {
+    private final RecordEncoder snapshotEncoder = new RecordEncoder();
+    private final FileChannel channel;
+    private long written;
+
+    SnapshotWriter(FileChannel channel) {
+      this.channel = channel;
+    }
+
+    @Override
+    public void tokenAdded(String tokenId, long issueTime, long expiration, long maxLifetimeDuration) {
+      write(() -> snapshotEncoder.encodeAdd(tokenId, issueTime, expiration, maxLifetimeDuration));
+    }
+
+    @Override
+    public void expirationUpdated(String tokenId, long expiration) {
+      write(() -> snapshotEncoder.encodeExpiration(tokenId, expiration));
+    }
+
+    @Override
+    public void metadataAdded(String tokenId, TokenMetadata metadata) {
+      write(() -> snapshotEncoder.encodeMetadata(tokenId, metadata));
+    }
+
+    @Override
+    public void tokensRemoved(Set<String> tokenIds) {
+      write(() -> snapshotEncoder.encodeRemoval(tokenIds));
+    }
+
+    void close() throws IOException {
+      channel.force(false);
+      channel.close();
+    }
+
+    private void write(EncodedRecord record) {
+      try {
+        TokenStateLog.write(channel, record.encode());
+        written++;
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  private interface EncodedRecord {
+    ByteBuffer encode() throws IOException;
+  }
+}
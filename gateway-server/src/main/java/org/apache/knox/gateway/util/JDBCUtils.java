@@ -17,13 +17,17 @@
  */
 package org.apache.knox.gateway.util;
 
+import javax.sql.ConnectionPoolDataSource;
 import javax.sql.DataSource;
 
+import org.apache.derby.jdbc.ClientConnectionPoolDataSource;
 import org.apache.derby.jdbc.ClientDataSource;
 import org.apache.knox.gateway.config.GatewayConfig;
 import org.apache.knox.gateway.services.security.AliasService;
 import org.apache.knox.gateway.services.security.AliasServiceException;
+import org.postgresql.ds.PGConnectionPoolDataSource;
 import org.postgresql.ds.PGSimpleDataSource;
+import org.postgresql.ds.common.BaseDataSource;
 import org.postgresql.jdbc.SslMode;
 import org.postgresql.ssl.NonValidatingFactory;
 
@@ -43,8 +47,28 @@ public class JDBCUtils {
     throw new IllegalArgumentException("Invalid database type: " + gatewayConfig.getDatabaseType());
   }
 
+  /**
+   * @return a pool of the connections to the configured database, sized according to the gateway configuration
+   */
+  public static PooledDataSource getPooledDataSource(GatewayConfig gatewayConfig, AliasService aliasService) throws AliasServiceException {
+    return new PooledDataSource(getConnectionPoolDataSource(gatewayConfig, aliasService),
+        gatewayConfig.getDatabasePoolMaxSize(), gatewayConfig.getDatabasePoolConnectionTimeout());
+  }
+
+  public static ConnectionPoolDataSource getConnectionPoolDataSource(GatewayConfig gatewayConfig, AliasService aliasService) throws AliasServiceException {
+    if (POSTGRESQL_DB_TYPE.equalsIgnoreCase(gatewayConfig.getDatabaseType())) {
+      return configurePostgresDataSource(new PGConnectionPoolDataSource(), gatewayConfig, aliasService);
+    } else if (DERBY_DB_TYPE.equalsIgnoreCase(gatewayConfig.getDatabaseType())) {
+      return configureDerbyDataSource(new ClientConnectionPoolDataSource(), gatewayConfig, aliasService);
+    }
+    throw new IllegalArgumentException("Invalid database type: " + gatewayConfig.getDatabaseType());
+  }
+
   private static DataSource createPostgresDataSource(GatewayConfig gatewayConfig, AliasService aliasService) throws AliasServiceException {
-    final PGSimpleDataSource postgresDataSource = new PGSimpleDataSource();
+    return configurePostgresDataSource(new PGSimpleDataSource(), gatewayConfig, aliasService);
+  }
+
+  private static <T extends BaseDataSource> T configurePostgresDataSource(T postgresDataSource, GatewayConfig gatewayConfig, AliasService aliasService) throws AliasServiceException {
     if (gatewayConfig.getDatabaseConnectionUrl() != null) {
       postgresDataSource.setUrl(gatewayConfig.getDatabaseConnectionUrl());
     } else {
@@ -58,7 +82,7 @@ public class JDBCUtils {
     return postgresDataSource;
   }
 
-  private static void configurePostgreSQLSsl(GatewayConfig gatewayConfig, AliasService aliasService, PGSimpleDataSource postgresDataSource) throws AliasServiceException {
+  private static void configurePostgreSQLSsl(GatewayConfig gatewayConfig, AliasService aliasService, BaseDataSource postgresDataSource) throws AliasServiceException {
     if (gatewayConfig.isDatabaseSslEnabled()) {
       postgresDataSource.setSsl(true);
       postgresDataSource.setSslMode(SslMode.VERIFY_FULL.value);
@@ -72,7 +96,10 @@ public class JDBCUtils {
   }
 
   private static DataSource createDerbyDatasource(GatewayConfig gatewayConfig, AliasService aliasService) throws AliasServiceException {
-    final ClientDataSource derbyDatasource = new ClientDataSource();
+    return configureDerbyDataSource(new ClientDataSource(), gatewayConfig, aliasService);
+  }
+
+  private static <T extends ClientDataSource> T configureDerbyDataSource(T derbyDatasource, GatewayConfig gatewayConfig, AliasService aliasService) throws AliasServiceException {
     derbyDatasource.setDatabaseName(gatewayConfig.getDatabaseName());
     derbyDatasource.setServerName(gatewayConfig.getDatabaseHost());
     derbyDatasource.setPortNumber(gatewayConfig.getDatabasePort());
@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.util;
+
+import java.io.Closeable;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+import javax.sql.ConnectionEvent;
+import javax.sql.ConnectionEventListener;
+import javax.sql.ConnectionPoolDataSource;
+import javax.sql.DataSource;
+import javax.sql.PooledConnection;
+
+/**
+ * A bounded pool of the physical connections of a {@link ConnectionPoolDataSource}.
+ * <p>
+ * The connections handed out are the logical connections of the pooled ones: closing them
+ * returns the physical connection to the pool, unless the driver reported it as broken, in
+ * which case it is discarded. When all the connections are in use, callers wait up to the
+ * configured timeout for one to be returned.
+ */
+public class PooledDataSource implements DataSource, ConnectionEventListener, Closeable {
+  private final ConnectionPoolDataSource connectionPoolDataSource;
+  private final long connectionTimeout;
+  private final Semaphore permits;
+  /* Most recently used first */
+  private final BlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<>();
+  private final Set<PooledConnection> usedConnections = ConcurrentHashMap.newKeySet();
+  private final AtomicBoolean closed = new AtomicBoolean(false);
+
+  /**
+   * @param connectionPoolDataSource the source of the physical connections
+   * @param maxSize the maximum number of physical connections open at any time
+   * @param connectionTimeout the time, in milliseconds, to wait for a connection when all of them are in use
+   */
+  public PooledDataSource(ConnectionPoolDataSource connectionPoolDataSource, int maxSize, long connectionTimeout) {
+    this.connectionPoolDataSource = connectionPoolDataSource;
+    this.connectionTimeout = connectionTimeout;
+    this.permits = new Semaphore(Math.max(1, maxSize), true);
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    if (closed.get()) {
+      throw new SQLException("The connection pool has been closed");
+    }
+    try {
+      if (!permits.tryAcquire(connectionTimeout, TimeUnit.MILLISECONDS)) {
+        throw new SQLException("Timed out after " + connectionTimeout + " ms waiting for a database connection");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while waiting for a database connection", e);
+    }
+
+    try {
+      PooledConnection pooledConnection = idleConnections.pollFirst();
+      if (pooledConnection == null) {
+        pooledConnection = connectionPoolDataSource.getPooledConnection();
+        pooledConnection.addConnectionEventListener(this);
+      }
+      usedConnections.add(pooledConnection);
+      return getLogicalConnection(pooledConnection);
+    } catch (SQLException | RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  private Connection getLogicalConnection(PooledConnection pooledConnection) throws SQLException {
+    try {
+      return pooledConnection.getConnection();
+    } catch (SQLException e) {
+      usedConnections.remove(pooledConnection);
+      closeQuietly(pooledConnection);
+      throw e;
+    }
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    throw new SQLFeatureNotSupportedException("The connections of the pool all use the same credentials");
+  }
+
+  @Override
+  public void connectionClosed(ConnectionEvent event) {
+    final PooledConnection pooledConnection = (PooledConnection) event.getSource();
+    if (usedConnections.remove(pooledConnection)) {
+      idleConnections.offerFirst(pooledConnection);
+      permits.release();
+      if (closed.get()) {
+        close();
+      }
+    }
+  }
+
+  @Override
+  public void connectionErrorOccurred(ConnectionEvent event) {
+    final PooledConnection pooledConnection = (PooledConnection) event.getSource();
+    // A broken connection is not returned to the pool; the error is reported to the user of the connection
+    if (usedConnections.remove(pooledConnection)) {
+      closeQuietly(pooledConnection);
+      permits.release();
+    }
+  }
+
+  int getIdleConnectionCount() {
+    return idleConnections.size();
+  }
+
+  int getUsedConnectionCount() {
+    return usedConnections.size();
+  }
+
+  /**
+   * Closes the idle connections; the connections in use are closed when they are returned.
+   */
+  @Override
+  public void close() {
+    closed.set(true);
+    for (PooledConnection pooledConnection = idleConnections.pollFirst(); pooledConnection != null; pooledConnection = idleConnections.pollFirst()) {
+      closeQuietly(pooledConnection);
+    }
+  }
+
+  private void closeQuietly(PooledConnection pooledConnection) {
+    pooledConnection.removeConnectionEventListener(this);
+    try {
+      pooledConnection.close();
+    } catch (SQLException e) {
+      // the connection is discarded either way
+    }
+  }
+
+  @Override
+  public PrintWriter getLogWriter() throws SQLException {
+    return connectionPoolDataSource.getLogWriter();
+  }
+
+  @Override
+  public void setLogWriter(PrintWriter out) throws SQLException {
+    connectionPoolDataSource.setLogWriter(out);
+  }
+
+  @Override
+  public void setLoginTimeout(int seconds) throws SQLException {
+    connectionPoolDataSource.setLoginTimeout(seconds);
+  }
+
+  @Override
+  public int getLoginTimeout() throws SQLException {
+    return connectionPoolDataSource.getLoginTimeout();
+  }
+
+  @Override
+  public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+    return connectionPoolDataSource.getParentLogger();
+  }
+
+  @Override
+  public <T> T unwrap(Class<T> iface) throws SQLException {
+    if (iface.isInstance(this)) {
+      return iface.cast(this);
+    }
+    throw new SQLException("Not a wrapper of " + iface.getName());
+  }
+
+  @Override
+  public boolean isWrapperFor(Class<?> iface) {
+    return iface.isInstance(this);
+  }
+}
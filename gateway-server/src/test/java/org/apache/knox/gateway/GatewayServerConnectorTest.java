@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.apache.knox.gateway.config.GatewayConfig;
+import org.easymock.EasyMock;
+import org.eclipse.jetty.http2.server.AbstractHTTP2ServerConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.junit.Test;
+
+public class GatewayServerConnectorTest {
+
+  private static GatewayConfig createConfig(boolean http2Enabled) {
+    final GatewayConfig config = EasyMock.createNiceMock(GatewayConfig.class);
+    EasyMock.expect(config.isHttp2Enabled()).andReturn(http2Enabled).anyTimes();
+    EasyMock.expect(config.getHttp2MaxConcurrentStreams()).andReturn(42).anyTimes();
+    EasyMock.replay(config);
+    return config;
+  }
+
+  @Test
+  public void testSslConnectorWithHttp2() {
+    final ServerConnector connector = GatewayServer.createSslConnector(new Server(), createConfig(true),
+        new HttpConfiguration(), new SslContextFactory.Server());
+
+    assertEquals(Arrays.asList("ssl", "alpn", "h2", "http/1.1"), connector.getProtocols());
+    assertEquals(42, connector.getConnectionFactory(AbstractHTTP2ServerConnectionFactory.class).getMaxConcurrentStreams());
+  }
+
+  @Test
+  public void testSslConnectorWithoutHttp2() {
+    final ServerConnector connector = GatewayServer.createSslConnector(new Server(), createConfig(false),
+        new HttpConfiguration(), new SslContextFactory.Server());
+
+    assertEquals(Arrays.asList("ssl", "http/1.1"), connector.getProtocols());
+  }
+
+  @Test
+  public void testCleartextHttp2Connector() {
+    final ServerConnector connector = GatewayServer.createCleartextHttp2Connector(new Server(), createConfig(false),
+        new HttpConfiguration());
+
+    assertEquals(Arrays.asList("http/1.1", "h2c"), connector.getProtocols());
+    assertEquals(42, connector.getConnectionFactory(AbstractHTTP2ServerConnectionFactory.class).getMaxConcurrentStreams());
+  }
+}
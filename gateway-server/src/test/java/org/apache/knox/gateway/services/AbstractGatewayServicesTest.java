@@ -62,7 +62,9 @@ public class AbstractGatewayServicesTest {
         ServiceType.CRYPTO_SERVICE,
         ServiceType.HOST_MAPPING_SERVICE,
         ServiceType.SERVICE_DEFINITION_REGISTRY,
-        ServiceType.SERVICE_REGISTRY_SERVICE
+        ServiceType.SERVICE_REGISTRY_SERVICE,
+        ServiceType.CONNECTION_POOL_SERVICE,
+        ServiceType.REPLAY_BUFFER_SERVICE
     };
 
     assertNotEquals(ServiceType.values(), orderedServiceTypes);
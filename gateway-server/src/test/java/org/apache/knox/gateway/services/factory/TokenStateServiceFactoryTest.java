@@ -24,6 +24,7 @@ import org.apache.knox.gateway.services.security.token.TokenStateService;
 import org.apache.knox.gateway.services.token.impl.AliasBasedTokenStateService;
 import org.apache.knox.gateway.services.token.impl.DefaultTokenStateService;
 import org.apache.knox.gateway.services.token.impl.JournalBasedTokenStateService;
+import org.apache.knox.gateway.services.token.impl.LogBasedTokenStateService;
 import org.apache.knox.gateway.services.token.impl.ZookeeperTokenStateService;
 import org.junit.Before;
 import org.junit.Test;
@@ -70,6 +71,14 @@ public class TokenStateServiceFactoryTest extends ServiceFactoryTest {
         JournalBasedTokenStateService.class.getName()) instanceof JournalBasedTokenStateService);
   }
 
+  @Test
+  public void shouldReturnLogBasedTokenStateService() throws Exception {
+    final TokenStateService tokenStateService = (TokenStateService) serviceFactory.create(gatewayServices, ServiceType.TOKEN_STATE_SERVICE, gatewayConfig, options,
+        LogBasedTokenStateService.class.getName());
+    assertTrue(tokenStateService instanceof LogBasedTokenStateService);
+    assertTrue(isMasterServiceSet(tokenStateService));
+  }
+
   @Test
   public void shouldReturnZookeeperTokenStateService() throws Exception {
     assertTrue(serviceFactory.create(gatewayServices, ServiceType.TOKEN_STATE_SERVICE, gatewayConfig, options,
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.services.httpclient.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.knox.gateway.config.GatewayConfig;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DefaultConnectionPoolServiceTest {
+
+  private DefaultConnectionPoolService connectionPoolService;
+
+  @Before
+  public void setUp() throws Exception {
+    final GatewayConfig config = EasyMock.createNiceMock(GatewayConfig.class);
+    EasyMock.expect(config.isHttpClientConnectionPoolEnabled()).andReturn(true).anyTimes();
+    EasyMock.expect(config.getHttpClientConnectionPoolMaxTotal()).andReturn(100).anyTimes();
+    EasyMock.expect(config.getHttpClientConnectionPoolMaxPerRoute()).andReturn(10).anyTimes();
+    EasyMock.expect(config.getHttpClientConnectionPoolValidateAfterInactivity()).andReturn(1000).anyTimes();
+    EasyMock.expect(config.getHttpClientConnectionPoolIdleTimeout()).andReturn(1000L).anyTimes();
+    EasyMock.expect(config.getHttpClientConnectionPoolEvictionInterval()).andReturn(0L).anyTimes();
+    EasyMock.replay(config);
+
+    connectionPoolService = new DefaultConnectionPoolService();
+    connectionPoolService.init(config, Collections.emptyMap());
+    connectionPoolService.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    connectionPoolService.stop();
+  }
+
+  @Test
+  public void testPoolIsSharedByName() throws Exception {
+    final HttpClientConnectionManager first = connectionPoolService.getConnectionManager("default", null);
+    assertSame(first, connectionPoolService.getConnectionManager("default", null));
+    assertNotSame(first, connectionPoolService.getConnectionManager("two-way-ssl", null));
+  }
+
+  @Test
+  public void testPoolLimits() throws Exception {
+    assertNull(connectionPoolService.getTotalStats("default"));
+    assertTrue(connectionPoolService.getRouteStats("default").isEmpty());
+
+    connectionPoolService.getConnectionManager("default", null);
+    final PoolStats stats = connectionPoolService.getTotalStats("default");
+    assertEquals(100, stats.getMax());
+    assertEquals(0, stats.getLeased());
+    assertTrue(connectionPoolService.getRouteStats("default").isEmpty());
+
+    // Eviction must cope with pools that have no connections yet
+    connectionPoolService.evictConnections();
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.services.httpclient.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+
+import org.apache.knox.gateway.config.GatewayConfig;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Test;
+
+public class DefaultReplayBufferServiceTest {
+
+  private DefaultReplayBufferService replayBufferService;
+
+  @After
+  public void tearDown() throws Exception {
+    if (replayBufferService != null) {
+      replayBufferService.stop();
+    }
+  }
+
+  @Test
+  public void testBuffersAreSizeClassed() throws Exception {
+    startService(1024 * 1024);
+
+    final ByteBuffer small = replayBufferService.acquire(100);
+    assertTrue(small.isDirect());
+    assertEquals(4096, small.capacity());
+    final ByteBuffer large = replayBufferService.acquire(16 * 1024 + 1);
+    assertEquals(32 * 1024, large.capacity());
+    assertEquals(36 * 1024, replayBufferService.getUsedSize());
+    assertEquals(0, replayBufferService.getIdleSize());
+
+    small.put((byte) 1);
+    replayBufferService.release(small);
+    assertEquals(32 * 1024, replayBufferService.getUsedSize());
+    assertEquals(4096, replayBufferService.getIdleSize());
+
+    final ByteBuffer reused = replayBufferService.acquire(4096);
+    assertSame(small, reused);
+    assertEquals(0, reused.position());
+    assertEquals(reused.capacity(), reused.limit());
+    assertEquals(0, replayBufferService.getIdleSize());
+  }
+
+  @Test
+  public void testMemoryLimit() throws Exception {
+    startService(64 * 1024);
+
+    final ByteBuffer first = replayBufferService.acquire(32 * 1024);
+    final ByteBuffer second = replayBufferService.acquire(16 * 1024);
+    assertNotNull(first);
+    assertNotNull(second);
+    assertNull(replayBufferService.acquire(32 * 1024));
+    assertNull(replayBufferService.acquire(Integer.MAX_VALUE));
+
+    // Buffers in use can not make room
+    replayBufferService.release(first);
+    assertNull(replayBufferService.acquire(48 * 1024));
+    final ByteBuffer third = replayBufferService.acquire(8 * 1024);
+    assertEquals(8 * 1024, third.capacity());
+    assertEquals(24 * 1024, replayBufferService.getUsedSize());
+    assertEquals(32 * 1024, replayBufferService.getIdleSize());
+
+    // Idle buffers of other size classes do, largest first
+    replayBufferService.release(second);
+    assertNotNull(replayBufferService.acquire(4 * 1024));
+    assertNotNull(replayBufferService.acquire(8 * 1024));
+    assertEquals(20 * 1024, replayBufferService.getUsedSize());
+    assertEquals(16 * 1024, replayBufferService.getIdleSize());
+  }
+
+  @Test
+  public void testDisabledPool() throws Exception {
+    startService(0);
+    assertNull(replayBufferService.acquire(1024));
+    replayBufferService.release(ByteBuffer.allocate(1024));
+    assertEquals(0, replayBufferService.getUsedSize());
+  }
+
+  private void startService(long maxSize) throws Exception {
+    final GatewayConfig config = EasyMock.createNiceMock(GatewayConfig.class);
+    EasyMock.expect(config.getHttpClientReplayBufferPoolMaxSize()).andReturn(maxSize).anyTimes();
+    EasyMock.replay(config);
+
+    replayBufferService = new DefaultReplayBufferService();
+    replayBufferService.init(config, Collections.emptyMap());
+    replayBufferService.start();
+  }
+}
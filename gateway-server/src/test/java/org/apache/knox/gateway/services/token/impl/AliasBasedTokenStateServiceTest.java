@@ -160,8 +160,8 @@ public class AliasBasedTokenStateServiceTest extends DefaultTokenStateServiceTes
     tss.setAliasService(aliasService);
     initTokenStateService(tss);
 
-    Map<String, Long> tokenExpirations = getTokenExpirationsField(tss, false);
-    Map<String, Long> maxTokenLifetimes = getMaxTokenLifetimesField(tss, false);
+    Map<String, Long> tokenExpirations = getTokenExpirationsField(tss);
+    Map<String, Long> maxTokenLifetimes = getMaxTokenLifetimesField(tss);
 
     final long evictionInterval = TimeUnit.SECONDS.toMillis(3);
     final long maxTokenLifetime = evictionInterval * 3;
@@ -524,7 +524,7 @@ public class AliasBasedTokenStateServiceTest extends DefaultTokenStateServiceTes
 
     Map<String, Long> tokenExpirations = getTokenExpirationsField(tss);
     Map<String, Long> maxTokenLifetimes = getMaxTokenLifetimesField(tss);
-    Map<String, Long> tokenIssueTimes = getTokenIssueTimesField(tss, true);
+    Map<String, Long> tokenIssueTimes = getTokenIssueTimesField(tss);
 
     Set<AliasBasedTokenStateService.TokenState> unpersistedState = getUnpersistedStateField(tss);
 
@@ -610,7 +610,7 @@ public class AliasBasedTokenStateServiceTest extends DefaultTokenStateServiceTes
 
     Map<String, Long> tokenExpirations = getTokenExpirationsField(tss);
     Map<String, Long> maxTokenLifetimes = getMaxTokenLifetimesField(tss);
-    Map<String, Long> tokenIssueTimes = getTokenIssueTimesField(tss, true);
+    Map<String, Long> tokenIssueTimes = getTokenIssueTimesField(tss);
 
     Set<AliasBasedTokenStateService.TokenState> unpersistedState = getUnpersistedStateField(tss);
 
@@ -825,31 +825,18 @@ public class AliasBasedTokenStateServiceTest extends DefaultTokenStateServiceTes
   }
 
   private static Map<String, Long> getTokenExpirationsField(TokenStateService tss) throws Exception {
-    return getTokenExpirationsField(tss, true);
-  }
-  private static Map<String, Long> getTokenExpirationsField(TokenStateService tss, boolean fromGrandParent) throws Exception {
-    final Class<TokenStateService> clazz = (Class<TokenStateService>) (fromGrandParent ? tss.getClass().getSuperclass().getSuperclass() : tss.getClass().getSuperclass());
-    final Field tokenExpirationsField = clazz.getDeclaredField("tokenExpirations");
-    tokenExpirationsField.setAccessible(true);
-    return (Map<String, Long>) tokenExpirationsField.get(tss);
+    final TokenStateStore tokenStates = TokenStateStoreTest.getTokenStates(tss);
+    return TokenStateStoreTest.asMap(tokenStates, tokenStates::getExpiration, tokenStates::setExpiration);
   }
 
   private static Map<String, Long> getMaxTokenLifetimesField(TokenStateService tss) throws Exception {
-    return getMaxTokenLifetimesField(tss, true);
-  }
-
-  private static Map<String, Long> getMaxTokenLifetimesField(TokenStateService tss, boolean fromGrandParent) throws Exception {
-    final Class<TokenStateService> clazz = (Class<TokenStateService>) (fromGrandParent ? tss.getClass().getSuperclass().getSuperclass() : tss.getClass().getSuperclass());
-    Field maxTokenLifetimesField = clazz.getDeclaredField("maxTokenLifetimes");
-    maxTokenLifetimesField.setAccessible(true);
-    return (Map<String, Long>) maxTokenLifetimesField.get(tss);
+    final TokenStateStore tokenStates = TokenStateStoreTest.getTokenStates(tss);
+    return TokenStateStoreTest.asMap(tokenStates, tokenStates::getMaxLifetime, tokenStates::setMaxLifetime);
   }
 
-  private static Map<String, Long> getTokenIssueTimesField(TokenStateService tss, boolean fromGrandParent) throws Exception {
-    final Class<TokenStateService> clazz = (Class<TokenStateService>) (fromGrandParent ? tss.getClass().getSuperclass().getSuperclass() : tss.getClass().getSuperclass());
-    Field tokenIssueTimesField = clazz.getDeclaredField("tokenIssueTimes");
-    tokenIssueTimesField.setAccessible(true);
-    return (Map<String, Long>) tokenIssueTimesField.get(tss);
+  private static Map<String, Long> getTokenIssueTimesField(TokenStateService tss) throws Exception {
+    final TokenStateStore tokenStates = TokenStateStoreTest.getTokenStates(tss);
+    return TokenStateStoreTest.asMap(tokenStates, tokenStates::getIssueTime, tokenStates::setIssueTime);
   }
 
   private static Set<AliasBasedTokenStateService.TokenState> getUnpersistedStateField(TokenStateService tss) throws Exception {
@@ -34,6 +34,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.knox.gateway.config.GatewayConfig;
 import org.apache.knox.gateway.services.ServiceLifecycleException;
@@ -323,6 +324,32 @@ public class DefaultTokenStateServiceTest {
     return token;
   }
 
+  /*
+   * A token the eviction keeps, here because checking it failed, must still be found by the next eviction
+   */
+  @Test
+  public void testTokenKeptByEvictionIsEvictedLater() throws Exception {
+    final AtomicInteger checks = new AtomicInteger();
+    final DefaultTokenStateService tss = new DefaultTokenStateService() {
+      @Override
+      protected boolean needsEviction(String tokenId) throws UnknownTokenException {
+        if (checks.incrementAndGet() == 1) {
+          throw new UnknownTokenException(tokenId);
+        }
+        return super.needsEviction(tokenId);
+      }
+    };
+    initTokenStateService(tss);
+    final long now = System.currentTimeMillis();
+    tss.addToken("expired-token", now - 60000L, now - 30000L, now + 60000L);
+
+    tss.evictExpiredTokens();
+    assertEquals(now - 30000L, tss.getTokenExpiration("expired-token", false));
+    tss.evictExpiredTokens();
+    assertThrows(UnknownTokenException.class, () -> tss.getTokenExpiration("expired-token", false));
+    assertEquals(2, checks.get());
+  }
+
   protected GatewayConfig createMockGatewayConfig(boolean tokenPermissiveness) throws Exception {
     return createMockGatewayConfig(tokenPermissiveness, getGatewaySecurityDir(), getTokenStatePersistenceInterval());
   }
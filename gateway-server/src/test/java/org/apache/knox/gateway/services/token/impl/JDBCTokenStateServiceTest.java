@@ -20,6 +20,7 @@ package org.apache.knox.gateway.services.token.impl;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 
 import java.nio.file.Path;
@@ -28,7 +29,12 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.codec.binary.Base64;
@@ -60,6 +66,10 @@ public class JDBCTokenStateServiceTest {
 
   private static final String SYSTEM_PROPERTY_DERBY_STREAM_ERROR_FILE = "derby.stream.error.file";
   private static final String SAMPLE_DERBY_DATABASE_NAME = "sampleDerbyDatabase";
+  private static final String DATABASE_USERNAME = "app";
+  private static final String DATABASE_PASSWORD = "P4ssW0rd!";
+  private static final long BATCH_LATENCY = 20;
+  private static Path derbyDatabaseFolder;
   private static NetworkServerControl derbyNetworkServerControl;
   private static Database derbyDatabase;
   private static JDBCTokenStateService jdbcTokenStateService;
@@ -68,32 +78,42 @@ public class JDBCTokenStateServiceTest {
   @SuppressWarnings("PMD.JUnit4TestShouldUseBeforeAnnotation")
   @BeforeClass
   public static void setUp() throws Exception {
-    final String username = "app";
-    final String password = "P4ssW0rd!";
     System.setProperty(SYSTEM_PROPERTY_DERBY_STREAM_ERROR_FILE, "/dev/null");
-    derbyNetworkServerControl = new NetworkServerControl(username, password);
+    derbyNetworkServerControl = new NetworkServerControl(DATABASE_USERNAME, DATABASE_PASSWORD);
     derbyNetworkServerControl.start(null);
     TimeUnit.SECONDS.sleep(1); // give a bit of time for the server to start
-    final Path derbyDatabaseFolder = Paths.get(testFolder.newFolder().toPath().toString(), SAMPLE_DERBY_DATABASE_NAME);
+    derbyDatabaseFolder = Paths.get(testFolder.newFolder().toPath().toString(), SAMPLE_DERBY_DATABASE_NAME);
+
+    derbyDatabase = prepareDerbyDatabase(derbyDatabaseFolder);
+
+    jdbcTokenStateService = createTokenStateService(TimeUnit.MINUTES.toMillis(1));
+
+    assertTrue(derbyDatabase.hasTable(TokenStateDatabase.TOKENS_TABLE_NAME));
+
+    tokenMAC = new TokenMAC(HmacAlgorithms.HMAC_SHA_256.getName(), "sPj8FCgQhCEi6G18kBfpswxYSki33plbelGLs0hMSbk".toCharArray());
+  }
+
+  private static JDBCTokenStateService createTokenStateService(long cacheTtl) throws Exception {
     final GatewayConfig gatewayConfig = EasyMock.createNiceMock(GatewayConfig.class);
     EasyMock.expect(gatewayConfig.getDatabaseType()).andReturn(JDBCUtils.DERBY_DB_TYPE).anyTimes();
     EasyMock.expect(gatewayConfig.getDatabaseHost()).andReturn("localhost").anyTimes();
     EasyMock.expect(gatewayConfig.getDatabasePort()).andReturn(NetworkServerControl.DEFAULT_PORTNUMBER).anyTimes();
     EasyMock.expect(gatewayConfig.getDatabaseName()).andReturn(derbyDatabaseFolder.toString()).anyTimes();
+    EasyMock.expect(gatewayConfig.getDatabasePoolMaxSize()).andReturn(4).anyTimes();
+    EasyMock.expect(gatewayConfig.getDatabasePoolConnectionTimeout()).andReturn(TimeUnit.SECONDS.toMillis(30)).anyTimes();
+    EasyMock.expect(gatewayConfig.getKnoxTokenStateJdbcBatchLatency()).andReturn(BATCH_LATENCY).anyTimes();
+    EasyMock.expect(gatewayConfig.getKnoxTokenStateJdbcQueueSize()).andReturn(50000).anyTimes();
+    EasyMock.expect(gatewayConfig.getKnoxTokenStateJdbcCacheSize()).andReturn(1000L).anyTimes();
+    EasyMock.expect(gatewayConfig.getKnoxTokenStateJdbcCacheTtl()).andReturn(cacheTtl).anyTimes();
     final AliasService aliasService = EasyMock.createNiceMock(AliasService.class);
-    EasyMock.expect(aliasService.getPasswordFromAliasForGateway(JDBCUtils.DATABASE_USER_ALIAS_NAME)).andReturn(username.toCharArray()).anyTimes();
-    EasyMock.expect(aliasService.getPasswordFromAliasForGateway(JDBCUtils.DATABASE_PASSWORD_ALIAS_NAME)).andReturn(password.toCharArray()).anyTimes();
+    EasyMock.expect(aliasService.getPasswordFromAliasForGateway(JDBCUtils.DATABASE_USER_ALIAS_NAME)).andReturn(DATABASE_USERNAME.toCharArray()).anyTimes();
+    EasyMock.expect(aliasService.getPasswordFromAliasForGateway(JDBCUtils.DATABASE_PASSWORD_ALIAS_NAME)).andReturn(DATABASE_PASSWORD.toCharArray()).anyTimes();
     EasyMock.replay(gatewayConfig, aliasService);
 
-    derbyDatabase = prepareDerbyDatabase(derbyDatabaseFolder);
-
-    jdbcTokenStateService = new JDBCTokenStateService();
-    jdbcTokenStateService.setAliasService(aliasService);
-    jdbcTokenStateService.init(gatewayConfig, null);
-
-    assertTrue(derbyDatabase.hasTable(TokenStateDatabase.TOKENS_TABLE_NAME));
-
-    tokenMAC = new TokenMAC(HmacAlgorithms.HMAC_SHA_256.getName(), "sPj8FCgQhCEi6G18kBfpswxYSki33plbelGLs0hMSbk".toCharArray());
+    final JDBCTokenStateService tokenStateService = new JDBCTokenStateService();
+    tokenStateService.setAliasService(aliasService);
+    tokenStateService.init(gatewayConfig, null);
+    return tokenStateService;
   }
 
   private static Database prepareDerbyDatabase(Path derbyDatabaseFolder) throws SQLException {
@@ -105,6 +125,7 @@ public class JDBCTokenStateServiceTest {
   @SuppressWarnings("PMD.JUnit4TestShouldUseAfterAnnotation")
   @AfterClass
   public static void tearDown() throws Exception {
+    jdbcTokenStateService.stop();
     if (derbyDatabase != null) {
       derbyDatabase.shutdown();
     }
@@ -123,6 +144,8 @@ public class JDBCTokenStateServiceTest {
     assertEquals(expiration, jdbcTokenStateService.getTokenExpiration(tokenId));
     assertEquals(issueTime + maxLifetimeDuration, jdbcTokenStateService.getMaxLifetime(tokenId));
 
+    jdbcTokenStateService.flush();
+
     assertEquals(expiration, getLongTokenAttributeFromDatabase(tokenId, TokenStateDatabase.GET_TOKEN_EXPIRATION_SQL));
     assertEquals(issueTime + maxLifetimeDuration, getLongTokenAttributeFromDatabase(tokenId, TokenStateDatabase.GET_MAX_LIFETIME_SQL));
   }
@@ -132,8 +155,10 @@ public class JDBCTokenStateServiceTest {
     truncateDatabase();
     final String tokenId = UUID.randomUUID().toString();
     jdbcTokenStateService.addToken(tokenId, 1, 1, 1);
+    jdbcTokenStateService.flush();
     assertEquals(1, getLongTokenAttributeFromDatabase(null, GET_TOKENS_COUNT_SQL));
     jdbcTokenStateService.removeToken(tokenId);
+    jdbcTokenStateService.flush();
     assertEquals(0, getLongTokenAttributeFromDatabase(null, GET_TOKENS_COUNT_SQL));
     jdbcTokenStateService.getTokenExpiration(tokenId);
   }
@@ -145,6 +170,7 @@ public class JDBCTokenStateServiceTest {
     jdbcTokenStateService.updateExpiration(tokenId, 2);
 
     assertEquals(2, jdbcTokenStateService.getTokenExpiration(tokenId));
+    jdbcTokenStateService.flush();
     assertEquals(2, getLongTokenAttributeFromDatabase(tokenId, TokenStateDatabase.GET_TOKEN_EXPIRATION_SQL));
   }
 
@@ -164,6 +190,7 @@ public class JDBCTokenStateServiceTest {
     final String storedPasscode = jdbcTokenStateService.getTokenMetadata(tokenId).getPasscode();
     assertEquals(passcodeMac, storedPasscode);
 
+    jdbcTokenStateService.flush();
     assertEquals("sampleUser", getStringTokenAttributeFromDatabase(tokenId, getSelectMetadataSql(TokenMetadata.USER_NAME)));
     assertEquals("my test comment", getStringTokenAttributeFromDatabase(tokenId, getSelectMetadataSql(TokenMetadata.COMMENT)));
     assertEquals("false", getStringTokenAttributeFromDatabase(tokenId, getSelectMetadataSql(TokenMetadata.ENABLED)));
@@ -174,6 +201,7 @@ public class JDBCTokenStateServiceTest {
     tokenMetadata.setEnabled(true);
     jdbcTokenStateService.addMetadata(tokenId, tokenMetadata);
     assertTrue(jdbcTokenStateService.getTokenMetadata(tokenId).isEnabled());
+    jdbcTokenStateService.flush();
     assertEquals("true", getStringTokenAttributeFromDatabase(tokenId, getSelectMetadataSql(TokenMetadata.ENABLED)));
 
     //remove and get -> expect UnknownTokenException
@@ -189,11 +217,104 @@ public class JDBCTokenStateServiceTest {
       final String tokenId = UUID.randomUUID().toString();
       jdbcTokenStateService.addToken(tokenId, 1, 1, 1);
     }
+    jdbcTokenStateService.flush();
     assertEquals(tokenCount, getLongTokenAttributeFromDatabase(null, GET_TOKENS_COUNT_SQL));
     jdbcTokenStateService.evictExpiredTokens();
     assertEquals(0, getLongTokenAttributeFromDatabase(null, GET_TOKENS_COUNT_SQL));
   }
 
+  @Test
+  public void testTokenIssuanceThroughput() throws Exception {
+    truncateDatabase();
+    final int threadCount = 4;
+    final int tokenCount = 10000;
+    final ExecutorService issuers = Executors.newFixedThreadPool(threadCount);
+    try {
+      final List<Future<?>> results = new ArrayList<>();
+      final long start = System.nanoTime();
+      for (int i = 0; i < threadCount; i++) {
+        results.add(issuers.submit(() -> {
+          for (int j = 0; j < tokenCount / threadCount; j++) {
+            final String tokenId = UUID.randomUUID().toString();
+            final long issueTime = System.currentTimeMillis();
+            jdbcTokenStateService.addToken(tokenId, issueTime, issueTime + 1000, 1000);
+            jdbcTokenStateService.addMetadata(tokenId, new TokenMetadata("sampleUser", "my test comment", true));
+          }
+        }));
+      }
+      for (Future<?> result : results) {
+        result.get();
+      }
+      // Measured until the database holds the state of every token. The embedded Derby server writes
+      // about 2000 tokens, and their metadata, per second; the bound is loose as it depends on the machine
+      jdbcTokenStateService.flush();
+      final long duration = System.nanoTime() - start;
+      final double issuancesPerSecond = tokenCount * (double) TimeUnit.SECONDS.toNanos(1) / duration;
+      assertTrue("Token issuances per second: " + issuancesPerSecond, issuancesPerSecond >= 500);
+
+      assertEquals(tokenCount, getLongTokenAttributeFromDatabase(null, GET_TOKENS_COUNT_SQL));
+      assertEquals(3L * tokenCount, getLongTokenAttributeFromDatabase(null, "SELECT count(*) FROM " + TokenStateDatabase.TOKEN_METADATA_TABLE_NAME));
+    } finally {
+      issuers.shutdown();
+    }
+  }
+
+  @Test
+  public void testPersistedStateIsCached() throws Exception {
+    // A token issued by another gateway
+    final String tokenId = UUID.randomUUID().toString();
+    executeUpdate("INSERT INTO " + TokenStateDatabase.TOKENS_TABLE_NAME + " VALUES('" + tokenId + "', 1, 2, 3)");
+    executeUpdate("INSERT INTO " + TokenStateDatabase.TOKEN_METADATA_TABLE_NAME + " VALUES('" + tokenId + "', '" + TokenMetadata.USER_NAME + "', 'peerUser')");
+
+    assertEquals(1, jdbcTokenStateService.getTokenIssueTime(tokenId));
+    assertEquals(2, jdbcTokenStateService.getTokenExpiration(tokenId));
+    assertEquals(3, jdbcTokenStateService.getMaxLifetime(tokenId));
+    assertEquals("peerUser", jdbcTokenStateService.getTokenMetadata(tokenId).getUserName());
+
+    // Served from the cache
+    executeUpdate("UPDATE " + TokenStateDatabase.TOKENS_TABLE_NAME + " SET expiration = 5 WHERE token_id = '" + tokenId + "'");
+    assertEquals(2, jdbcTokenStateService.getTokenExpiration(tokenId));
+
+    // Until it is revoked by this gateway, whether the removal is written yet or not
+    jdbcTokenStateService.removeToken(tokenId);
+    assertTrue(jdbcTokenStateService.isUnknown(tokenId));
+    jdbcTokenStateService.flush();
+    assertTrue(jdbcTokenStateService.isUnknown(tokenId));
+    assertEquals(0, getLongTokenAttributeFromDatabase(tokenId, TokenStateDatabase.GET_TOKEN_EXPIRATION_SQL));
+  }
+
+  @Test
+  public void testRevocationIsSeenByOtherGatewaysWithinCacheTtl() throws Exception {
+    final long cacheTtl = 200;
+    final JDBCTokenStateService otherGateway = createTokenStateService(cacheTtl);
+    try {
+      final String revokedTokenId = UUID.randomUUID().toString();
+      final String disabledTokenId = UUID.randomUUID().toString();
+      final long issueTime = System.currentTimeMillis();
+      for (String tokenId : new String[] { revokedTokenId, disabledTokenId }) {
+        jdbcTokenStateService.addToken(tokenId, issueTime, issueTime + TimeUnit.HOURS.toMillis(1), TimeUnit.HOURS.toMillis(1));
+        jdbcTokenStateService.addMetadata(tokenId, new TokenMetadata("sampleUser"));
+      }
+      jdbcTokenStateService.flush();
+
+      // The other gateway reads, and caches, the token state
+      assertFalse(otherGateway.isUnknown(revokedTokenId));
+      assertTrue(otherGateway.getTokenMetadata(revokedTokenId).isEnabled());
+      assertTrue(otherGateway.getTokenMetadata(disabledTokenId).isEnabled());
+
+      jdbcTokenStateService.revokeToken(revokedTokenId);
+      jdbcTokenStateService.addMetadata(disabledTokenId, new TokenMetadata("sampleUser", null, false));
+      jdbcTokenStateService.flush();
+
+      TimeUnit.MILLISECONDS.sleep(cacheTtl + BATCH_LATENCY);
+      assertTrue(otherGateway.isUnknown(revokedTokenId));
+      assertThrows(UnknownTokenException.class, () -> otherGateway.getTokenExpiration(revokedTokenId));
+      assertFalse(otherGateway.getTokenMetadata(disabledTokenId).isEnabled());
+    } finally {
+      otherGateway.stop();
+    }
+  }
+
   private long getLongTokenAttributeFromDatabase(String tokenId, String sql) throws SQLException {
     try (Connection conn = derbyDatabase.getConnection(); PreparedStatement stmt = conn.prepareStatement(sql)) {
       if (tokenId != null) {
@@ -214,6 +335,12 @@ public class JDBCTokenStateServiceTest {
     }
   }
 
+  private void executeUpdate(String sql) throws SQLException {
+    try (Connection conn = derbyDatabase.getConnection(); PreparedStatement stmt = conn.prepareStatement(sql)) {
+      stmt.executeUpdate();
+    }
+  }
+
   private void truncateDatabase() throws SQLException {
     try (Connection conn = derbyDatabase.getConnection(); PreparedStatement stmt = conn.prepareStatement(TRUNCATE_KNOX_TOKEN_METADATA_SQL)) {
       stmt.executeUpdate();
@@ -318,14 +318,12 @@ public class JournalBasedTokenStateServiceTest extends DefaultTokenStateServiceT
     }
 
     private static Map<String, Long> getTokenExpirationsField(TokenStateService tss) throws Exception {
-        Field tokenExpirationsField = tss.getClass().getSuperclass().getDeclaredField("tokenExpirations");
-        tokenExpirationsField.setAccessible(true);
-        return (Map<String, Long>) tokenExpirationsField.get(tss);
+        final TokenStateStore tokenStates = TokenStateStoreTest.getTokenStates(tss);
+        return TokenStateStoreTest.asMap(tokenStates, tokenStates::getExpiration, tokenStates::setExpiration);
     }
 
     private static Map<String, Long> getMaxTokenLifetimesField(TokenStateService tss) throws Exception {
-        Field maxTokenLifetimesField = tss.getClass().getSuperclass().getDeclaredField("maxTokenLifetimes");
-        maxTokenLifetimesField.setAccessible(true);
-        return (Map<String, Long>) maxTokenLifetimesField.get(tss);
+        final TokenStateStore tokenStates = TokenStateStoreTest.getTokenStates(tss);
+        return TokenStateStoreTest.asMap(tokenStates, tokenStates::getMaxLifetime, tokenStates::setMaxLifetime);
     }
 }
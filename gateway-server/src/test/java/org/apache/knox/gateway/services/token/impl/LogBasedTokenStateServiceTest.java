@@ -0,0 +1,322 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.knox.gateway.services.token.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.apache.knox.gateway.config.GatewayConfig;
+import org.apache.knox.gateway.services.security.MasterService;
+import org.apache.knox.gateway.services.security.token.TokenMetadata;
+import org.apache.knox.gateway.services.security.token.TokenStateService;
+import org.apache.knox.gateway.services.security.token.UnknownTokenException;
+import org.easymock.EasyMock;
+import org.junit.Test;
+
+public class LogBasedTokenStateServiceTest extends DefaultTokenStateServiceTest {
+
+  private String masterSecret = "knox-master-secret";
+
+  @Override
+  protected TokenStateService createTokenStateService() throws Exception {
+    final MasterService masterService = EasyMock.createNiceMock(MasterService.class);
+    EasyMock.expect(masterService.getMasterSecret()).andReturn(masterSecret.toCharArray()).anyTimes();
+    EasyMock.replay(masterService);
+
+    final LogBasedTokenStateService tss = new LogBasedTokenStateService();
+    tss.setMasterService(masterService);
+    initTokenStateService(tss);
+    return tss;
+  }
+
+  @Override
+  protected GatewayConfig createMockGatewayConfig(boolean tokenPermissiveness, String securityDir, long statePersistenceInterval) {
+    final GatewayConfig config = EasyMock.createNiceMock(GatewayConfig.class);
+    EasyMock.expect(config.getKnoxTokenEvictionInterval()).andReturn(2L).anyTimes();
+    EasyMock.expect(config.getKnoxTokenEvictionGracePeriod()).andReturn(0L).anyTimes();
+    EasyMock.expect(config.isKnoxTokenPermissiveValidationEnabled()).andReturn(tokenPermissiveness).anyTimes();
+    EasyMock.expect(config.getKnoxTokenStateLogSyncInterval()).andReturn(1L).anyTimes();
+    EasyMock.expect(config.getGatewaySecurityDir()).andReturn(securityDir).anyTimes();
+    EasyMock.replay(config);
+    return config;
+  }
+
+  @Test
+  public void testStateIsRecoveredAfterRestart() throws Exception {
+    final long now = System.currentTimeMillis();
+    final String renewed = UUID.randomUUID().toString();
+    final String revoked = UUID.randomUUID().toString();
+    final String withMetadata = UUID.randomUUID().toString();
+
+    TokenStateService tss = createTokenStateService();
+    tss.addToken(renewed, now, now + 1000, TimeUnit.DAYS.toMillis(7));
+    tss.addToken(revoked, now, now + 1000, TimeUnit.DAYS.toMillis(7));
+    tss.addToken(withMetadata, now, now + 2000, TimeUnit.DAYS.toMillis(1));
+    tss.addMetadata(withMetadata, new TokenMetadata("alice", "my token", true));
+    final long renewedExpiration = tss.renewToken(renewed, TimeUnit.HOURS.toMillis(1));
+    tss.revokeToken(revoked);
+    tss.stop();
+
+    tss = createTokenStateService();
+    try {
+      assertEquals(renewedExpiration, tss.getTokenExpiration(renewed));
+      assertEquals(now, tss.getTokenIssueTime(renewed));
+      assertEquals(now + 2000, tss.getTokenExpiration(withMetadata));
+      assertEquals("alice", tss.getTokenMetadata(withMetadata).getUserName());
+      assertEquals("my token", tss.getTokenMetadata(withMetadata).getComment());
+      assertUnknown(tss, revoked);
+      // The maximum lifetime is recovered too
+      assertEquals(now + TimeUnit.DAYS.toMillis(7), ((LogBasedTokenStateService) tss).getMaxLifetime(renewed));
+    } finally {
+      tss.stop();
+    }
+  }
+
+  @Test
+  public void testMetadataIsEncrypted() throws Exception {
+    final String tokenId = UUID.randomUUID().toString();
+    final long now = System.currentTimeMillis();
+    final TokenMetadata metadata = new TokenMetadata("alice-the-user", "a comment", true);
+    metadata.setPasscode("the-passcode");
+
+    TokenStateService tss = createTokenStateService();
+    tss.addToken(tokenId, now, now + 1000);
+    tss.addMetadata(tokenId, metadata);
+    tss.stop();
+
+    final String content = new String(readLog(), StandardCharsets.ISO_8859_1);
+    assertTrue(content.contains(tokenId));
+    assertFalse(content.contains("alice-the-user"));
+    assertFalse(content.contains("the-passcode"));
+
+    // Without the master secret the metadata can not be read back
+    masterSecret = "another-master-secret";
+    tss = createTokenStateService();
+    try {
+      assertEquals(now + 1000, tss.getTokenExpiration(tokenId));
+      assertNoMetadata(tss, tokenId);
+    } finally {
+      tss.stop();
+    }
+  }
+
+  @Test
+  public void testCompaction() throws Exception {
+    final long now = System.currentTimeMillis();
+    final List<String> tokenIds = new ArrayList<>();
+    LogBasedTokenStateService tss = (LogBasedTokenStateService) createTokenStateService();
+    for (int i = 0; i < 100; i++) {
+      final String tokenId = UUID.randomUUID().toString();
+      tokenIds.add(tokenId);
+      tss.addToken(tokenId, now, now + 1000, TimeUnit.DAYS.toMillis(7));
+      tss.addMetadata(tokenId, new TokenMetadata("user" + i));
+      for (int renewal = 1; renewal <= 5; renewal++) {
+        tss.updateExpiration(tokenId, now + 1000 * renewal);
+      }
+    }
+    for (int i = 0; i < 50; i++) {
+      tss.removeToken(tokenIds.get(i));
+    }
+    final long sizeBeforeCompaction = readLog().length;
+    tss.compactLog();
+    // Appends made during or after the compaction are kept
+    tss.updateExpiration(tokenIds.get(99), now + 10000);
+    tss.stop();
+    assertTrue(readLog().length < sizeBeforeCompaction / 3);
+
+    tss = (LogBasedTokenStateService) createTokenStateService();
+    try {
+      for (int i = 0; i < 50; i++) {
+        assertUnknown(tss, tokenIds.get(i));
+      }
+      for (int i = 50; i < 99; i++) {
+        assertEquals(now + 5000, tss.getTokenExpiration(tokenIds.get(i)));
+        assertEquals("user" + i, tss.getTokenMetadata(tokenIds.get(i)).getUserName());
+      }
+      assertEquals(now + 10000, tss.getTokenExpiration(tokenIds.get(99)));
+    } finally {
+      tss.stop();
+    }
+  }
+
+  /*
+   * Concurrent changes to the same tokens must be logged in the order they were applied, so that the
+   * state recovered from the log is the state the service had
+   */
+  @Test
+  @SuppressWarnings("PMD.DoNotUseThreads")
+  public void testConcurrentChangesAreRecoveredInOrder() throws Exception {
+    final long now = System.currentTimeMillis();
+    final List<String> tokenIds = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      tokenIds.add(UUID.randomUUID().toString());
+    }
+    final LogBasedTokenStateService tss = (LogBasedTokenStateService) createTokenStateService();
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final List<Future<?>> writers = new ArrayList<>();
+      for (int thread = 0; thread < 4; thread++) {
+        final int offset = thread;
+        writers.add(executor.submit(() -> {
+          for (int i = 0; i < 20000; i++) {
+            final String tokenId = tokenIds.get((i + offset) % tokenIds.size());
+            if (i % 7 == offset) {
+              tss.removeTokens(Collections.singleton(tokenId));
+            } else if (i % 3 == 0) {
+              tss.addToken(tokenId, now, now + i, TimeUnit.DAYS.toMillis(1));
+            } else {
+              tss.updateExpiration(tokenId, now + offset * 10000L + i);
+            }
+          }
+          return null;
+        }));
+      }
+      for (Future<?> writer : writers) {
+        writer.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    final List<Long> expirations = new ArrayList<>();
+    for (String tokenId : tokenIds) {
+      expirations.add(getExpirationOrNull(tss, tokenId));
+    }
+    tss.stop();
+
+    final LogBasedTokenStateService recovered = (LogBasedTokenStateService) createTokenStateService();
+    try {
+      for (int i = 0; i < tokenIds.size(); i++) {
+        assertEquals(expirations.get(i), getExpirationOrNull(recovered, tokenIds.get(i)));
+      }
+    } finally {
+      recovered.stop();
+    }
+  }
+
+  private static Long getExpirationOrNull(TokenStateService tss, String tokenId) {
+    try {
+      return tss.getTokenExpiration(tokenId, false);
+    } catch (UnknownTokenException e) {
+      return null;
+    }
+  }
+
+  @Test
+  public void testCorruptedEndOfLogIsDiscarded() throws Exception {
+    final long now = System.currentTimeMillis();
+    final String tokenId = UUID.randomUUID().toString();
+    TokenStateService tss = createTokenStateService();
+    tss.addToken(tokenId, now, now + 1000);
+    tss.stop();
+
+    // A partially written record
+    try (Stream<Path> segments = Files.list(getLogDir())) {
+      final Path segment = segments.filter(path -> path.toString().endsWith(".log")).findFirst().get();
+      Files.write(segment, new byte[] { 0, 0, 0, 42, 1, 2, 3 }, StandardOpenOption.APPEND);
+    }
+
+    final String otherTokenId = UUID.randomUUID().toString();
+    tss = createTokenStateService();
+    assertEquals(now + 1000, tss.getTokenExpiration(tokenId));
+    tss.addToken(otherTokenId, now, now + 2000);
+    tss.stop();
+
+    tss = createTokenStateService();
+    try {
+      assertEquals(now + 1000, tss.getTokenExpiration(tokenId));
+      assertEquals(now + 2000, tss.getTokenExpiration(otherTokenId));
+    } finally {
+      tss.stop();
+    }
+  }
+
+  @Test
+  public void testRecoveryTime() throws Exception {
+    final int tokens = 200000;
+    final long now = System.currentTimeMillis();
+    TokenStateService tss = createTokenStateService();
+    for (int i = 0; i < tokens; i++) {
+      tss.addToken(UUID.randomUUID().toString(), now, now + TimeUnit.HOURS.toMillis(1));
+    }
+    tss.stop();
+
+    final long start = System.nanoTime();
+    tss = createTokenStateService();
+    final long recoveryTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    try {
+      assertEquals(tokens, ((LogBasedTokenStateService) tss).getTokenIds().size());
+      // Generous bound, recovery reads the log sequentially at millions of records per second
+      assertTrue("Recovery of " + tokens + " tokens took " + recoveryTime + " ms", recoveryTime < TimeUnit.SECONDS.toMillis(20));
+    } finally {
+      tss.stop();
+    }
+  }
+
+  private static void assertUnknown(TokenStateService tss, String tokenId) throws Exception {
+    try {
+      tss.getTokenExpiration(tokenId);
+      fail("Expected the token to be unknown");
+    } catch (UnknownTokenException e) {
+      // Expected
+    }
+  }
+
+  private static void assertNoMetadata(TokenStateService tss, String tokenId) throws Exception {
+    try {
+      tss.getTokenMetadata(tokenId);
+      fail("Expected the metadata to be unknown");
+    } catch (UnknownTokenException e) {
+      // Expected
+    }
+  }
+
+  private Path getLogDir() throws IOException {
+    return Paths.get(getGatewaySecurityDir(), "token-state-log");
+  }
+
+  private byte[] readLog() throws IOException {
+    final List<Path> segments = new ArrayList<>();
+    try (Stream<Path> files = Files.list(getLogDir())) {
+      files.filter(path -> path.toString().endsWith(".log")).forEach(segments::add);
+    }
+    Collections.sort(segments);
+    final ByteArrayOutputStream content = new ByteArrayOutputStream();
+    for (Path segment : segments) {
+      content.write(Files.readAllBytes(segment));
+    }
+    return content.toByteArray();
+  }
+}
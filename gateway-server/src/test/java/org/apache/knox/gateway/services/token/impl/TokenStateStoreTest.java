@@ -0,0 +1,289 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.knox.gateway.services.token.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
+
+import org.apache.knox.gateway.services.security.token.TokenMetadata;
+import org.apache.knox.gateway.services.security.token.TokenStateService;
+import org.junit.Test;
+
+public class TokenStateStoreTest {
+
+  /**
+   * @return the store of the in-memory state of a token state service
+   */
+  static TokenStateStore getTokenStates(TokenStateService tss) throws Exception {
+    final Field tokenStatesField = DefaultTokenStateService.class.getDeclaredField("tokenStates");
+    tokenStatesField.setAccessible(true);
+    return (TokenStateStore) tokenStatesField.get(tss);
+  }
+
+  /**
+   * @return a live view of one of the fields of the tokens with an expiration, supporting only
+   * the update of the values of its entries
+   */
+  static Map<String, Long> asMap(TokenStateStore store, ToLongFunction<String> getter, BiConsumer<String, Long> setter) {
+    return new AbstractMap<String, Long>() {
+      @Override
+      public Set<Entry<String, Long>> entrySet() {
+        final Set<Entry<String, Long>> entries = new HashSet<>();
+        for (String tokenId : store.getTokenIds()) {
+          final long value = getter.applyAsLong(tokenId);
+          if (value != TokenStateStore.NO_VALUE) {
+            entries.add(new SimpleEntry<String, Long>(tokenId, value) {
+              @Override
+              public Long setValue(Long newValue) {
+                setter.accept(tokenId, newValue);
+                return super.setValue(newValue);
+              }
+            });
+          }
+        }
+        return entries;
+      }
+    };
+  }
+
+  @Test
+  public void testUuidAndOtherIdentifiers() {
+    final TokenStateStore store = new TokenStateStore();
+    final String uuid = UUID.randomUUID().toString();
+    final String upperCaseUuid = UUID.randomUUID().toString().toUpperCase(Locale.ROOT);
+    final String other = "not-a-uuid";
+    store.add(uuid, 1, 2, 3);
+    store.add(upperCaseUuid, 4, 5, 6);
+    store.add(other, 7, 8, 9);
+
+    assertEquals(1, store.getIssueTime(uuid));
+    assertEquals(2, store.getExpiration(uuid));
+    assertEquals(3, store.getMaxLifetime(uuid));
+    assertEquals(5, store.getExpiration(upperCaseUuid));
+    assertEquals(TokenStateStore.NO_VALUE, store.getExpiration(upperCaseUuid.toLowerCase(Locale.ROOT)));
+    assertEquals(9, store.getMaxLifetime(other));
+    assertEquals(3, store.size());
+    assertEquals(new HashSet<>(Arrays.asList(uuid, upperCaseUuid, other)), new HashSet<>(store.getTokenIds()));
+  }
+
+  @Test
+  public void testPartialState() {
+    final TokenStateStore store = new TokenStateStore();
+    final String tokenId = UUID.randomUUID().toString();
+    final TokenMetadata metadata = new TokenMetadata("alice");
+
+    store.setMetadata(tokenId, metadata);
+    assertSame(metadata, store.getMetadata(tokenId));
+    assertFalse(store.hasExpiration(tokenId));
+    assertEquals(TokenStateStore.NO_VALUE, store.getIssueTime(tokenId));
+    assertTrue(store.getTokenIds().isEmpty());
+
+    store.setExpiration(tokenId, 10);
+    assertTrue(store.hasExpiration(tokenId));
+    assertEquals(TokenStateStore.NO_VALUE, store.getMaxLifetime(tokenId));
+
+    // Adding the token keeps its metadata
+    store.add(tokenId, 1, 20, 30);
+    assertEquals(20, store.getExpiration(tokenId));
+    assertSame(metadata, store.getMetadata(tokenId));
+    assertEquals(1, store.size());
+
+    store.remove(Arrays.asList(tokenId, "unknown"));
+    assertFalse(store.hasExpiration(tokenId));
+    assertNull(store.getMetadata(tokenId));
+    assertEquals(0, store.size());
+  }
+
+  @Test
+  public void testTablesGrowAndShrink() {
+    final TokenStateStore store = new TokenStateStore();
+    final long emptyMemoryUsage = store.getMemoryUsage();
+    final List<String> tokenIds = new ArrayList<>();
+    for (int i = 0; i < 10000; i++) {
+      final String tokenId = i % 10 == 0 ? "token-" + i : UUID.randomUUID().toString();
+      tokenIds.add(tokenId);
+      store.add(tokenId, i, i + 1, i + 2);
+    }
+    assertEquals(10000, store.size());
+    for (int i = 0; i < tokenIds.size(); i++) {
+      assertEquals(i + 1, store.getExpiration(tokenIds.get(i)));
+    }
+
+    store.remove(tokenIds.subList(0, 9990));
+    assertEquals(10, store.size());
+    for (int i = 9990; i < tokenIds.size(); i++) {
+      assertEquals(i + 2, store.getMaxLifetime(tokenIds.get(i)));
+    }
+    store.remove(tokenIds);
+    assertEquals(0, store.size());
+    // Index entries of removed tokens go away with the sweep of their bucket
+    assertTrue(store.drainExpiredTokenIds(System.currentTimeMillis()).isEmpty());
+    assertTrue(store.getMemoryUsage() < emptyMemoryUsage * 2);
+  }
+
+  @Test
+  public void testConcurrentUpdates() throws Exception {
+    final TokenStateStore store = new TokenStateStore();
+    final int perThread = 20000;
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    final List<Future<?>> results = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      final int offset = t * perThread;
+      results.add(executor.submit(() -> {
+        for (int i = offset; i < offset + perThread; i++) {
+          final String tokenId = new UUID(i, i).toString();
+          store.add(tokenId, i, i, i);
+          if (i % 2 == 0) {
+            store.remove(Collections.singleton(tokenId));
+          }
+        }
+      }));
+    }
+    for (Future<?> result : results) {
+      result.get();
+    }
+    executor.shutdown();
+
+    assertEquals(2 * perThread, store.size());
+    for (int i = 1; i < 4 * perThread; i += 2) {
+      assertEquals(i, store.getExpiration(new UUID(i, i).toString()));
+    }
+  }
+
+  @Test
+  public void testExpirationIndex() {
+    final TokenStateStore store = new TokenStateStore();
+    final long now = System.currentTimeMillis();
+    final long hour = TimeUnit.HOURS.toMillis(1);
+    final List<String> live = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      final String tokenId = UUID.randomUUID().toString();
+      store.add(tokenId, now, now + hour + i, now + 2 * hour);
+      live.add(tokenId);
+    }
+    final String expired = UUID.randomUUID().toString();
+    final String expiredOther = "expired-token";
+    final String renewed = UUID.randomUUID().toString();
+    final String revoked = UUID.randomUUID().toString();
+    final String justExpired = UUID.randomUUID().toString();
+    store.add(expired, now - hour, now - 10, now + hour);
+    store.add(expiredOther, now - hour, now - 20, now + hour);
+    store.add(renewed, now - hour, now - 30, now + hour);
+    store.setExpiration(renewed, now + hour);
+    store.add(revoked, now - hour, now - 40, now + hour);
+    store.remove(Collections.singleton(revoked));
+    // Same bucket as the sweep limit, expiring after it
+    store.add(justExpired, now - hour, now + 1, now + hour);
+
+    assertEquals(new HashSet<>(Arrays.asList(expired, expiredOther)), store.drainExpiredTokenIds(now));
+    store.remove(Arrays.asList(expired, expiredOther));
+    assertTrue(store.drainExpiredTokenIds(now).isEmpty());
+
+    // The tokens that did not expire are still indexed, renewed ones under their new expiration only
+    assertEquals(Collections.singleton(justExpired), store.drainExpiredTokenIds(now + 1));
+    store.remove(Collections.singleton(justExpired));
+    final Set<String> expiredLater = store.drainExpiredTokenIds(now + 2 * hour);
+    assertEquals(live.size() + 1, expiredLater.size());
+    assertTrue(expiredLater.containsAll(live));
+    assertTrue(expiredLater.contains(renewed));
+  }
+
+  @Test
+  public void testReindex() {
+    final TokenStateStore store = new TokenStateStore();
+    final long now = System.currentTimeMillis();
+    final String kept = UUID.randomUUID().toString();
+    final String removed = UUID.randomUUID().toString();
+    store.add(kept, now - 2000, now - 1000, now + 1000);
+    store.add(removed, now - 2000, now - 1000, now + 1000);
+
+    assertEquals(new HashSet<>(Arrays.asList(kept, removed)), store.drainExpiredTokenIds(now));
+    assertTrue(store.drainExpiredTokenIds(now).isEmpty());
+
+    store.remove(Collections.singleton(removed));
+    store.reindex(Arrays.asList(kept, removed));
+    assertEquals(Collections.singleton(kept), store.drainExpiredTokenIds(now));
+  }
+
+  /*
+   * The maps the store replaced took about 270 bytes per token: the identifier string once per map,
+   * entries and boxed values. The store takes up to about 110 bytes per token in its tables, plus
+   * 16 bytes or more in the expiration index. The figure is computed from the sizes of those arrays,
+   * so it only varies with how full the tables are, which the bound leaves room for.
+   */
+  @Test
+  public void testMemoryPerToken() {
+    final TokenStateStore store = new TokenStateStore();
+    final int tokens = 200000;
+    final long now = System.currentTimeMillis();
+    for (int i = 0; i < tokens; i++) {
+      store.add(UUID.randomUUID().toString(), now, now + 1000, now + 2000);
+    }
+    assertEquals(tokens, store.size());
+    final long memoryUsage = store.getMemoryUsage();
+    assertTrue("Memory per token: " + memoryUsage / tokens + " bytes", memoryUsage <= 160L * tokens);
+
+    store.remove(store.getTokenIds());
+    assertEquals(0, store.size());
+  }
+
+  /*
+   * Lookups take well under a microsecond; the bound is loose as timings depend on the machine
+   */
+  @Test
+  public void testLookupLatency() {
+    final TokenStateStore store = new TokenStateStore();
+    final String[] tokenIds = new String[100000];
+    for (int i = 0; i < tokenIds.length; i++) {
+      tokenIds[i] = UUID.randomUUID().toString();
+      store.add(tokenIds[i], i, i, i);
+    }
+
+    final int lookups = 1000000;
+    // Warm up
+    for (int i = 0; i < lookups; i++) {
+      assertEquals(i % tokenIds.length, store.getExpiration(tokenIds[i % tokenIds.length]));
+    }
+    final long start = System.nanoTime();
+    for (int i = 0; i < lookups; i++) {
+      assertEquals(i % tokenIds.length, store.getExpiration(tokenIds[i % tokenIds.length]));
+    }
+    final long latency = (System.nanoTime() - start) / lookups;
+    assertTrue("Lookup latency: " + latency + " ns", latency < TimeUnit.MICROSECONDS.toNanos(20));
+  }
+}
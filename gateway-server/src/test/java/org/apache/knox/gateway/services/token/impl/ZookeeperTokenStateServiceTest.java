@@ -23,9 +23,11 @@ import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -35,6 +37,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.curator.test.InstanceSpec;
 import org.apache.curator.test.TestingCluster;
@@ -51,6 +55,7 @@ import org.apache.knox.gateway.services.security.KeystoreService;
 import org.apache.knox.gateway.services.security.KeystoreServiceException;
 import org.apache.knox.gateway.services.security.MasterService;
 import org.apache.knox.gateway.services.security.token.TokenMetadata;
+import org.apache.knox.gateway.services.security.token.UnknownTokenException;
 import org.easymock.EasyMock;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -129,6 +134,51 @@ public class ZookeeperTokenStateServiceTest {
     assertTrue(zktokenStateServiceNode2.getTokenMetadata(tokenId).isEnabled());
   }
 
+  @Test
+  public void testFreshTokenIsPushedToPeers() throws Exception {
+    final ZookeeperTokenStateService zktokenStateServiceNode1 = setupZkTokenStateService(LONG_TOKEN_STATE_ALIAS_PERSISTENCE_INTERVAL);
+    final ZookeeperTokenStateService zktokenStateServiceNode2 = setupZkTokenStateService(LONG_TOKEN_STATE_ALIAS_PERSISTENCE_INTERVAL);
+    final String tokenId = UUID.randomUUID().toString();
+    final long start = System.nanoTime();
+    zktokenStateServiceNode1.addToken(tokenId, 10L, 2000L);
+    assertEquals(2000L, zktokenStateServiceNode2.getTokenExpiration(tokenId));
+
+    // the token reached node2 without waiting for the persistence interval of node1
+    assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < LONG_TOKEN_STATE_ALIAS_PERSISTENCE_INTERVAL);
+  }
+
+  @Test
+  public void testUnknownTokenLookupIsBounded() throws Exception {
+    final long lookupTimeout = 500L;
+    final ZookeeperTokenStateService zktokenStateService = setupZkTokenStateService(LONG_TOKEN_STATE_ALIAS_PERSISTENCE_INTERVAL, lookupTimeout);
+    final String tokenId = UUID.randomUUID().toString();
+    final long start = System.nanoTime();
+    assertThrows(UnknownTokenException.class, () -> zktokenStateService.getTokenExpiration(tokenId));
+    final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    assertTrue(elapsed >= lookupTimeout);
+    assertTrue(elapsed < TimeUnit.SECONDS.toMillis(LONG_TOKEN_STATE_ALIAS_PERSISTENCE_INTERVAL));
+  }
+
+  @Test
+  public void testUnknownTokenIsNotWaitedForWhenTooManyLookupsArePending() throws Exception {
+    final long lookupTimeout = TimeUnit.SECONDS.toMillis(LONG_TOKEN_STATE_ALIAS_PERSISTENCE_INTERVAL);
+    final ZookeeperTokenStateService zktokenStateService = setupZkTokenStateService(LONG_TOKEN_STATE_ALIAS_PERSISTENCE_INTERVAL, lookupTimeout);
+    final Field permitsField = ZookeeperTokenStateService.class.getDeclaredField("pendingLookupPermits");
+    permitsField.setAccessible(true);
+    final Semaphore permits = (Semaphore) permitsField.get(zktokenStateService);
+    final int maxPendingLookups = permits.drainPermits();
+    try {
+      final long start = System.nanoTime();
+      assertThrows(UnknownTokenException.class, () -> zktokenStateService.getTokenExpiration(UUID.randomUUID().toString()));
+      assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < lookupTimeout);
+    } finally {
+      permits.release(maxPendingLookups);
+    }
+
+    // the rejected lookups did not take the permits of the later ones
+    assertEquals(maxPendingLookups, permits.availablePermits());
+  }
+
   @Test
   public void testRenewal() throws Exception {
     final ZookeeperTokenStateService zktokenStateServiceNode1 = setupZkTokenStateService(SHORT_TOKEN_STATE_ALIAS_PERSISTENCE_INTERVAL);
@@ -179,6 +229,11 @@ public class ZookeeperTokenStateServiceTest {
   }
 
   private ZookeeperTokenStateService setupZkTokenStateService(long persistenceInterval) throws IOException, KeystoreServiceException, ServiceLifecycleException {
+    return setupZkTokenStateService(persistenceInterval, 0L);
+  }
+
+  private ZookeeperTokenStateService setupZkTokenStateService(long persistenceInterval, long lookupTimeout)
+      throws IOException, KeystoreServiceException, ServiceLifecycleException {
     // mocking GatewayConfig
     final GatewayConfig gc = EasyMock.createNiceMock(GatewayConfig.class);
     expect(gc.getRemoteRegistryConfigurationNames()).andReturn(Collections.singletonList(CONFIG_MONITOR_NAME)).anyTimes();
@@ -188,9 +243,11 @@ public class ZookeeperTokenStateServiceTest {
     expect(gc.getAlgorithm()).andReturn("AES").anyTimes();
     expect(gc.isRemoteAliasServiceEnabled()).andReturn(true).anyTimes();
     expect(gc.getKnoxTokenStateAliasPersistenceInterval()).andReturn(persistenceInterval).anyTimes();
+    expect(gc.getKnoxTokenStateZookeeperLookupTimeout()).andReturn(lookupTimeout).anyTimes();
     final Path baseFolder = Paths.get(testFolder.newFolder().getAbsolutePath());
     expect(gc.getGatewayDataDir()).andReturn(Paths.get(baseFolder.toString(), "data").toString()).anyTimes();
     expect(gc.getGatewayKeystoreDir()).andReturn(Paths.get(baseFolder.toString(), "data", "keystores").toString()).anyTimes();
+    expect(gc.getGatewaySecurityDir()).andReturn(Paths.get(baseFolder.toString(), "data", "security").toString()).anyTimes();
     replay(gc);
 
     // mocking GatewayServices
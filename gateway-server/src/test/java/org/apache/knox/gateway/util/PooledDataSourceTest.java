@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.ConnectionEvent;
+import javax.sql.ConnectionPoolDataSource;
+import javax.sql.PooledConnection;
+
+import org.easymock.EasyMock;
+import org.junit.Test;
+
+public class PooledDataSourceTest {
+
+  @Test
+  public void testConnectionsAreReused() throws Exception {
+    final PooledConnection pooledConnection = createPooledConnection();
+    final ConnectionPoolDataSource connectionPoolDataSource = EasyMock.createMock(ConnectionPoolDataSource.class);
+    EasyMock.expect(connectionPoolDataSource.getPooledConnection()).andReturn(pooledConnection).once();
+    EasyMock.replay(connectionPoolDataSource, pooledConnection);
+
+    final PooledDataSource dataSource = new PooledDataSource(connectionPoolDataSource, 2, 1000);
+    assertNotNull(dataSource.getConnection());
+    assertEquals(1, dataSource.getUsedConnectionCount());
+    dataSource.connectionClosed(new ConnectionEvent(pooledConnection));
+    assertEquals(0, dataSource.getUsedConnectionCount());
+    assertEquals(1, dataSource.getIdleConnectionCount());
+
+    assertNotNull(dataSource.getConnection());
+    assertEquals(0, dataSource.getIdleConnectionCount());
+    EasyMock.verify(connectionPoolDataSource);
+  }
+
+  @Test(expected = SQLException.class)
+  public void testPoolSizeIsBounded() throws Exception {
+    final ConnectionPoolDataSource connectionPoolDataSource = EasyMock.createMock(ConnectionPoolDataSource.class);
+    final PooledConnection pooledConnection = createPooledConnection();
+    EasyMock.expect(connectionPoolDataSource.getPooledConnection()).andReturn(pooledConnection).once();
+    EasyMock.replay(connectionPoolDataSource, pooledConnection);
+
+    final PooledDataSource dataSource = new PooledDataSource(connectionPoolDataSource, 1, 10);
+    dataSource.getConnection();
+    dataSource.getConnection();
+  }
+
+  @Test
+  public void testBrokenConnectionsAreDiscarded() throws Exception {
+    final PooledConnection brokenConnection = createPooledConnection();
+    brokenConnection.close();
+    EasyMock.expectLastCall().once();
+    final PooledConnection healthyConnection = createPooledConnection();
+    final ConnectionPoolDataSource connectionPoolDataSource = EasyMock.createMock(ConnectionPoolDataSource.class);
+    EasyMock.expect(connectionPoolDataSource.getPooledConnection()).andReturn(brokenConnection).once();
+    EasyMock.expect(connectionPoolDataSource.getPooledConnection()).andReturn(healthyConnection).once();
+    EasyMock.replay(connectionPoolDataSource, brokenConnection, healthyConnection);
+
+    final PooledDataSource dataSource = new PooledDataSource(connectionPoolDataSource, 1, 10);
+    dataSource.getConnection();
+    dataSource.connectionErrorOccurred(new ConnectionEvent(brokenConnection, new SQLException("broken")));
+    // closing the logical connection after the error has no effect
+    dataSource.connectionClosed(new ConnectionEvent(brokenConnection));
+    assertEquals(0, dataSource.getIdleConnectionCount());
+
+    assertNotNull(dataSource.getConnection());
+    EasyMock.verify(connectionPoolDataSource, brokenConnection);
+  }
+
+  private PooledConnection createPooledConnection() throws SQLException {
+    final PooledConnection pooledConnection = EasyMock.createNiceMock(PooledConnection.class);
+    EasyMock.expect(pooledConnection.getConnection()).andReturn(EasyMock.createNiceMock(Connection.class)).anyTimes();
+    return pooledConnection;
+  }
+}
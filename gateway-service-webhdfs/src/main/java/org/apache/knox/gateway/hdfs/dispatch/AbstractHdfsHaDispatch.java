@@ -23,6 +23,7 @@ import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.entity.BufferedHttpEntity;
 import org.apache.knox.gateway.config.Configure;
 import org.apache.knox.gateway.filter.AbstractGatewayFilter;
+import org.apache.knox.gateway.ha.dispatch.HedgedRequestExecutor;
 import org.apache.knox.gateway.ha.provider.HaProvider;
 import org.apache.knox.gateway.ha.provider.HaServiceConfig;
 import org.apache.knox.gateway.ha.provider.impl.HaServiceConfigConstants;
@@ -45,6 +46,7 @@ public abstract class AbstractHdfsHaDispatch extends HdfsHttpClientDispatch {
   private int maxFailoverAttempts = HaServiceConfigConstants.DEFAULT_MAX_FAILOVER_ATTEMPTS;
   private int failoverSleep = HaServiceConfigConstants.DEFAULT_FAILOVER_SLEEP;
   private HaProvider haProvider;
+  private HedgedRequestExecutor hedgedRequestExecutor;
 
   public AbstractHdfsHaDispatch() throws ServletException {
     super();
@@ -57,9 +59,20 @@ public abstract class AbstractHdfsHaDispatch extends HdfsHttpClientDispatch {
        HaServiceConfig serviceConfig = haProvider.getHaDescriptor().getServiceConfig(getResourceRole());
        maxFailoverAttempts = serviceConfig.getMaxFailoverAttempts();
        failoverSleep = serviceConfig.getFailoverSleep();
+       if (serviceConfig.isHedgingEnabled()) {
+         hedgedRequestExecutor = new HedgedRequestExecutor(getResourceRole(), haProvider, serviceConfig);
+       }
      }
    }
 
+  @Override
+  public void destroy() {
+    super.destroy();
+    if (hedgedRequestExecutor != null) {
+      hedgedRequestExecutor.shutdown();
+    }
+  }
+
   public HaProvider getHaProvider() {
     return haProvider;
   }
@@ -75,7 +88,11 @@ public abstract class AbstractHdfsHaDispatch extends HdfsHttpClientDispatch {
   protected void executeRequest(HttpUriRequest outboundRequest, HttpServletRequest inboundRequest, HttpServletResponse outboundResponse) throws IOException {
       HttpResponse inboundResponse = null;
       try {
-         inboundResponse = executeOutboundRequest(outboundRequest);
+         if (hedgedRequestExecutor != null && hedgedRequestExecutor.isHedgeable(outboundRequest)) {
+            inboundResponse = hedgedRequestExecutor.execute(outboundRequest, this::executeOutboundRequest);
+         } else {
+            inboundResponse = executeOutboundRequest(outboundRequest);
+         }
          writeOutboundResponse(outboundRequest, inboundRequest, outboundResponse, inboundResponse);
       } catch (StandbyException e) {
          LOG.errorReceivedFromStandbyNode(e);
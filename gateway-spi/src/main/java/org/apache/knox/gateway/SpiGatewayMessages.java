@@ -108,4 +108,28 @@ public interface SpiGatewayMessages {
 
   @Message( level = MessageLevel.DEBUG, text = "Skipped adding outbound header {0} and value {1}" )
   void skippedOutboundHeader(String header, String value);
+
+  @Message( level = MessageLevel.WARN, text = "Asynchronous dispatch requested but {0} cannot create a non-blocking client; using blocking dispatch" )
+  void asyncDispatchNotSupported(String httpClientFactory);
+
+  @Message( level = MessageLevel.WARN, text = "Failed to stream request body for asynchronous dispatch to {0}: {1}" )
+  void asyncDispatchRequestBodyFailed(URI uri, @StackTrace(level=MessageLevel.DEBUG) Exception e);
+
+  @Message( level = MessageLevel.WARN, text = "Failed to write response for asynchronous dispatch to {0}: {1}" )
+  void asyncDispatchResponseFailed(URI uri, @StackTrace(level=MessageLevel.DEBUG) Exception e);
+
+  @Message( level = MessageLevel.WARN, text = "Asynchronous dispatch to {0} did not complete within {1} ms; aborting it" )
+  void asyncDispatchTimedOut(URI uri, long timeout);
+
+  @Message( level = MessageLevel.WARN, text = "HTTP/2 dispatch is not available for {0} because SPNEGO authentication is only supported over HTTP/1.1" )
+  void http2DispatchNotSupportedWithKerberos(String serviceRole);
+
+  @Message( level = MessageLevel.INFO, text = "Backend {0} did not negotiate HTTP/2, dispatching over HTTP/1.1 for the next {1} ms: {2}" )
+  void http2NotNegotiated(String origin, long downgradePeriod, @StackTrace(level=MessageLevel.DEBUG) Exception e);
+
+  @Message( level = MessageLevel.WARN, text = "The httpclient.maxConnections parameter of {0} is ignored; the limits of the shared connection pool set in gateway-site apply" )
+  void maxConnectionsOverriddenBySharedPool(String serviceRole);
+
+  @Message( level = MessageLevel.WARN, text = "Failed to stop the HTTP/2 dispatch client: {0}" )
+  void failedToStopHttp2Client(@StackTrace(level=MessageLevel.DEBUG) Exception e);
 }
@@ -697,6 +697,48 @@ public interface GatewayConfig {
    */
   long getKnoxTokenStateAliasPersistenceInterval();
 
+  /**
+   * Return the configured interval (in seconds) at which the appends to the token state log are
+   * synced to disk; with 0 every append is synced before it returns.
+   * @return Token state log sync interval in seconds.
+   */
+  long getKnoxTokenStateLogSyncInterval();
+
+  /**
+   * Return the configured time (in milliseconds) a lookup of a token unknown to the Zookeeper token
+   * state service waits for the token state to show up in Zookeeper. A value of 0 waits for up to
+   * the token state alias persistence interval.
+   * @return Zookeeper token state lookup timeout in milliseconds.
+   */
+  long getKnoxTokenStateZookeeperLookupTimeout();
+
+  /**
+   * Return the configured window (in milliseconds) within which the token state updates of the
+   * JDBC token state service are grouped into a single database batch.
+   * @return JDBC token state batch latency in milliseconds.
+   */
+  long getKnoxTokenStateJdbcBatchLatency();
+
+  /**
+   * Return the maximum number of token state updates waiting to be written to the database;
+   * issuing tokens blocks while the queue is full.
+   * @return JDBC token state update queue size.
+   */
+  int getKnoxTokenStateJdbcQueueSize();
+
+  /**
+   * Return the maximum number of tokens whose state, read from the database, is cached.
+   * @return JDBC token state cache size.
+   */
+  long getKnoxTokenStateJdbcCacheSize();
+
+  /**
+   * Return how long the state of a token read from the database is cached, i.e. the delay after
+   * which the revocations, disablements and renewals made by another gateway are seen by this one.
+   * @return JDBC token state cache entry time-to-live in milliseconds; 0 disables the cache.
+   */
+  long getKnoxTokenStateJdbcCacheTtl();
+
   /**
    * @return the HMAC algorithm name to be used to sign generated Knox Token content (e.g. the token.id claim)
    */
@@ -769,4 +811,115 @@ public interface GatewayConfig {
 
   String getDatabaseSslTruststoreFileName();
 
+  /**
+   * @return the maximum number of connections the gateway keeps open to the database
+   */
+  int getDatabasePoolMaxSize();
+
+  /**
+   * @return the time (in milliseconds) to wait for a database connection when all the connections of the pool are in use
+   */
+  long getDatabasePoolConnectionTimeout();
+
+  /**
+   * @return true if the gateway servlet of each topology should be registered with servlet async support,
+   * allowing dispatches configured with asyncDispatch to release the request thread while waiting on backends
+   */
+  boolean isAsyncSupported();
+
+  /**
+   * @return the time (in milliseconds) an asynchronously dispatched request may take, streaming the response
+   * included, before the backend exchange is aborted
+   */
+  long getAsyncDispatchTimeout();
+
+  /**
+   * @return true if dispatches should share the gateway wide, per backend route connection pools
+   * instead of creating a connection pool for every dispatch
+   */
+  boolean isHttpClientConnectionPoolEnabled();
+
+  /**
+   * @return the maximum number of connections of a shared connection pool
+   */
+  int getHttpClientConnectionPoolMaxTotal();
+
+  /**
+   * @return the maximum number of connections of a shared connection pool to a single backend route
+   */
+  int getHttpClientConnectionPoolMaxPerRoute();
+
+  /**
+   * @return the period of inactivity in milliseconds after which pooled connections are validated before reuse
+   */
+  int getHttpClientConnectionPoolValidateAfterInactivity();
+
+  /**
+   * @return the time in milliseconds after which idle pooled connections are evicted
+   */
+  long getHttpClientConnectionPoolIdleTimeout();
+
+  /**
+   * @return the interval in milliseconds of the shared connection pool eviction task
+   */
+  long getHttpClientConnectionPoolEvictionInterval();
+
+  /**
+   * @return true if the TLS connectors of the gateway should offer HTTP/2 through ALPN next to HTTP/1.1
+   */
+  boolean isHttp2Enabled();
+
+  /**
+   * @return true if the plain text connectors of the gateway should accept HTTP/2 over cleartext (h2c)
+   */
+  boolean isHttp2CleartextEnabled();
+
+  /**
+   * @return the maximum number of concurrent streams a client may open on a single HTTP/2 connection
+   */
+  int getHttp2MaxConcurrentStreams();
+
+  /**
+   * @return the maximum number of bytes of direct memory the gateway wide pool of request body replay
+   * buffers may hold; 0 or less disables the pool and the buffers are allocated on the heap
+   */
+  long getHttpClientReplayBufferPoolMaxSize();
+
+  /**
+   * @return true if the topologies should cache the rewritten bodies of the backend responses carrying
+   * a validator (ETag or Last-Modified) and revalidate them with conditional requests
+   */
+  boolean isRewriteResponseCacheEnabled();
+
+  /**
+   * @return the maximum number of bytes of rewritten bodies the response cache of a topology may hold
+   */
+  long getRewriteResponseCacheMaxSize();
+
+  /**
+   * @return the maximum number of rewritten bodies the response cache of a topology may hold
+   */
+  int getRewriteResponseCacheMaxEntries();
+
+  /**
+   * @return the maximum size in bytes of a rewritten body to be cached
+   */
+  int getRewriteResponseCacheMaxEntrySize();
+
+  /**
+   * @return the compression level, from 0 to 9 or -1 for the default, of the rewritten bodies of compressed responses
+   */
+  int getRewriteCompressionLevel();
+
+  /**
+   * @return the number of bytes of the blocks of the rewritten gzip bodies compressed in parallel
+   */
+  int getRewriteCompressionBlockSize();
+
+  /**
+   * @return the number of threads compressing the blocks of the rewritten gzip bodies in parallel;
+   * 0 or less compresses them on the thread writing the response
+   */
+  int getRewriteCompressionThreads();
+
 }
@@ -19,20 +19,22 @@ package org.apache.knox.gateway.dispatch;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.knox.gateway.filter.GatewayResponse;
+import org.apache.knox.gateway.util.ResponseStreamUtils;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.nio.client.HttpAsyncClient;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 public abstract class AbstractGatewayDispatch implements Dispatch {
   private static final Set<String> REQUEST_EXCLUDE_HEADERS = new HashSet<>(Arrays.asList(
@@ -40,6 +42,10 @@ public abstract class AbstractGatewayDispatch implements Dispatch {
 
   protected  HttpClient client;
 
+  protected HttpAsyncClient asyncClient;
+
+  protected long asyncDispatchTimeout = TimeUnit.MINUTES.toMillis(10);
+
   @Override
   public void init() {
   }
@@ -49,9 +55,7 @@ public abstract class AbstractGatewayDispatch implements Dispatch {
     if (response instanceof GatewayResponse) {
       ((GatewayResponse) response).streamResponse(stream);
     } else {
-      try(OutputStream output = response.getOutputStream()) {
-        IOUtils.copy(stream, output);
-      }
+      ResponseStreamUtils.passThrough(stream, response.getOutputStream(), IOUtils.DEFAULT_BUFFER_SIZE);
     }
   }
 
@@ -65,6 +69,21 @@ public abstract class AbstractGatewayDispatch implements Dispatch {
     this.client = client;
   }
 
+  @Override
+  public synchronized HttpAsyncClient getHttpAsyncClient() {
+    return asyncClient;
+  }
+
+  @Override
+  public synchronized void setHttpAsyncClient(HttpAsyncClient asyncClient) {
+    this.asyncClient = asyncClient;
+  }
+
+  @Override
+  public synchronized void setAsyncDispatchTimeout(long asyncDispatchTimeout) {
+    this.asyncDispatchTimeout = asyncDispatchTimeout;
+  }
+
   @Override
   public URI getDispatchUrl(HttpServletRequest request) {
     StringBuffer str = request.getRequestURL();
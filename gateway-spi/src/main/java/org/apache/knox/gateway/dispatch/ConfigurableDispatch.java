@@ -87,6 +87,7 @@ public class ConfigurableDispatch extends DefaultDispatch {
       final Set<String> headerSet = convertCommaDelimitedHeadersToSet(headers);
       populateSetCookieHeaderDirectiveExlusions(headerSet);
       populateHttpHeaderExlusionsOtherThanSetCookie(headerSet);
+      resetResponseHeaderFilter();
     }
   }
 
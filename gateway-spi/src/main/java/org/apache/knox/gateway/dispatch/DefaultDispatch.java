@@ -17,10 +17,9 @@
  */
 package org.apache.knox.gateway.dispatch;
 
-import static java.util.stream.Collectors.toCollection;
-
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
@@ -30,11 +29,14 @@ import org.apache.http.client.methods.HttpPatch;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.entity.ContentType;
 import org.apache.knox.gateway.SpiGatewayMessages;
 import org.apache.knox.gateway.SpiGatewayResources;
 import org.apache.knox.gateway.audit.api.Action;
 import org.apache.knox.gateway.audit.api.ActionOutcome;
+import org.apache.knox.gateway.audit.api.AuditContext;
+import org.apache.knox.gateway.audit.api.AuditService;
 import org.apache.knox.gateway.audit.api.AuditServiceFactory;
 import org.apache.knox.gateway.audit.api.Auditor;
 import org.apache.knox.gateway.audit.api.ResourceType;
@@ -43,10 +45,19 @@ import org.apache.knox.gateway.config.Configure;
 import org.apache.knox.gateway.config.Default;
 import org.apache.knox.gateway.config.GatewayConfig;
 import org.apache.knox.gateway.config.Optional;
+import org.apache.knox.gateway.filter.AbstractGatewayFilter;
 import org.apache.knox.gateway.i18n.messages.MessagesFactory;
 import org.apache.knox.gateway.i18n.resources.ResourcesFactory;
+import org.apache.knox.gateway.security.SubjectUtils;
+import org.apache.knox.gateway.services.GatewayServices;
+import org.apache.knox.gateway.services.ServiceType;
+import org.apache.knox.gateway.services.httpclient.ReplayBufferService;
 import org.apache.knox.gateway.util.MimeTypes;
 
+import javax.security.auth.Subject;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.Closeable;
@@ -54,13 +65,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.security.PrivilegedAction;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
-import java.util.LinkedHashSet;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class DefaultDispatch extends AbstractGatewayDispatch {
   protected static final String SET_COOKIE = "SET-COOKIE";
@@ -71,12 +81,17 @@ public class DefaultDispatch extends AbstractGatewayDispatch {
 
   protected static final SpiGatewayMessages LOG = MessagesFactory.get(SpiGatewayMessages.class);
   protected static final SpiGatewayResources RES = ResourcesFactory.get(SpiGatewayResources.class);
-  protected static final Auditor auditor = AuditServiceFactory.getAuditService().getAuditor(AuditConstants.DEFAULT_AUDITOR_NAME,
+  protected static final AuditService auditService = AuditServiceFactory.getAuditService();
+  protected static final Auditor auditor = auditService.getAuditor(AuditConstants.DEFAULT_AUDITOR_NAME,
       AuditConstants.KNOX_SERVICE_NAME, AuditConstants.KNOX_COMPONENT_NAME);
 
+  /* size of the buffers bridging servlet streams and the non-blocking client */
+  protected static final int ASYNC_DISPATCH_BUFFER_SIZE = 64 * 1024;
+
   protected static final String EXCLUDE_ALL = "*";
   private Set<String> outboundResponseExcludeHeaders = Collections.singleton(WWW_AUTHENTICATE);
   private Set<String> outboundResponseExcludedSetCookieHeaderDirectives = Collections.singleton(EXCLUDE_ALL);
+  private ResponseHeaderFilter responseHeaderFilter;
 
   @Optional
   @Configure
@@ -149,9 +164,197 @@ public class DefaultDispatch extends AbstractGatewayDispatch {
          HttpServletRequest inboundRequest,
          HttpServletResponse outboundResponse)
          throws IOException {
+    if (isAsyncDispatch(outboundRequest, inboundRequest)) {
+      executeAsyncRequest(outboundRequest, inboundRequest, outboundResponse);
+    } else {
       HttpResponse inboundResponse = executeOutboundRequest(outboundRequest);
       writeOutboundResponse(outboundRequest, inboundRequest, outboundResponse, inboundResponse);
-   }
+    }
+  }
+
+  /**
+   * Asynchronous dispatch is used when a non-blocking client has been provided
+   * and the inbound request supports servlet async processing.
+   * Requests with a body to a Kerberos secured cluster stay on the blocking path
+   * because SPNEGO negotiation may need to replay the body, and so do requests
+   * going through a filter with work to do once the dispatch returns.
+   */
+  protected boolean isAsyncDispatch(HttpUriRequest outboundRequest, HttpServletRequest inboundRequest) {
+    if (getHttpAsyncClient() == null || !inboundRequest.isAsyncSupported() || inboundRequest.isAsyncStarted()
+        || inboundRequest.getAttribute(AbstractGatewayFilter.BLOCKING_DISPATCH_ATTRIBUTE_NAME) != null) {
+      return false;
+    }
+    return !(outboundRequest instanceof HttpEntityEnclosingRequest
+        && Boolean.parseBoolean(System.getProperty(GatewayConfig.HADOOP_KERBEROS_SECURED)));
+  }
+
+  /**
+   * Dispatches the request with the non-blocking client and releases the calling
+   * thread once the request body has been handed off. The response is written on
+   * a container thread as soon as the backend response head arrives, streaming the
+   * body through bounded buffers so slow clients throttle the backend.
+   * <p>
+   * The servlet streams themselves are used with blocking reads and writes: the
+   * request body is read by the calling thread and the response body by the
+   * container thread writing it, which runs as the subject the request was
+   * dispatched as. The whole exchange is bounded by the async dispatch timeout.
+   */
+  protected void executeAsyncRequest(final HttpUriRequest outboundRequest,
+                                     final HttpServletRequest inboundRequest,
+                                     final HttpServletResponse outboundResponse) throws IOException {
+    LOG.dispatchRequest( outboundRequest.getMethod(), outboundRequest.getURI() );
+    auditor.audit( Action.DISPATCH, outboundRequest.getURI().toString(), ResourceType.URI, ActionOutcome.UNAVAILABLE, RES.requestMethod( outboundRequest.getMethod() ) );
+    if( !Boolean.parseBoolean(System.getProperty(GatewayConfig.HADOOP_KERBEROS_SECURED))) {
+      // Hadoop cluster not Kerberos enabled
+      addCredentialsToRequest( outboundRequest );
+    }
+
+    final AuditContext auditContext = auditService.getContext();
+    final Subject subject = SubjectUtils.getCurrentSubject();
+    final AtomicBoolean completed = new AtomicBoolean();
+    final AsyncContext asyncContext = inboundRequest.startAsync();
+    asyncContext.setTimeout(asyncDispatchTimeout);
+    asyncContext.addListener(new AsyncDispatchTimeoutListener(outboundRequest, completed));
+
+    final AtomicBoolean responseReceived = new AtomicBoolean();
+    final StreamingRequestProducer producer = new StreamingRequestProducer(outboundRequest, ASYNC_DISPATCH_BUFFER_SIZE);
+    final StreamingResponseConsumer consumer = new StreamingResponseConsumer(ASYNC_DISPATCH_BUFFER_SIZE,
+        inboundResponse -> {
+          responseReceived.set(true);
+          startAs(asyncContext, subject, () -> writeAsyncResponse(asyncContext, completed, auditContext,
+              outboundRequest, inboundRequest, outboundResponse, inboundResponse));
+        });
+
+    getHttpAsyncClient().execute(producer, consumer, new FutureCallback<HttpResponse>() {
+      @Override
+      public void completed(HttpResponse result) {
+        // The response has already been handed to a container thread by the consumer
+      }
+
+      @Override
+      public void failed(Exception e) {
+        if (!responseReceived.get() && !completed.get()) {
+          startAs(asyncContext, subject, () -> failAsyncRequest(asyncContext, completed, auditContext, outboundRequest, outboundResponse, e));
+        }
+      }
+
+      @Override
+      public void cancelled() {
+        failed(new IOException(RES.dispatchConnectionError()));
+      }
+    });
+
+    try {
+      producer.streamContent();
+    } catch (IOException e) {
+      // The exchange is aborted and the failure is reported to the client by the callback
+      LOG.asyncDispatchRequestBodyFailed(outboundRequest.getURI(), e);
+      outboundRequest.abort();
+    }
+  }
+
+  /*
+   * Runs the task on a container thread, within the subject of the dispatching thread
+   */
+  private static void startAs(AsyncContext asyncContext, Subject subject, PrivilegedAction<Void> task) {
+    try {
+      asyncContext.start(() -> {
+        if (subject == null) {
+          task.run();
+        } else {
+          Subject.doAs(subject, task);
+        }
+      });
+    } catch (IllegalStateException e) {
+      // The exchange has already been completed, e.g. on timeout
+    }
+  }
+
+  private Void writeAsyncResponse(AsyncContext asyncContext, AtomicBoolean completed, AuditContext auditContext,
+                                  HttpUriRequest outboundRequest, HttpServletRequest inboundRequest,
+                                  HttpServletResponse outboundResponse, HttpResponse inboundResponse) {
+    auditService.attachContext(auditContext);
+    try {
+      int statusCode = logDispatchResponse(inboundResponse);
+      auditor.audit( Action.DISPATCH, outboundRequest.getURI().toString(), ResourceType.URI, ActionOutcome.SUCCESS, RES.responseStatus( statusCode ) );
+      writeOutboundResponse(outboundRequest, inboundRequest, outboundResponse, inboundResponse);
+    } catch (IOException | RuntimeException e) {
+      LOG.asyncDispatchResponseFailed(outboundRequest.getURI(), e);
+    } finally {
+      completeAsyncRequest(asyncContext, completed);
+      auditService.detachContext();
+    }
+    return null;
+  }
+
+  private Void failAsyncRequest(AsyncContext asyncContext, AtomicBoolean completed, AuditContext auditContext,
+                                HttpUriRequest outboundRequest, HttpServletResponse outboundResponse,
+                                Exception cause) {
+    auditService.attachContext(auditContext);
+    try {
+      // We do not want to expose back end host. port end points to clients, see JIRA KNOX-58
+      auditor.audit( Action.DISPATCH, outboundRequest.getURI().toString(), ResourceType.URI, ActionOutcome.FAILURE );
+      LOG.dispatchServiceConnectionException( outboundRequest.getURI(), cause );
+      if (!outboundResponse.isCommitted()) {
+        outboundResponse.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      }
+    } catch (IOException e) {
+      LOG.asyncDispatchResponseFailed(outboundRequest.getURI(), e);
+    } finally {
+      completeAsyncRequest(asyncContext, completed);
+      auditService.detachContext();
+    }
+    return null;
+  }
+
+  private static void completeAsyncRequest(AsyncContext asyncContext, AtomicBoolean completed) {
+    if (completed.compareAndSet(false, true)) {
+      asyncContext.complete();
+    }
+  }
+
+  /*
+   * Aborts the backend exchange of a request that timed out, whether the backend
+   * is still to answer or the response is being streamed
+   */
+  private class AsyncDispatchTimeoutListener implements AsyncListener {
+    private final HttpUriRequest outboundRequest;
+    private final AtomicBoolean completed;
+
+    AsyncDispatchTimeoutListener(HttpUriRequest outboundRequest, AtomicBoolean completed) {
+      this.outboundRequest = outboundRequest;
+      this.completed = completed;
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) throws IOException {
+      if (completed.compareAndSet(false, true)) {
+        LOG.asyncDispatchTimedOut(outboundRequest.getURI(), asyncDispatchTimeout);
+        outboundRequest.abort();
+        final HttpServletResponse response = (HttpServletResponse) event.getAsyncContext().getResponse();
+        if (!response.isCommitted()) {
+          response.sendError(HttpServletResponse.SC_GATEWAY_TIMEOUT);
+        }
+        event.getAsyncContext().complete();
+      }
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+      // The client went away, there is no one to stream the response to
+      if (completed.compareAndSet(false, true)) {
+        outboundRequest.abort();
+      }
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+    }
+  }
 
   protected HttpResponse executeOutboundRequest( HttpUriRequest outboundRequest ) throws IOException {
     LOG.dispatchRequest( outboundRequest.getMethod(), outboundRequest.getURI() );
@@ -165,17 +368,7 @@ public class DefaultDispatch extends AbstractGatewayDispatch {
       }
       inboundResponse = getHttpClient().execute( outboundRequest );
 
-      int statusCode = inboundResponse.getStatusLine().getStatusCode();
-      if( statusCode != 201 ) {
-        LOG.dispatchResponseStatusCode( statusCode );
-      } else {
-        Header location = inboundResponse.getFirstHeader( "Location" );
-        if( location == null ) {
-          LOG.dispatchResponseStatusCode( statusCode );
-        } else {
-          LOG.dispatchResponseCreatedStatusCode( statusCode, location.getValue() );
-        }
-      }
+      int statusCode = logDispatchResponse( inboundResponse );
       auditor.audit( Action.DISPATCH, outboundRequest.getURI().toString(), ResourceType.URI, ActionOutcome.SUCCESS, RES.responseStatus( statusCode ) );
     } catch( Exception e ) {
       // We do not want to expose back end host. port end points to clients, see JIRA KNOX-58
@@ -186,6 +379,21 @@ public class DefaultDispatch extends AbstractGatewayDispatch {
     return inboundResponse;
   }
 
+  private int logDispatchResponse( HttpResponse inboundResponse ) {
+    int statusCode = inboundResponse.getStatusLine().getStatusCode();
+    if( statusCode != 201 ) {
+      LOG.dispatchResponseStatusCode( statusCode );
+    } else {
+      Header location = inboundResponse.getFirstHeader( "Location" );
+      if( location == null ) {
+        LOG.dispatchResponseStatusCode( statusCode );
+      } else {
+        LOG.dispatchResponseCreatedStatusCode( statusCode, location.getValue() );
+      }
+    }
+    return statusCode;
+  }
+
   protected void writeOutboundResponse(HttpUriRequest outboundRequest, HttpServletRequest inboundRequest, HttpServletResponse outboundResponse, HttpResponse inboundResponse) throws IOException {
     /* in case any changes to outbound response are needed */
     outboundResponseWrapper(inboundRequest, outboundResponse);
@@ -281,13 +489,30 @@ public class DefaultDispatch extends AbstractGatewayDispatch {
           replayBufferSize = config.getHttpServerRequestBuffer();
         }
         if (!delegationTokenPresent && replayBufferSize > 0 ) {
-          entity = new PartiallyRepeatableHttpEntity(entity, replayBufferSize);
+          entity = new PartiallyRepeatableHttpEntity(entity, replayBufferSize, getReplayBufferService(request));
         }
       }
 
       return entity;
    }
 
+   private static ReplayBufferService getReplayBufferService(HttpServletRequest request) {
+      GatewayServices services =
+         (GatewayServices)request.getServletContext().getAttribute( GatewayServices.GATEWAY_SERVICES_ATTRIBUTE );
+      return services == null ? null : services.getService(ServiceType.REPLAY_BUFFER_SERVICE);
+   }
+
+   /**
+    * Returns the pooled resources held by a request entity once the request has been executed.
+    *
+    * @param entity the entity created by {@link #createRequestEntity(HttpServletRequest)}
+    */
+   protected void releaseRequestEntity(HttpEntity entity) {
+      if (entity instanceof PartiallyRepeatableHttpEntity) {
+         ((PartiallyRepeatableHttpEntity) entity).release();
+      }
+   }
+
    @Override
    public void doGet(URI url, HttpServletRequest request, HttpServletResponse response)
          throws IOException {
@@ -314,7 +539,11 @@ public class DefaultDispatch extends AbstractGatewayDispatch {
       HttpEntity entity = createRequestEntity(request);
       method.setEntity(entity);
       copyRequestHeaderFields(method, request);
-     executeRequestWrapper(method, request, response);
+      try {
+        executeRequestWrapper(method, request, response);
+      } finally {
+        releaseRequestEntity(entity);
+      }
    }
 
    @Override
@@ -324,7 +553,11 @@ public class DefaultDispatch extends AbstractGatewayDispatch {
       HttpEntity entity = createRequestEntity(request);
       method.setEntity(entity);
       copyRequestHeaderFields(method, request);
-     executeRequestWrapper(method, request, response);
+      try {
+        executeRequestWrapper(method, request, response);
+      } finally {
+        releaseRequestEntity(entity);
+      }
    }
 
    @Override
@@ -334,7 +567,11 @@ public class DefaultDispatch extends AbstractGatewayDispatch {
       HttpEntity entity = createRequestEntity(request);
       method.setEntity(entity);
       copyRequestHeaderFields(method, request);
-     executeRequestWrapper(method, request, response);
+      try {
+        executeRequestWrapper(method, request, response);
+      } finally {
+        releaseRequestEntity(entity);
+      }
    }
 
    @Override
@@ -354,61 +591,42 @@ public class DefaultDispatch extends AbstractGatewayDispatch {
   }
 
   public void copyResponseHeaderFields(HttpServletResponse outboundResponse, HttpResponse inboundResponse) {
-    final TreeMap<String, Set<String>> excludedHeaderDirectives = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
-    getOutboundResponseExcludeHeaders().stream().forEach(excludeHeader ->
-        excludedHeaderDirectives.put(excludeHeader, Collections.singleton(EXCLUDE_ALL)));
-    excludedHeaderDirectives.put(SET_COOKIE, getOutboundResponseExcludedSetCookieHeaderDirectives());
-
+    final ResponseHeaderFilter headerFilter = getResponseHeaderFilter();
     for (Header header : inboundResponse.getAllHeaders()) {
-      boolean isBlockedAuthHeader = Arrays.stream(header.getElements()).anyMatch(h -> EXCLUDE_SET_COOKIES_DEFAULT.contains(h.getName()) && getOutboundResponseExcludedSetCookieHeaderDirectives().contains(h.getName()) );
       /* in case auth header is blocked blocked the entire set-cookie part */
-      if(!isBlockedAuthHeader) {
-            final String responseHeaderValue = calculateResponseHeaderValue(header, excludedHeaderDirectives);
-            if (responseHeaderValue.isEmpty()) {
-                continue;
-            }
-            outboundResponse.addHeader(header.getName(), responseHeaderValue);
-            LOG.addedOutboundheader(header.getName(), responseHeaderValue);
-      } else {
-            LOG.skippedOutboundHeader(header.getName(), header.getValue());
+      if (headerFilter.isBlockedAuthHeader(header)) {
+        LOG.skippedOutboundHeader(header.getName(), header.getValue());
+        continue;
       }
+      final String responseHeaderValue = headerFilter.filter(header);
+      if (responseHeaderValue.isEmpty()) {
+        continue;
+      }
+      outboundResponse.addHeader(header.getName(), responseHeaderValue);
+      LOG.addedOutboundheader(header.getName(), responseHeaderValue);
     }
   }
 
-  private String calculateResponseHeaderValue(Header headerToCheck, Map<String, Set<String>> excludedHeaderDirectives) {
-    final String headerNameToCheck = headerToCheck.getName();
-    if (excludedHeaderDirectives != null && excludedHeaderDirectives.containsKey(headerNameToCheck)) {
-      final Set<String> excludedHeaderValues = excludedHeaderDirectives.get(headerNameToCheck);
-      if (!excludedHeaderValues.isEmpty()) {
-        if (excludedHeaderValues.stream().anyMatch(e -> e.equals(EXCLUDE_ALL))) {
-          return ""; // we should exclude all -> there should not be any value added with this header
-        } else {
-          final String separator = SET_COOKIE.equalsIgnoreCase(headerNameToCheck) ? "; " : " ";
-          /**
-           *  special attention needs to be given to make sure we maintain
-           *  the attribute order else bad things can happen.
-           *  1. String.split() always maintains the order in generated array
-           *  2. LinkedHashSet is an ordered set
-           *  3. *.stream().map() maintains the order *iff* the collection type is ordered
-           *  4. *.collect() needs to be ordered as well to make sure the generated set is ordered
-           */
-          LinkedHashSet<String> headerValuesToCheck;
-          if(headerToCheck.getName().equalsIgnoreCase(SET_COOKIE)) {
-              /* make sure we maintain the order */
-              headerValuesToCheck = new LinkedHashSet<>(Arrays.asList(headerToCheck.getValue().trim().split(";")));
-              /* trim */
-              headerValuesToCheck = headerValuesToCheck.stream().map(String::trim).collect(toCollection(LinkedHashSet::new));
-          } else {
-              headerValuesToCheck = new LinkedHashSet<>(Arrays.asList(headerToCheck.getValue().trim().split("\\s+")));
-          }
-          headerValuesToCheck = headerValuesToCheck.stream().map(h -> h.replaceAll(separator.trim(), "")).collect(toCollection(LinkedHashSet::new));
-          headerValuesToCheck.removeIf(h -> excludedHeaderValues.stream().anyMatch(e -> h.contains(e)));
-          return headerValuesToCheck.isEmpty() ? "" : String.join(separator, headerValuesToCheck);
-        }
-      }
+  /*
+   * The plan is compiled from the (possibly overridden) exclude getters on first use. Racing threads
+   * may each compile one, which is harmless as the plan is immutable.
+   */
+  private ResponseHeaderFilter getResponseHeaderFilter() {
+    ResponseHeaderFilter headerFilter = responseHeaderFilter;
+    if (headerFilter == null) {
+      headerFilter = new ResponseHeaderFilter(getOutboundResponseExcludeHeaders(),
+          getOutboundResponseExcludedSetCookieHeaderDirectives());
+      responseHeaderFilter = headerFilter;
     }
+    return headerFilter;
+  }
 
-    return headerToCheck.getValue();
+  /**
+   * Discards the compiled response header filter; must be called whenever the response exclude
+   * configuration changes.
+   */
+  protected void resetResponseHeaderFilter() {
+    responseHeaderFilter = null;
   }
 
   public Set<String> getOutboundResponseExcludeHeaders() {
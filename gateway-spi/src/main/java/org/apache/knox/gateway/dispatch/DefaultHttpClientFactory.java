@@ -37,6 +37,7 @@ import org.apache.knox.gateway.SpiGatewayMessages;
 import org.apache.knox.gateway.config.GatewayConfig;
 import org.apache.knox.gateway.i18n.messages.MessagesFactory;
 import org.apache.knox.gateway.services.GatewayServices;
+import org.apache.knox.gateway.services.httpclient.ConnectionPoolService;
 import org.apache.knox.gateway.services.metrics.MetricsService;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
@@ -61,21 +62,28 @@ import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.nio.client.HttpAsyncClient;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.ssl.SSLContexts;
 import org.joda.time.Period;
 import org.joda.time.format.PeriodFormatter;
 import org.joda.time.format.PeriodFormatterBuilder;
 
-public class DefaultHttpClientFactory implements HttpClientFactory {
+public class DefaultHttpClientFactory implements HttpClientFactory, HttpAsyncClientFactory {
   private static final SpiGatewayMessages LOG = MessagesFactory.get(SpiGatewayMessages.class);
-  private static final String PARAMETER_SERVICE_ROLE = "serviceRole";
+  static final String PARAMETER_SERVICE_ROLE = "serviceRole";
+  static final String PARAMETER_MAX_CONNECTIONS = "httpclient.maxConnections";
   static final String PARAMETER_USE_TWO_WAY_SSL = "useTwoWaySsl";
   /* retry in case of NoHttpResponseException */
   static final String PARAMETER_RETRY_COUNT = "retryCount";
   static final String PARAMETER_RETRY_NON_SAFE_REQUEST = "retryNonSafeRequest";
   /* do not retry non-idempotent requests OOTB */
   static final boolean DEFAULT_PARAMETER_RETRY_NON_SAFE_REQUEST = false;
+  static final String SHARED_POOL_DEFAULT = "default";
+  static final String SHARED_POOL_TWO_WAY_SSL = "two-way-ssl";
 
   @Override
   public HttpClient createHttpClient(FilterConfig filterConfig) {
@@ -93,7 +101,17 @@ public class DefaultHttpClientFactory implements HttpClientFactory {
 
     // Conditionally set a custom SSLContext
     SSLContext sslContext = createSSLContext(services, filterConfig, serviceRole);
-    if(sslContext != null) {
+    ConnectionPoolService connectionPoolService = null;
+    if (gatewayConfig != null && gatewayConfig.isHttpClientConnectionPoolEnabled()) {
+      connectionPoolService = services.getService(ServiceType.CONNECTION_POOL_SERVICE);
+    }
+    if (connectionPoolService != null) {
+      // Dispatches only differ in the SSL material they present, so one pool per SSL mode is enough
+      String poolName = Boolean.parseBoolean(filterConfig.getInitParameter(PARAMETER_USE_TWO_WAY_SSL))
+          ? SHARED_POOL_TWO_WAY_SSL : SHARED_POOL_DEFAULT;
+      builder.setConnectionManager(connectionPoolService.getConnectionManager(poolName, sslContext));
+      builder.setConnectionManagerShared(true);
+    } else if(sslContext != null) {
       builder.setSSLSocketFactory(new SSLConnectionSocketFactory(sslContext));
     }
 
@@ -105,9 +123,12 @@ public class DefaultHttpClientFactory implements HttpClientFactory {
           .register(AuthSchemes.SPNEGO, new KnoxSpnegoAuthSchemeFactory(true))
           .build();
 
+      HadoopAuthCookieStore cookieStore = new HadoopAuthCookieStore(gatewayConfig, HadoopAuthCookieCache.getInstance());
       builder.setDefaultAuthSchemeRegistry(authSchemeRegistry)
-          .setDefaultCookieStore(new HadoopAuthCookieStore(gatewayConfig))
-          .setDefaultCredentialsProvider(credentialsProvider);
+          .setDefaultCookieStore(cookieStore)
+          .setDefaultCredentialsProvider(credentialsProvider)
+          .addInterceptorFirst(cookieStore.createOriginSelector())
+          .addInterceptorLast(cookieStore.createLookupRecorder());
     } else {
       builder.setDefaultCookieStore(new NoCookieStore());
     }
@@ -117,9 +138,14 @@ public class DefaultHttpClientFactory implements HttpClientFactory {
     builder.setRedirectStrategy( new NeverRedirectStrategy() );
     builder.setRetryHandler( new NeverRetryHandler() );
 
-    int maxConnections = getMaxConnections( filterConfig );
-    builder.setMaxConnTotal( maxConnections );
-    builder.setMaxConnPerRoute( maxConnections );
+    // The limits of a shared pool are configured gateway wide
+    if (connectionPoolService == null) {
+      int maxConnections = getMaxConnections( filterConfig );
+      builder.setMaxConnTotal( maxConnections );
+      builder.setMaxConnPerRoute( maxConnections );
+    } else if (filterConfig.getInitParameter( PARAMETER_MAX_CONNECTIONS ) != null) {
+      LOG.maxConnectionsOverriddenBySharedPool(serviceRole == null ? "N/A" : serviceRole);
+    }
 
     builder.setDefaultRequestConfig(getRequestConfig(filterConfig, serviceRole));
 
@@ -141,6 +167,56 @@ public class DefaultHttpClientFactory implements HttpClientFactory {
     return builder.build();
   }
 
+  /**
+   * Creates a non-blocking client configured like the one returned by {@link #createHttpClient(FilterConfig)}.
+   * The async client has no retry handler and is not instrumented by the metrics service.
+   */
+  @Override
+  public HttpAsyncClient createHttpAsyncClient(FilterConfig filterConfig) {
+    final String serviceRole = filterConfig.getInitParameter(PARAMETER_SERVICE_ROLE);
+    GatewayConfig gatewayConfig = (GatewayConfig) filterConfig.getServletContext().getAttribute(GatewayConfig.GATEWAY_CONFIG_ATTRIBUTE);
+    GatewayServices services = (GatewayServices) filterConfig.getServletContext()
+        .getAttribute(GatewayServices.GATEWAY_SERVICES_ATTRIBUTE);
+    HttpAsyncClientBuilder builder = HttpAsyncClients.custom();
+
+    SSLContext sslContext = createSSLContext(services, filterConfig, serviceRole);
+    if(sslContext != null) {
+      builder.setSSLContext(sslContext);
+    }
+
+    if (Boolean.parseBoolean(System.getProperty(GatewayConfig.HADOOP_KERBEROS_SECURED))) {
+      CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+      credentialsProvider.setCredentials(AuthScope.ANY, new UseJaasCredentials());
+
+      Registry<AuthSchemeProvider> authSchemeRegistry = RegistryBuilder.<AuthSchemeProvider>create()
+          .register(AuthSchemes.SPNEGO, new KnoxSpnegoAuthSchemeFactory(true))
+          .build();
+
+      HadoopAuthCookieStore cookieStore = new HadoopAuthCookieStore(gatewayConfig, HadoopAuthCookieCache.getInstance());
+      builder.setDefaultAuthSchemeRegistry(authSchemeRegistry)
+          .setDefaultCookieStore(cookieStore)
+          .setDefaultCredentialsProvider(credentialsProvider)
+          .addInterceptorFirst(cookieStore.createOriginSelector())
+          .addInterceptorLast(cookieStore.createLookupRecorder());
+    } else {
+      builder.setDefaultCookieStore(new NoCookieStore());
+    }
+
+    builder.setKeepAliveStrategy( DefaultConnectionKeepAliveStrategy.INSTANCE );
+    builder.setConnectionReuseStrategy( DefaultConnectionReuseStrategy.INSTANCE );
+    builder.setRedirectStrategy( new NeverRedirectStrategy() );
+
+    int maxConnections = getMaxConnections( filterConfig );
+    builder.setMaxConnTotal( maxConnections );
+    builder.setMaxConnPerRoute( maxConnections );
+
+    builder.setDefaultRequestConfig(getRequestConfig(filterConfig, serviceRole));
+
+    CloseableHttpAsyncClient client = builder.build();
+    client.start();
+    return client;
+  }
+
   private boolean doesRetryParamExist(final FilterConfig filterConfig) {
     return filterConfig.getInitParameter(PARAMETER_RETRY_COUNT) != null
         && StringUtils
@@ -305,14 +381,14 @@ public class DefaultHttpClientFactory implements HttpClientFactory {
 
   }
 
-  private int getMaxConnections( FilterConfig filterConfig ) {
+  int getMaxConnections( FilterConfig filterConfig ) {
     int maxConnections = 32;
     GatewayConfig config =
         (GatewayConfig)filterConfig.getServletContext().getAttribute( GatewayConfig.GATEWAY_CONFIG_ATTRIBUTE );
     if( config != null ) {
       maxConnections = config.getHttpClientMaxConnections();
     }
-    String str = filterConfig.getInitParameter( "httpclient.maxConnections" );
+    String str = filterConfig.getInitParameter( PARAMETER_MAX_CONNECTIONS );
     if( str != null ) {
       try {
         maxConnections = Integer.parseInt( str );
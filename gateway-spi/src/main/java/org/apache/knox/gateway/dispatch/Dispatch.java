@@ -18,6 +18,7 @@
 package org.apache.knox.gateway.dispatch;
 
 import org.apache.http.client.HttpClient;
+import org.apache.http.nio.client.HttpAsyncClient;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -36,6 +37,32 @@ public interface Dispatch {
 
   void setHttpClient(HttpClient httpClient);
 
+  /**
+   * @return the non-blocking client used for asynchronous dispatch, or null if
+   * this dispatch only supports the blocking path
+   */
+  default HttpAsyncClient getHttpAsyncClient() {
+    return null;
+  }
+
+  /**
+   * Provides a non-blocking client, enabling asynchronous dispatch for requests
+   * that support it. Implementations that cannot dispatch asynchronously ignore it.
+   *
+   * @param httpAsyncClient the started non-blocking client
+   */
+  default void setHttpAsyncClient(HttpAsyncClient httpAsyncClient) {
+  }
+
+  /**
+   * Sets the time an asynchronously dispatched request may take, streaming the
+   * response included, before the backend exchange is aborted.
+   *
+   * @param timeout the timeout in milliseconds
+   */
+  default void setAsyncDispatchTimeout(long timeout) {
+  }
+
   URI getDispatchUrl( HttpServletRequest request );
 
   void doGet( URI url, HttpServletRequest request, HttpServletResponse response )
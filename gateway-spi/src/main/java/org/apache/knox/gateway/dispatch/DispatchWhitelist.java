@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.dispatch;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.apache.knox.gateway.util.RegExUtils;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A compiled dispatch whitelist.
+ * <p>
+ * The patterns are compiled once and matched against the whole decoded dispatch URL, so that they may
+ * constrain its path as well as its host. The decisions are cached per decoded URL in a bounded cache.
+ */
+public class DispatchWhitelist {
+
+  private final List<Pattern> patterns;
+
+  private final Cache<String, Boolean> decisions;
+
+  /**
+   * @param whitelist semi-colon separated regex patterns
+   * @param cacheSize the maximum number of URLs to keep decisions for
+   */
+  public DispatchWhitelist(String whitelist, int cacheSize) {
+    this.patterns = RegExUtils.compileWhitelist(whitelist);
+    this.decisions = Caffeine.newBuilder().maximumSize(cacheSize).build();
+  }
+
+  /**
+   * @param requestURI the dispatch URL, which may be URL encoded
+   * @return true if the decoded URL matches one of the patterns
+   */
+  public boolean isAllowed(String requestURI) {
+    return decisions.get(decode(requestURI), url -> RegExUtils.checkWhitelist(patterns, url));
+  }
+
+  private static String decode(String requestURI) {
+    try {
+      return URLDecoder.decode(requestURI, StandardCharsets.UTF_8.name());
+    } catch (UnsupportedEncodingException e) {
+      return requestURI;
+    }
+  }
+}
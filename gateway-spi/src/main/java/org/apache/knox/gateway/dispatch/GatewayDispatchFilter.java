@@ -19,11 +19,12 @@ package org.apache.knox.gateway.dispatch;
 
 import org.apache.http.client.HttpClient;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.nio.client.HttpAsyncClient;
 import org.apache.knox.gateway.SpiGatewayMessages;
 import org.apache.knox.gateway.config.ConfigurationInjectorBuilder;
+import org.apache.knox.gateway.config.GatewayConfig;
 import org.apache.knox.gateway.filter.AbstractGatewayFilter;
 import org.apache.knox.gateway.i18n.messages.MessagesFactory;
-import org.apache.knox.gateway.util.RegExUtils;
 import org.apache.knox.gateway.util.WhitelistUtils;
 
 import javax.servlet.FilterChain;
@@ -31,30 +32,40 @@ import javax.servlet.FilterConfig;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.Closeable;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.net.URISyntaxException;
-import java.net.URLDecoder;
-import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
 
 public class GatewayDispatchFilter extends AbstractGatewayFilter {
 
   private static final Map<String, Adapter> METHOD_ADAPTERS = createMethodAdapters();
 
+  static final String ASYNC_DISPATCH_PARAM = "asyncDispatch";
+
+  static final String WHITELIST_CACHE_SIZE_PARAM = "whitelistCacheSize";
+  static final int DEFAULT_WHITELIST_CACHE_SIZE = 1000;
+
   protected static final SpiGatewayMessages LOG = MessagesFactory.get(SpiGatewayMessages.class);
 
   private final Object lock = new Object();
 
-  private String whitelist;
+  /* The whitelist only depends on the service role and the gateway domain, so it is resolved once */
+  @SuppressWarnings("PMD.AvoidUsingVolatile")
+  private volatile Optional<DispatchWhitelist> whitelist;
+
+  private int whitelistCacheSize = DEFAULT_WHITELIST_CACHE_SIZE;
 
   private Dispatch dispatch;
 
   private HttpClient httpClient;
 
+  private HttpAsyncClient httpAsyncClient;
+
   private static Map<String, Adapter> createMethodAdapters() {
     Map<String, Adapter> map = new HashMap<>();
     map.put("GET", new GetAdapter());
@@ -76,6 +87,14 @@ public class GatewayDispatchFilter extends AbstractGatewayFilter {
         dispatch = newInstanceFromName(dispatchImpl);
       }
       ConfigurationInjectorBuilder.configuration().target(dispatch).source(filterConfig).inject();
+      String cacheSize = filterConfig.getInitParameter(WHITELIST_CACHE_SIZE_PARAM);
+      if (cacheSize != null) {
+        try {
+          whitelistCacheSize = Integer.parseInt(cacheSize);
+        } catch (NumberFormatException e) {
+          // Ignore it and use the default.
+        }
+      }
       HttpClientFactory httpClientFactory;
       String httpClientFactoryClass = filterConfig.getInitParameter("httpClientFactory");
       if (httpClientFactoryClass != null) {
@@ -85,6 +104,18 @@ public class GatewayDispatchFilter extends AbstractGatewayFilter {
       }
       httpClient = httpClientFactory.createHttpClient(filterConfig);
       dispatch.setHttpClient(httpClient);
+      if (Boolean.parseBoolean(filterConfig.getInitParameter(ASYNC_DISPATCH_PARAM))) {
+        if (httpClientFactory instanceof HttpAsyncClientFactory) {
+          httpAsyncClient = ((HttpAsyncClientFactory) httpClientFactory).createHttpAsyncClient(filterConfig);
+          dispatch.setHttpAsyncClient(httpAsyncClient);
+          GatewayConfig gatewayConfig = (GatewayConfig) filterConfig.getServletContext().getAttribute(GatewayConfig.GATEWAY_CONFIG_ATTRIBUTE);
+          if (gatewayConfig != null) {
+            dispatch.setAsyncDispatchTimeout(gatewayConfig.getAsyncDispatchTimeout());
+          }
+        } else {
+          LOG.asyncDispatchNotSupported(httpClientFactory.getClass().getName());
+        }
+      }
       dispatch.init();
     }
   }
@@ -100,6 +131,13 @@ public class GatewayDispatchFilter extends AbstractGatewayFilter {
       } catch ( IOException e ) {
         LOG.errorClosingHttpClient(e);
       }
+      try {
+        if (httpAsyncClient instanceof Closeable) {
+          ((Closeable) httpAsyncClient).close();
+        }
+      } catch ( IOException e ) {
+        LOG.errorClosingHttpClient(e);
+      }
     }
   }
 
@@ -137,29 +175,34 @@ public class GatewayDispatchFilter extends AbstractGatewayFilter {
   private boolean isDispatchAllowed(HttpServletRequest request) {
     boolean isAllowed = true;
 
-      // Initialize the white list if it has not yet been initialized
-      if (whitelist == null) {
-        whitelist = WhitelistUtils.getDispatchWhitelist(request);
-      }
-
-      if (whitelist != null) {
-        String requestURI = request.getRequestURI();
+    final DispatchWhitelist dispatchWhitelist = getWhitelist(request);
+    if (dispatchWhitelist != null) {
+      String requestURI = request.getRequestURI();
+      isAllowed = dispatchWhitelist.isAllowed(requestURI);
 
-        String decodedURL = null;
-        try {
-          decodedURL = URLDecoder.decode(requestURI, StandardCharsets.UTF_8.name());
-        } catch (UnsupportedEncodingException e) {
-          //
-        }
+      if (!isAllowed) {
+        LOG.dispatchDisallowed(requestURI);
+      }
+    }
 
-        isAllowed = RegExUtils.checkWhitelist(whitelist, (decodedURL != null ? decodedURL : requestURI));
+    return isAllowed;
+  }
 
-        if (!isAllowed) {
-          LOG.dispatchDisallowed(requestURI);
+  private DispatchWhitelist getWhitelist(HttpServletRequest request) {
+    Optional<DispatchWhitelist> resolved = whitelist;
+    if (resolved == null) {
+      synchronized(lock) {
+        // Initialize the white list if it has not yet been initialized
+        resolved = whitelist;
+        if (resolved == null) {
+          String configured = WhitelistUtils.getDispatchWhitelist(request);
+          resolved = configured == null
+              ? Optional.empty() : Optional.of(new DispatchWhitelist(configured, whitelistCacheSize));
+          whitelist = resolved;
         }
+      }
     }
-
-    return isAllowed;
+    return resolved.orElse(null);
   }
 
   private interface Adapter {
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.dispatch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+import org.apache.http.cookie.Cookie;
+
+/**
+ * Keeps the authentication cookies issued by Kerberos secured backends, per Knox principal, backend
+ * origin (scheme, host and port) and cookie identity (name, domain and path, the domain being the
+ * backend host unless the backend says otherwise).
+ * <p>
+ * Cookies do not isolate ports, so the cookies of backends running on the same host, such as a
+ * NameNode and a ResourceManager, would replace each other if they were not kept per origin.
+ * <p>
+ * The gateway wide instance is shared by the {@link HadoopAuthCookieStore} of every dispatch,
+ * so a cookie obtained through one SPNEGO negotiation is reused by every connection and every
+ * topology talking to the same backend until it expires.
+ */
+public class HadoopAuthCookieCache implements MetricSet {
+  static final String METRICS_PREFIX = "hadoop-auth-cookie-cache";
+
+  private static final HadoopAuthCookieCache INSTANCE = new HadoopAuthCookieCache();
+
+  private final Map<String, Map<String, Cookie>> cookies = new ConcurrentHashMap<>();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * @return the cache shared by the dispatches of the gateway
+   */
+  public static HadoopAuthCookieCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Stores a cookie, replacing the one with the same identity.
+   */
+  void put(String principal, String origin, Cookie cookie) {
+    cookies.computeIfAbsent(getScope(principal, origin), p -> new ConcurrentHashMap<>()).put(getKey(cookie), cookie);
+  }
+
+  /**
+   * Removes the cookie with the same identity, the way backends delete cookies.
+   */
+  void remove(String principal, String origin, Cookie cookie) {
+    final Map<String, Cookie> originCookies = cookies.get(getScope(principal, origin));
+    if (originCookies != null) {
+      originCookies.remove(getKey(cookie));
+    }
+  }
+
+  List<Cookie> get(String principal, String origin) {
+    final Map<String, Cookie> originCookies = cookies.get(getScope(principal, origin));
+    return originCookies == null
+        ? Collections.emptyList() : new ArrayList<>(originCookies.values());
+  }
+
+  boolean clearExpired(String principal, String origin, Date date) {
+    final Map<String, Cookie> originCookies = cookies.get(getScope(principal, origin));
+    return originCookies != null && originCookies.values().removeIf(cookie -> cookie.isExpired(date));
+  }
+
+  void clear(String principal, String origin) {
+    cookies.remove(getScope(principal, origin));
+  }
+
+  /**
+   * Records whether a request to a Kerberos secured backend carried a cached cookie or will
+   * have to go through a SPNEGO negotiation.
+   */
+  void recordLookup(boolean hit) {
+    if (hit) {
+      hits.increment();
+    } else {
+      misses.increment();
+    }
+  }
+
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  public int size() {
+    int size = 0;
+    for (Map<String, Cookie> originCookies : cookies.values()) {
+      size += originCookies.size();
+    }
+    return size;
+  }
+
+  @Override
+  public Map<String, Metric> getMetrics() {
+    final Map<String, Metric> metrics = new HashMap<>();
+    metrics.put(MetricRegistry.name(METRICS_PREFIX, "hits"), (Gauge<Long>) this::getHitCount);
+    metrics.put(MetricRegistry.name(METRICS_PREFIX, "misses"), (Gauge<Long>) this::getMissCount);
+    metrics.put(MetricRegistry.name(METRICS_PREFIX, "size"), (Gauge<Integer>) this::size);
+    return metrics;
+  }
+
+  private static String getScope(String principal, String origin) {
+    return principal + ' ' + origin;
+  }
+
+  /*
+   * Same identity as the cookie stores of HttpClient: name, case insensitive domain and path
+   */
+  private static String getKey(Cookie cookie) {
+    String domain = cookie.getDomain();
+    if (domain == null) {
+      domain = "";
+    } else if (domain.indexOf('.') == -1) {
+      domain = domain + ".local";
+    }
+    final String path = cookie.getPath() == null ? "/" : cookie.getPath();
+    return cookie.getName() + ';' + domain.toLowerCase(Locale.ROOT) + ';' + path;
+  }
+}
@@ -23,27 +23,61 @@ import java.lang.reflect.Field;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.Date;
+import java.util.List;
+import java.util.Locale;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.client.CookieStore;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.cookie.Cookie;
+import org.apache.http.cookie.SM;
 import org.apache.http.impl.client.BasicCookieStore;
 import org.apache.http.impl.cookie.BasicClientCookie;
 import org.apache.knox.gateway.SpiGatewayMessages;
 import org.apache.knox.gateway.config.GatewayConfig;
 import org.apache.knox.gateway.i18n.messages.MessagesFactory;
 
+/**
+ * Keeps the authentication cookies Kerberos secured backends issue to Knox, so that
+ * subsequent requests do not go through a SPNEGO negotiation.
+ * <p>
+ * The cookies are held by a {@link HadoopAuthCookieCache}, which the dispatches share, per
+ * backend origin: the interceptor returned by {@link #createOriginSelector()} has each request
+ * use the cookies of its target. Without it all the cookies are kept in a single default origin.
+ * A hadoop.auth cookie is considered expired {@link #REFRESH_MARGIN} before the expiry
+ * embedded in its value: the next request then negotiates and obtains a fresh cookie,
+ * rather than sending one the backend may reject once the request body is on its way.
+ */
 public class HadoopAuthCookieStore extends BasicCookieStore {
   private static final SpiGatewayMessages LOG = MessagesFactory.get(SpiGatewayMessages.class);
 
   private static final String HADOOP_AUTH_COOKIE_NAME = "hadoop.auth";
   private static final String HIVE_SERVER2_AUTH_COOKIE_NAME = "hive.server2.auth";
   private static final String IMPALA_AUTH_COOKIE_NAME = "impala.auth";
+  private static final String EXPIRY_ATTRIBUTE = "e=";
+
+  static final long REFRESH_MARGIN = TimeUnit.MINUTES.toMillis(1);
+
+  private static final String DEFAULT_ORIGIN = "";
 
   private static String knoxPrincipal;
   private static String shortKnoxPrincipal;
 
+  private final HadoopAuthCookieCache cache;
+
   HadoopAuthCookieStore(GatewayConfig config) {
+    this(config, new HadoopAuthCookieCache());
+  }
+
+  HadoopAuthCookieStore(GatewayConfig config, HadoopAuthCookieCache cache) {
+    this.cache = cache;
     // Read knoxPrincipal from krb5 login jaas config file
     String krb5Config = config.getKerberosLoginConfig();
     if (krb5Config != null && !krb5Config.isEmpty()) {
@@ -67,14 +101,89 @@ public class HadoopAuthCookieStore extends BasicCookieStore {
 
   @Override
   public void addCookie(Cookie cookie) {
+    addCookie(DEFAULT_ORIGIN, cookie);
+  }
+
+  @Override
+  public List<Cookie> getCookies() {
+    return cache.get(knoxPrincipal, DEFAULT_ORIGIN);
+  }
+
+  @Override
+  public boolean clearExpired(Date date) {
+    return clearExpired(DEFAULT_ORIGIN, date);
+  }
+
+  @Override
+  public void clear() {
+    cache.clear(knoxPrincipal, DEFAULT_ORIGIN);
+  }
+
+  private void addCookie(String origin, Cookie cookie) {
     // Only add the cookie if it is an auth cookie and belongs to Knox
     if (isAuthCookie(cookie) && isKnoxCookie(cookie)) {
       Wrapper wrapper = new Wrapper(cookie);
       LOG.acceptingServiceCookie(wrapper);
-      super.addCookie(wrapper);
+      if (cookie.isExpired(new Date())) {
+        cache.remove(knoxPrincipal, origin, cookie);
+      } else {
+        cache.put(knoxPrincipal, origin, wrapper);
+      }
     }
   }
 
+  private boolean clearExpired(String origin, Date date) {
+    return date != null && cache.clearExpired(knoxPrincipal, origin, date);
+  }
+
+  /**
+   * @return the cookies of a backend
+   */
+  CookieStore forOrigin(String origin) {
+    return new OriginCookieStore(origin);
+  }
+
+  /**
+   * @return an interceptor having each request use the cookies of its target backend; it has to run before the
+   * cookies are added to the request
+   */
+  HttpRequestInterceptor createOriginSelector() {
+    return (request, context) -> {
+      final HttpHost target = HttpClientContext.adapt(context).getTargetHost();
+      if (target != null) {
+        context.setAttribute(HttpClientContext.COOKIE_STORE, forOrigin(getOrigin(target)));
+      }
+    };
+  }
+
+  static String getOrigin(HttpHost target) {
+    return target.getSchemeName() + "://" + target.getHostName().toLowerCase(Locale.ROOT) + ':' + target.getPort();
+  }
+
+  /**
+   * @return an interceptor recording whether requests carry a cached authentication cookie; it has to run
+   * after the cookies have been added to the request
+   */
+  HttpRequestInterceptor createLookupRecorder() {
+    return (request, context) -> {
+      // Requests answering a SPNEGO challenge were already recorded
+      if (!request.containsHeader(HttpHeaders.AUTHORIZATION)) {
+        cache.recordLookup(hasAuthCookie(request));
+      }
+    };
+  }
+
+  private static boolean hasAuthCookie(HttpRequest request) {
+    for (Header header : request.getHeaders(SM.COOKIE)) {
+      final String value = header.getValue();
+      if (value.contains(HADOOP_AUTH_COOKIE_NAME + '=') || value.contains(HIVE_SERVER2_AUTH_COOKIE_NAME + '=')
+          || value.contains(IMPALA_AUTH_COOKIE_NAME + '=')) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private boolean isAuthCookie(Cookie cookie) {
     return HADOOP_AUTH_COOKIE_NAME.equals(cookie.getName()) ||
         HIVE_SERVER2_AUTH_COOKIE_NAME.equals(cookie.getName()) ||
@@ -99,13 +208,64 @@ public class HadoopAuthCookieStore extends BasicCookieStore {
     return result;
   }
 
+  /**
+   * The cookies of a backend, used in place of the store for the requests to that backend.
+   */
+  private class OriginCookieStore implements CookieStore {
+    private final String origin;
+
+    OriginCookieStore(String origin) {
+      this.origin = origin;
+    }
+
+    @Override
+    public void addCookie(Cookie cookie) {
+      HadoopAuthCookieStore.this.addCookie(origin, cookie);
+    }
+
+    @Override
+    public List<Cookie> getCookies() {
+      return cache.get(knoxPrincipal, origin);
+    }
+
+    @Override
+    public boolean clearExpired(Date date) {
+      return HadoopAuthCookieStore.this.clearExpired(origin, date);
+    }
+
+    @Override
+    public void clear() {
+      cache.clear(knoxPrincipal, origin);
+    }
+  }
+
   private static class Wrapper extends BasicClientCookie {
     private static final String DELEGATE_STR = "delegate";
     private final Cookie delegate;
+    private final long embeddedExpiry;
 
     Wrapper(Cookie delegate ) {
       super(delegate.getName(), delegate.getValue());
       this.delegate = delegate;
+      this.embeddedExpiry = parseEmbeddedExpiry(delegate.getValue());
+    }
+
+    /*
+     * hadoop.auth cookies are usually session cookies, their actual expiry is the e= field of their value
+     */
+    private static long parseEmbeddedExpiry(String value) {
+      if (value != null) {
+        for (String attribute : value.replace("\"", "").split("&")) {
+          if (attribute.startsWith(EXPIRY_ATTRIBUTE)) {
+            try {
+              return Long.parseLong(attribute.substring(EXPIRY_ATTRIBUTE.length()));
+            } catch (NumberFormatException e) {
+              return -1;
+            }
+          }
+        }
+      }
+      return -1;
     }
 
     @Override
@@ -185,7 +345,8 @@ public class HadoopAuthCookieStore extends BasicCookieStore {
 
     @Override
     public boolean isExpired( Date date ) {
-      return delegate.isExpired( date );
+      return delegate.isExpired( date )
+          || ( embeddedExpiry > 0 && date != null && date.getTime() >= embeddedExpiry - REFRESH_MARGIN );
     }
 
     @Override
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.dispatch;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+import org.apache.knox.gateway.SpiGatewayMessages;
+import org.apache.knox.gateway.i18n.messages.MessagesFactory;
+import org.eclipse.jetty.client.AbstractConnectionPool;
+import org.eclipse.jetty.client.ConnectionPool;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpDestination;
+import org.eclipse.jetty.client.api.Destination;
+
+/**
+ * Keeps the Jetty HTTP/2 clients of the dispatches, one per distinct client configuration.
+ * <p>
+ * Every client comes with its own thread pool and selector, so sharing them between the
+ * dispatches of all the services and topologies keeps the number of threads independent
+ * of the number of dispatches. A client is stopped once the last dispatch using it is closed.
+ */
+public class Http2ClientRegistry implements MetricSet {
+  private static final SpiGatewayMessages LOG = MessagesFactory.get(SpiGatewayMessages.class);
+  static final String METRICS_PREFIX = "http2-dispatch";
+
+  private static final Http2ClientRegistry INSTANCE = new Http2ClientRegistry();
+
+  /* guarded by this */
+  private final Map<String, SharedClient> clients = new HashMap<>();
+  private final LongAdder streams = new LongAdder();
+  private final AtomicInteger activeStreams = new AtomicInteger();
+
+  /**
+   * @return the registry shared by the dispatches of the gateway
+   */
+  public static Http2ClientRegistry getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Returns the client with the given configuration, creating and starting it if no dispatch uses it yet.
+   * Every call has to be paired with a call to {@link #release(String)}.
+   */
+  synchronized HttpClient acquire(String configuration, Supplier<HttpClient> factory) {
+    SharedClient shared = clients.get(configuration);
+    if (shared == null) {
+      shared = new SharedClient(factory.get());
+      clients.put(configuration, shared);
+    }
+    shared.references++;
+    return shared.client;
+  }
+
+  synchronized void release(String configuration) {
+    final SharedClient shared = clients.get(configuration);
+    if (shared != null && --shared.references == 0) {
+      clients.remove(configuration);
+      try {
+        shared.client.stop();
+      } catch (Exception e) {
+        LOG.failedToStopHttp2Client(e);
+      }
+    }
+  }
+
+  synchronized int getClientCount() {
+    return clients.size();
+  }
+
+  void streamOpened() {
+    streams.increment();
+    activeStreams.incrementAndGet();
+  }
+
+  void streamClosed() {
+    activeStreams.decrementAndGet();
+  }
+
+  public synchronized int getConnectionCount() {
+    int connections = 0;
+    for (SharedClient shared : clients.values()) {
+      for (Destination destination : shared.client.getDestinations()) {
+        final ConnectionPool pool = ((HttpDestination) destination).getConnectionPool();
+        if (pool instanceof AbstractConnectionPool) {
+          connections += ((AbstractConnectionPool) pool).getConnectionCount();
+        }
+      }
+    }
+    return connections;
+  }
+
+  public long getStreamCount() {
+    return streams.sum();
+  }
+
+  public int getActiveStreamCount() {
+    return activeStreams.get();
+  }
+
+  @Override
+  public Map<String, Metric> getMetrics() {
+    final Map<String, Metric> metrics = new HashMap<>();
+    metrics.put(MetricRegistry.name(METRICS_PREFIX, "clients"), (Gauge<Integer>) this::getClientCount);
+    metrics.put(MetricRegistry.name(METRICS_PREFIX, "connections"), (Gauge<Integer>) this::getConnectionCount);
+    metrics.put(MetricRegistry.name(METRICS_PREFIX, "streams"), (Gauge<Long>) this::getStreamCount);
+    metrics.put(MetricRegistry.name(METRICS_PREFIX, "active-streams"), (Gauge<Integer>) this::getActiveStreamCount);
+    return metrics;
+  }
+
+  private static class SharedClient {
+    private final HttpClient client;
+    private int references;
+
+    SharedClient(HttpClient client) {
+      this.client = client;
+    }
+  }
+}
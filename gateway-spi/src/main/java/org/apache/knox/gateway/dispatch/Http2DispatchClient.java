@@ -0,0 +1,327 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.dispatch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpStatus;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpExecutionAware;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.impl.EnglishReasonPhraseCatalog;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.execchain.RequestAbortedException;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.apache.knox.gateway.SpiGatewayMessages;
+import org.apache.knox.gateway.i18n.messages.MessagesFactory;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.util.InputStreamContentProvider;
+import org.eclipse.jetty.client.util.InputStreamResponseListener;
+import org.eclipse.jetty.http.HttpField;
+
+/**
+ * Adapts a Jetty HTTP/2 client to the HttpClient API used by the dispatches.
+ * <p>
+ * Requests are sent over HTTP/2 unless the backend is known not to support it, in which case
+ * they go through the HTTP/1.1 fallback client. A backend that fails an exchange before ever
+ * completing one over HTTP/2 is considered not to support it for the downgrade period, after
+ * which HTTP/2 is tried again; the failed request is retried over HTTP/1.1 when its entity is
+ * repeatable. Timeouts and unreachable backends say nothing about HTTP/2 support and never
+ * cause a downgrade.
+ */
+class Http2DispatchClient extends CloseableHttpClient {
+  private static final SpiGatewayMessages LOG = MessagesFactory.get(SpiGatewayMessages.class);
+  static final ProtocolVersion HTTP_2 = new ProtocolVersion("HTTP", 2, 0);
+
+  /* Connection specific headers are not allowed in HTTP/2, the authority and length are derived by Jetty */
+  private static final Set<String> EXCLUDED_REQUEST_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+  static {
+    EXCLUDED_REQUEST_HEADERS.addAll(Arrays.asList(HttpHeaders.CONNECTION, "Keep-Alive", "Proxy-Connection",
+        HttpHeaders.TRANSFER_ENCODING, HttpHeaders.UPGRADE, HttpHeaders.TE, HttpHeaders.HOST,
+        HttpHeaders.CONTENT_LENGTH));
+  }
+
+  private final org.eclipse.jetty.client.HttpClient client;
+  private final CloseableHttpClient fallback;
+  private final boolean cleartext;
+  private final long downgradePeriod;
+  private final Http2ClientRegistry registry;
+  private final String configuration;
+  /* Origins (scheme://host:port) known to support HTTP/2 */
+  private final Set<String> http2Origins = ConcurrentHashMap.newKeySet();
+  /* Origins served over HTTP/1.1, with the time until which they are */
+  private final Map<String, Long> http1Origins = new ConcurrentHashMap<>();
+
+  Http2DispatchClient(org.eclipse.jetty.client.HttpClient client, CloseableHttpClient fallback, boolean cleartext,
+                      long downgradePeriod, Http2ClientRegistry registry, String configuration) {
+    this.client = client;
+    this.fallback = fallback;
+    this.cleartext = cleartext;
+    this.downgradePeriod = downgradePeriod;
+    this.registry = registry;
+    this.configuration = configuration;
+  }
+
+  @Override
+  protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context)
+      throws IOException {
+    final URI uri = toUri(target, request);
+    final String origin = uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+    if (("http".equalsIgnoreCase(uri.getScheme()) && !cleartext) || isDowngraded(origin)) {
+      return fallback.execute(target, request, context);
+    }
+
+    final boolean supported = http2Origins.contains(origin);
+    try {
+      final CloseableHttpResponse response = send(uri, request);
+      http2Origins.add(origin);
+      return response;
+    } catch (IOException e) {
+      if (supported || isUnreachable(e)) {
+        throw e;
+      }
+      LOG.http2NotNegotiated(origin, downgradePeriod, e);
+      http1Origins.put(origin, System.currentTimeMillis() + downgradePeriod);
+      if (isRepeatable(request)) {
+        return fallback.execute(target, request, context);
+      }
+      throw e;
+    }
+  }
+
+  private boolean isDowngraded(String origin) {
+    final Long until = http1Origins.get(origin);
+    if (until == null) {
+      return false;
+    }
+    if (System.currentTimeMillis() < until) {
+      return true;
+    }
+    http1Origins.remove(origin, until);
+    return false;
+  }
+
+  /* Package private for unit tests */
+  Boolean supportsHttp2(String origin) {
+    if (http2Origins.contains(origin)) {
+      return Boolean.TRUE;
+    }
+    return isDowngraded(origin) ? Boolean.FALSE : null;
+  }
+
+  private CloseableHttpResponse send(URI uri, HttpRequest request) throws IOException {
+    final String method = request.getRequestLine().getMethod();
+    final Request outbound = client.newRequest(uri).method(method);
+    for (Header header : request.getAllHeaders()) {
+      if (!EXCLUDED_REQUEST_HEADERS.contains(header.getName())) {
+        outbound.header(header.getName(), header.getValue());
+      }
+    }
+    if (request instanceof HttpEntityEnclosingRequest) {
+      final HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+      if (entity != null) {
+        if (entity.getContentType() != null && !request.containsHeader(HttpHeaders.CONTENT_TYPE)) {
+          outbound.header(HttpHeaders.CONTENT_TYPE, entity.getContentType().getValue());
+        }
+        outbound.content(new EntityContentProvider(entity));
+      }
+    }
+
+    // Aborting the request, e.g. when a hedged request wins, resets the stream
+    if (request instanceof HttpExecutionAware) {
+      final HttpExecutionAware executionAware = (HttpExecutionAware) request;
+      executionAware.setCancellable(() -> outbound.abort(new RequestAbortedException("Request aborted")));
+      if (executionAware.isAborted()) {
+        throw new RequestAbortedException("Request aborted");
+      }
+    }
+
+    final InputStreamResponseListener listener = new InputStreamResponseListener();
+    registry.streamOpened();
+    outbound.onComplete(result -> registry.streamClosed());
+    outbound.send(listener);
+    final Response response;
+    try {
+      // Connect and idle timeouts are enforced by the client itself
+      response = listener.get(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      outbound.abort(e);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(e.getMessage());
+    } catch (TimeoutException e) {
+      outbound.abort(e);
+      throw toSocketTimeout(e);
+    } catch (ExecutionException e) {
+      throw toIOException(e.getCause());
+    }
+    return toHttpResponse(method, response, listener.getInputStream());
+  }
+
+  private static CloseableHttpResponse toHttpResponse(String method, Response response, InputStream content)
+      throws IOException {
+    final int status = response.getStatus();
+    final Http2Response result = new Http2Response(status, content);
+    for (HttpField field : response.getHeaders()) {
+      result.addHeader(field.getName(), field.getValue());
+    }
+    if ("HEAD".equalsIgnoreCase(method) || status == HttpStatus.SC_NO_CONTENT || status == HttpStatus.SC_NOT_MODIFIED) {
+      content.close();
+    } else {
+      final BasicHttpEntity entity = new BasicHttpEntity();
+      entity.setContent(content);
+      entity.setContentLength(response.getHeaders().getLongField(HttpHeaders.CONTENT_LENGTH));
+      entity.setContentType(result.getFirstHeader(HttpHeaders.CONTENT_TYPE));
+      entity.setContentEncoding(result.getFirstHeader(HttpHeaders.CONTENT_ENCODING));
+      result.setEntity(entity);
+    }
+    return result;
+  }
+
+  private static URI toUri(HttpHost target, HttpRequest request) throws ClientProtocolException {
+    try {
+      URI uri = request instanceof HttpUriRequest
+          ? ((HttpUriRequest) request).getURI() : new URI(request.getRequestLine().getUri());
+      if (!uri.isAbsolute()) {
+        uri = new URI(target.toURI()).resolve(uri);
+      }
+      if (uri.getPort() < 0) {
+        final int port = "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+        uri = new URI(uri.getScheme(), uri.getRawUserInfo(), uri.getHost(), port,
+            uri.getRawPath(), uri.getRawQuery(), uri.getRawFragment());
+      }
+      return uri;
+    } catch (URISyntaxException e) {
+      throw new ClientProtocolException(e);
+    }
+  }
+
+  private static boolean isRepeatable(HttpRequest request) {
+    if (request instanceof HttpEntityEnclosingRequest) {
+      final HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+      return entity == null || entity.isRepeatable();
+    }
+    return true;
+  }
+
+  /*
+   * Failures that say nothing about the protocols supported by the backend, timeouts included
+   */
+  private static boolean isUnreachable(IOException e) {
+    return e instanceof ConnectException || e instanceof UnknownHostException || e instanceof InterruptedIOException;
+  }
+
+  private static IOException toIOException(Throwable cause) {
+    if (cause instanceof IOException) {
+      return (IOException) cause;
+    }
+    if (cause instanceof TimeoutException) {
+      return toSocketTimeout(cause);
+    }
+    return new IOException(cause);
+  }
+
+  private static SocketTimeoutException toSocketTimeout(Throwable cause) {
+    final SocketTimeoutException timeout = new SocketTimeoutException(cause.getMessage());
+    timeout.initCause(cause);
+    return timeout;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      registry.release(configuration);
+    } finally {
+      fallback.close();
+    }
+  }
+
+  @Override
+  @Deprecated
+  public HttpParams getParams() {
+    return fallback.getParams();
+  }
+
+  @Override
+  @Deprecated
+  public ClientConnectionManager getConnectionManager() {
+    return fallback.getConnectionManager();
+  }
+
+  /**
+   * Streams the request entity, keeping its declared length so that it is sent as content-length.
+   */
+  private static class EntityContentProvider extends InputStreamContentProvider {
+    private final long length;
+
+    EntityContentProvider(HttpEntity entity) throws IOException {
+      super(entity.getContent());
+      this.length = entity.getContentLength();
+    }
+
+    @Override
+    public long getLength() {
+      return length;
+    }
+  }
+
+  /**
+   * Closing the response before its content has been fully read resets the stream.
+   */
+  private static class Http2Response extends BasicHttpResponse implements CloseableHttpResponse {
+    private final InputStream content;
+
+    Http2Response(int status, InputStream content) {
+      super(HTTP_2, status, EnglishReasonPhraseCatalog.INSTANCE.getReason(status, Locale.ROOT));
+      this.content = content;
+    }
+
+    @Override
+    public void close() throws IOException {
+      content.close();
+    }
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.dispatch;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+import javax.servlet.FilterConfig;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.knox.gateway.SpiGatewayMessages;
+import org.apache.knox.gateway.config.GatewayConfig;
+import org.apache.knox.gateway.i18n.messages.MessagesFactory;
+import org.apache.knox.gateway.services.GatewayServices;
+import org.eclipse.jetty.client.ProxyAuthenticationProtocolHandler;
+import org.eclipse.jetty.client.WWWAuthenticationProtocolHandler;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.client.http.HttpClientTransportOverHTTP2;
+import org.eclipse.jetty.util.HttpCookieStore;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+/**
+ * Creates dispatch clients that talk HTTP/2 to the backends that support it.
+ * <p>
+ * Select it for a service with the <code>httpClientFactory</code> dispatch parameter. TLS backends
+ * negotiate HTTP/2 through ALPN; cleartext backends are only contacted with HTTP/2 (h2c with prior
+ * knowledge) when the <code>http2.cleartext</code> parameter is <code>true</code>. Backends that
+ * do not negotiate HTTP/2 are served for <code>http2.downgradePeriod</code> milliseconds (10 minutes
+ * by default) by a client created by the {@link DefaultHttpClientFactory} with the same configuration.
+ * <p>
+ * The underlying Jetty clients are shared by all the dispatches with the same SSL, timeout and
+ * connection settings, see {@link Http2ClientRegistry}.
+ * <p>
+ * Since SPNEGO authentication is only implemented for HTTP/1.1, the default client is returned
+ * when the gateway is Kerberos secured.
+ */
+public class Http2HttpClientFactory extends DefaultHttpClientFactory {
+  private static final SpiGatewayMessages LOG = MessagesFactory.get(SpiGatewayMessages.class);
+  static final String PARAMETER_HTTP2_CLEARTEXT = "http2.cleartext";
+  static final String PARAMETER_HTTP2_DOWNGRADE_PERIOD = "http2.downgradePeriod";
+  static final long DEFAULT_HTTP2_DOWNGRADE_PERIOD = TimeUnit.MINUTES.toMillis(10);
+
+  @Override
+  public HttpClient createHttpClient(FilterConfig filterConfig) {
+    final String serviceRole = filterConfig.getInitParameter(PARAMETER_SERVICE_ROLE);
+    final CloseableHttpClient fallback = (CloseableHttpClient) super.createHttpClient(filterConfig);
+    if (Boolean.parseBoolean(System.getProperty(GatewayConfig.HADOOP_KERBEROS_SECURED))) {
+      LOG.http2DispatchNotSupportedWithKerberos(serviceRole);
+      return fallback;
+    }
+
+    final boolean twoWaySsl = Boolean.parseBoolean(filterConfig.getInitParameter(PARAMETER_USE_TWO_WAY_SSL));
+    final RequestConfig requestConfig = getRequestConfig(filterConfig, serviceRole);
+    final int maxConnections = getMaxConnections(filterConfig);
+    final String configuration = twoWaySsl + "/" + requestConfig.getConnectTimeout() + "/"
+        + requestConfig.getSocketTimeout() + "/" + maxConnections;
+    final Http2ClientRegistry registry = Http2ClientRegistry.getInstance();
+    final org.eclipse.jetty.client.HttpClient client = registry.acquire(configuration,
+        () -> createClient(filterConfig, serviceRole, requestConfig, maxConnections));
+
+    final boolean cleartext = Boolean.parseBoolean(filterConfig.getInitParameter(PARAMETER_HTTP2_CLEARTEXT));
+    final String downgradePeriod = filterConfig.getInitParameter(PARAMETER_HTTP2_DOWNGRADE_PERIOD);
+    return new Http2DispatchClient(client, fallback, cleartext,
+        downgradePeriod == null ? DEFAULT_HTTP2_DOWNGRADE_PERIOD : Long.parseLong(downgradePeriod),
+        registry, configuration);
+  }
+
+  private org.eclipse.jetty.client.HttpClient createClient(FilterConfig filterConfig, String serviceRole,
+                                                           RequestConfig requestConfig, int maxConnections) {
+    GatewayServices services = (GatewayServices) filterConfig.getServletContext()
+        .getAttribute(GatewayServices.GATEWAY_SERVICES_ATTRIBUTE);
+    SSLContext sslContext = createSSLContext(services, filterConfig, serviceRole);
+    SslContextFactory.Client sslContextFactory = new SslContextFactory.Client();
+    if (sslContext != null) {
+      sslContextFactory.setSslContext(sslContext);
+    }
+
+    QueuedThreadPool executor = new QueuedThreadPool();
+    executor.setName("Http2Dispatch");
+    executor.setDaemon(true);
+
+    org.eclipse.jetty.client.HttpClient client = new org.eclipse.jetty.client.HttpClient(
+        new HttpClientTransportOverHTTP2(new HTTP2Client()), sslContextFactory);
+    client.setExecutor(executor);
+    // Streams are multiplexed, so a new connection is only opened when the existing ones are saturated
+    client.setMaxConnectionsPerDestination(maxConnections);
+    client.setFollowRedirects(false);
+    client.setCookieStore(new HttpCookieStore.Empty());
+    client.setUserAgentField(null);
+
+    if (requestConfig.getConnectTimeout() > 0) {
+      client.setConnectTimeout(requestConfig.getConnectTimeout());
+    }
+    if (requestConfig.getSocketTimeout() > 0) {
+      client.setIdleTimeout(requestConfig.getSocketTimeout());
+    }
+
+    try {
+      client.start();
+    } catch (Exception e) {
+      throw new IllegalStateException("Unable to start HTTP/2 client", e);
+    }
+    // Like the default client: no transparent decompression and challenges are passed to the caller
+    client.getContentDecoderFactories().clear();
+    client.getProtocolHandlers().remove(WWWAuthenticationProtocolHandler.NAME);
+    client.getProtocolHandlers().remove(ProxyAuthenticationProtocolHandler.NAME);
+    return client;
+  }
+}
@@ -20,38 +20,73 @@ package org.apache.knox.gateway.dispatch;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpEntity;
 import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.knox.gateway.services.httpclient.ReplayBufferService;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-
+import java.nio.ByteBuffer;
+
+/**
+ * Buffers the beginning of a non repeatable entity so that it can be sent again,
+ * as long as no more than the buffer size has been read.
+ * <p>
+ * When created with a {@link ReplayBufferService} the buffer is taken from the gateway wide
+ * pool of direct buffers, or allocated on the heap if the pool is exhausted. Pooled buffers
+ * are returned by {@link #release()}, or as soon as the buffer overflows.
+ */
 public class PartiallyRepeatableHttpEntity extends HttpEntityWrapper {
 
   public static final int DEFAULT_BUFFER_SIZE = 4096;
 
   private int replayWriteIndex;
   private int replayWriteLimit;
-  private byte[] replayBuffer;
+  private ByteBuffer replayBuffer;
+  private ReplayBufferService replayBufferService;
   private ReplayStream finalStream;
   private InputStream wrappedStream;
 
-  public PartiallyRepeatableHttpEntity(final HttpEntity entity, int bufferSize) throws IOException {
+  public PartiallyRepeatableHttpEntity(final HttpEntity entity, int bufferSize,
+                                       ReplayBufferService replayBufferService) throws IOException {
     super( entity );
     this.wrappedStream = null;
     this.finalStream = null;
     this.replayWriteIndex = -1;
     if( !entity.isRepeatable() ) {
-      this.replayBuffer = new byte[ bufferSize ];
+      if( replayBufferService != null ) {
+        this.replayBuffer = replayBufferService.acquire( bufferSize );
+      }
+      if( this.replayBuffer == null ) {
+        this.replayBuffer = ByteBuffer.allocate( bufferSize );
+      } else {
+        this.replayBufferService = replayBufferService;
+      }
       this.replayWriteLimit = bufferSize-1;
     } else {
       this.replayBuffer = null;
     }
   }
 
+  public PartiallyRepeatableHttpEntity(final HttpEntity entity, int bufferSize) throws IOException {
+    this( entity, bufferSize, null );
+  }
+
   public PartiallyRepeatableHttpEntity(final HttpEntity entity) throws IOException {
     this( entity, DEFAULT_BUFFER_SIZE );
   }
 
+  /**
+   * Returns the replay buffer to its pool. The content can not be replayed afterwards.
+   */
+  public void release() {
+    if( replayBufferService != null ) {
+      replayBufferService.release( replayBuffer );
+      replayBufferService = null;
+      replayWriteLimit = -1;
+      replayWriteIndex = -1;
+    }
+  }
+
   @Override
   public boolean isRepeatable() {
     return finalStream == null;
@@ -101,9 +136,18 @@ public class PartiallyRepeatableHttpEntity extends HttpEntityWrapper {
     throw new UnsupportedOperationException();
   }
 
+  /*
+   * Marks the stream as the only possible consumer, the buffered content will not be replayed anymore
+   */
+  private void overflow( ReplayStream stream ) {
+    finalStream = stream;
+    release();
+  }
+
   private class ReplayStream extends InputStream {
 
     private int replayReadIndex = -1;
+    private ByteBuffer replayReader;
 
     @Override
     public int read() throws IOException {
@@ -113,16 +157,16 @@ public class PartiallyRepeatableHttpEntity extends HttpEntityWrapper {
       }
       // If we can read from the buffer do so.
       if( replayReadIndex < replayWriteIndex ) {
-        b = replayBuffer[ ++replayReadIndex ];
+        b = replayBuffer.get( ++replayReadIndex ) & 0xFF;
       } else {
         b = wrappedStream.read();
         // If the underlying stream is not closed.
-        if( b > -1 ) {
+        if( b > -1 && finalStream == null ) {
           if( replayWriteIndex < replayWriteLimit ) {
-            replayBuffer[ ++replayWriteIndex ] = (byte)b;
+            replayBuffer.put( ++replayWriteIndex, (byte)b );
             replayReadIndex++;
           } else {
-            finalStream = this;
+            overflow( this );
           }
         }
       }
@@ -139,18 +183,23 @@ public class PartiallyRepeatableHttpEntity extends HttpEntityWrapper {
       if( replayReadIndex < replayWriteIndex ) {
         count = replayWriteIndex - replayReadIndex;
         count = Math.min( limit, count );
-        System.arraycopy( replayBuffer, replayReadIndex+1, buffer, offset, count );
+        if( replayReader == null ) {
+          replayReader = replayBuffer.duplicate();
+        }
+        replayReader.position( replayReadIndex+1 );
+        replayReader.get( buffer, offset, count );
         replayReadIndex += count;
       } else {
         count = wrappedStream.read( buffer, offset, limit );
         // If the underlying stream is not closed.
-        if( count > -1 ) {
+        if( count > -1 && finalStream == null ) {
           if( replayWriteIndex+count < replayWriteLimit ) {
-            System.arraycopy( buffer, offset, replayBuffer, replayWriteIndex+1, count );
+            replayBuffer.position( replayWriteIndex+1 );
+            replayBuffer.put( buffer, offset, count );
             replayReadIndex += count;
             replayWriteIndex += count;
           } else {
-            finalStream = this;
+            overflow( this );
           }
         }
       }
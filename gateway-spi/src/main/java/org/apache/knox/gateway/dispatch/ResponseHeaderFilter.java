@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.dispatch;
+
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Immutable plan for filtering the headers of a backend response, compiled once from the
+ * exclude header and Set-Cookie directive configuration of a dispatch.
+ * <p>
+ * Excluded headers are dropped entirely. Set-Cookie headers are passed through, dropped or
+ * stripped of the attributes containing one of the excluded directives, keeping the order of
+ * the remaining attributes. Headers carrying one of the default auth cookies are blocked when
+ * that cookie is an excluded directive.
+ */
+final class ResponseHeaderFilter {
+  private static final String SET_COOKIE_SEPARATOR = "; ";
+
+  private final Set<String> excludedHeaders;
+  private final boolean passSetCookie;
+  private final boolean dropSetCookie;
+  private final String[] setCookieDirectives;
+  private final String[] blockedCookieNames;
+
+  ResponseHeaderFilter(Set<String> excludeHeaders, Set<String> excludedSetCookieDirectives) {
+    final Set<String> headers = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+    headers.addAll(excludeHeaders);
+    // The Set-Cookie directives always take precedence over the plain exclude list
+    headers.remove(DefaultDispatch.SET_COOKIE);
+    this.excludedHeaders = Collections.unmodifiableSet(headers);
+    this.passSetCookie = excludedSetCookieDirectives.isEmpty();
+    this.dropSetCookie = excludedSetCookieDirectives.contains(DefaultDispatch.EXCLUDE_ALL);
+    this.setCookieDirectives = excludedSetCookieDirectives.toArray(new String[0]);
+
+    final List<String> blocked = new ArrayList<>();
+    for (String cookieName : DefaultDispatch.EXCLUDE_SET_COOKIES_DEFAULT) {
+      if (excludedSetCookieDirectives.contains(cookieName)) {
+        blocked.add(cookieName);
+      }
+    }
+    this.blockedCookieNames = blocked.toArray(new String[0]);
+  }
+
+  /**
+   * @return <code>true</code> if any element of the header is one of the blocked auth cookies
+   */
+  boolean isBlockedAuthHeader(Header header) {
+    if (blockedCookieNames.length == 0 || !mayContainBlockedCookie(header.getValue())) {
+      return false;
+    }
+    for (HeaderElement element : header.getElements()) {
+      for (String cookieName : blockedCookieNames) {
+        if (cookieName.equals(element.getName())) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the value to send to the client; an empty value means the header must be skipped
+   */
+  String filter(Header header) {
+    final String name = header.getName();
+    final String value = header.getValue();
+    if (DefaultDispatch.SET_COOKIE.equalsIgnoreCase(name)) {
+      if (passSetCookie) {
+        return value;
+      }
+      return dropSetCookie ? "" : filterSetCookie(value);
+    }
+    return excludedHeaders.contains(name) ? "" : value;
+  }
+
+  /*
+   * Cheap substring check so that headers are only parsed into elements when they could match
+   */
+  private boolean mayContainBlockedCookie(String value) {
+    for (String cookieName : blockedCookieNames) {
+      if (value.contains(cookieName)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /*
+   * Splits the cookie into its ';' separated attributes, drops duplicates and attributes containing
+   * an excluded directive, and joins the rest in their original order.
+   */
+  private String filterSetCookie(String value) {
+    final String cookie = value.trim();
+    int end = cookie.length();
+    // Like String.split, trailing empty attributes are discarded unless the cookie is empty
+    while (end > 0 && cookie.charAt(end - 1) == ';') {
+      end--;
+    }
+    if (end == 0 && !cookie.isEmpty()) {
+      return "";
+    }
+
+    final StringBuilder filtered = new StringBuilder(cookie.length());
+    boolean first = true;
+    int start = 0;
+    while (start <= end) {
+      int next = cookie.indexOf(';', start);
+      if (next < 0 || next > end) {
+        next = end;
+      }
+      final String attribute = cookie.substring(start, next).trim();
+      if (!isExcludedDirective(attribute) && !occursBefore(cookie, start, attribute)) {
+        if (!first) {
+          filtered.append(SET_COOKIE_SEPARATOR);
+        }
+        filtered.append(attribute);
+        first = false;
+      }
+      start = next + 1;
+    }
+    return filtered.toString();
+  }
+
+  private boolean isExcludedDirective(String attribute) {
+    for (String directive : setCookieDirectives) {
+      if (attribute.contains(directive)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /*
+   * Checks whether the trimmed attribute already appeared in cookie[0, limit)
+   */
+  private static boolean occursBefore(String cookie, int limit, String attribute) {
+    int start = 0;
+    while (start < limit) {
+      int next = cookie.indexOf(';', start);
+      if (next < 0 || next > limit) {
+        next = limit;
+      }
+      int from = start;
+      int to = next;
+      while (from < to && cookie.charAt(from) <= ' ') {
+        from++;
+      }
+      while (to > from && cookie.charAt(to - 1) <= ' ') {
+        to--;
+      }
+      if (to - from == attribute.length() && cookie.regionMatches(from, attribute, 0, attribute.length())) {
+        return true;
+      }
+      start = next + 1;
+    }
+    return false;
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.dispatch;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.ContentOutputStream;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
+import org.apache.http.nio.util.SharedOutputBuffer;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Produces an outbound request for the asynchronous dispatch path.
+ * <p>
+ * Request bodies are not read by the I/O reactor. Instead the dispatching thread pumps the
+ * inbound request body into a bounded {@link SharedOutputBuffer} via {@link #streamContent()},
+ * blocking whenever the buffer is full until the reactor has written it to the backend.
+ */
+class StreamingRequestProducer implements HttpAsyncRequestProducer {
+
+  private final HttpHost target;
+  private final HttpUriRequest request;
+  private final HttpEntity entity;
+  private final SharedOutputBuffer buffer;
+
+  StreamingRequestProducer(HttpUriRequest request, int bufferSize) {
+    this.target = URIUtils.extractHost(request.getURI());
+    this.request = request;
+    this.entity = request instanceof HttpEntityEnclosingRequest
+        ? ((HttpEntityEnclosingRequest) request).getEntity() : null;
+    this.buffer = entity != null ? new SharedOutputBuffer(bufferSize) : null;
+  }
+
+  boolean hasContent() {
+    return entity != null;
+  }
+
+  /**
+   * Copies the request entity into the shared buffer. Must be called on the dispatching thread
+   * after the request has been handed to the client.
+   */
+  void streamContent() throws IOException {
+    if (entity == null) {
+      return;
+    }
+    try (InputStream input = entity.getContent();
+         OutputStream output = new ContentOutputStream(buffer)) {
+      byte[] chunk = new byte[InputStreamEntity.OUTPUT_BUFFER_SIZE];
+      int count;
+      while ((count = input.read(chunk)) != -1) {
+        output.write(chunk, 0, count);
+      }
+    }
+  }
+
+  @Override
+  public HttpHost getTarget() {
+    return target;
+  }
+
+  @Override
+  public HttpRequest generateRequest() {
+    return request;
+  }
+
+  @Override
+  public void produceContent(ContentEncoder encoder, IOControl ioctrl) throws IOException {
+    if (buffer != null) {
+      buffer.produceContent(encoder, ioctrl);
+    }
+  }
+
+  @Override
+  public void requestCompleted(HttpContext context) {
+  }
+
+  @Override
+  public void failed(Exception ex) {
+    if (buffer != null) {
+      buffer.shutdown();
+    }
+  }
+
+  @Override
+  public boolean isRepeatable() {
+    return entity == null;
+  }
+
+  @Override
+  public void resetRequest() {
+  }
+
+  @Override
+  public void close() {
+    if (buffer != null) {
+      buffer.shutdown();
+    }
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.dispatch;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.ContentInputStream;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.nio.util.SharedInputBuffer;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Consumes a backend response for the asynchronous dispatch path.
+ * <p>
+ * As soon as the response head arrives the response is handed to the listener with an entity
+ * that streams from a bounded {@link SharedInputBuffer}. The I/O reactor suspends reading from
+ * the backend whenever the buffer is full and resumes once the writing thread drains it, so a
+ * slow client throttles the backend instead of growing the heap.
+ */
+class StreamingResponseConsumer extends AbstractAsyncResponseConsumer<HttpResponse> {
+
+  private final int bufferSize;
+  private final Consumer<HttpResponse> listener;
+  // Guarded by the synchronized callbacks of AbstractAsyncResponseConsumer
+  private HttpResponse response;
+  private SharedInputBuffer buffer;
+
+  StreamingResponseConsumer(int bufferSize, Consumer<HttpResponse> listener) {
+    this.bufferSize = bufferSize;
+    this.listener = listener;
+  }
+
+  @Override
+  protected void onResponseReceived(HttpResponse response) {
+    HttpEntity entity = response.getEntity();
+    if (entity != null) {
+      buffer = new SharedInputBuffer(bufferSize);
+      BasicHttpEntity streamingEntity = new BasicHttpEntity();
+      streamingEntity.setContentType(entity.getContentType());
+      streamingEntity.setContentEncoding(entity.getContentEncoding());
+      streamingEntity.setContentLength(entity.getContentLength());
+      streamingEntity.setChunked(entity.isChunked());
+      streamingEntity.setContent(new StreamingContentInputStream(buffer));
+      response.setEntity(streamingEntity);
+    }
+    this.response = response;
+    listener.accept(response);
+  }
+
+  @Override
+  protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) {
+    // The streaming entity has already been attached in onResponseReceived
+  }
+
+  @Override
+  protected void onContentReceived(ContentDecoder decoder, IOControl ioctrl) throws IOException {
+    buffer.consumeContent(decoder, ioctrl);
+  }
+
+  @Override
+  protected HttpResponse buildResult(HttpContext context) {
+    return response;
+  }
+
+  @Override
+  protected void releaseResources() {
+    // On success the writing thread may still be draining the buffer, so only abort on failure
+    if (buffer != null && getException() != null) {
+      buffer.shutdown();
+    }
+  }
+
+  /**
+   * Closing the stream before the backend response has been fully read aborts the exchange
+   * rather than draining the remainder of a potentially very large body.
+   */
+  private class StreamingContentInputStream extends ContentInputStream {
+    private final SharedInputBuffer source;
+
+    StreamingContentInputStream(SharedInputBuffer source) {
+      super(source);
+      this.source = source;
+    }
+
+    @Override
+    public void close() {
+      if (!isDone()) {
+        cancel();
+      }
+      source.shutdown();
+    }
+  }
+}
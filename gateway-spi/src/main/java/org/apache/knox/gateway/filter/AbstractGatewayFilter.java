@@ -37,6 +37,8 @@ public abstract class AbstractGatewayFilter implements Filter {
   public static final String TARGET_REQUEST_URL_ATTRIBUTE_NAME = "targetRequestUrl";
   public static final String SOURCE_REQUEST_CONTEXT_URL_ATTRIBUTE_NAME = "sourceRequestContextUrl";
   public static final String TARGET_SERVICE_ROLE = "targetServiceRole";
+  /* set by filters with work to do once the rest of the chain returns, which an asynchronous dispatch would run too early */
+  public static final String BLOCKING_DISPATCH_ATTRIBUTE_NAME = "blockingDispatch";
 //  public static final String RESPONSE_STREAMER_ATTRIBUTE_NAME = "responseStreamer";
   private static final GatewaySpiMessages LOG = MessagesFactory.get( GatewaySpiMessages.class );
 
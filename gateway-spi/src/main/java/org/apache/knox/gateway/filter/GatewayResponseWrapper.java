@@ -19,6 +19,7 @@ package org.apache.knox.gateway.filter;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.knox.gateway.util.MimeTypes;
+import org.apache.knox.gateway.util.ResponseStreamUtils;
 
 import javax.activation.MimeType;
 import javax.servlet.http.HttpServletResponse;
@@ -60,7 +61,6 @@ public abstract class GatewayResponseWrapper extends HttpServletResponseWrapper
 
   @Override
   public void streamResponse( InputStream input, OutputStream output ) throws IOException {
-    IOUtils.copy(input, output);
-    output.close();
+    ResponseStreamUtils.passThrough(input, output, IOUtils.DEFAULT_BUFFER_SIZE);
   }
 }
@@ -23,12 +23,14 @@ import java.util.Locale;
 public enum ServiceType {
   ALIAS_SERVICE("AliasService"),
   CLUSTER_CONFIGURATION_MONITOR_SERVICE("ClusterConfigurationMonitorService"),
+  CONNECTION_POOL_SERVICE("ConnectionPoolService"),
   CRYPTO_SERVICE("CryptoService"),
   HOST_MAPPING_SERVICE("HostMappingService"),
   KEYSTORE_SERVICE("KeystoreService"),
   MASTER_SERVICE("MasterService"),
   METRICS_SERVICE("MetricsService"),
   REMOTE_REGISTRY_CLIENT_SERVICE("RemoteConfigRegistryClientService"),
+  REPLAY_BUFFER_SERVICE("ReplayBufferService"),
   SERVER_INFO_SERVICE("ServerInfoService"),
   SERVICE_DEFINITION_REGISTRY("ServiceDefinitionRegistry"),
   SERVICE_REGISTRY_SERVICE("ServiceRegistryService"),
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.services.httpclient;
+
+import java.util.Map;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.PoolStats;
+import org.apache.knox.gateway.services.Service;
+
+/**
+ * This service provides gateway wide HTTP connection pools that are shared
+ * by the dispatches of all deployed topologies, so that dispatches pointing
+ * at the same backend reuse the same keep-alive connections.
+ */
+public interface ConnectionPoolService extends Service {
+
+  /**
+   * Get the shared connection manager for the given pool, creating it on first use.
+   * <p>
+   * Clients built on top of the returned manager must mark it as shared so that
+   * closing a client does not shut down the pool.
+   *
+   * @param poolName   the name of the pool; dispatches with the same SSL requirements share a pool
+   * @param sslContext the SSL context used for TLS connections when the pool is created,
+   *                   or <code>null</code> for the default one
+   * @return the shared connection manager
+   */
+  HttpClientConnectionManager getConnectionManager(String poolName, SSLContext sslContext);
+
+  /**
+   * Get the statistics of every backend route the given pool has connections for
+   * @param poolName the name of the pool
+   * @return statistics keyed by route; empty if the pool does not exist
+   */
+  Map<HttpRoute, PoolStats> getRouteStats(String poolName);
+
+  /**
+   * Get the aggregated statistics of the given pool
+   * @param poolName the name of the pool
+   * @return the pool statistics or <code>null</code> if the pool does not exist
+   */
+  PoolStats getTotalStats(String poolName);
+}
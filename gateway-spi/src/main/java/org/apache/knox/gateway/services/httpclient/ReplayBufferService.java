@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.services.httpclient;
+
+import java.nio.ByteBuffer;
+
+import org.apache.knox.gateway.services.Service;
+
+/**
+ * This service provides the gateway wide pool of direct memory buffers used to
+ * replay request bodies, for instance when a SPNEGO negotiation with the backend
+ * requires the request to be sent again.
+ */
+public interface ReplayBufferService extends Service {
+
+  /**
+   * Take a buffer from the pool
+   *
+   * @param size the minimum capacity of the buffer
+   * @return a cleared direct buffer of at least the given capacity, or <code>null</code>
+   * if the pool is disabled or its memory limit is reached
+   */
+  ByteBuffer acquire(int size);
+
+  /**
+   * Return a buffer taken from the pool. The buffer must not be used afterwards.
+   *
+   * @param buffer a buffer returned by {@link #acquire(int)}
+   */
+  void release(ByteBuffer buffer);
+
+  /**
+   * @return the number of bytes of the buffers currently taken from the pool
+   */
+  long getUsedSize();
+
+  /**
+   * @return the number of bytes of the buffers kept in the pool for reuse
+   */
+  long getIdleSize();
+
+  /**
+   * @return the maximum number of bytes the pool may hold
+   */
+  long getMaxSize();
+}
@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.util;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jetty.server.HttpOutput;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+public final class ResponseStreamUtils {
+
+  private ResponseStreamUtils() {
+  }
+
+  /**
+   * Streams the given input unmodified to the output and closes the output.
+   * <p>
+   * When the output is Jetty's untouched response stream the content is handed to
+   * {@link HttpOutput#sendContent(InputStream)}, which reads into buffers taken from the
+   * connector's buffer pool and writes them straight to the connection instead of copying
+   * them through a per-request heap buffer and the response aggregation buffer.
+   *
+   * @param input      the content to send
+   * @param output     the response stream
+   * @param bufferSize the copy buffer size used when the fast path is not available
+   * @throws IOException if reading the input or writing the output fails
+   */
+  public static void passThrough(InputStream input, OutputStream output, int bufferSize) throws IOException {
+    if (output instanceof HttpOutput && isPristine((HttpOutput) output)) {
+      ((HttpOutput) output).sendContent(input);
+    } else {
+      try (OutputStream out = output) {
+        IOUtils.copy(input, out, bufferSize);
+      }
+    }
+  }
+
+  /*
+   * sendContent refuses content that was partially written, and needs the blocking API
+   */
+  private static boolean isPristine(HttpOutput output) {
+    return !output.isWritten() && !output.isClosed() && !output.isAsync();
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.knox.gateway.util;
+
+import org.apache.knox.gateway.util.urltemplate.Template;
+import org.apache.knox.gateway.util.urltemplate.TemplateCache;
+
+import javax.servlet.ServletRequest;
+import java.net.URISyntaxException;
+
+public class TemplateCacheUtils {
+  static final String TEMPLATE_CACHE_ATTRIBUTE = TemplateCache.class.getName();
+
+  /**
+   * Parses a literal, reusing the template if the same literal was already parsed while
+   * processing the request.
+   *
+   * @param request the request being processed, may be <code>null</code>
+   * @param literal the literal to parse
+   * @return the template parsed from the literal
+   * @throws URISyntaxException if the literal can not be parsed
+   */
+  public static Template parseLiteral(ServletRequest request, String literal) throws URISyntaxException {
+    if (request == null) {
+      return TemplateCache.parseLiteral(literal);
+    }
+    TemplateCache cache = (TemplateCache) request.getAttribute(TEMPLATE_CACHE_ATTRIBUTE);
+    if (cache == null) {
+      cache = new TemplateCache();
+      request.setAttribute(TEMPLATE_CACHE_ATTRIBUTE, cache);
+    }
+    return cache.getLiteral(literal);
+  }
+}
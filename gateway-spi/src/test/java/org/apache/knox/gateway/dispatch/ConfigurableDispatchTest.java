@@ -592,4 +592,32 @@ public class ConfigurableDispatchTest {
     assertThat(outboundResponse.getHeader(SET_COOKIE), containsString("hadoop.auth="));
   }
 
+  /**
+   * The compiled header filter has to follow later changes of the exclude configuration
+   */
+  @Test
+  public void testResponseExcludeHeadersReconfigured() throws Exception {
+    final Header[] headers = new Header[] {
+        new BasicHeader("test", "testValue"),
+        new BasicHeader(SET_COOKIE, "SESSION=abc; Path=/; Secure; Path=/; HttpOnly")};
+    final HttpResponse inboundResponse = EasyMock.createNiceMock(HttpResponse.class);
+    EasyMock.expect(inboundResponse.getAllHeaders()).andReturn(headers).anyTimes();
+    EasyMock.replay(inboundResponse);
+
+    final ConfigurableDispatch dispatch = new ConfigurableDispatch();
+    dispatch.setResponseExcludeHeaders("test, SET-COOKIE: HttpOnly");
+    HttpServletResponse outboundResponse = new MockHttpServletResponse();
+    dispatch.copyResponseHeaderFields(outboundResponse, inboundResponse);
+
+    assertThat(outboundResponse.getHeaderNames().size(), is(1));
+    assertThat(outboundResponse.getHeader(SET_COOKIE), is("SESSION=abc; Path=/; Secure"));
+
+    dispatch.setResponseExcludeHeaders("WWW-AUTHENTICATE, SET-COOKIE: Secure");
+    outboundResponse = new MockHttpServletResponse();
+    dispatch.copyResponseHeaderFields(outboundResponse, inboundResponse);
+
+    assertThat(outboundResponse.getHeaderNames().size(), is(2));
+    assertThat(outboundResponse.getHeader("test"), is("testValue"));
+    assertThat(outboundResponse.getHeader(SET_COOKIE), is("SESSION=abc; Path=/; HttpOnly"));
+  }
 }
@@ -24,32 +24,57 @@ import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.PrivilegedExceptionAction;
+import java.util.concurrent.atomic.AtomicReference;
 
+import javax.security.auth.Subject;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.knox.gateway.config.GatewayConfig;
+import org.apache.knox.gateway.filter.AbstractGatewayFilter;
+import org.apache.knox.gateway.security.SubjectUtils;
 import org.apache.knox.gateway.servlet.SynchronousServletOutputStreamAdapter;
 import org.apache.knox.test.TestUtils;
 import org.apache.knox.test.category.FastTests;
 import org.apache.knox.test.category.UnitTests;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.HttpVersion;
 import org.apache.http.RequestLine;
+import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.BasicHttpEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.client.HttpAsyncClient;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
 import org.apache.http.params.BasicHttpParams;
+import org.apache.http.protocol.BasicHttpContext;
+import org.easymock.Capture;
 import org.easymock.EasyMock;
 import org.easymock.IAnswer;
 import org.junit.Test;
@@ -241,4 +266,188 @@ public class DefaultDispatchTest {
 
   }
 
+  @SuppressWarnings("PMD.DoNotUseThreads")
+  @Test( timeout = TestUtils.SHORT_TIMEOUT )
+  public void testAsyncDispatchStreamsResponseOnContainerThread() throws Exception {
+    Capture<HttpAsyncResponseConsumer<HttpResponse>> consumer = EasyMock.newCapture();
+    HttpAsyncClient asyncClient = EasyMock.createNiceMock( HttpAsyncClient.class );
+    EasyMock.expect( asyncClient.execute( EasyMock.anyObject( HttpAsyncRequestProducer.class ),
+        EasyMock.capture( consumer ), EasyMock.<FutureCallback<HttpResponse>>anyObject() ) ).andReturn( null ).once();
+
+    Capture<Runnable> writer = EasyMock.newCapture();
+    AsyncContext asyncContext = EasyMock.createMock( AsyncContext.class );
+    asyncContext.setTimeout( 5000L );
+    EasyMock.expectLastCall();
+    asyncContext.addListener( EasyMock.anyObject( AsyncListener.class ) );
+    EasyMock.expectLastCall();
+    asyncContext.start( EasyMock.capture( writer ) );
+    EasyMock.expectLastCall();
+    asyncContext.complete();
+    EasyMock.expectLastCall();
+
+    HttpServletRequest inboundRequest = EasyMock.createNiceMock( HttpServletRequest.class );
+    EasyMock.expect( inboundRequest.isAsyncSupported() ).andReturn( true ).anyTimes();
+    EasyMock.expect( inboundRequest.startAsync() ).andReturn( asyncContext ).once();
+
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    AtomicReference<Subject> writerSubject = new AtomicReference<>();
+    HttpServletResponse outboundResponse = EasyMock.createNiceMock( HttpServletResponse.class );
+    outboundResponse.setStatus( HttpStatus.SC_OK );
+    EasyMock.expectLastCall();
+    EasyMock.expect( outboundResponse.getOutputStream() ).andReturn( new SynchronousServletOutputStreamAdapter() {
+      @Override
+      public void write( int b ) {
+        writerSubject.set( SubjectUtils.getCurrentSubject() );
+        body.write( b );
+      }
+    } ).anyTimes();
+    EasyMock.replay( asyncClient, asyncContext, inboundRequest, outboundResponse );
+
+    DefaultDispatch dispatch = new DefaultDispatch();
+    dispatch.setHttpAsyncClient( asyncClient );
+    dispatch.setAsyncDispatchTimeout( 5000L );
+    final Subject subject = new Subject();
+    Subject.doAs( subject, (PrivilegedExceptionAction<Void>) () -> {
+      dispatch.executeRequest( new HttpGet( "http://backend.invalid/path" ), inboundRequest, outboundResponse );
+      return null;
+    } );
+
+    // The dispatching thread has returned without the response being written
+    assertFalse( writer.hasCaptured() );
+
+    BasicHttpResponse backendResponse = new BasicHttpResponse( HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK" );
+    backendResponse.setEntity( new BasicHttpEntity() );
+    consumer.getValue().responseReceived( backendResponse );
+    assertTrue( writer.hasCaptured() );
+
+    IOControl ioControl = EasyMock.createNiceMock( IOControl.class );
+    EasyMock.replay( ioControl );
+    consumer.getValue().consumeContent( new StringContentDecoder( "async-body" ), ioControl );
+    consumer.getValue().responseCompleted( new BasicHttpContext() );
+
+    writer.getValue().run();
+    assertThat( new String( body.toByteArray(), StandardCharsets.UTF_8 ), is( "async-body" ) );
+    // The response is written as the subject the request was dispatched as
+    assertSame( subject, writerSubject.get() );
+    EasyMock.verify( asyncContext, outboundResponse );
+  }
+
+  @SuppressWarnings("PMD.DoNotUseThreads")
+  @Test( timeout = TestUtils.SHORT_TIMEOUT )
+  public void testAsyncDispatchFailureSendsError() throws Exception {
+    Capture<FutureCallback<HttpResponse>> callback = EasyMock.newCapture();
+    HttpAsyncClient asyncClient = EasyMock.createNiceMock( HttpAsyncClient.class );
+    EasyMock.expect( asyncClient.execute( EasyMock.anyObject( HttpAsyncRequestProducer.class ),
+        EasyMock.<HttpAsyncResponseConsumer<HttpResponse>>anyObject(), EasyMock.capture( callback ) ) ).andReturn( null ).once();
+
+    Capture<Runnable> failure = EasyMock.newCapture();
+    AsyncContext asyncContext = EasyMock.createNiceMock( AsyncContext.class );
+    asyncContext.start( EasyMock.capture( failure ) );
+    EasyMock.expectLastCall();
+    asyncContext.complete();
+    EasyMock.expectLastCall().once();
+
+    HttpServletRequest inboundRequest = EasyMock.createNiceMock( HttpServletRequest.class );
+    EasyMock.expect( inboundRequest.isAsyncSupported() ).andReturn( true ).anyTimes();
+    EasyMock.expect( inboundRequest.startAsync() ).andReturn( asyncContext ).once();
+
+    HttpServletResponse outboundResponse = EasyMock.createNiceMock( HttpServletResponse.class );
+    outboundResponse.sendError( HttpServletResponse.SC_INTERNAL_SERVER_ERROR );
+    EasyMock.expectLastCall().once();
+    EasyMock.replay( asyncClient, asyncContext, inboundRequest, outboundResponse );
+
+    DefaultDispatch dispatch = new DefaultDispatch();
+    dispatch.setHttpAsyncClient( asyncClient );
+    dispatch.executeRequest( new HttpGet( "http://unreachable-host.invalid/path" ), inboundRequest, outboundResponse );
+
+    callback.getValue().failed( new UnknownHostException( "unreachable-host.invalid" ) );
+    failure.getValue().run();
+    EasyMock.verify( asyncContext, outboundResponse );
+  }
+
+  @Test
+  public void testAsyncDispatchTimeoutAbortsExchange() throws Exception {
+    HttpAsyncClient asyncClient = EasyMock.createNiceMock( HttpAsyncClient.class );
+
+    Capture<AsyncListener> listener = EasyMock.newCapture();
+    AsyncContext asyncContext = EasyMock.createNiceMock( AsyncContext.class );
+    asyncContext.addListener( EasyMock.capture( listener ) );
+    EasyMock.expectLastCall();
+    asyncContext.complete();
+    EasyMock.expectLastCall().once();
+
+    HttpServletRequest inboundRequest = EasyMock.createNiceMock( HttpServletRequest.class );
+    EasyMock.expect( inboundRequest.isAsyncSupported() ).andReturn( true ).anyTimes();
+    EasyMock.expect( inboundRequest.startAsync() ).andReturn( asyncContext ).once();
+
+    HttpServletResponse outboundResponse = EasyMock.createNiceMock( HttpServletResponse.class );
+    outboundResponse.sendError( HttpServletResponse.SC_GATEWAY_TIMEOUT );
+    EasyMock.expectLastCall().once();
+    EasyMock.expect( asyncContext.getResponse() ).andReturn( outboundResponse ).anyTimes();
+    EasyMock.replay( asyncClient, asyncContext, inboundRequest, outboundResponse );
+
+    DefaultDispatch dispatch = new DefaultDispatch();
+    dispatch.setHttpAsyncClient( asyncClient );
+    HttpGet outboundRequest = new HttpGet( "http://stalled-backend.invalid/path" );
+    dispatch.executeRequest( outboundRequest, inboundRequest, outboundResponse );
+
+    AsyncEvent timeout = new AsyncEvent( asyncContext );
+    listener.getValue().onTimeout( timeout );
+    assertTrue( outboundRequest.isAborted() );
+    // Only the first completion of the exchange is effective
+    listener.getValue().onTimeout( timeout );
+    EasyMock.verify( asyncContext, outboundResponse );
+  }
+
+  @Test
+  public void testAsyncDispatchSkippedForFiltersWaitingOnDispatch() {
+    HttpAsyncClient asyncClient = EasyMock.createNiceMock( HttpAsyncClient.class );
+    HttpServletRequest inboundRequest = EasyMock.createNiceMock( HttpServletRequest.class );
+    EasyMock.expect( inboundRequest.isAsyncSupported() ).andReturn( true ).anyTimes();
+    EasyMock.expect( inboundRequest.getAttribute( AbstractGatewayFilter.BLOCKING_DISPATCH_ATTRIBUTE_NAME ) ).andReturn( Boolean.TRUE ).anyTimes();
+    EasyMock.replay( asyncClient, inboundRequest );
+
+    DefaultDispatch dispatch = new DefaultDispatch();
+    dispatch.setHttpAsyncClient( asyncClient );
+    assertFalse( dispatch.isAsyncDispatch( new HttpGet( "http://backend.invalid/path" ), inboundRequest ) );
+  }
+
+  @Test
+  public void testAsyncDispatchRequiresAsyncSupportedRequest() {
+    HttpAsyncClient asyncClient = EasyMock.createNiceMock( HttpAsyncClient.class );
+    HttpServletRequest inboundRequest = EasyMock.createNiceMock( HttpServletRequest.class );
+    EasyMock.expect( inboundRequest.isAsyncSupported() ).andReturn( false ).anyTimes();
+    EasyMock.replay( asyncClient, inboundRequest );
+
+    DefaultDispatch dispatch = new DefaultDispatch();
+    HttpUriRequest outboundRequest = new HttpGet( "http://backend.invalid/path" );
+    assertFalse( dispatch.isAsyncDispatch( outboundRequest, inboundRequest ) );
+    dispatch.setHttpAsyncClient( asyncClient );
+    assertFalse( dispatch.isAsyncDispatch( outboundRequest, inboundRequest ) );
+  }
+
+  private static class StringContentDecoder implements ContentDecoder {
+    private final ByteBuffer content;
+
+    StringContentDecoder( String content ) {
+      this.content = ByteBuffer.wrap( content.getBytes( StandardCharsets.UTF_8 ) );
+    }
+
+    @Override
+    public int read( ByteBuffer dst ) {
+      if( !content.hasRemaining() ) {
+        return -1;
+      }
+      int count = Math.min( dst.remaining(), content.remaining() );
+      for( int i = 0; i < count; i++ ) {
+        dst.put( content.get() );
+      }
+      return count;
+    }
+
+    @Override
+    public boolean isCompleted() {
+      return !content.hasRemaining();
+    }
+  }
 }
@@ -30,9 +30,11 @@ import static org.junit.Assert.assertTrue;
 
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.HttpClientConnectionManager;
 import org.apache.knox.gateway.config.GatewayConfig;
 import org.apache.knox.gateway.services.GatewayServices;
 import org.apache.knox.gateway.services.ServiceType;
+import org.apache.knox.gateway.services.httpclient.ConnectionPoolService;
 import org.apache.knox.gateway.services.security.AliasService;
 import org.apache.knox.gateway.services.security.KeystoreService;
 import org.junit.Test;
@@ -40,6 +42,7 @@ import org.junit.Test;
 import javax.net.ssl.SSLContext;
 import javax.servlet.FilterConfig;
 import javax.servlet.ServletContext;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
@@ -58,6 +61,7 @@ public class DefaultHttpClientFactoryTest {
 
     GatewayConfig gatewayConfig = createMock(GatewayConfig.class);
     expect(gatewayConfig.isMetricsEnabled()).andReturn(false).once();
+    expect(gatewayConfig.isHttpClientConnectionPoolEnabled()).andReturn(false).once();
     expect(gatewayConfig.getHttpClientMaxConnections()).andReturn(32).once();
     expect(gatewayConfig.getHttpClientConnectionTimeout()).andReturn(20000).once();
     expect(gatewayConfig.getHttpClientSocketTimeout()).andReturn(20000).once();
@@ -243,6 +247,7 @@ public class DefaultHttpClientFactoryTest {
 
     GatewayConfig gatewayConfig = createMock(GatewayConfig.class);
     expect(gatewayConfig.isMetricsEnabled()).andReturn(false).anyTimes();
+    expect(gatewayConfig.isHttpClientConnectionPoolEnabled()).andReturn(false).anyTimes();
     expect(gatewayConfig.getHttpClientMaxConnections()).andReturn(32).anyTimes();
     expect(gatewayConfig.getHttpClientConnectionTimeout()).andReturn(20000).anyTimes();
     expect(gatewayConfig.getHttpClientSocketTimeout()).andReturn(20000).anyTimes();
@@ -285,4 +290,49 @@ public class DefaultHttpClientFactoryTest {
 
     verify(keystoreService, gatewayConfig, gatewayServices, servletContext, filterConfigSafe, filterConfigUnSafe);
   }
+
+  @Test
+  public void testCreateHttpClientUsesSharedConnectionPool() throws Exception {
+    KeystoreService keystoreService = createMock(KeystoreService.class);
+    expect(keystoreService.getTruststoreForHttpClient()).andReturn(null).once();
+
+    GatewayConfig gatewayConfig = createMock(GatewayConfig.class);
+    expect(gatewayConfig.isMetricsEnabled()).andReturn(false).once();
+    expect(gatewayConfig.isHttpClientConnectionPoolEnabled()).andReturn(true).once();
+    expect(gatewayConfig.getHttpClientConnectionTimeout()).andReturn(20000).once();
+    expect(gatewayConfig.getHttpClientSocketTimeout()).andReturn(20000).once();
+
+    // The client must neither size nor shut down a pool it does not own
+    HttpClientConnectionManager connectionManager = createMock(HttpClientConnectionManager.class);
+    ConnectionPoolService connectionPoolService = createMock(ConnectionPoolService.class);
+    expect(connectionPoolService.getConnectionManager(DefaultHttpClientFactory.SHARED_POOL_DEFAULT, null))
+        .andReturn(connectionManager).once();
+
+    GatewayServices gatewayServices = createMock(GatewayServices.class);
+    expect(gatewayServices.getService(ServiceType.KEYSTORE_SERVICE)).andReturn(keystoreService).once();
+    expect(gatewayServices.getService(ServiceType.CONNECTION_POOL_SERVICE)).andReturn(connectionPoolService).once();
+
+    ServletContext servletContext = createMock(ServletContext.class);
+    expect(servletContext.getAttribute(GatewayConfig.GATEWAY_CONFIG_ATTRIBUTE)).andReturn(gatewayConfig).atLeastOnce();
+    expect(servletContext.getAttribute(GatewayServices.GATEWAY_SERVICES_ATTRIBUTE)).andReturn(gatewayServices).atLeastOnce();
+
+    FilterConfig filterConfig = createMock(FilterConfig.class);
+    expect(filterConfig.getServletContext()).andReturn(servletContext).atLeastOnce();
+    expect(filterConfig.getInitParameter("useTwoWaySsl")).andReturn("false").times(2);
+    expect(filterConfig.getInitParameter("httpclient.connectionTimeout")).andReturn(null).once();
+    expect(filterConfig.getInitParameter("httpclient.socketTimeout")).andReturn(null).once();
+    expect(filterConfig.getInitParameter("serviceRole")).andReturn(null).once();
+    expect(filterConfig.getInitParameter("retryCount")).andReturn(null).once();
+    // Only read to warn that it is overridden by the limits of the shared pool
+    expect(filterConfig.getInitParameter("httpclient.maxConnections")).andReturn("64").once();
+
+    replay(keystoreService, gatewayConfig, connectionManager, connectionPoolService, gatewayServices, servletContext, filterConfig);
+
+    DefaultHttpClientFactory factory = new DefaultHttpClientFactory();
+    HttpClient client = factory.createHttpClient(filterConfig);
+    assertNotNull(client);
+    ((Closeable) client).close();
+
+    verify(keystoreService, gatewayConfig, connectionManager, connectionPoolService, gatewayServices, servletContext, filterConfig);
+  }
 }
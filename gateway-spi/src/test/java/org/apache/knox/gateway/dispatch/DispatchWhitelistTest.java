@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.knox.gateway.dispatch;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DispatchWhitelistTest {
+
+  @Test
+  public void testDefaultWhitelist() {
+    DispatchWhitelist whitelist = new DispatchWhitelist("^\\/.*$;^https?:\\/\\/(.+\\.example\\.com):[0-9]+\\/?.*$", 10);
+    assertTrue(whitelist.isAllowed("/gateway/sandbox/webhdfs/v1?op=LISTSTATUS"));
+    assertTrue(whitelist.isAllowed("https://host.example.com:8443/gateway/sandbox?op=LISTSTATUS"));
+    assertTrue(whitelist.isAllowed("https%3A%2F%2Fhost.example.com%3A8443%2Fgateway%2Fsandbox"));
+    assertFalse(whitelist.isAllowed("https://host.example.org:8443/gateway/sandbox"));
+  }
+
+  @Test
+  public void testPathConstrainedWhitelist() {
+    DispatchWhitelist whitelist = new DispatchWhitelist("^https://host\\.example\\.com:8443/gateway/.*$", 10);
+    assertTrue(whitelist.isAllowed("https://host.example.com:8443/gateway/sandbox?op=LISTSTATUS"));
+    assertTrue(whitelist.isAllowed("https%3A%2F%2Fhost.example.com%3A8443%2Fgateway%2Fsandbox"));
+    assertFalse(whitelist.isAllowed("https://host.example.com:8443/other/sandbox"));
+    assertFalse(whitelist.isAllowed("https://host.example.com:8443/"));
+    // The decision cached for a URL does not leak to the other URLs of the same host
+    assertTrue(whitelist.isAllowed("https://host.example.com:8443/gateway/sandbox?op=LISTSTATUS"));
+    assertFalse(whitelist.isAllowed("https://host.example.com:8443/other/sandbox"));
+  }
+}
@@ -33,6 +33,8 @@ import java.util.Collections;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 
 public class GatewayDispatchFilterTest {
@@ -230,6 +232,49 @@ public class GatewayDispatchFilterTest {
   }
 
 
+  /*
+   * The whitelist must only be resolved and compiled once, and still be matched against the whole dispatch URL.
+   */
+  @Test
+  public void testServiceDispatchWhitelistResolvedOnce() throws Exception {
+    final String serviceRole = "TESTROLE";
+
+    GatewayConfig config = EasyMock.createNiceMock(GatewayConfig.class);
+    EasyMock.expect(config.getDispatchWhitelistServices()).andReturn(Collections.singletonList(serviceRole)).once();
+    EasyMock.expect(config.getDispatchWhitelist()).andReturn("^.*mydomain\\.org.*$;^.*onmylist\\.org.*$").once();
+    EasyMock.replay(config);
+
+    ServletContext sc = EasyMock.createNiceMock(ServletContext.class);
+    EasyMock.expect(sc.getAttribute("org.apache.knox.gateway.config")).andReturn(config).once();
+    EasyMock.replay(sc);
+
+    GatewayDispatchFilter gdf = new GatewayDispatchFilter();
+    Method isDispatchAllowedMethod =
+        GatewayDispatchFilter.class.getDeclaredMethod("isDispatchAllowed", HttpServletRequest.class);
+    isDispatchAllowedMethod.setAccessible(true);
+
+    String[] allowed = { "http://www.onmylist.org:9999", "http://www.onmylist.org:9999/path?op=OPEN",
+        "http://www.onmylist.org:9999/other?op=LIST&delegation=token" };
+    String[] disallowed = { "http://www.elsewhere.org:9999", "http://www.elsewhere.org:9999/path?op=OPEN" };
+    for (String url : allowed) {
+      assertTrue(url, (boolean) isDispatchAllowedMethod.invoke(gdf, createRequest(sc, serviceRole, url)));
+    }
+    for (String url : disallowed) {
+      assertFalse(url, (boolean) isDispatchAllowedMethod.invoke(gdf, createRequest(sc, serviceRole, url)));
+    }
+
+    EasyMock.verify(config, sc);
+  }
+
+  private static HttpServletRequest createRequest(ServletContext sc, String serviceRole, String dispatchURL) {
+    HttpServletRequest request = EasyMock.createNiceMock(HttpServletRequest.class);
+    EasyMock.expect(request.getRequestURI()).andReturn(dispatchURL).anyTimes();
+    EasyMock.expect(request.getAttribute("targetServiceRole")).andReturn(serviceRole).anyTimes();
+    EasyMock.expect(request.getServletContext()).andReturn(sc).anyTimes();
+    EasyMock.replay(request);
+    return request;
+  }
+
   private void doTestServiceDispatchWhitelist(List<String> whitelistedServices,
                                               String       whitelist,
                                               String       serviceRole,
@@ -17,6 +17,12 @@
  */
 package org.apache.knox.gateway.dispatch;
 
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.client.CookieStore;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.cookie.Cookie;
 import org.apache.http.impl.cookie.BasicClientCookie;
 import org.apache.knox.gateway.config.GatewayConfig;
@@ -27,6 +33,7 @@ import java.io.File;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.Date;
 import java.util.List;
 
 import static org.hamcrest.CoreMatchers.is;
@@ -129,6 +136,128 @@ public class HadoopAuthCookieStoreTest {
     doTestKnoxCookieInclusion("u=knox&t=kerberos&e=1517900515610&s=HpSXUOhoXR/2wXrsgPz5lSbNuf8=");
   }
 
+  @Test
+  public void testCookiesAreSharedThroughCache() {
+    GatewayConfig gatewayConfig = createGatewayConfig();
+    HadoopAuthCookieCache cache = new HadoopAuthCookieCache();
+    HadoopAuthCookieStore first = new HadoopAuthCookieStore(gatewayConfig, cache);
+    HadoopAuthCookieStore second = new HadoopAuthCookieStore(gatewayConfig, cache);
+
+    first.addCookie(createCookie("host1.example.com", validUntil(System.currentTimeMillis() + 3600000L)));
+    first.addCookie(createCookie("host2.example.com", validUntil(System.currentTimeMillis() + 3600000L)));
+    assertThat(second.getCookies().size(), is(2));
+    assertThat(cache.size(), is(2));
+
+    // A newer cookie replaces the one of the same backend
+    second.addCookie(createCookie("HOST1.example.com", validUntil(System.currentTimeMillis() + 7200000L)));
+    assertThat(first.getCookies().size(), is(2));
+
+    // An expired cookie deletes it
+    second.addCookie(createCookie("host1.example.com", validUntil(System.currentTimeMillis() + 3600000L)));
+    BasicClientCookie expired = createCookie("host1.example.com", validUntil(System.currentTimeMillis() + 3600000L));
+    expired.setExpiryDate(new Date(0));
+    second.addCookie(expired);
+    assertThat(first.getCookies().size(), is(1));
+    assertThat(first.getCookies().get(0).getDomain(), is("host2.example.com"));
+
+    first.clear();
+    assertTrue(second.getCookies().isEmpty());
+  }
+
+  /*
+   * Host-only cookies of backends on the same host, such as a NameNode and a ResourceManager, must not replace
+   * each other
+   */
+  @Test
+  public void testCookiesAreKeptPerOrigin() throws Exception {
+    HadoopAuthCookieCache cache = new HadoopAuthCookieCache();
+    HadoopAuthCookieStore store = new HadoopAuthCookieStore(createGatewayConfig(), cache);
+    HttpRequestInterceptor selector = store.createOriginSelector();
+    String nnCookie = validUntil(System.currentTimeMillis() + 3600000L);
+    String rmCookie = validUntil(System.currentTimeMillis() + 7200000L);
+
+    CookieStore nn = selectCookieStore(selector, new HttpHost("host1.example.com", 9870, "http"));
+    CookieStore rm = selectCookieStore(selector, new HttpHost("HOST1.example.com", 8088, "http"));
+    nn.addCookie(createCookie("host1.example.com", nnCookie));
+    rm.addCookie(createCookie("host1.example.com", rmCookie));
+    assertThat(cache.size(), is(2));
+
+    // Another dispatch to the same backend gets its cookie
+    CookieStore nnAgain = selectCookieStore(new HadoopAuthCookieStore(createGatewayConfig(), cache).createOriginSelector(),
+        new HttpHost("host1.example.com", 9870, "http"));
+    assertThat(nnAgain.getCookies().size(), is(1));
+    assertThat(nnAgain.getCookies().get(0).getValue(), is('"' + nnCookie + '"'));
+    assertThat(rm.getCookies().size(), is(1));
+    assertThat(rm.getCookies().get(0).getValue(), is('"' + rmCookie + '"'));
+
+    rm.clear();
+    assertTrue(rm.getCookies().isEmpty());
+    assertThat(nn.getCookies().size(), is(1));
+  }
+
+  private static CookieStore selectCookieStore(HttpRequestInterceptor selector, HttpHost target) throws Exception {
+    HttpClientContext context = HttpClientContext.create();
+    context.setAttribute(HttpClientContext.HTTP_TARGET_HOST, target);
+    selector.process(new HttpGet(target.toURI() + "/"), context);
+    return context.getCookieStore();
+  }
+
+  @Test
+  public void testCookiesExpireBeforeEmbeddedExpiry() {
+    HadoopAuthCookieStore store = new HadoopAuthCookieStore(createGatewayConfig(), new HadoopAuthCookieCache());
+    long now = System.currentTimeMillis();
+    store.addCookie(createCookie("host1.example.com", validUntil(now + HadoopAuthCookieStore.REFRESH_MARGIN + 60000L)));
+    store.addCookie(createCookie("host2.example.com", validUntil(now + HadoopAuthCookieStore.REFRESH_MARGIN - 60000L)));
+    store.addCookie(createCookie("host3.example.com", "u=knox&t=kerberos&s=HpSXUOhoXR/2wXrsgPz5lSbNuf8="));
+
+    List<Cookie> cookies = store.getCookies();
+    assertThat(cookies.size(), is(3));
+    for (Cookie cookie : cookies) {
+      assertThat(cookie.getDomain(), cookie.isExpired(new Date(now)), is("host2.example.com".equals(cookie.getDomain())));
+    }
+
+    assertTrue(store.clearExpired(new Date(now)));
+    assertThat(store.getCookies().size(), is(2));
+    assertFalse(store.clearExpired(new Date(now)));
+  }
+
+  @Test
+  public void testLookupRecorder() throws Exception {
+    HadoopAuthCookieCache cache = new HadoopAuthCookieCache();
+    HttpRequestInterceptor recorder = new HadoopAuthCookieStore(createGatewayConfig(), cache).createLookupRecorder();
+
+    HttpGet request = new HttpGet("http://host1.example.com/");
+    recorder.process(request, null);
+    request.addHeader(HttpHeaders.AUTHORIZATION, "Negotiate abc");
+    recorder.process(request, null);
+    request = new HttpGet("http://host1.example.com/");
+    request.addHeader("Cookie", "other=1; hadoop.auth=\"u=knox\"");
+    recorder.process(request, null);
+
+    assertThat(cache.getHitCount(), is(1L));
+    assertThat(cache.getMissCount(), is(1L));
+  }
+
+  private static GatewayConfig createGatewayConfig() {
+    GatewayConfig gatewayConfig = EasyMock.createNiceMock(GatewayConfig.class);
+    File krb5LoginConf = createTestKrb5LoginConfigFile();
+    assertNotNull(krb5LoginConf);
+    EasyMock.expect(gatewayConfig.getKerberosLoginConfig()).andReturn(krb5LoginConf.getAbsolutePath()).anyTimes();
+    EasyMock.replay(gatewayConfig);
+    return gatewayConfig;
+  }
+
+  private static BasicClientCookie createCookie(String domain, String value) {
+    BasicClientCookie cookie = new BasicClientCookie("hadoop.auth", value);
+    cookie.setDomain(domain);
+    cookie.setPath("/");
+    return cookie;
+  }
+
+  private static String validUntil(long expiry) {
+    return "u=knox&p=knox/myhost.example.com@EXAMPLE.COM&t=kerberos&e=" + expiry + "&s=HpSXUOhoXR/2wXrsgPz5lSbNuf8=";
+  }
+
   private void doTestKnoxCookieInclusion(final String cookieValue) {
     GatewayConfig gatewayConfig = EasyMock.createNiceMock(GatewayConfig.class);
     File krb5LoginConf = createTestKrb5LoginConfigFile();
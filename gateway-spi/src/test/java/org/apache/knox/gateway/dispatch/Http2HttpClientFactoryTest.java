@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.dispatch;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.apache.knox.gateway.services.GatewayServices;
+import org.apache.knox.gateway.services.ServiceType;
+import org.apache.knox.gateway.services.security.KeystoreService;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class Http2HttpClientFactoryTest {
+  private final CountDownLatch slowRequestReceived = new CountDownLatch(1);
+  private final CountDownLatch slowResponse = new CountDownLatch(1);
+  private Server server;
+
+  @After
+  public void tearDown() throws Exception {
+    slowResponse.countDown();
+    if (server != null) {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void testCleartextHttp2Dispatch() throws Exception {
+    final String origin = startServer(true);
+    final HttpClient client = new Http2HttpClientFactory().createHttpClient(createFilterConfig("true"));
+    try {
+      HttpResponse response = client.execute(new HttpGet(origin + "/get?a=b%2Fc"));
+      assertEquals(Http2DispatchClient.HTTP_2, response.getStatusLine().getProtocolVersion());
+      assertEquals(200, response.getStatusLine().getStatusCode());
+      assertEquals("HTTP/2.0 GET /get a=b%2Fc ", EntityUtils.toString(response.getEntity()));
+
+      HttpPut put = new HttpPut(origin + "/put");
+      put.setEntity(new StringEntity("payload", ContentType.TEXT_PLAIN));
+      response = client.execute(put);
+      assertEquals("HTTP/2.0 PUT /put null payload", EntityUtils.toString(response.getEntity()));
+      assertTrue(response.getFirstHeader("Content-Type").getValue().startsWith("text/plain"));
+
+      assertTrue(((Http2DispatchClient) client).supportsHttp2(origin));
+    } finally {
+      ((Closeable) client).close();
+    }
+  }
+
+  @Test
+  public void testClientsAreSharedByDispatches() throws Exception {
+    final String origin = startServer(true);
+    final Http2ClientRegistry registry = Http2ClientRegistry.getInstance();
+    final int clients = registry.getClientCount();
+    final long streams = registry.getStreamCount();
+
+    final HttpClient first = new Http2HttpClientFactory().createHttpClient(createFilterConfig("true"));
+    final HttpClient second = new Http2HttpClientFactory().createHttpClient(createFilterConfig("true"));
+    try {
+      assertEquals(clients + 1, registry.getClientCount());
+      EntityUtils.consume(first.execute(new HttpGet(origin + "/first")).getEntity());
+      EntityUtils.consume(second.execute(new HttpGet(origin + "/second")).getEntity());
+      // Both dispatches multiplex their streams over the connection of the shared client
+      assertEquals(streams + 2, registry.getStreamCount());
+      assertEquals(1, registry.getConnectionCount());
+    } finally {
+      ((Closeable) first).close();
+    }
+    try {
+      assertEquals(clients + 1, registry.getClientCount());
+      EntityUtils.consume(second.execute(new HttpGet(origin + "/again")).getEntity());
+    } finally {
+      ((Closeable) second).close();
+    }
+    assertEquals(clients, registry.getClientCount());
+  }
+
+  /*
+   * Aborting a request, as the hedging of HA dispatches does, must reset its stream
+   */
+  @Test
+  @SuppressWarnings("PMD.DoNotUseThreads")
+  public void testAbortResetsStream() throws Exception {
+    final String origin = startServer(true);
+    final HttpClient client = new Http2HttpClientFactory().createHttpClient(createFilterConfig("true"));
+    try {
+      final HttpGet request = new HttpGet(origin + "/slow");
+      CompletableFuture.runAsync(() -> {
+        try {
+          slowRequestReceived.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        request.abort();
+      });
+      assertThrows(IOException.class, () -> client.execute(request));
+      // The backend has not answered yet
+      assertEquals(1, slowResponse.getCount());
+    } finally {
+      ((Closeable) client).close();
+    }
+  }
+
+  @Test
+  public void testFallbackWhenBackendDoesNotSupportHttp2() throws Exception {
+    final String origin = startServer(false);
+    final HttpClient client = new Http2HttpClientFactory().createHttpClient(createFilterConfig("true"));
+    try {
+      HttpResponse response = client.execute(new HttpGet(origin + "/get"));
+      assertEquals(HttpVersion.HTTP_1_1, response.getStatusLine().getProtocolVersion());
+      assertEquals("HTTP/1.1 GET /get null ", EntityUtils.toString(response.getEntity()));
+      assertFalse(((Http2DispatchClient) client).supportsHttp2(origin));
+
+      response = client.execute(new HttpGet(origin + "/again"));
+      assertEquals("HTTP/1.1 GET /again null ", EntityUtils.toString(response.getEntity()));
+    } finally {
+      ((Closeable) client).close();
+    }
+  }
+
+  @Test
+  public void testDowngradeExpires() throws Exception {
+    final String origin = startServer(false);
+    final FilterConfig filterConfig = createFilterConfigBuilder("true");
+    expect(filterConfig.getInitParameter(Http2HttpClientFactory.PARAMETER_HTTP2_DOWNGRADE_PERIOD)).andReturn("200").anyTimes();
+    replay(filterConfig);
+    final HttpClient client = new Http2HttpClientFactory().createHttpClient(filterConfig);
+    try {
+      EntityUtils.consume(client.execute(new HttpGet(origin + "/get")).getEntity());
+      assertFalse(((Http2DispatchClient) client).supportsHttp2(origin));
+
+      Thread.sleep(300);
+      // HTTP/2 is tried again once the downgrade period is over
+      assertNull(((Http2DispatchClient) client).supportsHttp2(origin));
+      final HttpResponse response = client.execute(new HttpGet(origin + "/again"));
+      assertEquals("HTTP/1.1 GET /again null ", EntityUtils.toString(response.getEntity()));
+      assertFalse(((Http2DispatchClient) client).supportsHttp2(origin));
+    } finally {
+      ((Closeable) client).close();
+    }
+  }
+
+  @Test
+  public void testCleartextBackendsUseHttp1ByDefault() throws Exception {
+    final String origin = startServer(true);
+    final HttpClient client = new Http2HttpClientFactory().createHttpClient(createFilterConfig(null));
+    try {
+      HttpResponse response = client.execute(new HttpGet(origin + "/get"));
+      assertEquals("HTTP/1.1 GET /get null ", EntityUtils.toString(response.getEntity()));
+      assertNull(((Http2DispatchClient) client).supportsHttp2(origin));
+    } finally {
+      ((Closeable) client).close();
+    }
+  }
+
+  private String startServer(boolean http2) throws Exception {
+    server = new Server();
+    final HttpConfiguration httpConfig = new HttpConfiguration();
+    final ServerConnector connector = http2
+        ? new ServerConnector(server, new HttpConnectionFactory(httpConfig), new HTTP2CServerConnectionFactory(httpConfig))
+        : new ServerConnector(server, new HttpConnectionFactory(httpConfig));
+    connector.setHost("localhost");
+    server.addConnector(connector);
+    server.setHandler(new AbstractHandler() {
+      @Override
+      public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+          throws IOException {
+        baseRequest.setHandled(true);
+        if ("/slow".equals(target)) {
+          slowRequestReceived.countDown();
+          try {
+            slowResponse.await(10, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        response.setContentType(request.getContentType() == null ? "text/plain" : request.getContentType());
+        response.getWriter().write(request.getProtocol() + " " + request.getMethod() + " " + request.getRequestURI()
+            + " " + request.getQueryString() + " " + IOUtils.toString(request.getInputStream(), StandardCharsets.UTF_8));
+      }
+    });
+    server.start();
+    return "http://localhost:" + connector.getLocalPort();
+  }
+
+  private static FilterConfig createFilterConfig(String cleartext) throws Exception {
+    final FilterConfig filterConfig = createFilterConfigBuilder(cleartext);
+    replay(filterConfig);
+    return filterConfig;
+  }
+
+  private static FilterConfig createFilterConfigBuilder(String cleartext) throws Exception {
+    KeystoreService keystoreService = createNiceMock(KeystoreService.class);
+    GatewayServices gatewayServices = createNiceMock(GatewayServices.class);
+    expect(gatewayServices.getService(ServiceType.KEYSTORE_SERVICE)).andReturn(keystoreService).anyTimes();
+    ServletContext servletContext = createNiceMock(ServletContext.class);
+    expect(servletContext.getAttribute(GatewayServices.GATEWAY_SERVICES_ATTRIBUTE)).andReturn(gatewayServices).anyTimes();
+    FilterConfig filterConfig = createNiceMock(FilterConfig.class);
+    expect(filterConfig.getServletContext()).andReturn(servletContext).anyTimes();
+    expect(filterConfig.getInitParameter(Http2HttpClientFactory.PARAMETER_HTTP2_CLEARTEXT)).andReturn(cleartext).anyTimes();
+    replay(keystoreService, gatewayServices, servletContext);
+    return filterConfig;
+  }
+}
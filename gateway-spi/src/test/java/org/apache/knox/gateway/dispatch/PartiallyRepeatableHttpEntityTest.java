@@ -21,12 +21,15 @@ import org.apache.http.entity.BasicHttpEntity;
 import org.apache.http.entity.BufferedHttpEntity;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.InputStreamEntity;
+import org.apache.knox.gateway.services.httpclient.ReplayBufferService;
+import org.easymock.EasyMock;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 
@@ -775,6 +778,65 @@ public class PartiallyRepeatableHttpEntityTest {
     replay.consumeContent();
   }
 
+  @Test
+  public void testPooledBufferReleased() throws IOException {
+    String data = "0123456789";
+    ByteBuffer buffer = ByteBuffer.allocateDirect( 32 );
+    ReplayBufferService pool = EasyMock.createMock( ReplayBufferService.class );
+    EasyMock.expect( pool.acquire( 20 ) ).andReturn( buffer ).once();
+    pool.release( buffer );
+    EasyMock.expectLastCall().once();
+    EasyMock.replay( pool );
+
+    BasicHttpEntity basic = new BasicHttpEntity();
+    basic.setContent( new ByteArrayInputStream( data.getBytes( StandardCharsets.UTF_8 ) ) );
+    PartiallyRepeatableHttpEntity replay = new PartiallyRepeatableHttpEntity( basic, 20, pool );
+
+    assertThat( blockRead( replay.getContent(), StandardCharsets.UTF_8, -1, 3 ), is( data ) );
+    assertThat( byteRead( replay.getContent(), -1 ), is( data ) );
+    replay.release();
+    replay.release();
+    EasyMock.verify( pool );
+  }
+
+  @Test
+  public void testPooledBufferReleasedOnOverflow() throws IOException {
+    String data = "0123456789";
+    ByteBuffer buffer = ByteBuffer.allocateDirect( 8 );
+    ReplayBufferService pool = EasyMock.createMock( ReplayBufferService.class );
+    EasyMock.expect( pool.acquire( 5 ) ).andReturn( buffer ).once();
+    pool.release( buffer );
+    EasyMock.expectLastCall().once();
+    EasyMock.replay( pool );
+
+    BasicHttpEntity basic = new BasicHttpEntity();
+    basic.setContent( new ByteArrayInputStream( data.getBytes( StandardCharsets.UTF_8 ) ) );
+    PartiallyRepeatableHttpEntity replay = new PartiallyRepeatableHttpEntity( basic, 5, pool );
+
+    assertThat( blockRead( replay.getContent(), StandardCharsets.UTF_8, -1, 3 ), is( data ) );
+    EasyMock.verify( pool );
+    assertThat( replay.isRepeatable(), is( false ) );
+    replay.release();
+    EasyMock.verify( pool );
+  }
+
+  @Test
+  public void testHeapBufferWhenPoolExhausted() throws IOException {
+    String data = "0123456789";
+    ReplayBufferService pool = EasyMock.createMock( ReplayBufferService.class );
+    EasyMock.expect( pool.acquire( 20 ) ).andReturn( null ).once();
+    EasyMock.replay( pool );
+
+    BasicHttpEntity basic = new BasicHttpEntity();
+    basic.setContent( new ByteArrayInputStream( data.getBytes( StandardCharsets.UTF_8 ) ) );
+    PartiallyRepeatableHttpEntity replay = new PartiallyRepeatableHttpEntity( basic, 20, pool );
+
+    assertThat( byteRead( replay.getContent(), -1 ), is( data ) );
+    assertThat( blockRead( replay.getContent(), StandardCharsets.UTF_8, -1, 3 ), is( data ) );
+    replay.release();
+    EasyMock.verify( pool );
+  }
+
   private static String byteRead( InputStream stream, int total ) throws IOException {
     StringBuilder string = null;
     int c = 0;
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.util;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.endsWith;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jetty.server.LocalConnector;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ResponseStreamUtilsTest {
+
+  @Test
+  public void testPassThroughCopiesAndClosesPlainStreams() throws Exception {
+    final byte[] content = StringUtils.repeat("0123456789", 10000).getBytes(StandardCharsets.UTF_8);
+    final AtomicBoolean closed = new AtomicBoolean();
+    final ByteArrayOutputStream output = new ByteArrayOutputStream() {
+      @Override
+      public void close() throws IOException {
+        closed.set(true);
+        super.close();
+      }
+    };
+
+    ResponseStreamUtils.passThrough(new ByteArrayInputStream(content), output, 1024);
+
+    assertArrayEquals(content, output.toByteArray());
+    assertTrue(closed.get());
+  }
+
+  @Test
+  public void testPassThroughToJettyResponse() throws Exception {
+    final String body = StringUtils.repeat("0123456789", 100000);
+    final Server server = new Server();
+    final LocalConnector connector = new LocalConnector(server);
+    server.addConnector(connector);
+    server.setHandler(new AbstractHandler() {
+      @Override
+      public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        baseRequest.setHandled(true);
+        response.setContentType("text/plain");
+        ResponseStreamUtils.passThrough(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), response.getOutputStream(), 1024);
+      }
+    });
+    server.start();
+    try {
+      final String response = connector.getResponse("GET / HTTP/1.0\r\n\r\n");
+      assertThat(response, containsString("200 OK"));
+      assertThat(response, endsWith(body));
+    } finally {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void testPassThroughAfterPartialWrite() throws Exception {
+    final Server server = new Server();
+    final LocalConnector connector = new LocalConnector(server);
+    server.addConnector(connector);
+    server.setHandler(new AbstractHandler() {
+      @Override
+      public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        baseRequest.setHandled(true);
+        final OutputStream output = response.getOutputStream();
+        output.write("head-".getBytes(StandardCharsets.UTF_8));
+        ResponseStreamUtils.passThrough(new ByteArrayInputStream("tail".getBytes(StandardCharsets.UTF_8)), output, 1024);
+      }
+    });
+    server.start();
+    try {
+      assertThat(connector.getResponse("GET / HTTP/1.0\r\n\r\n"), endsWith("head-tail"));
+    } finally {
+      server.stop();
+    }
+  }
+}
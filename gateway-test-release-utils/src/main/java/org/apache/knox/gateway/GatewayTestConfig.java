@@ -36,6 +36,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 public class GatewayTestConfig extends Configuration implements GatewayConfig {
 
@@ -806,6 +807,36 @@ public class GatewayTestConfig extends Configuration implements GatewayConfig {
     return 0;
   }
 
+  @Override
+  public long getKnoxTokenStateLogSyncInterval() {
+    return 0;
+  }
+
+  @Override
+  public long getKnoxTokenStateZookeeperLookupTimeout() {
+    return 0;
+  }
+
+  @Override
+  public long getKnoxTokenStateJdbcBatchLatency() {
+    return 0;
+  }
+
+  @Override
+  public int getKnoxTokenStateJdbcQueueSize() {
+    return 0;
+  }
+
+  @Override
+  public long getKnoxTokenStateJdbcCacheSize() {
+    return 0;
+  }
+
+  @Override
+  public long getKnoxTokenStateJdbcCacheTtl() {
+    return 0;
+  }
+
   @Override
   public String getKnoxTokenHashAlgorithm() {
     return null;
@@ -902,4 +933,109 @@ public class GatewayTestConfig extends Configuration implements GatewayConfig {
     return null;
   }
 
+  @Override
+  public int getDatabasePoolMaxSize() {
+    return 0;
+  }
+
+  @Override
+  public long getDatabasePoolConnectionTimeout() {
+    return 0;
+  }
+
+  @Override
+  public boolean isAsyncSupported() {
+    return false;
+  }
+
+  @Override
+  public long getAsyncDispatchTimeout() {
+    return 0;
+  }
+
+  @Override
+  public boolean isHttpClientConnectionPoolEnabled() {
+    return false;
+  }
+
+  @Override
+  public int getHttpClientConnectionPoolMaxTotal() {
+    return 1024;
+  }
+
+  @Override
+  public int getHttpClientConnectionPoolMaxPerRoute() {
+    return 64;
+  }
+
+  @Override
+  public int getHttpClientConnectionPoolValidateAfterInactivity() {
+    return 2000;
+  }
+
+  @Override
+  public long getHttpClientConnectionPoolIdleTimeout() {
+    return TimeUnit.SECONDS.toMillis(60);
+  }
+
+  @Override
+  public long getHttpClientConnectionPoolEvictionInterval() {
+    return TimeUnit.SECONDS.toMillis(30);
+  }
+
+  @Override
+  public boolean isHttp2Enabled() {
+    return false;
+  }
+
+  @Override
+  public boolean isHttp2CleartextEnabled() {
+    return false;
+  }
+
+  @Override
+  public int getHttp2MaxConcurrentStreams() {
+    return 128;
+  }
+
+  @Override
+  public long getHttpClientReplayBufferPoolMaxSize() {
+    return 0;
+  }
+
+  @Override
+  public boolean isRewriteResponseCacheEnabled() {
+    return false;
+  }
+
+  @Override
+  public long getRewriteResponseCacheMaxSize() {
+    return 64L * 1024 * 1024;
+  }
+
+  @Override
+  public int getRewriteResponseCacheMaxEntries() {
+    return 1024;
+  }
+
+  @Override
+  public int getRewriteResponseCacheMaxEntrySize() {
+    return 4 * 1024 * 1024;
+  }
+
+  @Override
+  public int getRewriteCompressionLevel() {
+    return -1;
+  }
+
+  @Override
+  public int getRewriteCompressionBlockSize() {
+    return 128 * 1024;
+  }
+
+  @Override
+  public int getRewriteCompressionThreads() {
+    return 0;
+  }
+
 }
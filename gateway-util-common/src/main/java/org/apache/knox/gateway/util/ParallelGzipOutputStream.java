@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.knox.gateway.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes the gzip format, compressing blocks of the data in parallel the way pigz does.
+ * <p>
+ * Each block is deflated on its own by the executor, primed with the last 32 KB of the data
+ * before it as dictionary, and ended on a byte boundary with a sync flush so the compressed
+ * blocks can simply be concatenated. The compression ratio is therefore close to the one of
+ * a single deflate stream. The number of blocks being compressed is bounded per stream, which
+ * bounds its memory. The last block is compressed by the closing thread.
+ */
+public class ParallelGzipOutputStream extends FilterOutputStream {
+
+  private static final int DICTIONARY_SIZE = 32 * 1024;
+  private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+
+  private final int level;
+  private final int blockSize;
+  private final Executor executor;
+  private final int maxPendingBlocks;
+  private final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+  private final CRC32 crc = new CRC32();
+  private long size;
+  private byte[] block;
+  private int blockLength;
+  private byte[] dictionary;
+  private boolean closed;
+
+  /**
+   * @param out the stream to write the compressed data to
+   * @param level the compression level, from 0 to 9 or {@link Deflater#DEFAULT_COMPRESSION}
+   * @param blockSize the number of bytes of the blocks compressed in parallel, at least 32 KB
+   * @param executor the executor compressing the blocks
+   * @param maxPendingBlocks the maximum number of blocks of the stream being compressed at once
+   */
+  public ParallelGzipOutputStream(OutputStream out, int level, int blockSize, Executor executor,
+                                  int maxPendingBlocks) throws IOException {
+    super(out);
+    this.level = level;
+    this.blockSize = Math.max(blockSize, DICTIONARY_SIZE);
+    this.executor = executor;
+    this.maxPendingBlocks = Math.max(1, maxPendingBlocks);
+    this.block = new byte[this.blockSize];
+    out.write(HEADER);
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    write(new byte[] { (byte) b }, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    crc.update(b, off, len);
+    size += len;
+    while (len > 0) {
+      final int count = Math.min(len, blockSize - blockLength);
+      System.arraycopy(b, off, block, blockLength, count);
+      blockLength += count;
+      off += count;
+      len -= count;
+      if (blockLength == blockSize) {
+        submitBlock();
+      }
+    }
+  }
+
+  /**
+   * Writes the data compressed so far, waiting for the blocks being compressed.
+   */
+  @Override
+  public void flush() throws IOException {
+    if (blockLength > 0) {
+      submitBlock();
+    }
+    while (!pendingBlocks.isEmpty()) {
+      writeFirstPendingBlock();
+    }
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      while (!pendingBlocks.isEmpty()) {
+        writeFirstPendingBlock();
+      }
+      out.write(deflate(block, blockLength, dictionary, true));
+      writeInt((int) crc.getValue());
+      writeInt((int) size);
+    } finally {
+      out.close();
+    }
+  }
+
+  private void submitBlock() throws IOException {
+    final byte[] data = block;
+    final int length = blockLength;
+    final byte[] previous = dictionary;
+    final FutureTask<byte[]> task = new FutureTask<>(() -> deflate(data, length, previous, false));
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      task.run();
+    }
+    pendingBlocks.addLast(task);
+    dictionary = nextDictionary(previous, data, length);
+    block = new byte[blockSize];
+    blockLength = 0;
+    while (pendingBlocks.size() >= maxPendingBlocks) {
+      writeFirstPendingBlock();
+    }
+  }
+
+  private void writeFirstPendingBlock() throws IOException {
+    try {
+      out.write(pendingBlocks.removeFirst().get());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(e.getMessage());
+    } catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /*
+   * The last 32 KB of the data written, spanning the previous dictionary when the block is shorter
+   */
+  private static byte[] nextDictionary(byte[] previous, byte[] data, int length) {
+    if (length >= DICTIONARY_SIZE || previous == null) {
+      return Arrays.copyOfRange(data, Math.max(0, length - DICTIONARY_SIZE), length);
+    }
+    final int kept = Math.min(previous.length, DICTIONARY_SIZE - length);
+    final byte[] next = new byte[kept + length];
+    System.arraycopy(previous, previous.length - kept, next, 0, kept);
+    System.arraycopy(data, 0, next, kept, length);
+    return next;
+  }
+
+  private byte[] deflate(byte[] data, int length, byte[] previous, boolean finish) {
+    final Deflater deflater = new Deflater(level, true);
+    try {
+      if (previous != null) {
+        deflater.setDictionary(previous);
+      }
+      deflater.setInput(data, 0, length);
+      final ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+      final byte[] buffer = new byte[Math.max(length / 2, 512) + 64];
+      if (finish) {
+        deflater.finish();
+        while (!deflater.finished()) {
+          compressed.write(buffer, 0, deflater.deflate(buffer));
+        }
+      } else {
+        int count;
+        do {
+          count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+          compressed.write(buffer, 0, count);
+        } while (count == buffer.length);
+      }
+      return compressed.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private void writeInt(int value) throws IOException {
+    out.write(value & 0xff);
+    out.write((value >> 8) & 0xff);
+    out.write((value >> 16) & 0xff);
+    out.write((value >> 24) & 0xff);
+  }
+}
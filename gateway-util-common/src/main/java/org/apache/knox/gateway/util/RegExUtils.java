@@ -17,7 +17,9 @@
  */
 package org.apache.knox.gateway.util;
 
-import java.util.regex.Matcher;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.regex.Pattern;
 
 public class RegExUtils {
@@ -29,11 +31,33 @@ public class RegExUtils {
    * @return true for a match otherwise false
    */
   public static boolean checkWhitelist(String whitelist, String tomatch) {
+    return checkWhitelist(compileWhitelist(whitelist), tomatch);
+  }
+
+  /**
+   * Compiles a whitelist of semi-colon separated regex patterns
+   * so that it can be checked repeatedly without compiling it again.
+   * @param whitelist - semi-colon separated patterns
+   * @return the compiled patterns in their original order
+   */
+  public static List<Pattern> compileWhitelist(String whitelist) {
     String[] patterns = whitelist.split(";");
+    List<Pattern> compiled = new ArrayList<>(patterns.length);
     for (String patternString : patterns) {
-      Pattern pattern = Pattern.compile(patternString);
-      Matcher matcher = pattern.matcher(tomatch);
-      if (matcher.matches()) {
+      compiled.add(Pattern.compile(patternString));
+    }
+    return Collections.unmodifiableList(compiled);
+  }
+
+  /**
+   * Checks for a match of a given string against a compiled whitelist.
+   * @param whitelist - patterns returned by {@link #compileWhitelist(String)}
+   * @param tomatch - the string to match against list
+   * @return true for a match otherwise false
+   */
+  public static boolean checkWhitelist(List<Pattern> whitelist, String tomatch) {
+    for (Pattern pattern : whitelist) {
+      if (pattern.matcher(tomatch).matches()) {
         return true;
       }
     }
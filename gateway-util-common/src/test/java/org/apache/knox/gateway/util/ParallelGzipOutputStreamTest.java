@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ParallelGzipOutputStreamTest {
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+  @After
+  public void tearDown() {
+    ExecutorServiceUtils.shutdownAndAwaitTermination(executor, 10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    final byte[] data = createData(1024 * 1024 + 17);
+    for (int level : new int[] { Deflater.DEFAULT_COMPRESSION, Deflater.BEST_SPEED, Deflater.NO_COMPRESSION }) {
+      final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+      try (OutputStream out = new ParallelGzipOutputStream(compressed, level, 64 * 1024, executor, 3)) {
+        out.write(data, 0, 1000);
+        out.write(data[1000]);
+        out.write(data, 1001, data.length - 1001);
+      }
+      assertArrayEquals(data, decompress(compressed.toByteArray()));
+    }
+  }
+
+  @Test
+  public void testCompressionRatioIsCloseToSingleStream() throws IOException {
+    final byte[] data = createData(2 * 1024 * 1024);
+    final ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+    try (OutputStream out = new ParallelGzipOutputStream(parallel, Deflater.DEFAULT_COMPRESSION, 128 * 1024, executor, 4)) {
+      out.write(data);
+    }
+    final ByteArrayOutputStream single = new ByteArrayOutputStream();
+    try (OutputStream out = new GZIPOutputStream(single)) {
+      out.write(data);
+    }
+    assertTrue(parallel.size() < single.size() * 1.05);
+  }
+
+  @Test
+  public void testFlush() throws IOException {
+    final byte[] data = createData(100 * 1000);
+    final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (OutputStream out = new ParallelGzipOutputStream(compressed, Deflater.DEFAULT_COMPRESSION, 32 * 1024, executor, 2)) {
+      for (int i = 0; i < data.length; i += 1000) {
+        out.write(data, i, 1000);
+        out.flush();
+      }
+    }
+    assertArrayEquals(data, decompress(compressed.toByteArray()));
+  }
+
+  @Test
+  public void testEmpty() throws IOException {
+    final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    new ParallelGzipOutputStream(compressed, Deflater.DEFAULT_COMPRESSION, 32 * 1024, executor, 2).close();
+    assertArrayEquals(new byte[0], decompress(compressed.toByteArray()));
+  }
+
+  /*
+   * Compressible data with some randomness, like JSON documents
+   */
+  private static byte[] createData(int length) {
+    final Random random = new Random(42);
+    final ByteArrayOutputStream data = new ByteArrayOutputStream(length + 100);
+    while (data.size() < length) {
+      final String entry = "{\"url\":\"https://knoxhost:8443/gateway/sandbox/webhdfs/v1/tmp/" + random.nextInt(1000) + "\"},";
+      final byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+      data.write(bytes, 0, bytes.length);
+    }
+    final byte[] result = data.toByteArray();
+    final byte[] truncated = new byte[length];
+    System.arraycopy(result, 0, truncated, 0, length);
+    return truncated;
+  }
+
+  private static byte[] decompress(byte[] compressed) throws IOException {
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+      final ByteArrayOutputStream data = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[8192];
+      for (int count = in.read(buffer); count != -1; count = in.read(buffer)) {
+        data.write(buffer, 0, count);
+      }
+      return data.toByteArray();
+    }
+  }
+}
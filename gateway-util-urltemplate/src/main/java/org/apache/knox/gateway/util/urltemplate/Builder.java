@@ -308,6 +308,11 @@ public class Builder {
     return this;
   }
 
+  Builder addPath( Path segment ) {
+    path.add( segment );
+    return this;
+  }
+
   Builder addPath( Token token ) {
     Path segment = new Path( token );
     path.add( segment );
@@ -18,6 +18,8 @@
 package org.apache.knox.gateway.util.urltemplate;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -53,6 +55,7 @@ public class Matcher<V> {
 
   private Map<Template,V> map;
   private PathNode root;
+  private boolean compiled;
 
   public Matcher() {
     map = new LinkedHashMap<>();
@@ -69,6 +72,7 @@ public class Matcher<V> {
   }
 
   public void add( Template template, V value ) {
+    compiled = false;
     map.put( template, value );
     PathNode node = root;
 
@@ -117,7 +121,26 @@ public class Matcher<V> {
     return child;
   }
 
+  /**
+   * Switches the matcher to its compiled mode, typically once all the templates have been added at deployment time.
+   * In compiled mode the children of each node of the tree are indexed by their static value and the matcher
+   * searches the tree depth first, so matching a literal only allocates per match and not per segment.
+   * The match returned is the same as the one returned in the default mode.
+   * Adding a template afterwards switches the matcher back to the default mode until it is compiled again.
+   */
+  public void compile() {
+    root.compile();
+    compiled = true;
+  }
+
+  public boolean isCompiled() {
+    return compiled;
+  }
+
   public Match match( Template input ) {
+    if( compiled ) {
+      return matchCompiled( input );
+    }
     Status status = new Status();
     status.candidates.add( new MatchSegment( null, root, null, null ) );
     boolean matches = true;
@@ -206,37 +229,38 @@ public class Matcher<V> {
   }
 
   private Match pickBestMatch( Template input, Status status ) {
-    Match bestMatch = new Match( null, null );
-    PathNode bestPath = null;
-    QueryNode bestQuery = null;
+    BestMatch best = new BestMatch( input );
     MatchSegment bestMatchSegment = null;
     for( MatchSegment matchSegment: status.candidates ) {
-      PathNode pathNode = matchSegment.pathNode;
-      if( ( bestPath == null ) || // If we don't have anything at all pick the pathNode.
-          ( pathNode.depth > bestPath.depth ) || // If the pathNode is deeper than the best pathNode, pick it.
-          // If the pathNode is the same depth as current best but is static and the best isn't then pick it.
-          ( ( pathNode.depth == bestPath.depth ) && ( pathNode.getType() < bestPath.getType() ) ) ) {
-        // If the path node has a template then assume we will pick the path node.
-        if( pathNode.template != null ) {
-          bestPath = pathNode;
-          bestQuery = null;
-          bestMatch.template = pathNode.template;
-          bestMatch.value = pathNode.value;
-          bestMatchSegment = matchSegment;
-        }
-        // If the path node has queries see if one is better match than the path node itself.
-        if( pathNode.hasQueries() ) {
-          bestQuery = pickBestQueryMatch( input, pathNode );
-          if( bestQuery != null && bestQuery.template != null ) {
-            bestPath = pathNode;
-            bestMatch.template = bestQuery.template;
-            bestMatch.value = bestQuery.value;
-            bestMatchSegment = matchSegment;
-          }
-        }
+      if( best.consider( matchSegment.pathNode ) ) {
+        bestMatchSegment = matchSegment;
+      }
+    }
+    Match match = createMatch( best.path, best.query, input );
+    if( match != null ) {
+      // Walk back up the matching segment tree.
+      MatchSegment matchSegment = bestMatchSegment;
+      while( matchSegment != null && matchSegment.pathNode.depth > 0 ) {
+        extractSegmentParams( matchSegment.templateSegment, matchSegment.inputSegment, match.params );
+        matchSegment = matchSegment.parentMatch;
       }
     }
-    return createMatch( bestMatchSegment, bestPath, bestQuery, input );
+    return match;
+  }
+
+  /*
+   * Same walk as the default mode but depth first, which visits the candidates in the same order.
+   */
+  private Match matchCompiled( Template input ) {
+    Search search = new Search( input );
+    search.descend( root, 0 );
+    Match match = createMatch( search.best.path, search.best.query, input );
+    if( match != null ) {
+      for( int i = search.bestNodes.size() - 1; i >= 0; i-- ) {
+        extractSegmentParams( search.bestNodes.get( i ).segment, search.segments[ i ], match.params );
+      }
+    }
+    return match;
   }
 
   private QueryNode pickBestQueryMatch( Template input, PathNode pathNode ) {
@@ -275,7 +299,7 @@ public class Matcher<V> {
     return matchCount;
   }
 
-  private Match createMatch( MatchSegment bestMatchSegment, PathNode bestPath, QueryNode bestQuery, Template input ) {
+  private Match createMatch( PathNode bestPath, QueryNode bestQuery, Template input ) {
     Match match = null;
 
     if( bestPath != null ) { //&& ( bestQuery != null || !bestPath.hasQueries() ) ) {
@@ -317,13 +341,6 @@ public class Matcher<V> {
           }
         }
       }
-
-      // Walk back up the matching segment tree.
-      MatchSegment matchSegment = bestMatchSegment;
-      while( matchSegment != null && matchSegment.pathNode.depth > 0 ) {
-        extractSegmentParams( matchSegment.templateSegment, matchSegment.inputSegment, matchParams );
-        matchSegment = matchSegment.parentMatch;
-      }
       match.params = matchParams;
     }
     return match;
@@ -340,6 +357,143 @@ public class Matcher<V> {
     }
   }
 
+  /*
+   * Picks the best match among the candidates, in the order they are found.
+   */
+  private class BestMatch {
+    private final Template input;
+    private PathNode path;
+    private QueryNode query;
+
+    BestMatch( Template input ) {
+      this.input = input;
+    }
+
+    // Returns true if the candidate becomes the best match.
+    private boolean consider( PathNode pathNode ) {
+      boolean picked = false;
+      if( ( path == null ) || // If we don't have anything at all pick the pathNode.
+          ( pathNode.depth > path.depth ) || // If the pathNode is deeper than the best pathNode, pick it.
+          // If the pathNode is the same depth as current best but is static and the best isn't then pick it.
+          ( ( pathNode.depth == path.depth ) && ( pathNode.getType() < path.getType() ) ) ) {
+        // If the path node has a template then assume we will pick the path node.
+        if( pathNode.template != null ) {
+          path = pathNode;
+          query = null;
+          picked = true;
+        }
+        // If the path node has queries see if one is better match than the path node itself.
+        if( pathNode.hasQueries() ) {
+          query = pickBestQueryMatch( input, pathNode );
+          if( query != null && query.template != null ) {
+            path = pathNode;
+            picked = true;
+          }
+        }
+      }
+      return picked;
+    }
+  }
+
+  /*
+   * Depth first search of the compiled tree. The input segments are visited in the order of the default mode,
+   * and the nodes of the current and of the best candidate are kept per input segment.
+   */
+  private class Search {
+    private final BestMatch best;
+    private final Segment[] segments;
+    private final List<PathNode> nodes;
+    private List<PathNode> bestNodes;
+    // The port is optional, a missing port matches any node.
+    private int portIndex = -1;
+
+    Search( Template input ) {
+      best = new BestMatch( input );
+      int count = 0;
+      count += input.getScheme() == null ? 0 : 1;
+      count += input.getUsername() == null ? 0 : 1;
+      count += input.getPassword() == null ? 0 : 1;
+      count += input.getHost() == null ? 0 : 2;
+      count += input.getPath().size();
+      count += input.getFragment() == null ? 0 : 1;
+      segments = new Segment[ count ];
+      nodes = new ArrayList<>( Collections.nCopies( count, null ) );
+      bestNodes = Collections.emptyList();
+      int i = 0;
+      i = addSegment( input.getScheme(), i );
+      i = addSegment( input.getUsername(), i );
+      i = addSegment( input.getPassword(), i );
+      i = addSegment( input.getHost(), i );
+      if( input.getHost() != null ) {
+        portIndex = i;
+        segments[ i++ ] = input.getPort();
+      }
+      for( Path segment : input.getPath() ) {
+        i = addSegment( segment, i );
+      }
+      addSegment( input.getFragment(), i );
+    }
+
+    private int addSegment( Segment segment, int index ) {
+      if( segment != null ) {
+        segments[ index++ ] = segment;
+      }
+      return index;
+    }
+
+    private void descend( PathNode node, int index ) {
+      if( index == segments.length ) {
+        if( best.consider( node ) ) {
+          bestNodes = new ArrayList<>( nodes );
+        }
+        return;
+      }
+      Segment segment = segments[ index ];
+      if( index == portIndex ) {
+        if( node.childNodes != null ) {
+          for( int i = 0; i < node.childNodes.size(); i++ ) {
+            PathNode child = node.childNodes.get( i );
+            if( segment == null || child.matches( segment ) ) {
+              visit( child, index );
+            }
+          }
+        }
+        return;
+      }
+      if( node.glob ) {
+        visit( node, index );
+      }
+      if( node.childNodes == null ) {
+        return;
+      }
+      // Merge the static and the other matching children back into the order they were added in.
+      List<PathNode> statics = node.staticChildren( segment );
+      int s = 0;
+      for( PathNode other : node.otherChildren ) {
+        while( s < statics.size() && statics.get( s ).index < other.index ) {
+          visitStatic( statics.get( s++ ), segment, index );
+        }
+        if( other.matches( segment ) ) {
+          visit( other, index );
+        }
+      }
+      while( s < statics.size() ) {
+        visitStatic( statics.get( s++ ), segment, index );
+      }
+    }
+
+    private void visitStatic( PathNode child, Segment segment, int index ) {
+      if( child.segment.getClass().isInstance( segment ) ) {
+        visit( child, index );
+      }
+    }
+
+    private void visit( PathNode child, int index ) {
+      nodes.set( index, child );
+      descend( child, index + 1 );
+    }
+  }
+
   private class Status {
     List<MatchSegment> candidates = new ArrayList<>();
     List<MatchSegment> matches = new ArrayList<>();
@@ -407,7 +561,7 @@ public class Matcher<V> {
   public class Match {
     private Template template;
     private V value;
-    private Params params;
+    private MatchParams params;
     //TODO private Params extra;
 
     Match( Template template, V value ) {
@@ -435,6 +589,14 @@ public class Matcher<V> {
     Map<Segment,PathNode> children;
     Set<QueryNode> queries;
 
+    // Compiled mode
+    int index; // Position of the pathNode among the children of its parent.
+    int type;
+    boolean glob;
+    List<PathNode> childNodes;
+    Map<String,List<PathNode>> staticChildNodes;
+    List<PathNode> otherChildren;
+
     PathNode( PathNode parent, Segment segment ) {
       super( null, null );
       this.depth = ( parent == null ) ? 0 : parent.depth+1;
@@ -461,7 +623,60 @@ public class Matcher<V> {
       return query;
     }
 
+    private void compile() {
+      type = computeType();
+      glob = hasGlob();
+      if( children == null ) {
+        childNodes = null;
+        staticChildNodes = null;
+        otherChildren = null;
+        return;
+      }
+      childNodes = new ArrayList<>( children.values() );
+      staticChildNodes = new HashMap<>();
+      otherChildren = new ArrayList<>();
+      for( int i = 0; i < childNodes.size(); i++ ) {
+        PathNode child = childNodes.get( i );
+        child.index = i;
+        child.compile();
+        String staticValue = child.getStaticValue();
+        if( staticValue == null ) {
+          otherChildren.add( child );
+        } else {
+          staticChildNodes.computeIfAbsent( staticValue, key -> new ArrayList<>( 1 ) ).add( child );
+        }
+      }
+    }
+
+    // Returns the value of a segment that only matches that exact value, if any.
+    private String getStaticValue() {
+      if( segment.getValueCount() == 1 && segment.getFirstValue().getType() == Segment.STATIC ) {
+        return segment.getFirstValue().getOriginalPattern();
+      }
+      return null;
+    }
+
+    private List<PathNode> staticChildren( Segment input ) {
+      List<PathNode> nodes = null;
+      if( input.getValueCount() == 1 ) {
+        nodes = staticChildNodes.get( input.getFirstValue().getOriginalPattern() );
+      } else {
+        // Rare multi valued input, check every static child in order.
+        nodes = new ArrayList<>();
+        for( PathNode child : childNodes ) {
+          if( child.getStaticValue() != null && child.matches( input ) ) {
+            nodes.add( child );
+          }
+        }
+      }
+      return nodes == null ? Collections.emptyList() : nodes;
+    }
+
     private int getType() {
+      return compiled ? type : computeType();
+    }
+
+    private int computeType() {
       int type = Segment.UNKNOWN;
       if( segment != null ) {
         for( Segment.Value value: segment.getValues() ) {
@@ -17,6 +17,8 @@
  */
 package org.apache.knox.gateway.util.urltemplate;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.apache.knox.gateway.i18n.resources.ResourcesFactory;
 
 import java.net.URISyntaxException;
@@ -78,6 +80,13 @@ public class Parser {
   private static final int MATCH_GROUP_FRAGMENT = 8;
   private static final int MATCH_GROUP_FRAGMENT_NAKED = 9;
 
+  // Literal path segments are immutable once parsed, the most frequent ones are shared between templates.
+  static final int INTERNED_PATH_SEGMENTS = 4096;
+  static final int MAX_INTERNED_PATH_SEGMENT_LENGTH = 64;
+  private static final Cache<String,Path> LITERAL_PATH_SEGMENTS = Caffeine.newBuilder()
+      .maximumSize( INTERNED_PATH_SEGMENTS )
+      .build();
+
   private static Pattern PATTERN = Pattern.compile( "^(([^:/?#]+):)?(//([^/?#]*))?([^?#]*)(\\?([^#]*))?(#(.*))?" );
 
   @Deprecated
@@ -224,8 +233,17 @@ public class Parser {
 
   private static void consumePathSegment( final Builder builder, final String token ) {
     if( token != null ) {
-      final Token t = parseTemplateToken( builder, token, Segment.GLOB_PATTERN );
-      builder.addPath( t );
+      if( builder.isLiteral() && token.length() <= MAX_INTERNED_PATH_SEGMENT_LENGTH ) {
+        Path segment = LITERAL_PATH_SEGMENTS.getIfPresent( token );
+        if( segment == null ) {
+          segment = new Path( parseTemplateToken( builder, token, Segment.GLOB_PATTERN ) );
+          LITERAL_PATH_SEGMENTS.put( token, segment );
+        }
+        builder.addPath( segment );
+      } else {
+        final Token t = parseTemplateToken( builder, token, Segment.GLOB_PATTERN );
+        builder.addPath( t );
+      }
     }
   }
 
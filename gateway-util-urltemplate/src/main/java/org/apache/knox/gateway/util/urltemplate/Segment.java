@@ -42,11 +42,13 @@ abstract class Segment {
 
   private Token token;
   private Map<String,Value> values;
+  private Value first;
 
   protected Segment( Token token ) {
     this.token = token;
     this.values = new LinkedHashMap<>();
-    this.values.put( token.effectivePattern, new Value( token ) );
+    this.first = new Value( token );
+    this.values.put( token.effectivePattern, first );
   }
 
   protected Token getToken() {
@@ -86,15 +88,19 @@ abstract class Segment {
   }
 
   public Value getFirstValue() {
-    Value first = null;
-    if( !values.isEmpty() ) {
-      first = values.values().iterator().next();
-    }
     return first;
   }
 
+  int getValueCount() {
+    return values.size();
+  }
+
   public boolean matches( Segment that ) {
     if( getClass().isInstance( that ) ) {
+      // Most segments have a single value, avoid iterating.
+      if( values.size() == 1 && that.values.size() == 1 ) {
+        return first.matches( that.first );
+      }
       for( Value thisValue: this.values.values() ) {
         for( Value thatValue: that.values.values() ) {
           if( thisValue.matches( thatValue ) ) {
@@ -109,6 +115,9 @@ abstract class Segment {
   void addValue( Token token ) {
     Value value = new Value( token );
     values.put( token.effectivePattern, value );
+    if( token.effectivePattern.equals( first.token.effectivePattern ) ) {
+      first = value;
+    }
   }
 
   @Override
@@ -138,6 +147,8 @@ abstract class Segment {
     private int type;
     private Token token;
     private Pattern regex;
+    // The literal parts around the stars of simple regex patterns, matched without the regex.
+    private String[] wildcardParts;
 
     Value( Token token ) {
       this.token = token;
@@ -154,6 +165,7 @@ abstract class Segment {
       } else if ( effectivePattern != null && effectivePattern.contains( STAR_PATTERN ) ) {
         this.type = REGEX;
         this.regex = compileRegex( effectivePattern );
+        this.wildcardParts = splitWildcard( effectivePattern );
       } else {
         this.type = STATIC;
       }
@@ -203,7 +215,7 @@ abstract class Segment {
             //matches = matchThisWildcard( that ); // See: MatcherTest.testWildcardCharacterInInputTemplate
             break;
           case( REGEX ):
-            matches = this.regex.matcher( that.token.effectivePattern ).matches();
+            matches = matchRegex( that.token.effectivePattern );
             //matches = matchThisRegex( that ); // See: MatcherTest.testWildcardCharacterInInputTemplate
             break;
           default:
@@ -213,6 +225,29 @@ abstract class Segment {
       return matches;
     }
 
+    private boolean matchRegex( String input ) {
+      if( wildcardParts == null || hasLineTerminator( input ) ) {
+        return regex.matcher( input ).matches();
+      }
+      String prefix = wildcardParts[ 0 ];
+      String suffix = wildcardParts[ wildcardParts.length - 1 ];
+      if( input.length() < prefix.length() + suffix.length()
+          || !input.startsWith( prefix ) || !input.endsWith( suffix ) ) {
+        return false;
+      }
+      int from = prefix.length();
+      int to = input.length() - suffix.length();
+      for( int i = 1; i < wildcardParts.length - 1; i++ ) {
+        String part = wildcardParts[ i ];
+        int found = input.indexOf( part, from );
+        if( found < 0 || found + part.length() > to ) {
+          return false;
+        }
+        from = found + part.length();
+      }
+      return true;
+    }
+
 // See: MatcherTest.testWildcardCharacterInInputTemplate
 //    private boolean matchThisStatic( Value that ) {
 //      boolean matches = false;
@@ -272,6 +307,33 @@ abstract class Segment {
 
   }
 
+  // Splits a pattern into the literal parts around its stars, if the regex created for it only has star wildcards.
+  static String[] splitWildcard( final String segment ) {
+    for( int i = 0; i < segment.length(); i++ ) {
+      if( "()[]+?^|".indexOf( segment.charAt( i ) ) >= 0 ) {
+        return null;
+      }
+    }
+    return segment.split( "\\*", -1 );
+  }
+
+  // The regex star does not match line terminators.
+  private static boolean hasLineTerminator( final String input ) {
+    for( int i = 0; i < input.length(); i++ ) {
+      switch( input.charAt( i ) ) {
+        case '\n':
+        case '\r':
+        case '\u0085':
+        case '\u2028':
+        case '\u2029':
+          return true;
+        default:
+          // noop
+      }
+    }
+    return false;
+  }
+
   // Escape .\${ and turn * into .*
   static String createRegex(final String segment ) {
     StringBuilder regex = new StringBuilder( segment );
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.util.urltemplate;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.net.URISyntaxException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the templates parsed from literals, since the same URL is typically parsed by several filters and for
+ * several headers of a request. Templates are immutable once parsed so they can be shared.
+ * <p>
+ * An instance holds the literals parsed for a single request, in front of a small gateway wide cache
+ * of the most frequently parsed literals. Only literals without a query string are kept gateway wide:
+ * query strings differ between requests and may carry credentials such as delegation tokens.
+ */
+public class TemplateCache {
+
+  static final int GLOBAL_CACHE_SIZE = 1024;
+  // Longer literals are unlikely to be parsed again.
+  static final int MAX_LITERAL_LENGTH = 2048;
+
+  private static final Cache<String,Template> GLOBAL_CACHE = Caffeine.newBuilder()
+      .maximumSize( GLOBAL_CACHE_SIZE )
+      .build();
+
+  private final Map<String,Template> templates = new ConcurrentHashMap<>();
+
+  /**
+   * Parses a literal using the gateway wide cache, unless it has a query string.
+   *
+   * @param literal the literal to parse
+   * @return the template parsed from the literal
+   * @throws URISyntaxException if the literal can not be parsed
+   */
+  public static Template parseLiteral( final String literal ) throws URISyntaxException {
+    if( literal.length() > MAX_LITERAL_LENGTH || literal.indexOf( '?' ) >= 0 ) {
+      return Parser.parseLiteral( literal );
+    }
+    Template template = GLOBAL_CACHE.getIfPresent( literal );
+    if( template == null ) {
+      template = Parser.parseLiteral( literal );
+      GLOBAL_CACHE.put( literal, template );
+    }
+    return template;
+  }
+
+  /**
+   * Parses a literal using the literals already parsed by this cache, then the gateway wide cache.
+   *
+   * @param literal the literal to parse
+   * @return the template parsed from the literal
+   * @throws URISyntaxException if the literal can not be parsed
+   */
+  public Template getLiteral( final String literal ) throws URISyntaxException {
+    Template template = templates.get( literal );
+    if( template == null ) {
+      template = parseLiteral( literal );
+      templates.put( literal, template );
+    }
+    return template;
+  }
+
+  static void clearGlobalCache() {
+    GLOBAL_CACHE.invalidateAll();
+  }
+}
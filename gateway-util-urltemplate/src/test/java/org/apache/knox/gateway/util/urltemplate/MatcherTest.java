@@ -1002,4 +1002,63 @@ public class MatcherTest {
     assertThat( expandedStr, containsString( "createparent=true" ) );
     assertThat( expandedStr, containsString( "&" ) );
   }
+
+  @Test
+  public void testCompiledMatcherPicksSameMatch() throws Exception {
+    String[] templates = {
+        "*://*:*/**/webhdfs/v1/{path=**}?{**}",
+        "*://*:*/**/webhdfs/v1/{path=**}?op={op=*}&{**}",
+        "*://*:*/**/webhdfs/{version}/{path=**}",
+        "/*/*",
+        "/a/*",
+        "/a/b",
+        "/{x=*}/{y=**}",
+        "/files/{name=*.txt}",
+        "/files/{name=*.t(x|y)t}",
+        "/files/{name=a*b*c}",
+        "{scheme}://{host}/{path=**}",
+        "{scheme}://{host}:{port}/{path=**}?{**}",
+        "*://*/static/**#{fragment}",
+        "/oozie/**?user.name={user}",
+        "/oozie/v1/jobs?action={action}&{**}" };
+    String[] inputs = {
+        "http://host:1022/gateway/sandbox/webhdfs/v1/user/test_file?op=CREATE&delegation=XXX",
+        "http://host:1022/gateway/sandbox/webhdfs/v1/user/test_file",
+        "https://host/gateway/webhdfs/v2/a/b/c",
+        "/a/b", "/a/c", "/b/c", "/a/b/c", "/a",
+        "/files/notes.txt", "/files/notes.tyt", "/files/a-b-c", "/files/axxbxxc", "/files/ab",
+        "http://host/static/x/y#top", "http://host/static/x/y",
+        "/oozie/v1/jobs?action=start&user.name=admin", "/oozie/v1/jobs?user.name=admin",
+        "http://host:8080/path?q=1&r=2" };
+
+    Matcher<String> matcher = new Matcher<>();
+    Matcher<String> compiled = new Matcher<>();
+    for( String template : templates ) {
+      addTemplate( matcher, template );
+      addTemplate( compiled, template );
+    }
+    compiled.compile();
+    assertThat( compiled.isCompiled(), is( true ) );
+
+    for( String input : inputs ) {
+      Template literal = Parser.parseLiteral( input );
+      Matcher<String>.Match expected = matcher.match( literal );
+      Matcher<String>.Match actual = compiled.match( literal );
+      if( expected == null ) {
+        assertThat( input, actual, nullValue() );
+      } else {
+        assertThat( input, actual, notNullValue() );
+        assertThat( input, actual.getValue(), is( expected.getValue() ) );
+        assertThat( input, actual.getParams().getNames(), is( expected.getParams().getNames() ) );
+        for( String name : expected.getParams().getNames() ) {
+          assertThat( input, actual.getParams().resolve( name ), is( expected.getParams().resolve( name ) ) );
+        }
+      }
+    }
+
+    // Adding a template goes back to the default mode
+    addTemplate( compiled, "/a/c" );
+    assertThat( compiled.isCompiled(), is( false ) );
+    assertThat( compiled.match( Parser.parseLiteral( "/a/c" ) ).getValue(), is( "/a/c" ) );
+  }
 }
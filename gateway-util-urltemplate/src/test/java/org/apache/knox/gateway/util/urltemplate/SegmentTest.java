@@ -104,6 +104,26 @@ public class SegmentTest {
 //    assertThat( s1.matches( s7 ), equalTo( false ) );
   }
 
+  @Test
+  public void testMatchesWildcardWithoutRegex() throws Exception {
+    TestSegment wildcard = new TestSegment( "p", "a*b*c", false );
+    assertThat( wildcard.matches( new TestSegment( "p", "abc", false ) ), equalTo( true ) );
+    assertThat( wildcard.matches( new TestSegment( "p", "a-b-c", false ) ), equalTo( true ) );
+    assertThat( wildcard.matches( new TestSegment( "p", "abbc", false ) ), equalTo( true ) );
+    assertThat( wildcard.matches( new TestSegment( "p", "ac", false ) ), equalTo( false ) );
+    assertThat( wildcard.matches( new TestSegment( "p", "a-c-b", false ) ), equalTo( false ) );
+    assertThat( wildcard.matches( new TestSegment( "p", "a\nb\nc", false ) ), equalTo( false ) );
+
+    TestSegment overlap = new TestSegment( "p", "ab*ba", false );
+    assertThat( overlap.matches( new TestSegment( "p", "aba", false ) ), equalTo( false ) );
+    assertThat( overlap.matches( new TestSegment( "p", "abba", false ) ), equalTo( true ) );
+
+    // Patterns with other regex characters still use the regex
+    TestSegment regex = new TestSegment( "p", "*.(js|css)", false );
+    assertThat( regex.matches( new TestSegment( "p", "app.js", false ) ), equalTo( true ) );
+    assertThat( regex.matches( new TestSegment( "p", "app.html", false ) ), equalTo( false ) );
+  }
+
   @Test
   public void testCreateRegex() {
     assertThat( Segment.createRegex( "" ), is( "" ) );
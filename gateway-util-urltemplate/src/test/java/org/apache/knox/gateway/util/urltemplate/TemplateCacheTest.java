@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.knox.gateway.util.urltemplate;
+
+import org.apache.knox.test.category.FastTests;
+import org.apache.knox.test.category.UnitTests;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.net.URISyntaxException;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@Category( { UnitTests.class, FastTests.class } )
+public class TemplateCacheTest {
+
+  @Before
+  public void setUp() {
+    TemplateCache.clearGlobalCache();
+  }
+
+  @Test
+  public void testRepeatedParsingIsLookup() throws Exception {
+    String literal = "https://host:8443/gateway/sandbox/webhdfs/v1/tmp";
+    Template template = TemplateCache.parseLiteral( literal );
+    assertThat( template, equalTo( Parser.parseLiteral( literal ) ) );
+    assertThat( template.toString(), is( literal ) );
+    assertThat( TemplateCache.parseLiteral( literal ), sameInstance( template ) );
+
+    TemplateCache requestCache = new TemplateCache();
+    assertThat( requestCache.getLiteral( literal ), sameInstance( template ) );
+    TemplateCache.clearGlobalCache();
+    assertThat( requestCache.getLiteral( literal ), sameInstance( template ) );
+    assertThat( new TemplateCache().getLiteral( literal ), not( sameInstance( template ) ) );
+  }
+
+  @Test
+  public void testQueryLiteralsAreOnlyCachedPerRequest() throws Exception {
+    String literal = "https://host:8443/gateway/sandbox/webhdfs/v1/tmp?op=OPEN&delegation=secret";
+    Template template = TemplateCache.parseLiteral( literal );
+    assertThat( template.toString(), is( literal ) );
+    assertThat( TemplateCache.parseLiteral( literal ), not( sameInstance( template ) ) );
+
+    TemplateCache requestCache = new TemplateCache();
+    template = requestCache.getLiteral( literal );
+    assertThat( requestCache.getLiteral( literal ), sameInstance( template ) );
+    assertThat( new TemplateCache().getLiteral( literal ), not( sameInstance( template ) ) );
+  }
+
+  @Test
+  public void testLongLiteralsAreNotCached() throws Exception {
+    StringBuilder literal = new StringBuilder( "/gateway/sandbox/webhdfs/v1/tmp" );
+    while( literal.length() <= TemplateCache.MAX_LITERAL_LENGTH ) {
+      literal.append( "/0123456789" );
+    }
+    Template template = TemplateCache.parseLiteral( literal.toString() );
+    assertThat( TemplateCache.parseLiteral( literal.toString() ), not( sameInstance( template ) ) );
+  }
+
+  @Test( expected = URISyntaxException.class )
+  public void testInvalidLiteral() throws Exception {
+    new TemplateCache().getLiteral( "/path#frag\nment" );
+  }
+
+  @Test
+  public void testLiteralPathSegmentsAreShared() throws Exception {
+    Template first = Parser.parseLiteral( "/gateway/sandbox/webhdfs/v1/tmp" );
+    Template second = Parser.parseLiteral( "http://host/gateway/sandbox/webhdfs/v1/user" );
+    assertThat( second.getPath().get( 0 ), sameInstance( first.getPath().get( 0 ) ) );
+    assertThat( second.getPath().get( 3 ), sameInstance( first.getPath().get( 3 ) ) );
+
+    // Template path segments are not shared
+    Template pattern = Parser.parseTemplate( "/gateway/sandbox/webhdfs/v1/tmp" );
+    assertThat( pattern.getPath().get( 0 ), not( sameInstance( first.getPath().get( 0 ) ) ) );
+  }
+}